@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.benchmark;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.BuildLogIndication;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.MultilineBuildLogIndication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+//CS IGNORE MagicNumber FOR NEXT 160 LINES. REASON: Benchmark data.
+
+/**
+ * Build logs and indication patterns resembling what the benchmarks meet in real installations.
+ */
+public final class BenchmarkLogs {
+
+    private static final String[] TEMPLATES = {
+        "[INFO] Downloading: https://repo.maven.apache.org/maven2/org/example/artifact-%d/1.%d/artifact-%d.pom",
+        "[INFO] Compiling %d source files to /var/lib/jenkins/workspace/job/target/classes",
+        "Running com.example.module.SomeServiceTest%d",
+        "Tests run: %d, Failures: 0, Errors: 0, Skipped: %d, Time elapsed: 0.%d sec",
+        "[WARNING] /var/lib/jenkins/workspace/job/src/main/java/Foo%d.java:[%d,%d] unchecked conversion",
+        "%d KB   ",
+        "+ make -j%d all TARGET=arm-linux-gnueabi-%d V=%d",
+        "\tat org.example.framework.Dispatcher.dispatch(Dispatcher.java:%d)",
+    };
+
+    private static final String[] PATTERNS = {
+        ".*Compilation failure.*",
+        ".*java\\.lang\\.OutOfMemoryError.*",
+        "^\\[ERROR\\] Failed to execute goal .*",
+        ".*Tests run: \\d+, Failures: [1-9]\\d*.*",
+        ".*FATAL: .*",
+        ".*No space left on device.*",
+        ".*Connection (timed out|refused).*",
+        ".*error: .*\\.(c|cpp|h):\\d+.*",
+        "^Build step '.*' marked build as failure$",
+        ".*Killed.*signal 9.*",
+    };
+
+    /**
+     * Utility constructor.
+     */
+    private BenchmarkLogs() {
+    }
+
+    /**
+     * Creates a build log without any of the failures searched for.
+     *
+     * @param nrOfLines the number of lines.
+     * @return the lines.
+     */
+    public static CharSequence[] createLog(int nrOfLines) {
+        Random random = new Random(nrOfLines);
+        CharSequence[] lines = new CharSequence[nrOfLines];
+        for (int i = 0; i < nrOfLines; i++) {
+            String template = TEMPLATES[random.nextInt(TEMPLATES.length)];
+            lines[i] = String.format(template, random.nextInt(1000), random.nextInt(100), random.nextInt(10));
+        }
+        return lines;
+    }
+
+    /**
+     * Joins the lines of a build log into the text of the log.
+     *
+     * @param lines the lines.
+     * @return the text, with a line break after every line.
+     */
+    public static String toText(CharSequence[] lines) {
+        StringBuilder text = new StringBuilder();
+        for (CharSequence line : lines) {
+            text.append(line).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Creates the causes of a knowledge base with one indication each.
+     * The single-line indications are the patterns of {@link #createPatterns()}, made unique by a step number
+     * when there are more causes than patterns.
+     *
+     * @param nrOfCauses the number of causes.
+     * @param multiLinePercent how many percent of the causes that have a multi-line indication.
+     * @return the causes.
+     */
+    public static List<FailureCause> createCauses(int nrOfCauses, int multiLinePercent) {
+        List<FailureCause> causes = new ArrayList<FailureCause>(nrOfCauses);
+        int nrOfMultiLine = nrOfCauses * multiLinePercent / 100;
+        for (int i = 0; i < nrOfCauses; i++) {
+            FailureCause cause = new FailureCause("Cause " + i, "Benchmark cause " + i);
+            cause.setId(Integer.toHexString(i));
+            if (i < nrOfMultiLine) {
+                cause.addIndication(new MultilineBuildLogIndication(
+                        "Caused by: com\\.example\\.Failure" + i + "Exception.*\\n\\s+at .*"));
+            } else {
+                String pattern = PATTERNS[i % PATTERNS.length];
+                if (i >= PATTERNS.length && pattern.startsWith(".*")) {
+                    pattern = ".*step " + i + ": " + pattern.substring(2);
+                } else if (i >= PATTERNS.length) {
+                    pattern = "^step " + i + ": " + pattern.substring(1);
+                }
+                cause.addIndication(new BuildLogIndication(pattern));
+            }
+            causes.add(cause);
+        }
+        return causes;
+    }
+
+    /**
+     * Compiles patterns resembling the indications of a knowledge base.
+     *
+     * @return the patterns.
+     */
+    public static Pattern[] createPatterns() {
+        Pattern[] patterns = new Pattern[PATTERNS.length];
+        for (int i = 0; i < PATTERNS.length; i++) {
+            patterns[i] = Pattern.compile(PATTERNS[i]);
+        }
+        return patterns;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.benchmark;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureReader;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.BudgetedCharSequence;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.ScanWatchdog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//CS IGNORE MagicNumber FOR NEXT 150 LINES. REASON: Benchmark parameters.
+
+/**
+ * Compares matching the lines of a build log through {@link FailureReader.InterruptibleCharSequence},
+ * which copies every line and checks for interrupts on every character,
+ * with {@link BudgetedCharSequence}, which wraps the line as is and only checks its deadline now and then.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CharSequenceBenchmark {
+
+    private CharSequence[] lines;
+    private Matcher[] matchers;
+    private ScanWatchdog.Registration registration;
+
+    /**
+     * Creates the log and the patterns.
+     */
+    @Setup
+    public void setUp() {
+        lines = BenchmarkLogs.createLog(10000);
+        Pattern[] patterns = BenchmarkLogs.createPatterns();
+        matchers = new Matcher[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            matchers[i] = patterns[i].matcher("");
+        }
+        registration = ScanWatchdog.getInstance().register(TimeUnit.MINUTES.toMillis(10));
+    }
+
+    /**
+     * Stops watching.
+     */
+    @TearDown
+    public void tearDown() {
+        registration.close();
+    }
+
+    /**
+     * Matches every line through a new {@link FailureReader.InterruptibleCharSequence}, as the scans used to.
+     *
+     * @return the number of matches.
+     */
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public int interruptible() {
+        int found = 0;
+        for (CharSequence line : lines) {
+            FailureReader.InterruptibleCharSequence interruptible = new FailureReader.InterruptibleCharSequence(line);
+            for (Matcher matcher : matchers) {
+                if (matcher.reset(interruptible).find()) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Matches every line through one reused {@link BudgetedCharSequence}.
+     *
+     * @return the number of matches.
+     */
+    @Benchmark
+    public int budgeted() {
+        int found = 0;
+        BudgetedCharSequence budgeted = new BudgetedCharSequence("", registration);
+        for (CharSequence line : lines) {
+            budgeted.reset(line);
+            for (Matcher matcher : matchers) {
+                if (matcher.reset(budgeted).find()) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.benchmark;
+
+import com.sonyericsson.jenkins.plugins.bfa.db.KnowledgeBaseSnapshot;
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureReader;
+import com.sonyericsson.jenkins.plugins.bfa.model.FoundFailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.MultilineBuildLogFailureReader;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.LineSource;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.MatchingEngine;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.PatternSet;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.FoundIndication;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.Indication;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.MultilineBuildLogIndication;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//CS IGNORE MagicNumber FOR NEXT 200 LINES. REASON: Benchmark parameters.
+
+/**
+ * Measures the hot path of scanning a build log: the single-line scan of all single-line causes,
+ * the multi-line scan of each multi-line indication and the splitting of the knowledge base into the two.
+ * The log size and the shape of the knowledge base are parameters, for example
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="ScanBenchmark -p logLines=100000 -p causes=500"}.
+ * <p>
+ * Every benchmark is run for throughput and for sampled time, which reports the p0.99 latency of a scan.
+ * The {@code bytes} and {@code lines} counters are the scanned bytes and lines per second,
+ * divide the bytes by 10^6 for MB/s. The allocations are reported by the gc profiler of the benchmark profile,
+ * {@code gc.alloc.rate.norm} divided by {@code logLines} is the allocated bytes per line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanBenchmark {
+
+    /**
+     * The number of lines of the log.
+     */
+    @Param({"10000", "100000" })
+    public int logLines;
+
+    /**
+     * The number of causes in the knowledge base.
+     */
+    @Param({"50", "500" })
+    public int causes;
+
+    /**
+     * How many percent of the causes that have a multi-line indication.
+     */
+    @Param({"10" })
+    public int multiLinePercent;
+
+    /**
+     * The engine matching the single-line indications.
+     */
+    @Param({"REGEX", "MULTI_PATTERN" })
+    public MatchingEngine engine;
+
+    private CharSequence[] lines;
+    private String text;
+    private long bytes;
+    private List<FailureCause> knowledgeBase;
+    private PatternSet patterns;
+    private List<TextReader> multiLineReaders;
+
+    /**
+     * Creates the log and the knowledge base.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        lines = BenchmarkLogs.createLog(logLines);
+        text = BenchmarkLogs.toText(lines);
+        bytes = text.getBytes(Charset.forName("UTF-8")).length;
+        knowledgeBase = BenchmarkLogs.createCauses(causes, multiLinePercent);
+        KnowledgeBaseSnapshot snapshot = new KnowledgeBaseSnapshot(knowledgeBase);
+        patterns = snapshot.getSingleLinePatterns(engine);
+        multiLineReaders = new ArrayList<TextReader>();
+        for (FailureCause cause : snapshot.getMultiLineCauses()) {
+            for (Indication indication : cause.getIndications()) {
+                multiLineReaders.add(new TextReader((MultilineBuildLogIndication)indication));
+            }
+        }
+    }
+
+    /**
+     * Scans the log for all single-line causes, as {@link FailureReader#scanSingleLinePatterns} does for a build.
+     *
+     * @param counters the scanned bytes and lines.
+     * @return the found causes.
+     * @throws IOException if so.
+     */
+    @Benchmark
+    public List<FoundFailureCause> scanSingleLinePatterns(ScanCounters counters) throws IOException {
+        List<FoundFailureCause> found = FailureReader.scanSingleLinePatterns(patterns, null, new LineSource() {
+            private int next;
+
+            @Override
+            public CharSequence readLine() {
+                if (next < lines.length) {
+                    return lines[next++];
+                }
+                return null;
+            }
+        }, "log");
+        counters.count(bytes, logLines);
+        return found;
+    }
+
+    /**
+     * Scans the log for every multi-line indication, one after the other.
+     *
+     * @param counters the scanned bytes and lines.
+     * @return the number of found indications.
+     * @throws IOException if so.
+     */
+    @Benchmark
+    public int scanMultiLineOneFile(ScanCounters counters) throws IOException {
+        int found = 0;
+        for (TextReader reader : multiLineReaders) {
+            if (reader.scan(text) != null) {
+                found++;
+            }
+            counters.count(bytes, logLines);
+        }
+        return found;
+    }
+
+    /**
+     * Splits the knowledge base into single-line and multi-line causes and compiles the single-line patterns,
+     * as is done for every change of the knowledge base before the scanner can use it.
+     *
+     * @return the compiled patterns.
+     */
+    @Benchmark
+    public PatternSet splitCauses() {
+        return new KnowledgeBaseSnapshot(knowledgeBase).getSingleLinePatterns(engine);
+    }
+
+    /**
+     * Scans text for a multi-line indication, without a build.
+     */
+    private static class TextReader extends MultilineBuildLogFailureReader {
+
+        /**
+         * Standard constructor.
+         *
+         * @param indication the indication to scan for.
+         */
+        TextReader(MultilineBuildLogIndication indication) {
+            super(indication);
+        }
+
+        /**
+         * Scans the text.
+         *
+         * @param text the text.
+         * @return the found indication, or null.
+         * @throws IOException if so.
+         */
+        FoundIndication scan(String text) throws IOException {
+            return super.scanMultiLineOneFile(null, new BufferedReader(new StringReader(text)), "log");
+        }
+    }
+
+    /**
+     * The scanned bytes and lines, reported per second for the throughput runs.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class ScanCounters {
+        /**
+         * The number of scanned bytes.
+         */
+        public long bytes;
+        /**
+         * The number of scanned lines.
+         */
+        public long lines;
+
+        /**
+         * Resets the counters before each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            lines = 0;
+        }
+
+        /**
+         * Counts a scan of the log.
+         *
+         * @param scannedBytes the size of the log.
+         * @param scannedLines the lines of the log.
+         */
+        void count(long scannedBytes, int scannedLines) {
+            bytes += scannedBytes;
+            lines += scannedLines;
+        }
+    }
+}
@@ -27,11 +27,10 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 
 import org.kohsuke.stapler.StaplerRequest;
-import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphCache;
+import com.sonyericsson.jenkins.plugins.bfa.graphs.BFAGraph;
+import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphCacheKey;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphType;
 
 import hudson.model.ModelObject;
@@ -93,11 +92,6 @@ public abstract class BfaGraphAction implements RootAction {
      */
     protected static final String EXCLUDE_ABORTED = "ABORTED";
 
-    /**
-     * Separator between different parts of graph IDs.
-     */
-    protected static final char ID_SEPARATOR = '-';
-
     /**
      * Get the owner.
      * @return The owner
@@ -173,38 +167,24 @@ public abstract class BfaGraphAction implements RootAction {
         final boolean hideAborted = "0".equals(showAborted);
         final boolean forAllMasters = "1".equals(allMasters);
 
-        String id = getGraphCacheId(whichGraph, reqTimePeriod, hideAborted, forAllMasters);
-        Graph graphToReturn = null;
-        try {
-            graphToReturn = GraphCache.getInstance().get(id, new Callable<Graph>() {
-                @Override
-                public Graph call() throws Exception {
-                    // The requested graph isn't cached, so create a new one.
-                    Graph g = getGraph(whichGraph, sinceDate, hideAborted, forAllMasters, rawReqParams);
-                    if (g != null) {
-                        return g;
-                    }
-                    // According to documentation, null must not be returned; either
-                    // a non-null value must be returned, or an an exception thrown
-                    throw new ExecutionException("Graph-parameters not valid", null);
-                } });
-        } catch (ExecutionException e) {
-            // An exception will occur when a graph cannot be generated,
-            // e.g. when erroneous url-parameters have been specified
-            e.printStackTrace();
+        // The graph itself is cheap to create, its dataset and images are cached.
+        Graph graph = getGraph(whichGraph, sinceDate, hideAborted, forAllMasters, rawReqParams);
+        if (graph instanceof BFAGraph) {
+            ((BFAGraph<?>)graph).setCacheKey(getGraphCacheKey(whichGraph, reqTimePeriod, hideAborted,
+                    forAllMasters));
         }
-        return graphToReturn;
+        return graph;
     }
 
     /**
-     * Get a unique id used in the caching of the graph.
+     * Get a unique key used in the caching of the graph.
      * @param whichGraph Which graph
      * @param reqTimePeriod The selected time period
      * @param hideAborted Hide aborted builds
      * @param forAllMasters For all masters
-     * @return An id corresponding to the specified arguments
+     * @return A key corresponding to the specified arguments
      */
-    protected abstract String getGraphCacheId(GraphType whichGraph,
+    protected abstract GraphCacheKey getGraphCacheKey(GraphType whichGraph,
             String reqTimePeriod, boolean hideAborted, boolean forAllMasters);
 
     /**
@@ -246,11 +226,14 @@ public abstract class BfaGraphAction implements RootAction {
     /**
      * Get a Date object corresponding to the specified string.
      * (today|month).
+     * The date is truncated to the minute, so that the graphs of a page get equal filters and can share queries.
      * @param str The String
      * @return A Date, or null if not equal to "today" or "month"
      */
     private Date getDateForUrlStr(String str) {
         Calendar cal = Calendar.getInstance();
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
         Date date = null;
         if (URL_PARAM_VALUE_TODAY.equals(str)) {
            cal.add(Calendar.DAY_OF_YEAR, -1);
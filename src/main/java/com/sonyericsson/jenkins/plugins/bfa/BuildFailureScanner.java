@@ -28,31 +28,38 @@ package com.sonyericsson.jenkins.plugins.bfa;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.sonyericsson.jenkins.plugins.bfa.db.KnowledgeBase;
+import com.sonyericsson.jenkins.plugins.bfa.db.KnowledgeBaseSnapshot;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.ComputerGraphAction;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.ProjectGraphAction;
+import com.sonyericsson.jenkins.plugins.bfa.metrics.MetricsRegistry;
+import com.sonyericsson.jenkins.plugins.bfa.model.BuildLogFailureReader;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseBuildAction;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseDisplayData;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseMatrixBuildAction;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureReader;
 import com.sonyericsson.jenkins.plugins.bfa.model.FoundFailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.MultilineBuildLogFailureReader;
 import com.sonyericsson.jenkins.plugins.bfa.model.ScannerJobProperty;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.PatternSet;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.SharedLogBuffer;
 import com.sonyericsson.jenkins.plugins.bfa.model.indication.FoundIndication;
 import com.sonyericsson.jenkins.plugins.bfa.model.indication.Indication;
-import com.sonyericsson.jenkins.plugins.bfa.model.indication.MultilineBuildLogIndication;
 import com.sonyericsson.jenkins.plugins.bfa.statistics.StatisticsLogger;
 import hudson.Extension;
 import hudson.matrix.MatrixProject;
@@ -80,9 +87,6 @@ public class BuildFailureScanner extends RunListener<Run> {
     public static final int ORDINAL = 11003;
     private static final Logger logger = Logger.getLogger(BuildFailureScanner.class.getName());
 
-    private static final ThreadPoolExecutor THREAD_POOL_EXECUTOR = (ThreadPoolExecutor)Executors.
-            newFixedThreadPool(PluginImpl.getInstance().getNrOfScanThreads());
-
     @Override
     public void onStarted(Run build, TaskListener listener) {
         if (PluginImpl.shouldScan(build)
@@ -95,16 +99,50 @@ public class BuildFailureScanner extends RunListener<Run> {
                 listener.getLogger().println("[BFA] WARNING! Failed to add the scanner property to this job.");
             }
         }
+        if (PluginImpl.getInstance().isTailFollowScanning() && PluginImpl.shouldScan(build)
+                && !(build.getParent() instanceof MatrixProject)) {
+            followLog(build);
+        }
+    }
+
+    /**
+     * Starts following the log of a running build for the single-line causes of the knowledge base.
+     *
+     * @param build the running build.
+     * @see LogFollower
+     */
+    private static void followLog(Run build) {
+        try {
+            KnowledgeBaseSnapshot snapshot = PluginImpl.getInstance().getKnowledgeBase().getSnapshot();
+            LogFollower.follow(build, snapshot.getSingleLinePatterns(PluginImpl.getInstance().getMatchingEngine()));
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Could not follow the log of build " + build, e);
+        }
     }
 
     @Override
     public void onCompleted(Run build, @Nonnull TaskListener listener) {
         logger.entering(getClass().getName(), "onCompleted");
 
-        if (PluginImpl.isSizeInLimit(build)) {
-            scanIfNotScanned(build, listener.getLogger());
-        } else {
-            listener.getLogger().println("[BFA] Log exceeds limit: " + PluginImpl.getInstance().getMaxLogSize() + "MB");
+        boolean pending = false;
+        try {
+            if (!PluginImpl.isSizeInLimit(build)) {
+                listener.getLogger().println("[BFA] Log exceeds limit: " + PluginImpl.getInstance().getMaxLogSize()
+                        + "MB");
+            } else if (PluginImpl.getInstance().isAsyncAnalysis() && PluginImpl.shouldScan(build)
+                    && !(build.getParent() instanceof MatrixProject)
+                    && PluginImpl.needToAnalyze(build.getResult())) {
+                listener.getLogger().println("[BFA] The build will be analyzed in the background");
+                PendingAnalysis.enqueue(build);
+                pending = true;
+            } else {
+                scanIfNotScanned(build, listener.getLogger());
+            }
+        } finally {
+            //The follower is needed until the analysis is done.
+            if (!pending) {
+                LogFollower.stopFollowing(build);
+            }
         }
     }
 
@@ -146,8 +184,8 @@ public class BuildFailureScanner extends RunListener<Run> {
      */
     public static void scan(Run build, PrintStream buildLog) {
         try {
-            Collection<FailureCause> causes = PluginImpl.getInstance().getKnowledgeBase().getCauses();
-            List<FoundFailureCause> foundCauseListToLog = findCauses(causes, build, buildLog);
+            KnowledgeBaseSnapshot snapshot = PluginImpl.getInstance().getKnowledgeBase().getSnapshot();
+            List<FoundFailureCause> foundCauseListToLog = findCauses(snapshot, build, buildLog);
             List<FoundFailureCause> foundCauseList;
 
             /* Register failed test cases as foundCauses.
@@ -165,6 +203,7 @@ public class BuildFailureScanner extends RunListener<Run> {
             }
 
             FailureCauseBuildAction buildAction = new FailureCauseBuildAction(foundCauseList);
+            buildAction.setScannedCauses(FailureCauseBuildAction.getRevisions(snapshot.getCauses()));
             buildAction.setBuild(build);
             build.addAction(buildAction);
             final FailureCauseDisplayData data = buildAction.getFailureCauseDisplayData();
@@ -182,6 +221,62 @@ public class BuildFailureScanner extends RunListener<Run> {
     }
 
 
+    /**
+     * Scans an already scanned build only for the failure causes that are new or have been modified since,
+     * and merges the result into its {@link FailureCauseBuildAction}.
+     * Builds that have not been scanned, or were scanned before the scanned causes were recorded, are fully scanned.
+     *
+     * @param build    the build to scan
+     * @param buildLog log to write information to.
+     */
+    public static void deltaScan(Run build, PrintStream buildLog) {
+        FailureCauseBuildAction buildAction = build.getAction(FailureCauseBuildAction.class);
+        try {
+            KnowledgeBase knowledgeBase = PluginImpl.getInstance().getKnowledgeBase();
+            Collection<FailureCause> causes = knowledgeBase.getSnapshot().getCauses();
+            List<FailureCause> changedCauses = null;
+            if (buildAction != null) {
+                changedCauses = buildAction.getNewOrModifiedCauses(causes);
+            }
+            if (changedCauses == null) {
+                if (buildAction != null) {
+                    build.getActions().remove(buildAction);
+                }
+                knowledgeBase.removeBuildfailurecause(build);
+                scanIfNotScanned(build, buildLog);
+                return;
+            }
+            List<FoundFailureCause> found = new LinkedList<FoundFailureCause>();
+            if (!changedCauses.isEmpty()) {
+                buildLog.println("[BFA] Scanning for " + changedCauses.size() + " new or modified failure cause(s)");
+                found = findCauses(new KnowledgeBaseSnapshot(changedCauses), build, buildLog);
+            } else if (buildAction.hasRemovedCauses(causes)) {
+                buildLog.println("[BFA] Removing failure cause(s) that no longer exist");
+            } else {
+                buildLog.println("[BFA] No new or modified failure causes to scan for");
+                return;
+            }
+            buildAction.mergeFoundFailureCauses(causes, changedCauses, found);
+            buildAction.setScannedCauses(FailureCauseBuildAction.getRevisions(causes));
+
+            List<FoundFailureCause> foundCauseListToLog = new LinkedList<FoundFailureCause>();
+            for (FoundFailureCause foundCause : buildAction.getFoundFailureCauses()) {
+                //Failed test cases have no id and are not logged, see scan(Run, PrintStream).
+                if (foundCause.getId() != null) {
+                    foundCauseListToLog.add(foundCause);
+                }
+            }
+            knowledgeBase.removeBuildfailurecause(build);
+            StatisticsLogger.getInstance().log(build, foundCauseListToLog);
+            ProjectGraphAction.invalidateProjectGraphCache(build.getParent());
+            if (build instanceof AbstractBuild) {
+                ComputerGraphAction.invalidateNodeGraphCache(((AbstractBuild)build).getBuiltOn());
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Could not scan build " + build, e);
+        }
+    }
+
     /**
      *
      * Adds all causes from downstream builds in recursion
@@ -209,21 +304,21 @@ public class BuildFailureScanner extends RunListener<Run> {
     /**
      * Finds the failure causes for this build.
      *
-     * @param causes   the list of possible causes.
+     * @param causes   the possible causes.
      * @param build    the build to analyze.
      * @param buildLog the build log.
      * @return a list of found failure causes.
      */
-    private static List<FoundFailureCause> findCauses(final Collection<FailureCause> causes,
+    private static List<FoundFailureCause> findCauses(final KnowledgeBaseSnapshot causes,
                                                       final Run build, final PrintStream buildLog) {
-        THREAD_POOL_EXECUTOR.setCorePoolSize(PluginImpl.getInstance().getNrOfScanThreads());
-        THREAD_POOL_EXECUTOR.setMaximumPoolSize(PluginImpl.getInstance().getNrOfScanThreads());
-
         buildLog.println("[BFA] Scanning build for known causes...");
         long start = System.currentTimeMillis();
         final List<FoundFailureCause> foundFailureCauseList = findIndications(causes, build, buildLog);
 
         long time = System.currentTimeMillis() - start;
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.getDurationHistogram("scan.duration.ms").record(time);
+        metrics.getCounter("scan.bytes").addAndGet(build.getLogFile().length());
         if (logger.isLoggable(Level.FINER)) {
             logger.log(Level.FINER, "[BFA] [{0}] {1}ms", new Object[]
                     {build.getFullDisplayName(),
@@ -252,63 +347,195 @@ public class BuildFailureScanner extends RunListener<Run> {
     /**
      *
      * Finds indications for all causes.
+     * The log is read once into a {@link SharedLogBuffer} that all the scanning tasks read from concurrently.
+     * If the log has been followed while the build was running, only its tail is scanned for single-line causes,
+     * except for the ones that were added or modified while the build was running.
+     * The tasks are run by the {@link ScanScheduler}; those that do not fit in its queue are run by the calling
+     * thread, after the log has been read into the buffer.
      *
-     * @param causes the list of possible causes.
+     * @param causes the possible causes.
      * @param build current build.
      * @param buildLog build log for providing feedback.
      * @return a list of found indications, could be empty.
      */
-    private static List<FoundFailureCause> findIndications(final Collection<FailureCause> causes,
+    private static List<FoundFailureCause> findIndications(final KnowledgeBaseSnapshot causes,
                                                            final Run build,
                                                            final PrintStream buildLog) {
-        final List<FailureCause> singleLineCauses = new ArrayList<FailureCause>();
-        final List<FailureCause> notOnlySingleLineCauses = new ArrayList<FailureCause>();
-
-        splitCauses(causes, singleLineCauses, notOnlySingleLineCauses);
+        final List<FailureCause> singleLineCauses = causes.getSingleLineCauses();
+        final List<FailureCause> notOnlySingleLineCauses = causes.getMultiLineCauses();
 
+        final ScanScheduler scheduler = ScanScheduler.getInstance();
         final List<Future<?>> scanningTasks = new ArrayList<Future<?>>(notOnlySingleLineCauses.size() + 1);
+        final List<Runnable> overflow = new ArrayList<Runnable>();
         final List<FoundFailureCause> foundFailureCauses = Collections.synchronizedList(
                 new ArrayList<FoundFailureCause>());
-
-        if (!singleLineCauses.isEmpty()) {
-            scanningTasks.add(THREAD_POOL_EXECUTOR.submit(new Runnable() {
+        final SharedLogBuffer sharedLog = new SharedLogBuffer(new SharedLogBuffer.Source() {
+            @Override
+            public Reader open() throws IOException {
+                return build.getLogReader();
+            }
+        });
+
+        final LogFollower follower = LogFollower.get(build);
+        if (follower != null) {
+            //The single-line causes of the knowledge base were taken when the log started to be followed,
+            //the ones added or modified since then are scanned for on the shared log instead.
+            final List<FailureCause> changedCauses = FailureCauseBuildAction.getNewOrModifiedCauses(
+                    follower.getFollowedCauses(), singleLineCauses);
+            final Set<String> unchangedIds = new HashSet<String>();
+            for (FailureCause cause : singleLineCauses) {
+                unchangedIds.add(cause.getId());
+            }
+            for (FailureCause cause : changedCauses) {
+                unchangedIds.remove(cause.getId());
+            }
+            schedule(scheduler, ScanScheduler.createTask(build, new Runnable() {
                 @Override
                 public void run() {
-                    foundFailureCauses.addAll(parseSingleLineCauses(build, buildLog, singleLineCauses));
                     Thread.currentThread().setName("BFA-scanner-" + build.getFullDisplayName());
+                    try {
+                        for (FoundFailureCause foundCause : follower.finish()) {
+                            if (unchangedIds.contains(foundCause.getId())) {
+                                foundFailureCauses.add(foundCause);
+                            }
+                        }
+                    } catch (IOException e) {
+                        buildLog.print("[BFA] Exception during parsing file: " + e);
+                    }
                 }
-            }));
+            }), scanningTasks, overflow);
+            if (!changedCauses.isEmpty()) {
+                final Reader changedReader = sharedLog.newReader();
+                schedule(scheduler, ScanScheduler.createTask(build, new Runnable() {
+                    @Override
+                    public void run() {
+                        Thread.currentThread().setName("BFA-scanner-" + build.getFullDisplayName());
+                        try {
+                            foundFailureCauses.addAll(parseSingleLineCauses(build, buildLog,
+                                    PluginImpl.getInstance().getMatchingEngine().compile(changedCauses),
+                                    changedReader));
+                        } finally {
+                            closeReader(changedReader);
+                        }
+                    }
+                }), scanningTasks, overflow);
+            }
+        } else if (!singleLineCauses.isEmpty()) {
+            //The memory mapped scanning reads the log file on its own, without decoding it.
+            Reader reader = null;
+            if (!PluginImpl.getInstance().isMemoryMappedScanning()) {
+                reader = sharedLog.newReader();
+            }
+            final Reader singleLineReader = reader;
+            schedule(scheduler, ScanScheduler.createTask(build, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        foundFailureCauses.addAll(parseSingleLineCauses(build, buildLog,
+                                causes.getSingleLinePatterns(PluginImpl.getInstance().getMatchingEngine()),
+                                singleLineReader));
+                    } finally {
+                        closeReader(singleLineReader);
+                    }
+                    Thread.currentThread().setName("BFA-scanner-" + build.getFullDisplayName());
+                }
+            }), scanningTasks, overflow);
         }
 
+        final List<FoundIndication[]> notOnlySingleLineResults = new ArrayList<FoundIndication[]>();
         for (final FailureCause cause : notOnlySingleLineCauses) {
-            scanningTasks.add(THREAD_POOL_EXECUTOR.submit(new Runnable() {
-                @Override
-                public void run() {
-                    final List<FoundIndication> foundIndications = new ArrayList<FoundIndication>();
-                    for (final Indication indication : cause.getIndications()) {
+            final List<Indication> indications = cause.getIndications();
+            final FoundIndication[] foundIndications = new FoundIndication[indications.size()];
+            notOnlySingleLineResults.add(foundIndications);
+            for (int i = 0; i < indications.size(); i++) {
+                final int index = i;
+                final Indication indication = indications.get(i);
+                final FailureReader failureReader = indication.getReader();
+                Reader reader = null;
+                if (failureReader instanceof MultilineBuildLogFailureReader
+                        || failureReader instanceof BuildLogFailureReader) {
+                    reader = sharedLog.newReader();
+                }
+                final Reader logReader = reader;
+                schedule(scheduler, ScanScheduler.createTask(build, new Runnable() {
+                    @Override
+                    public void run() {
                         Thread.currentThread().setName("BFA-scanner-"
                                 + build.getFullDisplayName() + ": "
                                 + cause.getName() + "-"
                                 + indication.getUserProvidedExpression());
-
-                        FoundIndication foundIndication = parseIndication(build, buildLog, indication, cause.getName());
-                        if (foundIndication != null) {
-                            foundIndications.add(foundIndication);
+                        try {
+                            foundIndications[index] = parseIndication(build, buildLog, failureReader, logReader,
+                                    cause.getName());
+                        } finally {
+                            closeReader(logReader);
                         }
                     }
+                }), scanningTasks, overflow);
+            }
+        }
 
-                    if (!foundIndications.isEmpty()) {
-                        foundFailureCauses.add(new FoundFailureCause(cause, foundIndications));
-                    }
+        if (sharedLog.getOpenReaders() > 0) {
+            sharedLog.run();
+        }
+        if (!overflow.isEmpty()) {
+            //The tasks name the thread they run in.
+            String threadName = Thread.currentThread().getName();
+            try {
+                for (Runnable task : overflow) {
+                    task.run();
                 }
-            }));
+            } finally {
+                Thread.currentThread().setName(threadName);
+            }
         }
-
         waitAllTasks(buildLog, scanningTasks);
 
+        for (int i = 0; i < notOnlySingleLineCauses.size(); i++) {
+            final List<FoundIndication> foundIndications = new ArrayList<FoundIndication>();
+            for (FoundIndication foundIndication : notOnlySingleLineResults.get(i)) {
+                if (foundIndication != null) {
+                    foundIndications.add(foundIndication);
+                }
+            }
+            if (!foundIndications.isEmpty()) {
+                foundFailureCauses.add(new FoundFailureCause(notOnlySingleLineCauses.get(i), foundIndications));
+            }
+        }
         return foundFailureCauses;
     }
 
+    /**
+     * Queues a scanning task on the scheduler, or keeps it for the calling thread to run if the queue is full.
+     *
+     * @param scheduler the scheduler.
+     * @param task the task.
+     * @param scanningTasks the tasks to wait for.
+     * @param overflow the tasks for the calling thread to run.
+     */
+    private static void schedule(ScanScheduler scheduler, ScanScheduler.Task task, List<Future<?>> scanningTasks,
+                                 List<Runnable> overflow) {
+        if (!scheduler.offer(task)) {
+            overflow.add(task);
+        }
+        scanningTasks.add(task);
+    }
+
+    /**
+     * Closes a reader of the shared log, if there is one.
+     *
+     * @param reader the reader, may be null.
+     */
+    private static void closeReader(Reader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to close the reader. ", e);
+            }
+        }
+    }
+
     /**
      *
      * Wait all scanning tasks to be completed. Cancel all of them if InterruptedException happened.
@@ -334,51 +561,34 @@ public class BuildFailureScanner extends RunListener<Run> {
         }
     }
 
-    /**
-     *
-     * Split list of causes in two part: causes with single line indication only and others.
-     *
-     * @param causes All causes.
-     * @param singleLineCauses Collection to put list of causes with single line indication.
-     * @param notOnlySingleLineCauses Collection to put other causes.
-     */
-    private static void splitCauses(Collection<FailureCause> causes,
-                                    List<FailureCause> singleLineCauses,
-                                    List<FailureCause> notOnlySingleLineCauses) {
-        for (FailureCause cause : causes) {
-            boolean atLeastOneNonSignalLine = false;
-            for (Indication indication : cause.getIndications()) {
-                if (indication instanceof MultilineBuildLogIndication) {
-                    atLeastOneNonSignalLine = true;
-                    break;
-                }
-            }
-
-            if (atLeastOneNonSignalLine) {
-                notOnlySingleLineCauses.add(cause);
-            } else {
-                singleLineCauses.add(cause);
-            }
-        }
-    }
-
     /**
      *
      * Parse any indication.
      *
      * @param build current build.
      * @param buildLog build log for providing feedback.
-     * @param indication indication to be found.
+     * @param failureReader the reader of the indication to be found.
+     * @param logReader the shared log to scan, or null to let the failure reader read the log on its own.
      * @param causeName name of cause this indication belongs to.
      * @return a found indication, null otherwise.
      */
     private static FoundIndication parseIndication(Run build,
                                                    PrintStream buildLog,
-                                                   Indication indication,
+                                                   FailureReader failureReader,
+                                                   Reader logReader,
                                                    String causeName) {
         long start = System.currentTimeMillis();
 
-        final FoundIndication foundIndication = findIndication(indication, build, buildLog);
+        final FoundIndication foundIndication;
+        if (failureReader instanceof MultilineBuildLogFailureReader && logReader != null) {
+            foundIndication = ((MultilineBuildLogFailureReader)failureReader).scan(build,
+                    new BufferedReader(logReader), buildLog);
+        } else if (failureReader instanceof BuildLogFailureReader && logReader != null) {
+            foundIndication = ((BuildLogFailureReader)failureReader).scan(build,
+                    new BufferedReader(logReader), buildLog);
+        } else {
+            foundIndication = failureReader.scan(build, buildLog);
+        }
         if (foundIndication != null) {
             if (logger.isLoggable(Level.FINER)) {
                 logger.log(Level.FINER, "[BFA] [{0}] [{1}] {2}ms", new Object[]{build.getFullDisplayName(),
@@ -396,49 +606,30 @@ public class BuildFailureScanner extends RunListener<Run> {
      *
      * @param build current build.
      * @param buildLog build log for providing feedback.
-     * @param singleLineCauses list of causes to be found.
+     * @param patterns the compiled causes to be found.
+     * @param logReader the shared log to scan, or null to read the log on its own.
      * @return a list of causes with found indication, could be empty.
      */
     private static List<FoundFailureCause> parseSingleLineCauses(Run build,
                                               PrintStream buildLog,
-                                              List<FailureCause> singleLineCauses) {
+                                              PatternSet patterns,
+                                              Reader logReader) {
         final List<FoundFailureCause> foundFailureCauses = new ArrayList<FoundFailureCause>();
-        BufferedReader reader = null;
+        PluginImpl plugin = PluginImpl.getInstance();
         try {
-            reader = new BufferedReader(build.getLogReader());
-            foundFailureCauses.addAll(
-                    FailureReader.scanSingleLinePatterns(
-                            singleLineCauses,
-                            build,
-                            reader,
-                            build.getLogFile().getName()));
+            if (logReader != null) {
+                foundFailureCauses.addAll(FailureReader.scanSingleLinePatterns(patterns, build,
+                        new BufferedReader(logReader), build.getLogFile().getName()));
+            } else {
+                foundFailureCauses.addAll(FailureReader.scanBuildLog(patterns, build,
+                        plugin.isMemoryMappedScanning()));
+            }
         } catch (IOException e) {
             buildLog.print("[BFA] Exception during parsing file: " + e);
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    logger.log(Level.WARNING, "Failed to close the reader. ", e);
-                }
-            }
         }
         return foundFailureCauses;
     }
 
-    /**
-     * Finds out if this indication matches the build.
-     *
-     * @param indication the indication to look for.
-     * @param build      the build to analyze.
-     * @param buildLog   the build log.
-     * @return an indication if one is found, null otherwise.
-     */
-    private static FoundIndication findIndication(Indication indication, Run build, PrintStream buildLog) {
-        FailureReader failureReader = indication.getReader();
-        return failureReader.scan(build, buildLog);
-    }
-
     /**
      * Finds the failed tests reported by this build
      *
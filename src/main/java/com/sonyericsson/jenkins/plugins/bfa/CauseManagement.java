@@ -25,14 +25,21 @@
 
 package com.sonyericsson.jenkins.plugins.bfa;
 
+import com.sonyericsson.jenkins.plugins.bfa.db.KnowledgeBase;
+import com.sonyericsson.jenkins.plugins.bfa.db.MongoDBKnowledgeBase;
+import com.sonyericsson.jenkins.plugins.bfa.db.QueryPlan;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.BFAGraph;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.BarChart;
+import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphCacheKey;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphFilterBuilder;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphType;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.PieChart;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.TimeSeriesChart;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.TimeSeriesUnkownFailuresChart;
+import com.sonyericsson.jenkins.plugins.bfa.metrics.MetricsRegistry;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.IndicationCostStatistics;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.IndicationCostStatistics.IndicationCost;
 import com.sonyericsson.jenkins.plugins.bfa.model.indication.Indication;
 import com.sonyericsson.jenkins.plugins.bfa.utils.BfaUtils;
 
@@ -50,9 +57,13 @@ import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -167,6 +178,89 @@ public class CauseManagement extends BfaGraphAction {
         return returnValue;
     }
 
+    /**
+     * Explains the queries made by the graphs, for the query plans page.
+     * Requires {@link Jenkins#ADMINISTER}.
+     *
+     * @return the query plans, or null if the knowledge base cannot explain its queries.
+     *
+     * @throws Exception if communication fails.
+     */
+    public List<QueryPlan> getQueryPlans() throws Exception {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        KnowledgeBase knowledgeBase = PluginImpl.getInstance().getKnowledgeBase();
+        if (knowledgeBase instanceof MongoDBKnowledgeBase) {
+            return ((MongoDBKnowledgeBase)knowledgeBase).explainGraphQueries();
+        }
+        return null;
+    }
+
+    /**
+     * The cost of scanning for each indication since Jenkins started, the most expensive first,
+     * for the pattern cost page. Requires {@link PluginImpl#UPDATE_PERMISSION}.
+     *
+     * @return the costs.
+     */
+    public List<IndicationCost> getPatternCosts() {
+        Jenkins.getInstance().checkPermission(PluginImpl.UPDATE_PERMISSION);
+        return IndicationCostStatistics.getInstance().getCosts();
+    }
+
+    /**
+     * The causes having each indication expression, for the pattern cost page.
+     *
+     * @return the causes by expression.
+     *
+     * @throws Exception if communication fails.
+     */
+    public Map<String, List<FailureCause>> getCausesByExpression() throws Exception {
+        Map<String, List<FailureCause>> causesByExpression = new HashMap<String, List<FailureCause>>();
+        for (FailureCause cause : PluginImpl.getInstance().getKnowledgeBase().getSnapshot().getCauses()) {
+            if (cause.getIndications() == null) {
+                continue;
+            }
+            for (Indication indication : cause.getIndications()) {
+                List<FailureCause> causes = causesByExpression.get(indication.getUserProvidedExpression());
+                if (causes == null) {
+                    causes = new ArrayList<FailureCause>(1);
+                    causesByExpression.put(indication.getUserProvidedExpression(), causes);
+                }
+                causes.add(cause);
+            }
+        }
+        return causesByExpression;
+    }
+
+    /**
+     * Web call to reset the pattern costs. Does a permission check for {@link PluginImpl#UPDATE_PERMISSION}.
+     *
+     * @param request  the stapler request.
+     * @param response the stapler response.
+     * @throws IOException if so during redirect.
+     */
+    @RequirePOST
+    public void doResetPatternCosts(StaplerRequest request, StaplerResponse response) throws IOException {
+        Jenkins.getInstance().checkPermission(PluginImpl.UPDATE_PERMISSION);
+        IndicationCostStatistics.getInstance().reset();
+        response.sendRedirect2("patternCosts");
+    }
+
+    /**
+     * Web call publishing the metrics of the plugin as JSON, for monitoring systems to scrape.
+     * Does a permission check for {@link Jenkins#ADMINISTER}.
+     *
+     * @param request  the stapler request.
+     * @param response the stapler response.
+     * @throws IOException if so when writing the response.
+     * @see MetricsRegistry
+     */
+    public void doMetrics(StaplerRequest request, StaplerResponse response) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.getWriter().print(MetricsRegistry.getInstance().toJSON().toString());
+    }
+
     /**
      * Sets an error message as an attribute to the current request.
      *
@@ -455,10 +549,10 @@ public class CauseManagement extends BfaGraphAction {
     }
 
     @Override
-    protected String getGraphCacheId(GraphType whichGraph, String reqTimePeriod,
+    protected GraphCacheKey getGraphCacheKey(GraphType whichGraph, String reqTimePeriod,
             boolean hideAborted, boolean forAllMasters) {
-        return getClass().getSimpleName() + whichGraph.getValue() + reqTimePeriod
-                + String.valueOf(hideAborted) + String.valueOf(forAllMasters);
+        return new GraphCacheKey(getClass().getSimpleName(), "", whichGraph, reqTimePeriod, hideAborted,
+                forAllMasters);
     }
 
 }
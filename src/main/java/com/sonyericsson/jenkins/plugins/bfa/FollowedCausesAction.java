@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FoundFailureCause;
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Run;
+import jenkins.model.TransientActionFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shows the failure causes found so far on the page of a running build whose log is followed.
+ *
+ * @see LogFollower
+ */
+public class FollowedCausesAction implements Action {
+
+    private final LogFollower follower;
+
+    /**
+     * Standard constructor.
+     *
+     * @param follower the follower of the build log.
+     */
+    public FollowedCausesAction(LogFollower follower) {
+        this.follower = follower;
+    }
+
+    /**
+     * The failure causes found so far.
+     *
+     * @return the found failure causes.
+     */
+    public List<FoundFailureCause> getFoundFailureCauses() {
+        return follower.getFoundFailureCauses();
+    }
+
+    /**
+     * The image to show in the summary.
+     *
+     * @return the image url.
+     */
+    public String getImageUrl() {
+        return PluginImpl.getFullImageUrl("48x48", PluginImpl.DEFAULT_ICON_NAME);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.FollowedCausesAction_DisplayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    /**
+     * Adds the action to the running builds whose logs are followed.
+     */
+    @Extension
+    public static class ActionFactory extends TransientActionFactory<Run> {
+
+        @Override
+        public Class<Run> type() {
+            return Run.class;
+        }
+
+        @Override
+        public Collection<? extends Action> createFor(Run target) {
+            LogFollower follower = LogFollower.get(target);
+            if (follower != null) {
+                return Collections.singleton(new FollowedCausesAction(follower));
+            } else {
+                return Collections.emptyList();
+            }
+        }
+    }
+}
@@ -48,6 +48,11 @@ public class GerritMessageProviderExtension extends GerritMessageProvider {
         if (PluginImpl.getInstance().isGerritTriggerEnabled()) {
             StringBuilder customMessage = new StringBuilder();
             if (build != null) {
+                try {
+                    PendingAnalysis.await(build);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
                 FailureCauseBuildAction action = build.getAction(FailureCauseBuildAction.class);
                 if (action != null) {
                     FailureCauseDisplayData displayData = action.getFailureCauseDisplayData();
@@ -0,0 +1,277 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseBuildAction;
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureReader;
+import com.sonyericsson.jenkins.plugins.bfa.model.FoundFailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.CompleteLineSource;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.MappedLogLines;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.MatchingEngine;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.PatternSet;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.FoundIndication;
+import hudson.model.Run;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Follows the log of a running build and scans the lines written so far for single-line indications,
+ * so that only the tail of the log is left to scan when the build completes.
+ * The compiled patterns, which indications have been found and how far the log has been scanned
+ * are kept per build until it completes.
+ * The single-line causes of the knowledge base are taken when the build starts, their revisions are kept so that
+ * the causes added or modified while the build is running can be told apart when it completes.
+ */
+public final class LogFollower {
+    /**
+     * How often the logs of the running builds are scanned, in milliseconds.
+     */
+    static final long POLL_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    private static final Logger logger = Logger.getLogger(LogFollower.class.getName());
+    private static final Map<Run, LogFollower> FOLLOWERS = new ConcurrentHashMap<Run, LogFollower>();
+    private static ScheduledExecutorService executor;
+    private static ScheduledFuture<?> poller;
+
+    private final Run build;
+    private final PatternSet patterns;
+    private final Map<String, Long> followedCauses;
+    private final BitSet found;
+    private final Map<FailureCause, List<FoundIndication>> foundIndications =
+            new LinkedHashMap<FailureCause, List<FoundIndication>>();
+    private long offset;
+    private boolean finished;
+
+    /**
+     * Standard constructor.
+     *
+     * @param build the build to follow.
+     * @param patterns the compiled single-line indications.
+     */
+    private LogFollower(Run build, PatternSet patterns) {
+        this.build = build;
+        this.patterns = patterns;
+        this.followedCauses = FailureCauseBuildAction.getRevisions(patterns.getCauses());
+        this.found = new BitSet(patterns.size());
+    }
+
+    /**
+     * Starts following the log of a running build.
+     *
+     * @param build the build.
+     * @param singleLineCauses the causes with only single-line indications to look for.
+     * @param engine the engine to compile the indications with.
+     * @return true if the log is followed, false if it cannot be read piece by piece.
+     */
+    public static boolean follow(Run build, List<FailureCause> singleLineCauses, MatchingEngine engine) {
+        return follow(build, engine.compile(singleLineCauses));
+    }
+
+    /**
+     * Starts following the log of a running build.
+     *
+     * @param build the build.
+     * @param patterns the compiled single-line causes to look for.
+     * @return true if the log is followed, false if it cannot be read piece by piece.
+     */
+    public static boolean follow(Run build, PatternSet patterns) {
+        if (patterns.size() == 0 || !MappedLogLines.isSupported(build.getLogFile(), build.getCharset())) {
+            return false;
+        }
+        FOLLOWERS.put(build, new LogFollower(build, patterns));
+        synchronized (LogFollower.class) {
+            if (poller == null) {
+                if (executor == null) {
+                    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable target) {
+                            Thread thread = new Thread(target, "BFA Log Follower");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+                poller = executor.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        pollAll();
+                    }
+                }, POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The follower of a build.
+     *
+     * @param build the build.
+     * @return the follower, or null if the build is not followed.
+     */
+    public static LogFollower get(Run build) {
+        return FOLLOWERS.get(build);
+    }
+
+    /**
+     * Stops following the log of a build, without scanning the rest of it.
+     *
+     * @param build the build.
+     */
+    public static void stopFollowing(Run build) {
+        LogFollower follower = FOLLOWERS.remove(build);
+        if (follower != null) {
+            synchronized (follower) {
+                follower.finished = true;
+            }
+        }
+    }
+
+    /**
+     * Scans the new lines of all followed logs, and stops polling when nothing is followed.
+     */
+    static void pollAll() {
+        for (LogFollower follower : FOLLOWERS.values()) {
+            try {
+                if (PluginImpl.isSizeInLimit(follower.build)) {
+                    follower.poll();
+                } else {
+                    logger.fine("Log exceeds limit, no longer following " + follower.build);
+                    stopFollowing(follower.build);
+                }
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed to scan the running log of " + follower.build, e);
+                stopFollowing(follower.build);
+            }
+        }
+        synchronized (LogFollower.class) {
+            if (FOLLOWERS.isEmpty() && poller != null) {
+                poller.cancel(false);
+                poller = null;
+            }
+        }
+    }
+
+    /**
+     * Scans the complete lines written since the last poll.
+     *
+     * @throws IOException if the log could not be read.
+     */
+    synchronized void poll() throws IOException {
+        if (!finished) {
+            scan(false);
+        }
+    }
+
+    /**
+     * Stops following the log and scans the rest of it, which must not be written to anymore.
+     *
+     * @return all the found failure causes of the log.
+     * @throws IOException if the log could not be read.
+     */
+    public synchronized List<FoundFailureCause> finish() throws IOException {
+        FOLLOWERS.remove(build);
+        if (!finished) {
+            finished = true;
+            scan(true);
+        }
+        return getFoundFailureCauses();
+    }
+
+    /**
+     * The failure causes found so far.
+     *
+     * @return the found failure causes.
+     */
+    public synchronized List<FoundFailureCause> getFoundFailureCauses() {
+        List<FoundFailureCause> causes = new ArrayList<FoundFailureCause>(foundIndications.size());
+        for (Map.Entry<FailureCause, List<FoundIndication>> entry : foundIndications.entrySet()) {
+            causes.add(new FoundFailureCause(entry.getKey(), entry.getValue()));
+        }
+        return causes;
+    }
+
+    /**
+     * The revisions of the causes that are looked for, as they were when the log started to be followed.
+     *
+     * @return the revision of each followed cause by its id.
+     * @see FailureCauseBuildAction#getRevisions(java.util.Collection)
+     */
+    public Map<String, Long> getFollowedCauses() {
+        return followedCauses;
+    }
+
+    /**
+     * How far the log has been scanned.
+     *
+     * @return the offset in bytes.
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Scans the log from where the last scan stopped.
+     *
+     * @param complete true if the log is not written to anymore.
+     * @throws IOException if the log could not be read.
+     */
+    private void scan(boolean complete) throws IOException {
+        File logFile = build.getLogFile();
+        if (found.cardinality() == patterns.size() || (!complete && logFile.length() <= offset)) {
+            return;
+        }
+        FileInputStream stream = new FileInputStream(logFile);
+        try {
+            stream.getChannel().position(offset);
+            CompleteLineSource lines = new CompleteLineSource(new BufferedInputStream(stream), build.getCharset(),
+                    complete);
+            FailureReader.scanSingleLinePatterns(patterns, build, lines, logFile.getName(), found,
+                    foundIndications);
+            offset += lines.getConsumed();
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to close the log. ", e);
+            }
+        }
+    }
+}
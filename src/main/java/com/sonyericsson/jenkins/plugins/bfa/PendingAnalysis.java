@@ -0,0 +1,302 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa;
+
+import com.sonyericsson.jenkins.plugins.bfa.metrics.MetricsRegistry;
+import hudson.model.Run;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Analyzes completed builds in the background, so that the executor of a build is not held while its log is
+ * scanned, see {@link PluginImpl#isAsyncAnalysis()}.
+ * The builds are registered as pending until their failure causes have been added,
+ * so that the ones reading them when the build completes can wait for them.
+ * Since that is before Jenkins has written the end of the log and closed it,
+ * what is found is written to the log afterwards, by a single thread that checks the logs of all analyzed builds,
+ * so that the analysis threads are free to analyze the next builds meanwhile.
+ */
+public final class PendingAnalysis {
+
+    /**
+     * How long to wait for Jenkins to close the log of an analyzed build, in milliseconds.
+     */
+    static final long LOG_CLOSE_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * How often to check if the log of an analyzed build has been closed, in milliseconds.
+     */
+    static final long LOG_POLL_INTERVAL = 100;
+
+    private static final Logger logger = Logger.getLogger(PendingAnalysis.class.getName());
+    private static final Map<Run, CountDownLatch> PENDING = new ConcurrentHashMap<Run, CountDownLatch>();
+    private static ThreadPoolExecutor executor;
+    private static ScheduledExecutorService writer;
+
+    static {
+        MetricsRegistry.getInstance().register("analysis.pending", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return PENDING.size();
+            }
+        });
+    }
+
+    /**
+     * Utility constructor.
+     */
+    private PendingAnalysis() {
+    }
+
+    /**
+     * Queues a completed build to be analyzed in the background.
+     * What is found is written to the end of its log once Jenkins has closed it,
+     * and the build is saved.
+     *
+     * @param build the build.
+     */
+    public static void enqueue(final Run build) {
+        final CountDownLatch done = register(build);
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                try {
+                    analyze(build, output);
+                } finally {
+                    done(build, done);
+                }
+                //The listeners waiting for the analysis run before the log is closed.
+                writeWhenLogClosed(build, output, System.currentTimeMillis() + LOG_CLOSE_TIMEOUT, 0);
+            }
+        });
+    }
+
+    /**
+     * Gets the executor that analyzes the builds, with as many threads as the configured number of scan threads;
+     * the scanning itself is done by the {@link ScanScheduler}.
+     *
+     * @return the executor.
+     */
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        int nrOfThreads = PluginImpl.getInstance().getNrOfScanThreads();
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(nrOfThreads, nrOfThreads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable target) {
+                            Thread thread = new Thread(target, "BFA Analysis");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        } else if (nrOfThreads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(nrOfThreads);
+            executor.setCorePoolSize(nrOfThreads);
+        } else if (nrOfThreads < executor.getCorePoolSize()) {
+            //Surplus threads stop when they have finished their current analysis.
+            executor.setCorePoolSize(nrOfThreads);
+            executor.setMaximumPoolSize(nrOfThreads);
+        }
+        return executor;
+    }
+
+    /**
+     * Gets the executor that writes the analyses to the logs.
+     *
+     * @return the executor.
+     */
+    private static synchronized ScheduledExecutorService getWriter() {
+        if (writer == null) {
+            writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable target) {
+                    Thread thread = new Thread(target, "BFA Analysis Writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return writer;
+    }
+
+    /**
+     * Analyzes a build.
+     *
+     * @param build the build.
+     * @param output where to write what is found, for the build log.
+     */
+    private static void analyze(Run build, OutputStream output) {
+        try {
+            PrintStream buildLog = new PrintStream(output, true, "UTF8");
+            BuildFailureScanner.scanIfNotScanned(build, buildLog);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Could not analyze build " + build, e);
+        } finally {
+            LogFollower.stopFollowing(build);
+        }
+    }
+
+    /**
+     * Appends the analysis of a build to its log once Jenkins has closed it, and saves the build.
+     * The log is checked every {@link #LOG_POLL_INTERVAL} milliseconds without blocking the writer thread
+     * in between. If it has not been closed by the deadline the analysis is not written, but the build is saved.
+     *
+     * @param build the build.
+     * @param output the analysis.
+     * @param deadline when to give up waiting for the log to be closed, in milliseconds since the epoch.
+     * @param delay how long to wait before the first check, in milliseconds.
+     */
+    static void writeWhenLogClosed(final Run build, final ByteArrayOutputStream output, final long deadline,
+                                   long delay) {
+        getWriter().schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (build.isLogUpdated()) {
+                        if (System.currentTimeMillis() < deadline) {
+                            writeWhenLogClosed(build, output, deadline, LOG_POLL_INTERVAL);
+                            return;
+                        }
+                        logger.log(Level.WARNING, "The log of build {0} was not closed in time, "
+                                + "the analysis is not written to it", build);
+                    } else {
+                        appendToLog(build, output);
+                    }
+                    build.save();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Could not save build " + build, e);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Could not write the analysis of build " + build, e);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appends output to the end of the log of a build.
+     *
+     * @param build the build.
+     * @param output the output.
+     */
+    private static void appendToLog(Run build, ByteArrayOutputStream output) {
+        if (output.size() == 0) {
+            return;
+        }
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(build.getLogFile(), true);
+            output.writeTo(fos);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not write the analysis to the log of build " + build, e);
+        } finally {
+            if (fos != null) {
+                try {
+                    fos.close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Failed to close the build log file " + build.getLogFile(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers a build as pending.
+     *
+     * @param build the build.
+     * @return the latch to count down when the build has been analyzed.
+     */
+    static CountDownLatch register(Run build) {
+        CountDownLatch done = new CountDownLatch(1);
+        PENDING.put(build, done);
+        return done;
+    }
+
+    /**
+     * Marks a pending build as analyzed.
+     *
+     * @param build the build.
+     * @param done the latch it was registered with.
+     */
+    static void done(Run build, CountDownLatch done) {
+        PENDING.remove(build);
+        done.countDown();
+    }
+
+    /**
+     * If a build is waiting to be, or being, analyzed in the background.
+     *
+     * @param build the build.
+     * @return true if so.
+     */
+    public static boolean isPending(Run build) {
+        return PENDING.containsKey(build);
+    }
+
+    /**
+     * Waits for the background analysis of a build, if there is one, for at most
+     * {@link PluginImpl#getAsyncAnalysisTimeout()} seconds.
+     *
+     * @param build the build.
+     * @return true if the build is not pending, false if the wait timed out.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public static boolean await(Run build) throws InterruptedException {
+        return await(build, PluginImpl.getInstance().getAsyncAnalysisTimeout(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Waits for the background analysis of a build, if there is one.
+     *
+     * @param build the build.
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of the timeout.
+     * @return true if the build is not pending, false if the wait timed out.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public static boolean await(Run build, long timeout, TimeUnit unit) throws InterruptedException {
+        CountDownLatch done = PENDING.get(build);
+        if (done == null || done.await(timeout, unit)) {
+            return true;
+        }
+        MetricsRegistry.getInstance().getCounter("analysis.wait.timeouts").incrementAndGet();
+        logger.log(Level.WARNING, "Timed out waiting for the analysis of build {0}", build);
+        return false;
+    }
+}
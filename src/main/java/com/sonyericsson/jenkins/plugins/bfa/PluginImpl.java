@@ -29,6 +29,7 @@ import com.sonyericsson.jenkins.plugins.bfa.db.KnowledgeBase;
 import com.sonyericsson.jenkins.plugins.bfa.db.LocalFileKnowledgeBase;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
 import com.sonyericsson.jenkins.plugins.bfa.model.ScannerJobProperty;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.MatchingEngine;
 import com.sonyericsson.jenkins.plugins.bfa.sod.ScanOnDemandQueue;
 import com.sonyericsson.jenkins.plugins.bfa.sod.ScanOnDemandVariables;
 import hudson.ExtensionList;
@@ -81,6 +82,11 @@ public class PluginImpl extends Plugin {
      */
     public static final int DEFAULT_MAX_LOG_SIZE = 0;
 
+    /**
+     * Default number of seconds to wait for a build analyzed in the background, before going on without its causes.
+     */
+    public static final int DEFAULT_ASYNC_ANALYSIS_TIMEOUT = 60;
+
     private static final int BYTES_IN_MEGABYTE = 1024 * 1024;
 
     /**
@@ -133,6 +139,13 @@ public class PluginImpl extends Plugin {
 
     private int nrOfScanThreads;
     private int maxLogSize;
+    private MatchingEngine matchingEngine;
+    private boolean memoryMappedScanning;
+
+    private boolean tailFollowScanning;
+
+    private boolean asyncAnalysis;
+    private int asyncAnalysisTimeout;
 
     private Boolean graphsEnabled;
 
@@ -158,6 +171,9 @@ public class PluginImpl extends Plugin {
         if (nrOfScanThreads < 1) {
             nrOfScanThreads = DEFAULT_NR_OF_SCAN_THREADS;
         }
+        if (matchingEngine == null) {
+            matchingEngine = MatchingEngine.REGEX;
+        }
         sodVariables = new ScanOnDemandVariables();
         if (sodVariables.getMinimumSodWorkerThreads() < 1) {
             sodVariables.setMinimumSodWorkerThreads(ScanOnDemandVariables.
@@ -465,6 +481,37 @@ public class PluginImpl extends Plugin {
         this.nrOfScanThreads = nrOfScanThreads;
     }
 
+    /**
+     * The engine used to match single-line indications against the build log.
+     * Used by the {@link BuildFailureScanner}.
+     *
+     * @return the matching engine, never null.
+     */
+    public MatchingEngine getMatchingEngine() {
+        if (matchingEngine == null) {
+            matchingEngine = MatchingEngine.REGEX;
+        }
+        return matchingEngine;
+    }
+
+    /**
+     * The engine used to match single-line indications against the build log.
+     *
+     * @param matchingEngine the matching engine, null means {@link MatchingEngine#REGEX}.
+     */
+    public void setMatchingEngine(MatchingEngine matchingEngine) {
+        this.matchingEngine = matchingEngine;
+    }
+
+    /**
+     * All the available matching engines, for the configuration page.
+     *
+     * @return the matching engines.
+     */
+    public MatchingEngine[] getMatchingEngines() {
+        return MatchingEngine.values();
+    }
+
     /**
      * Set the maximum log size that should be scanned.
      *
@@ -483,6 +530,86 @@ public class PluginImpl extends Plugin {
         return maxLogSize;
     }
 
+    /**
+     * If build logs should be scanned for single-line indications through a memory mapping of the log file,
+     * instead of decoding every line to a String. Compressed logs are always read the normal way.
+     *
+     * @return true if on.
+     */
+    public boolean isMemoryMappedScanning() {
+        return memoryMappedScanning;
+    }
+
+    /**
+     * If build logs should be scanned for single-line indications through a memory mapping of the log file.
+     *
+     * @param memoryMappedScanning on or off.
+     */
+    public void setMemoryMappedScanning(boolean memoryMappedScanning) {
+        this.memoryMappedScanning = memoryMappedScanning;
+    }
+
+    /**
+     * If the logs of running builds should be followed and scanned for single-line indications while they are
+     * written, so that only the tail of the log is left to scan when the build completes.
+     *
+     * @return true if on.
+     * @see LogFollower
+     */
+    public boolean isTailFollowScanning() {
+        return tailFollowScanning;
+    }
+
+    /**
+     * If the logs of running builds should be followed and scanned for single-line indications while they are
+     * written.
+     *
+     * @param tailFollowScanning on or off.
+     */
+    public void setTailFollowScanning(boolean tailFollowScanning) {
+        this.tailFollowScanning = tailFollowScanning;
+    }
+
+    /**
+     * If completed builds should be analyzed in the background, instead of in the executor of the build.
+     *
+     * @return true if on.
+     * @see PendingAnalysis
+     */
+    public boolean isAsyncAnalysis() {
+        return asyncAnalysis;
+    }
+
+    /**
+     * If completed builds should be analyzed in the background, instead of in the executor of the build.
+     *
+     * @param asyncAnalysis on or off.
+     */
+    public void setAsyncAnalysis(boolean asyncAnalysis) {
+        this.asyncAnalysis = asyncAnalysis;
+    }
+
+    /**
+     * How long to wait for a build analyzed in the background, before going on without its causes.
+     *
+     * @return the timeout in seconds.
+     */
+    public int getAsyncAnalysisTimeout() {
+        if (asyncAnalysisTimeout <= 0) {
+            return DEFAULT_ASYNC_ANALYSIS_TIMEOUT;
+        }
+        return asyncAnalysisTimeout;
+    }
+
+    /**
+     * How long to wait for a build analyzed in the background, before going on without its causes.
+     *
+     * @param asyncAnalysisTimeout the timeout in seconds.
+     */
+    public void setAsyncAnalysisTimeout(int asyncAnalysisTimeout) {
+        this.asyncAnalysisTimeout = asyncAnalysisTimeout;
+    }
+
 
     /**
      * Checks if the build with certain result should be analyzed or not.
@@ -584,7 +711,12 @@ public class PluginImpl extends Plugin {
         testResultParsingEnabled = o.getBoolean("testResultParsingEnabled");
         testResultCategories = o.getString("testResultCategories");
         maxLogSize = o.optInt("maxLogSize");
+        memoryMappedScanning = o.optBoolean("memoryMappedScanning", false);
+        tailFollowScanning = o.optBoolean("tailFollowScanning", false);
+        asyncAnalysis = o.optBoolean("asyncAnalysis", false);
+        asyncAnalysisTimeout = o.optInt("asyncAnalysisTimeout", DEFAULT_ASYNC_ANALYSIS_TIMEOUT);
         int scanThreads = o.getInt("nrOfScanThreads");
+        matchingEngine = MatchingEngine.fromName(o.optString("matchingEngine"));
         int minSodWorkerThreads = o.getInt("minimumNumberOfWorkerThreads");
         int maxSodWorkerThreads = o.getInt("maximumNumberOfWorkerThreads");
         int thrkeepAliveTime = o.getInt("threadKeepAliveTime");
@@ -0,0 +1,399 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa;
+
+import com.sonyericsson.jenkins.plugins.bfa.metrics.Histogram;
+import com.sonyericsson.jenkins.plugins.bfa.metrics.MetricsRegistry;
+import hudson.matrix.MatrixConfiguration;
+import hudson.model.Cause;
+import hudson.model.Job;
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the scanning tasks of the builds on a fixed number of threads, from a bounded queue.
+ * The queued tasks are taken by priority: Gerrit triggered builds first, then the other builds,
+ * then scan on demand. Within a priority the jobs take turns, one task at a time,
+ * so that a burst of builds from one job, like the configurations of a matrix build, can not starve the rest.
+ * A task that does not fit in the queue is not scheduled; the submitter is expected to run it itself.
+ */
+public final class ScanScheduler {
+
+    /**
+     * The maximum number of queued tasks.
+     */
+    static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * The priority classes of the scans, highest first.
+     */
+    public enum Priority {
+        /**
+         * Builds triggered by Gerrit, someone is waiting for the review.
+         */
+        GERRIT,
+        /**
+         * Other builds.
+         */
+        BUILD,
+        /**
+         * Rescans of old builds.
+         */
+        SCAN_ON_DEMAND
+    }
+
+    private static final String GERRIT_TRIGGER_PACKAGE = "com.sonyericsson.hudson.plugins.gerrit.trigger.";
+    private static final ThreadLocal<Priority> CURRENT_PRIORITY = new ThreadLocal<Priority>();
+    private static ScanScheduler instance;
+
+    private final int capacity;
+    private final List<Map<String, LinkedList<Task>>> queues;
+    private final Histogram queueWait;
+    private final Histogram[] queueWaitPerPriority;
+    private final AtomicLong overflows;
+    private int queued;
+    private int threads;
+    private int wantedThreads;
+    private int active;
+
+    /**
+     * Standard constructor.
+     *
+     * @param threads the number of threads to scan with.
+     * @param capacity the maximum number of queued tasks.
+     */
+    ScanScheduler(int threads, int capacity) {
+        this.capacity = capacity;
+        queues = new ArrayList<Map<String, LinkedList<Task>>>(Priority.values().length);
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        queueWait = metrics.getDurationHistogram("scan.queue.wait.ms");
+        queueWaitPerPriority = new Histogram[Priority.values().length];
+        for (Priority priority : Priority.values()) {
+            queues.add(new LinkedHashMap<String, LinkedList<Task>>());
+            queueWaitPerPriority[priority.ordinal()] = metrics.getDurationHistogram("scan.queue.wait.ms."
+                    + priority.name().toLowerCase(Locale.ENGLISH));
+        }
+        overflows = metrics.getCounter("scan.queue.overflows");
+        setThreads(threads);
+    }
+
+    /**
+     * Gets the scheduler, with as many threads as configured in {@link PluginImpl#getNrOfScanThreads()}.
+     *
+     * @return the scheduler.
+     */
+    public static synchronized ScanScheduler getInstance() {
+        int nrOfScanThreads = PluginImpl.getInstance().getNrOfScanThreads();
+        if (instance == null) {
+            instance = new ScanScheduler(nrOfScanThreads, DEFAULT_CAPACITY);
+            registerMetrics(instance);
+        } else {
+            instance.setThreads(nrOfScanThreads);
+        }
+        return instance;
+    }
+
+    /**
+     * Registers the gauges of the scheduler.
+     *
+     * @param scheduler the scheduler.
+     */
+    private static void registerMetrics(final ScanScheduler scheduler) {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.register("scan.threads.active", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return scheduler.getActive();
+            }
+        });
+        metrics.register("scan.threads.queued", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return scheduler.getQueued();
+            }
+        });
+    }
+
+    /**
+     * Sets the priority of the scans made by the current thread, instead of the one of the build.
+     *
+     * @param priority the priority, or null to go by the build.
+     * @return the priority set before.
+     */
+    public static Priority setCurrentPriority(Priority priority) {
+        Priority previous = CURRENT_PRIORITY.get();
+        if (priority == null) {
+            CURRENT_PRIORITY.remove();
+        } else {
+            CURRENT_PRIORITY.set(priority);
+        }
+        return previous;
+    }
+
+    /**
+     * Gets the priority to scan a build with.
+     * The Gerrit Trigger plugin is optional, so its causes are recognized by their package.
+     *
+     * @param build the build.
+     * @return the priority set for the current thread if any, otherwise the priority of the build.
+     */
+    public static Priority getPriority(Run build) {
+        Priority priority = CURRENT_PRIORITY.get();
+        if (priority != null) {
+            return priority;
+        }
+        for (Object cause : build.getCauses()) {
+            if (((Cause)cause).getClass().getName().startsWith(GERRIT_TRIGGER_PACKAGE)) {
+                return Priority.GERRIT;
+            }
+        }
+        return Priority.BUILD;
+    }
+
+    /**
+     * Gets the name of the job that the scanning time of a build is shared within;
+     * the configurations of a matrix build share the time of the matrix job.
+     *
+     * @param build the build.
+     * @return the full name of the job.
+     */
+    public static String getJobName(Run build) {
+        Job job = build.getParent();
+        if (job instanceof MatrixConfiguration) {
+            return ((MatrixConfiguration)job).getParent().getFullName();
+        }
+        return job.getFullName();
+    }
+
+    /**
+     * Creates a scanning task for a build.
+     *
+     * @param build the build.
+     * @param runnable what to do.
+     * @return the task, to {@link #offer(Task)}.
+     */
+    public static Task createTask(Run build, Runnable runnable) {
+        return new Task(getPriority(build), getJobName(build), runnable);
+    }
+
+    /**
+     * Sets the number of threads to scan with. Surplus threads stop when they have finished their current task.
+     *
+     * @param nrOfThreads the number of threads.
+     */
+    synchronized void setThreads(int nrOfThreads) {
+        wantedThreads = nrOfThreads;
+        while (threads < wantedThreads) {
+            threads++;
+            Thread thread = new Thread(new Worker(), "BFA-scanner-" + threads);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Queues a task, unless the queue is full.
+     *
+     * @param task the task.
+     * @return true if the task was queued, false if the submitter has to run it itself.
+     */
+    public synchronized boolean offer(Task task) {
+        if (queued >= capacity) {
+            overflows.incrementAndGet();
+            return false;
+        }
+        Map<String, LinkedList<Task>> jobs = queues.get(task.priority.ordinal());
+        LinkedList<Task> tasks = jobs.get(task.job);
+        if (tasks == null) {
+            tasks = new LinkedList<Task>();
+            jobs.put(task.job, tasks);
+        }
+        task.queued = System.nanoTime();
+        tasks.add(task);
+        queued++;
+        notify();
+        return true;
+    }
+
+    /**
+     * Takes the next task from the queue: the first job in turn of the highest priority with queued tasks.
+     * A job with tasks left is put last in turn.
+     *
+     * @return the task, or null if the queue is empty.
+     */
+    synchronized Task poll() {
+        for (Map<String, LinkedList<Task>> jobs : queues) {
+            Iterator<Map.Entry<String, LinkedList<Task>>> turns = jobs.entrySet().iterator();
+            if (turns.hasNext()) {
+                Map.Entry<String, LinkedList<Task>> next = turns.next();
+                turns.remove();
+                LinkedList<Task> tasks = next.getValue();
+                Task task = tasks.removeFirst();
+                if (!tasks.isEmpty()) {
+                    jobs.put(next.getKey(), tasks);
+                }
+                queued--;
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waits for the next task to run.
+     *
+     * @return the task, or null if the calling thread is no longer needed.
+     */
+    private synchronized Task take() {
+        while (threads <= wantedThreads) {
+            Task task = poll();
+            if (task != null) {
+                active++;
+                return task;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        threads--;
+        return null;
+    }
+
+    /**
+     * Marks that a thread has finished its task.
+     */
+    private synchronized void done() {
+        active--;
+    }
+
+    /**
+     * Records how long a task waited in the queue.
+     *
+     * @param task the task.
+     */
+    private void recordWait(Task task) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - task.queued);
+        queueWait.record(millis);
+        queueWaitPerPriority[task.priority.ordinal()].record(millis);
+    }
+
+    /**
+     * The number of queued tasks.
+     *
+     * @return the number of tasks.
+     */
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * The number of threads running a task.
+     *
+     * @return the number of threads.
+     */
+    public synchronized int getActive() {
+        return active;
+    }
+
+    /**
+     * The number of threads to scan with.
+     *
+     * @return the number of threads.
+     */
+    public synchronized int getThreads() {
+        return wantedThreads;
+    }
+
+    /**
+     * A scanning task of a build.
+     */
+    public static final class Task extends FutureTask<Object> {
+        private final Priority priority;
+        private final String job;
+        private long queued;
+
+        /**
+         * Standard constructor.
+         *
+         * @param priority the priority of the build.
+         * @param job the job to share the scanning time within.
+         * @param runnable what to do.
+         */
+        Task(Priority priority, String job, Runnable runnable) {
+            super(runnable, null);
+            this.priority = priority;
+            this.job = job;
+        }
+
+        /**
+         * The priority of the build.
+         *
+         * @return the priority.
+         */
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /**
+         * The job to share the scanning time within.
+         *
+         * @return the full name of the job.
+         */
+        public String getJob() {
+            return job;
+        }
+    }
+
+    /**
+     * Runs the queued tasks until it is no longer needed.
+     */
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            Task task = take();
+            while (task != null) {
+                try {
+                    recordWait(task);
+                    task.run();
+                } finally {
+                    done();
+                }
+                task = take();
+            }
+        }
+    }
+}
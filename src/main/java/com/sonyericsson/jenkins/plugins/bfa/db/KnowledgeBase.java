@@ -28,6 +28,7 @@ import com.sonyericsson.jenkins.plugins.bfa.graphs.FailureCauseTimeInterval;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphFilterBuilder;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
 import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.StatisticsHandler;
 import com.sonyericsson.jenkins.plugins.bfa.utils.ObjectCountPair;
 import hudson.ExtensionList;
 import hudson.Util;
@@ -39,11 +40,14 @@ import jenkins.model.Jenkins;
 import org.jfree.data.time.TimePeriod;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Base class for storage implementations of {@link FailureCause}s. Extend this class and put <code>@Extension</code> on
@@ -55,6 +59,11 @@ public abstract class KnowledgeBase implements Describable<KnowledgeBase>, Seria
 
     private static final long DEFAULT_NBR_OF_NULL_FAILURE_CAUSES = 0;
 
+    private static final AtomicReferenceFieldUpdater<KnowledgeBase, SnapshotState> SNAPSHOT_STATE =
+            AtomicReferenceFieldUpdater.newUpdater(KnowledgeBase.class, SnapshotState.class, "snapshotState");
+
+    private transient volatile SnapshotState snapshotState;
+
     /**
      * Get the list of {@link FailureCause}s. It is intended to be used in the scanning phase hence it should be
      * returned as quickly as possible, so the list could be cached.
@@ -64,6 +73,57 @@ public abstract class KnowledgeBase implements Describable<KnowledgeBase>, Seria
      */
     public abstract Collection<FailureCause> getCauses() throws Exception;
 
+    /**
+     * Get an immutable, indexed snapshot of the causes returned by {@link #getCauses()}.
+     * The snapshot is reused for as long as {@link #getCauses()} returns the same collection and
+     * {@link #invalidateSnapshot()} has not been called, so implementations that change their collection in place
+     * need to call it when they do.
+     * A snapshot is only kept if the knowledge base was not invalidated while it was being built, otherwise it could
+     * have been built from the contents before the change.
+     *
+     * @return the snapshot.
+     * @throws Exception if something in the KnowledgeBase handling goes wrong.
+     */
+    public final KnowledgeBaseSnapshot getSnapshot() throws Exception {
+        SnapshotState state = getSnapshotState();
+        Collection<FailureCause> causes = getCauses();
+        if (causes == null) {
+            causes = Collections.emptyList();
+        }
+        KnowledgeBaseSnapshot current = state.snapshot;
+        if (current == null || current.getSource() != causes) {
+            current = new KnowledgeBaseSnapshot(causes);
+            SNAPSHOT_STATE.compareAndSet(this, state, new SnapshotState(state.version, current));
+        }
+        return current;
+    }
+
+    /**
+     * Discards the current snapshot, so the next call to {@link #getSnapshot()} builds a new one.
+     * Snapshots that are being built while this is called are not kept either.
+     */
+    protected void invalidateSnapshot() {
+        SnapshotState state;
+        do {
+            state = getSnapshotState();
+        } while (!SNAPSHOT_STATE.compareAndSet(this, state, new SnapshotState(state.version + 1, null)));
+    }
+
+    /**
+     * The current snapshot state, creating the initial state the first time.
+     * The field is transient, so it is null after deserialization as well as after construction.
+     *
+     * @return the state.
+     */
+    private SnapshotState getSnapshotState() {
+        SnapshotState state = snapshotState;
+        if (state == null) {
+            SNAPSHOT_STATE.compareAndSet(this, null, new SnapshotState(0, null));
+            state = snapshotState;
+        }
+        return state;
+    }
+
     /**
      * Get the list of the {@link FailureCause}'s names and ids. The list should be the latest possible from the DB as
      * they will be used for editing. The objects returned should contain at least the id and the name of the cause.
@@ -201,6 +261,19 @@ public abstract class KnowledgeBase implements Describable<KnowledgeBase>, Seria
      */
     public abstract void saveStatistics(Statistics stat) throws Exception;
 
+    /**
+     * Saves several Statistics at once.
+     * The default implementation saves them one by one, override it if the storage supports bulk writes.
+     *
+     * @param stats the Statistics to save.
+     * @throws Exception if something goes wrong.
+     */
+    public void saveStatistics(List<Statistics> stats) throws Exception {
+        for (Statistics stat : stats) {
+            saveStatistics(stat);
+        }
+    }
+
     /**
      * Gets Statistics data. This method needs to be implemented in subclass for graph support.
      * @param filter the filter to use when fetching data
@@ -212,6 +285,28 @@ public abstract class KnowledgeBase implements Describable<KnowledgeBase>, Seria
         return Collections.<Statistics>emptyList();
     }
 
+    /**
+     * Reads Statistics data one at a time, so that any number of statistics can be handled with constant memory.
+     * The statistics are not in any particular order. This implementation handles the list from
+     * {@link #getStatistics(GraphFilterBuilder, int)} and ignores the fields and batch size, so it
+     * should be overridden in subclasses that support graphs.
+     *
+     * @param filter the filter to use when fetching data
+     * @param fields the fields to read, or null to read all of them. The other fields of the handled statistics
+     *               are left empty.
+     * @param batchSize the number of statistics to fetch at a time, set to nonpositive value for the default
+     * @param handler the handler of the statistics.
+     * @throws Exception if something in the KnowledgeBase handling goes wrong, or the handler fails.
+     */
+    public void streamStatistics(GraphFilterBuilder filter, List<String> fields, int batchSize,
+            StatisticsHandler handler) throws Exception {
+        for (Statistics stat : getStatistics(filter, -1)) {
+            if (!handler.handle(stat)) {
+                return;
+            }
+        }
+    }
+
     /**
      * Gets a list of {@link ObjectCountPair} where each pair contains a unique {@link FailureCause} as key
      * and the number of times that failure cause was triggered as count.
@@ -337,6 +432,37 @@ public abstract class KnowledgeBase implements Describable<KnowledgeBase>, Seria
         return;
     }
 
+    /**
+     * Set the time at which each FailureCause last occurred, unless it is already later.
+     * The default implementation calls {@link #updateLastSeen(List, Date)} once for every distinct time.
+     *
+     * @param lastSeen the time each FailureCause last occurred, by id.
+     */
+    public void updateLastSeen(Map<String, Date> lastSeen) {
+        for (Map.Entry<Date, List<String>> entry : groupByDate(lastSeen).entrySet()) {
+            updateLastSeen(entry.getValue(), entry.getKey());
+        }
+    }
+
+    /**
+     * Groups the ids of FailureCauses by the time they last occurred.
+     *
+     * @param lastSeen the time each FailureCause last occurred, by id.
+     * @return the ids for each time.
+     */
+    protected static Map<Date, List<String>> groupByDate(Map<String, Date> lastSeen) {
+        Map<Date, List<String>> byDate = new HashMap<Date, List<String>>();
+        for (Map.Entry<String, Date> entry : lastSeen.entrySet()) {
+            List<String> ids = byDate.get(entry.getValue());
+            if (ids == null) {
+                ids = new ArrayList<String>();
+                byDate.put(entry.getValue(), ids);
+            }
+            ids.add(entry.getKey());
+        }
+        return byDate;
+    }
+
     /**
      * Find out when the FailureCause identified by id was first created.
      * This method needs to be implemented in subclass if last modified-functionality is to work correctly
@@ -389,4 +515,23 @@ public abstract class KnowledgeBase implements Describable<KnowledgeBase>, Seria
             return Jenkins.getInstance().getExtensionList(KnowledgeBaseDescriptor.class);
         }
     }
+
+    /**
+     * The kept snapshot together with the number of times the knowledge base has been invalidated.
+     */
+    private static final class SnapshotState {
+        private final long version;
+        private final KnowledgeBaseSnapshot snapshot;
+
+        /**
+         * Standard constructor.
+         *
+         * @param version the number of invalidations.
+         * @param snapshot the kept snapshot, or null if none is kept.
+         */
+        SnapshotState(long version, KnowledgeBaseSnapshot snapshot) {
+            this.version = version;
+            this.snapshot = snapshot;
+        }
+    }
 }
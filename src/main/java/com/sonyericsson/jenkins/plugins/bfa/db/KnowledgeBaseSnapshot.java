@@ -0,0 +1,254 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.MatchingEngine;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.PatternSet;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.Indication;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.MultilineBuildLogIndication;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable view of the causes of a {@link KnowledgeBase} at one point in time, indexed for the scanner and the
+ * UI. It is built once per change of the knowledge base, see {@link KnowledgeBase#getSnapshot()}, instead of every
+ * reader going through the causes on its own.
+ */
+public final class KnowledgeBaseSnapshot {
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final long version;
+    private final Collection<FailureCause> source;
+    private final List<FailureCause> causes;
+    private final List<FailureCause> singleLineCauses;
+    private final List<FailureCause> multiLineCauses;
+    private final Map<String, FailureCause> causesById;
+    private final Map<String, List<FailureCause>> causesByName;
+    private final Map<String, List<FailureCause>> causesByCategory;
+    private final List<String> categories;
+    private final ConcurrentMap<MatchingEngine, PatternSet> patternSets =
+            new ConcurrentHashMap<MatchingEngine, PatternSet>();
+
+    /**
+     * Standard constructor.
+     *
+     * @param causes the causes, they are copied so later changes to the collection are not seen.
+     */
+    public KnowledgeBaseSnapshot(Collection<FailureCause> causes) {
+        this.version = VERSIONS.incrementAndGet();
+        this.source = causes;
+        List<FailureCause> all = new ArrayList<FailureCause>(causes);
+        List<FailureCause> singleLine = new ArrayList<FailureCause>();
+        List<FailureCause> multiLine = new ArrayList<FailureCause>();
+        Map<String, FailureCause> byId = new HashMap<String, FailureCause>();
+        Map<String, List<FailureCause>> byName = new HashMap<String, List<FailureCause>>();
+        Map<String, List<FailureCause>> byCategory = new LinkedHashMap<String, List<FailureCause>>();
+        for (FailureCause cause : all) {
+            if (hasMultiLineIndication(cause)) {
+                multiLine.add(cause);
+            } else {
+                singleLine.add(cause);
+            }
+            if (cause.getId() != null) {
+                byId.put(cause.getId(), cause);
+            }
+            index(byName, cause.getName(), cause);
+            if (cause.getCategories() != null) {
+                for (String category : cause.getCategories()) {
+                    index(byCategory, category, cause);
+                }
+            }
+        }
+        this.causes = Collections.unmodifiableList(all);
+        this.singleLineCauses = Collections.unmodifiableList(singleLine);
+        this.multiLineCauses = Collections.unmodifiableList(multiLine);
+        this.causesById = Collections.unmodifiableMap(byId);
+        this.causesByName = Collections.unmodifiableMap(byName);
+        this.causesByCategory = Collections.unmodifiableMap(byCategory);
+        this.categories = Collections.unmodifiableList(new ArrayList<String>(byCategory.keySet()));
+    }
+
+    /**
+     * Adds a cause to an index.
+     *
+     * @param index the index.
+     * @param key the key to add it under, ignored if null.
+     * @param cause the cause.
+     */
+    private static void index(Map<String, List<FailureCause>> index, String key, FailureCause cause) {
+        if (key == null) {
+            return;
+        }
+        List<FailureCause> list = index.get(key);
+        if (list == null) {
+            list = new ArrayList<FailureCause>(1);
+            index.put(key, list);
+        }
+        list.add(cause);
+    }
+
+    /**
+     * If the cause has a multi-line indication and therefore cannot be part of a {@link PatternSet}.
+     *
+     * @param cause the cause.
+     * @return true if it has at least one multi-line indication.
+     */
+    private static boolean hasMultiLineIndication(FailureCause cause) {
+        if (cause.getIndications() == null) {
+            return false;
+        }
+        for (Indication indication : cause.getIndications()) {
+            if (indication instanceof MultilineBuildLogIndication) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The version of the snapshot, a newer snapshot has a higher version.
+     *
+     * @return the version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * The collection the snapshot was built from, used by the knowledge base to tell if it has changed.
+     *
+     * @return the source collection.
+     */
+    Collection<FailureCause> getSource() {
+        return source;
+    }
+
+    /**
+     * All the causes.
+     *
+     * @return the causes.
+     */
+    public List<FailureCause> getCauses() {
+        return causes;
+    }
+
+    /**
+     * The causes with only single-line indications.
+     *
+     * @return the single-line causes.
+     */
+    public List<FailureCause> getSingleLineCauses() {
+        return singleLineCauses;
+    }
+
+    /**
+     * The causes with at least one multi-line indication.
+     *
+     * @return the multi-line causes.
+     */
+    public List<FailureCause> getMultiLineCauses() {
+        return multiLineCauses;
+    }
+
+    /**
+     * Finds a cause by its id.
+     *
+     * @param id the id.
+     * @return the cause, or null if there is none.
+     */
+    public FailureCause getCause(String id) {
+        return causesById.get(id);
+    }
+
+    /**
+     * Finds the causes with a name.
+     *
+     * @param name the name.
+     * @return the causes with that name, empty if there are none.
+     */
+    public List<FailureCause> getCausesByName(String name) {
+        return unmodifiableOrEmpty(causesByName.get(name));
+    }
+
+    /**
+     * Finds the causes in a category.
+     *
+     * @param category the category.
+     * @return the causes in that category, empty if there are none.
+     */
+    public List<FailureCause> getCausesByCategory(String category) {
+        return unmodifiableOrEmpty(causesByCategory.get(category));
+    }
+
+    /**
+     * All the categories of the causes, in the order they first occur.
+     *
+     * @return the categories.
+     */
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    /**
+     * The single-line causes compiled for an engine. The pattern set is compiled the first time it is asked for,
+     * and then shared by all scans using this snapshot.
+     *
+     * @param engine the engine.
+     * @return the pattern set.
+     */
+    public PatternSet getSingleLinePatterns(MatchingEngine engine) {
+        PatternSet patterns = patternSets.get(engine);
+        if (patterns == null) {
+            patterns = engine.compile(singleLineCauses);
+            PatternSet existing = patternSets.putIfAbsent(engine, patterns);
+            if (existing != null) {
+                patterns = existing;
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * Wraps a list from an index.
+     *
+     * @param list the list, may be null.
+     * @return the unmodifiable list, or an empty list.
+     */
+    private static List<FailureCause> unmodifiableOrEmpty(List<FailureCause> list) {
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(list);
+    }
+}
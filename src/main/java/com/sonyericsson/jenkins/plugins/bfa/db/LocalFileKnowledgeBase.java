@@ -29,11 +29,8 @@ import static hudson.Util.fixEmpty;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 
 import com.sonyericsson.jenkins.plugins.bfa.Messages;
@@ -112,6 +109,7 @@ public class LocalFileKnowledgeBase extends KnowledgeBase {
     public FailureCause addCause(FailureCause cause) throws IOException {
         cause.setId(UUID.randomUUID().toString());
         causes.put(cause.getId(), cause);
+        invalidateSnapshot();
         PluginImpl.getInstance().save();
         return cause;
     }
@@ -119,6 +117,7 @@ public class LocalFileKnowledgeBase extends KnowledgeBase {
     @Override
     public FailureCause removeCause(String id) throws Exception {
         FailureCause remove = causes.remove(id);
+        invalidateSnapshot();
         PluginImpl.getInstance().save();
         return remove;
     }
@@ -129,6 +128,7 @@ public class LocalFileKnowledgeBase extends KnowledgeBase {
             return addCause(cause);
         } else {
             causes.put(cause.getId(), cause);
+            invalidateSnapshot();
             PluginImpl.getInstance().save();
             return cause;
         }
@@ -140,6 +140,7 @@ public class LocalFileKnowledgeBase extends KnowledgeBase {
      */
     protected void put(FailureCause cause) {
         causes.put(cause.getId(), cause);
+        invalidateSnapshot();
     }
 
     @Override
@@ -147,6 +148,7 @@ public class LocalFileKnowledgeBase extends KnowledgeBase {
         if (oldKnowledgeBase instanceof LocalFileKnowledgeBase) {
             LocalFileKnowledgeBase lfkb = (LocalFileKnowledgeBase)oldKnowledgeBase;
             causes = lfkb.causes;
+            invalidateSnapshot();
         } else {
             convertFromAbstract(oldKnowledgeBase);
         }
@@ -157,19 +159,7 @@ public class LocalFileKnowledgeBase extends KnowledgeBase {
         if (causes == null) {
             return null;
         }
-        List<String> categories = new LinkedList<String>();
-        Set myset = new HashSet<String>();
-        for (FailureCause cause : causes.values()) {
-            List<String> categoriesForCause = cause.getCategories();
-            if (categoriesForCause != null) {
-                for (String string : categoriesForCause) {
-                    if (myset.add(string)) {
-                        categories.add(string);
-                    }
-                }
-            }
-        }
-        return categories;
+        return getSnapshot().getCategories();
     }
 
     @Override
@@ -33,12 +33,14 @@ import com.mongodb.DBRef;
 import com.mongodb.Mongo;
 import com.mongodb.MongoException;
 import com.sonyericsson.jenkins.plugins.bfa.Messages;
+import com.sonyericsson.jenkins.plugins.bfa.PluginImpl;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.FailureCauseTimeInterval;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphFilterBuilder;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
 import com.sonyericsson.jenkins.plugins.bfa.model.indication.FoundIndication;
 import com.sonyericsson.jenkins.plugins.bfa.statistics.FailureCauseStatistics;
 import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.StatisticsHandler;
 import com.sonyericsson.jenkins.plugins.bfa.utils.BfaUtils;
 import com.sonyericsson.jenkins.plugins.bfa.utils.ObjectCountPair;
 import hudson.Extension;
@@ -69,12 +71,16 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SimpleTimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -94,20 +100,40 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
     public static final String COLLECTION_NAME = "failureCauses";
     /**The name of the statistics collection in the database.*/
     public static final String STATISTICS_COLLECTION_NAME = "statistics";
+    /**The name of the collection with the hourly rollups of the statistics.*/
+    public static final String STATISTICS_ROLLUP_COLLECTION_NAME = "statisticsRollups";
+    private static final String ROLLUP_STATE_COLLECTION_NAME = "statisticsRollupState";
+    private static final String ROLLUP_STATE_ID = "rollups";
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int BSON_DATE_TYPE = 9;
+    private static final AtomicBoolean REBUILDING_ROLLUPS = new AtomicBoolean(false);
+    /**
+     * The indexes of the statistics collection, one for each shape of filter used by the graphs.
+     * The fields matched on equality come before the range on the starting time.
+     */
+    static final List<DBObject> STATISTICS_INDEXES = createStatisticsIndexes();
+    private static final int EXPLAIN_PERIOD_DAYS = 30;
     private static final int MONGO_DEFAULT_PORT = 27017;
     /**
      * Query to single out documents that doesn't have a "removed" property
      */
     static final BasicDBObject NOT_REMOVED_QUERY = new BasicDBObject("_removed", new BasicDBObject("$exists", false));
+    /**
+     * The field holding the time a cause was last added, saved or removed, used for incremental cache updates.
+     */
+    static final String UPDATED_FIELD = "_updated";
     private static final Logger logger = Logger.getLogger(MongoDBKnowledgeBase.class.getName());
 
     private transient Mongo mongo;
     private transient DB db;
     private transient DBCollection collection;
     private transient DBCollection statisticsCollection;
+    private transient DBCollection rollupCollection;
+    private transient DBCollection rollupStateCollection;
     private transient JacksonDBCollection<FailureCause, String> jacksonCollection;
     private transient JacksonDBCollection<Statistics, String> jacksonStatisticsCollection;
     private transient MongoDBKnowledgeBaseCache cache;
+    private transient QueryCoalescer coalescer;
 
     private String host;
     private int port;
@@ -182,6 +208,120 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
     @Override
     public synchronized void start() throws UnknownHostException, AuthenticationException {
         initCache();
+        ensureStatisticsIndexes();
+    }
+
+    /**
+     * Creates the indexes used by the graphs if statistics are enabled.
+     * The indexes are built in the background, so that a large collection stays usable meanwhile.
+     * @throws UnknownHostException if we cannot connect to the database.
+     * @throws AuthenticationException if we cannot authenticate towards the database.
+     */
+    private void ensureStatisticsIndexes() throws UnknownHostException, AuthenticationException {
+        if (!enableStatistics) {
+            return;
+        }
+        DBCollection statistics = getStatisticsCollection();
+        for (DBObject index : STATISTICS_INDEXES) {
+            try {
+                statistics.ensureIndex(index, new BasicDBObject("background", true));
+            } catch (MongoException e) {
+                logger.log(Level.WARNING, "Failed to create the statistics index " + index, e);
+            }
+        }
+    }
+
+    /**
+     * Creates the indexes of the statistics collection.
+     *
+     * @return the indexes.
+     * @see #STATISTICS_INDEXES
+     */
+    private static List<DBObject> createStatisticsIndexes() {
+        List<DBObject> indexes = new ArrayList<DBObject>();
+        indexes.add(createIndex("startingTime"));
+        indexes.add(createIndex("master", "startingTime"));
+        indexes.add(createIndex("projectName", "master", "startingTime"));
+        indexes.add(createIndex("projectName", "master", "buildNumber"));
+        indexes.add(createIndex("slaveHostName", "master", "startingTime"));
+        DBObject causeIndex = createIndex("failureCauses.failureCause");
+        causeIndex.put("startingTime", -1);
+        indexes.add(causeIndex);
+        return Collections.unmodifiableList(indexes);
+    }
+
+    /**
+     * Creates an ascending index.
+     *
+     * @param fields the fields of the index.
+     * @return the index.
+     */
+    private static DBObject createIndex(String... fields) {
+        DBObject index = new BasicDBObject();
+        for (String field : fields) {
+            index.put(field, 1);
+        }
+        return index;
+    }
+
+    /**
+     * Explains the queries made by the graphs, for each shape of filter they use.
+     *
+     * @return the query plans.
+     * @throws UnknownHostException if we cannot connect to the database.
+     * @throws AuthenticationException if we cannot authenticate towards the database.
+     */
+    public List<QueryPlan> explainGraphQueries() throws UnknownHostException, AuthenticationException {
+        Date since = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(EXPLAIN_PERIOD_DAYS));
+        List<QueryPlan> plans = new ArrayList<QueryPlan>();
+
+        GraphFilterBuilder filter = new GraphFilterBuilder();
+        filter.setSince(since);
+        plans.add(explain("All builds", generateMatchFields(filter), null));
+
+        filter.setMasterName("master");
+        plans.add(explain("All builds of a master", generateMatchFields(filter), null));
+
+        filter.setSlaveName("node");
+        filter.setExcludeResult("ABORTED");
+        plans.add(explain("Node", generateMatchFields(filter), null));
+
+        filter = new GraphFilterBuilder();
+        filter.setMasterName("master");
+        filter.setProjectName("project");
+        filter.setExcludeResult("ABORTED");
+        filter.setSince(since);
+        plans.add(explain("Project", generateMatchFields(filter), null));
+
+        filter = new GraphFilterBuilder();
+        filter.setMasterName("master");
+        filter.setProjectName("project");
+        filter.setBuildNumbers(asList(1, 2, 3));
+        plans.add(explain("Latest builds of a project", generateMatchFields(filter), null));
+
+        DBRef cause = new DBRef(getDb(), COLLECTION_NAME, new ObjectId());
+        plans.add(explain("Latest failure of a cause", new BasicDBObject("failureCauses.failureCause", cause),
+                new BasicDBObject("startingTime", -1)));
+        return plans;
+    }
+
+    /**
+     * Explains a query on the statistics collection.
+     *
+     * @param name the name of the query.
+     * @param query the query.
+     * @param sort the sort order, or null if not sorted.
+     * @return the query plan.
+     * @throws UnknownHostException if we cannot connect to the database.
+     * @throws AuthenticationException if we cannot authenticate towards the database.
+     */
+    private QueryPlan explain(String name, DBObject query, DBObject sort)
+            throws UnknownHostException, AuthenticationException {
+        com.mongodb.DBCursor cursor = getStatisticsCollection().find(query);
+        if (sort != null) {
+            cursor = cursor.sort(sort);
+        }
+        return new QueryPlan(name, query, cursor.explain());
     }
 
     @Override
@@ -278,7 +418,9 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
         BasicDBObject idq = new BasicDBObject("_id", new ObjectId(id));
         BasicDBObject removedInfo = new BasicDBObject("timestamp", new Date());
         removedInfo.put("by", Jenkins.getAuthentication().getName());
-        BasicDBObject update = new BasicDBObject("$set", new BasicDBObject("_removed", removedInfo));
+        BasicDBObject set = new BasicDBObject("_removed", removedInfo);
+        set.put(UPDATED_FIELD, removedInfo.get("timestamp"));
+        BasicDBObject update = new BasicDBObject("$set", set);
         FailureCause modified = getJacksonCollection().findAndModify(idq, null, null, false, update, true, false);
         initCache();
         cache.updateCache();
@@ -302,6 +444,7 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
     public FailureCause addCause(FailureCause cause, boolean doUpdate) throws UnknownHostException,
             AuthenticationException {
         WriteResult<FailureCause, String> result = getJacksonCollection().insert(cause);
+        markUpdated(result.getSavedObject());
         if (doUpdate) {
             initCache();
             cache.updateCache();
@@ -331,6 +474,7 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
     public FailureCause saveCause(FailureCause cause, boolean doUpdate) throws UnknownHostException,
             AuthenticationException {
         WriteResult<FailureCause, String> result =  getJacksonCollection().save(cause);
+        markUpdated(result.getSavedObject());
         if (doUpdate) {
             initCache();
             cache.updateCache();
@@ -338,6 +482,23 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
         return result.getSavedObject();
     }
 
+    /**
+     * Stamps a cause with the current time in {@link #UPDATED_FIELD}, so that the cache picks up the change.
+     * The stamp is not part of {@link FailureCause}, so it is set after the cause has been written.
+     *
+     * @param cause the cause that was written.
+     * @throws UnknownHostException If a connection to the Mongo database cannot be made.
+     * @throws AuthenticationException if we cannot authenticate towards the database.
+     */
+    private void markUpdated(FailureCause cause) throws UnknownHostException, AuthenticationException {
+        if (cause == null || cause.getId() == null || !ObjectId.isValid(cause.getId())) {
+            return;
+        }
+        BasicDBObject idq = new BasicDBObject("_id", new ObjectId(cause.getId()));
+        BasicDBObject update = new BasicDBObject("$set", new BasicDBObject(UPDATED_FIELD, new Date()));
+        getJacksonCollection().getDbCollection().update(idq, update);
+    }
+
     @Override
     public void convertFrom(KnowledgeBase oldKnowledgeBase) throws Exception {
         if (oldKnowledgeBase instanceof MongoDBKnowledgeBase) {
@@ -367,9 +528,8 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
     }
 
     @Override
-    public List<String> getCategories() throws UnknownHostException, AuthenticationException {
-        initCache();
-        return cache.getCategories();
+    public List<String> getCategories() throws Exception {
+        return getSnapshot().getCategories();
     }
 
     /**
@@ -464,6 +624,355 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
 
     @Override
     public void saveStatistics(Statistics stat) throws UnknownHostException, AuthenticationException {
+        getStatisticsCollection().insert(toDBObject(stat));
+        updateRollups(Collections.singletonList(stat));
+    }
+
+    /**
+     * Saves the statistics with one bulk insert.
+     *
+     * @param stats the statistics to save.
+     * @throws UnknownHostException if a connection to the host cannot be made.
+     * @throws AuthenticationException if we cannot authenticate towards the database.
+     */
+    @Override
+    public void saveStatistics(List<Statistics> stats) throws UnknownHostException, AuthenticationException {
+        if (stats.isEmpty()) {
+            return;
+        }
+        List<DBObject> objects = new ArrayList<DBObject>(stats.size());
+        for (Statistics stat : stats) {
+            objects.add(toDBObject(stat));
+        }
+        getStatisticsCollection().insert(objects);
+        updateRollups(stats);
+    }
+
+    /**
+     * Adds saved statistics to the hourly rollups.
+     * A failure is only logged, since the statistics themselves are saved and
+     * the rollups can be rebuilt with {@link #rebuildRollups()}.
+     *
+     * @param stats the saved statistics.
+     */
+    private void updateRollups(List<Statistics> stats) {
+        Map<DBObject, Integer> increments = new LinkedHashMap<DBObject, Integer>();
+        for (Statistics stat : stats) {
+            if (stat.getStartingTime() == null) {
+                continue;
+            }
+            Date hour = new Date(stat.getStartingTime().getTime() / HOUR_MILLIS * HOUR_MILLIS);
+            List<FailureCauseStatistics> causes = stat.getFailureCauseStatisticsList();
+            boolean unknown = causes == null || causes.isEmpty();
+            addIncrement(increments, createRollupKey(hour, stat, null, unknown));
+            if (!unknown) {
+                for (FailureCauseStatistics cause : causes) {
+                    addIncrement(increments, createRollupKey(hour, stat, new ObjectId(cause.getId()), null));
+                }
+            }
+        }
+        try {
+            DBCollection rollups = getRollupCollection();
+            for (Map.Entry<DBObject, Integer> entry : increments.entrySet()) {
+                rollups.update(entry.getKey(), new BasicDBObject("$inc",
+                        new BasicDBObject("count", entry.getValue())), true, false);
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to update the statistics rollups, they need to be rebuilt", e);
+        }
+    }
+
+    /**
+     * Adds one to the count of a rollup.
+     *
+     * @param increments the counts by rollup.
+     * @param key the rollup.
+     */
+    private static void addIncrement(Map<DBObject, Integer> increments, DBObject key) {
+        Integer count = increments.get(key);
+        if (count == null) {
+            count = 0;
+        }
+        increments.put(key, count + 1);
+    }
+
+    /**
+     * Creates the fields identifying a rollup. A rollup either counts the builds with or without any
+     * failure cause, or how many times one failure cause was found.
+     *
+     * @param hour the start of the hour.
+     * @param stat the statistics of a build in the rollup.
+     * @param failureCause the id of the failure cause, or null for a rollup of builds.
+     * @param unknown if the builds had no failure cause, or null for a rollup of a failure cause.
+     * @return the fields.
+     */
+    private static DBObject createRollupKey(Date hour, Statistics stat, ObjectId failureCause, Boolean unknown) {
+        return createRollupKey(hour, stat.getProjectName(), stat.getSlaveHostName(), stat.getMaster(),
+                stat.getResult(), failureCause, unknown);
+    }
+
+    /**
+     * Creates the fields identifying a rollup. The field names are the same as in the statistics collection,
+     * so that the same filters can be used for both.
+     *
+     * @param hour the start of the hour.
+     * @param projectName the project name.
+     * @param slaveHostName the slave host name.
+     * @param master the master.
+     * @param result the build result.
+     * @param failureCause the id of the failure cause, or null for a rollup of builds.
+     * @param unknown if the builds had no failure cause, or null for a rollup of a failure cause.
+     * @return the fields.
+     */
+    private static DBObject createRollupKey(Date hour, Object projectName, Object slaveHostName, Object master,
+            Object result, Object failureCause, Boolean unknown) {
+        DBObject key = new BasicDBObject("startingTime", hour);
+        key.put("projectName", projectName);
+        key.put("slaveHostName", slaveHostName);
+        key.put("master", master);
+        key.put("result", result);
+        key.put("failureCause", failureCause);
+        key.put("unknown", unknown);
+        return key;
+    }
+
+    /**
+     * Rebuilds the hourly rollups from all saved statistics, one month at a time.
+     * Statistics can be saved meanwhile, also by other masters sharing the database, so the rebuild only
+     * re-aggregates the builds started before a cutoff that is stored in the database, see
+     * {@link #startRollupRebuild()}. The rollups of later builds are only added up as they are saved.
+     * The graphs use the statistics until the rebuild is done.
+     *
+     * @throws UnknownHostException if a connection to the host cannot be made.
+     * @throws AuthenticationException if we cannot authenticate towards the database.
+     */
+    public void rebuildRollups() throws UnknownHostException, AuthenticationException {
+        Date cutoff = startRollupRebuild();
+        DBObject range = new BasicDBObject("$type", BSON_DATE_TYPE);
+        range.put("$lt", cutoff);
+        DBObject rangeFields = new BasicDBObject("_id", null);
+        rangeFields.put("first", new BasicDBObject("$min", "$startingTime"));
+        AggregationOutput output = getStatisticsCollection().aggregate(
+                new BasicDBObject("$match", new BasicDBObject("startingTime", range)),
+                new BasicDBObject("$group", rangeFields));
+        for (DBObject first : output.results()) {
+            Calendar month = Calendar.getInstance(new SimpleTimeZone(0, "UTC"));
+            month.setTime((Date)first.get("first"));
+            month.set(Calendar.DAY_OF_MONTH, 1);
+            month.set(Calendar.HOUR_OF_DAY, 0);
+            month.set(Calendar.MINUTE, 0);
+            month.set(Calendar.SECOND, 0);
+            month.set(Calendar.MILLISECOND, 0);
+            while (month.getTime().before(cutoff)) {
+                Date from = month.getTime();
+                month.add(Calendar.MONTH, 1);
+                Date to = month.getTime();
+                if (to.after(cutoff)) {
+                    to = cutoff;
+                }
+                rebuildRollups(from, to);
+            }
+        }
+        finishRollupRebuild(cutoff);
+    }
+
+    /**
+     * Starts a rebuild of the rollups. The cutoff is the start of the next hour, so that no build saved
+     * before the rebuild started is after it, and no hour has rollups both from the rebuild and only from saves.
+     * The cutoff is stored in the database and the rollups before it are removed, while the graphs are told
+     * to use the statistics instead.
+     *
+     * @return the cutoff, the rollups of builds started before it are to be rebuilt.
+     * @throws UnknownHostException if a connection to the host cannot be made.
+     * @throws AuthenticationException if we cannot authenticate towards the database.
+     */
+    Date startRollupRebuild() throws UnknownHostException, AuthenticationException {
+        Date cutoff = new Date((System.currentTimeMillis() / HOUR_MILLIS + 1) * HOUR_MILLIS);
+        DBObject state = new BasicDBObject("complete", false);
+        state.put("cutoff", cutoff);
+        getRollupStateCollection().update(new BasicDBObject("_id", ROLLUP_STATE_ID),
+                new BasicDBObject("$set", state), true, false);
+        getRollupCollection().remove(new BasicDBObject("startingTime", new BasicDBObject("$lt", cutoff)));
+        return cutoff;
+    }
+
+    /**
+     * Marks the rollups as complete, unless a later rebuild has been started meanwhile.
+     *
+     * @param cutoff the cutoff of the rebuild, see {@link #startRollupRebuild()}.
+     * @throws UnknownHostException if a connection to the host cannot be made.
+     * @throws AuthenticationException if we cannot authenticate towards the database.
+     */
+    void finishRollupRebuild(Date cutoff) throws UnknownHostException, AuthenticationException {
+        DBObject query = new BasicDBObject("_id", ROLLUP_STATE_ID);
+        query.put("cutoff", cutoff);
+        getRollupStateCollection().update(query,
+                new BasicDBObject("$set", new BasicDBObject("complete", true)), false, false);
+    }
+
+    /**
+     * Creates the rollups of the statistics of builds started within a time range.
+     * The count of each rollup is set to the aggregated count, keyed on the rollup, so that it replaces what was
+     * added up by saves since the rebuild started; those statistics are part of the aggregation.
+     * Statistics saved after the range has been aggregated are added up as usual.
+     *
+     * @param from the start of the range.
+     * @param to the end of the range, exclusive.
+     * @throws UnknownHostException if a connection to the host cannot be made.
+     * @throws AuthenticationException if we cannot authenticate towards the database.
+     */
+    void rebuildRollups(Date from, Date to) throws UnknownHostException, AuthenticationException {
+        DBObject range = new BasicDBObject("$gte", from);
+        range.put("$lt", to);
+        DBObject match = new BasicDBObject("$match", new BasicDBObject("startingTime", range));
+
+        DBObject buildFields = generateRollupGrouping();
+        buildFields.put("unknown", new BasicDBObject("$eq",
+                asList(new BasicDBObject("$ifNull", asList("$failureCauses", false)), false)));
+        DBObject buildGroupFields = new BasicDBObject("_id", buildFields);
+        buildGroupFields.put("number", new BasicDBObject("$sum", 1));
+        AggregationOutput builds = getStatisticsCollection().aggregate(match,
+                new BasicDBObject("$group", buildGroupFields));
+
+        DBObject causeFields = generateRollupGrouping();
+        causeFields.put("failureCause", "$failureCauses.failureCause");
+        DBObject causeGroupFields = new BasicDBObject("_id", causeFields);
+        causeGroupFields.put("number", new BasicDBObject("$sum", 1));
+        AggregationOutput causes = getStatisticsCollection().aggregate(match,
+                new BasicDBObject("$unwind", "$failureCauses"), new BasicDBObject("$group", causeGroupFields));
+
+        DBCollection rollups = getRollupCollection();
+        for (DBObject result : builds.results()) {
+            BasicDBObject fields = (BasicDBObject)result.get("_id");
+            setRollupCount(rollups, result, null, (Boolean)fields.get("unknown"));
+        }
+        for (DBObject result : causes.results()) {
+            BasicDBObject fields = (BasicDBObject)result.get("_id");
+            setRollupCount(rollups, result, getCauseId(fields.get("failureCause")), null);
+        }
+    }
+
+    /**
+     * Generates the fields to group statistics by when rebuilding the rollups.
+     *
+     * @return the fields.
+     */
+    private DBObject generateRollupGrouping() {
+        DBObject fields = generateTimeGrouping(Calendar.HOUR_OF_DAY);
+        fields.put("projectName", "$projectName");
+        fields.put("slaveHostName", "$slaveHostName");
+        fields.put("master", "$master");
+        fields.put("result", "$result");
+        return fields;
+    }
+
+    /**
+     * Sets the count of a rollup from a result grouped by {@link #generateRollupGrouping()},
+     * creating the rollup if it does not exist.
+     *
+     * @param rollups the rollup collection.
+     * @param result the result.
+     * @param failureCause the id of the failure cause, or null for a rollup of builds.
+     * @param unknown if the builds had no failure cause, or null for a rollup of a failure cause.
+     */
+    private static void setRollupCount(DBCollection rollups, DBObject result, Object failureCause,
+            Boolean unknown) {
+        BasicDBObject fields = (BasicDBObject)result.get("_id");
+        Calendar hour = Calendar.getInstance(new SimpleTimeZone(0, "UTC"));
+        hour.clear();
+        hour.set(fields.getInt("year"), fields.getInt("month") - 1, fields.getInt("dayOfMonth"),
+                fields.getInt("hour"), 0, 0);
+        DBObject key = createRollupKey(hour.getTime(), fields.get("projectName"), fields.get("slaveHostName"),
+                fields.get("master"), fields.get("result"), failureCause, unknown);
+        rollups.update(key, new BasicDBObject("$set", new BasicDBObject("count", result.get("number"))),
+                true, false);
+    }
+
+    /**
+     * Gets the id of a failure cause from an aggregation result.
+     *
+     * @param failureCause the reference to the failure cause in the statistics, or its id in the rollups.
+     * @return the id.
+     */
+    private static Object getCauseId(Object failureCause) {
+        if (failureCause instanceof DBRef) {
+            return ((DBRef)failureCause).getId();
+        }
+        return failureCause;
+    }
+
+    /**
+     * Tells if the rollups have been rebuilt, and so contain all saved statistics.
+     *
+     * @return true if the graphs can be made from the rollups.
+     * @throws UnknownHostException if a connection to the host cannot be made.
+     * @throws AuthenticationException if we cannot authenticate towards the database.
+     */
+    boolean isRollupComplete() throws UnknownHostException, AuthenticationException {
+        DBObject state = getRollupStateCollection().findOne(new BasicDBObject("_id", ROLLUP_STATE_ID));
+        return state != null && Boolean.TRUE.equals(state.get("complete"));
+    }
+
+    /**
+     * Runs an aggregation on the statistics matching a filter. When the rollups are complete and the filter does
+     * not need single builds, the rollups are aggregated instead, together with the statistics of the partial
+     * hour at the start of the filter. The results of both aggregations are returned, so they need to be added up.
+     *
+     * @param filter the filter, can be null.
+     * @param statisticsStages the stages after the match on the statistics collection.
+     * @param rollupStages the stages after the match on the rollups, giving results like the other stages.
+     * @return the results.
+     * @throws UnknownHostException if a connection to the host cannot be made.
+     * @throws AuthenticationException if we cannot authenticate towards the database.
+     */
+    private List<DBObject> aggregateStatistics(GraphFilterBuilder filter, List<DBObject> statisticsStages,
+            List<DBObject> rollupStages) throws UnknownHostException, AuthenticationException {
+        List<DBObject> results = new ArrayList<DBObject>();
+        if ((filter != null && filter.getBuildNumbers() != null) || !isRollupComplete()) {
+            aggregate(getStatisticsCollection(), generateMatchFields(filter), statisticsStages, results);
+            return results;
+        }
+        DBObject rollupMatchFields = generateMatchFields(filter);
+        if (filter != null && filter.getSince() != null) {
+            long since = filter.getSince().getTime();
+            Date firstHour = new Date((since + HOUR_MILLIS - 1) / HOUR_MILLIS * HOUR_MILLIS);
+            if (firstHour.getTime() > since) {
+                DBObject matchFields = generateMatchFields(filter);
+                DBObject range = new BasicDBObject("$gte", filter.getSince());
+                range.put("$lt", firstHour);
+                matchFields.put("startingTime", range);
+                aggregate(getStatisticsCollection(), matchFields, statisticsStages, results);
+            }
+            rollupMatchFields.put("startingTime", new BasicDBObject("$gte", firstHour));
+        }
+        aggregate(getRollupCollection(), rollupMatchFields, rollupStages, results);
+        return results;
+    }
+
+    /**
+     * Runs an aggregation.
+     *
+     * @param collection the collection to aggregate.
+     * @param matchFields the fields to match.
+     * @param stages the stages after the match.
+     * @param results the list to add the results to.
+     */
+    private static void aggregate(DBCollection collection, DBObject matchFields, List<DBObject> stages,
+            List<DBObject> results) {
+        AggregationOutput output = collection.aggregate(new BasicDBObject("$match", matchFields),
+                stages.toArray(new DBObject[stages.size()]));
+        for (DBObject result : output.results()) {
+            results.add(result);
+        }
+    }
+
+    /**
+     * Converts statistics to the document stored in the statistics collection.
+     *
+     * @param stat the statistics.
+     * @return the document.
+     */
+    private static DBObject toDBObject(Statistics stat) {
         DBObject object = new BasicDBObject();
         object.put("projectName", stat.getProjectName());
         object.put("buildNumber", stat.getBuildNumber());
@@ -485,9 +994,8 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
         object.put("result", stat.getResult());
         List<FailureCauseStatistics> failureCauseStatisticsList = stat.getFailureCauseStatisticsList();
         addFailureCausesToDBObject(object, failureCauseStatisticsList);
-
-        getStatisticsCollection().insert(object);
-       }
+        return object;
+    }
 
     @Override
     public List<Statistics> getStatistics(GraphFilterBuilder filter, int limit)
@@ -502,8 +1010,62 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
         return dbCursor.toArray();
     }
 
+    /**
+     * Reads the statistics with a cursor, deserializing one at a time.
+     * The statistics are not sorted, so that no sort needs to be done in memory by the database.
+     *
+     * @param filter the filter to use when fetching data
+     * @param fields the fields to read, for example <code>failureCauses.failureCause</code> to skip the
+     *               indications, or null to read all of them.
+     * @param batchSize the number of statistics to fetch at a time, set to nonpositive value for the default
+     * @param handler the handler of the statistics.
+     * @throws Exception if the database cannot be read, or the handler fails.
+     */
     @Override
-    public long getNbrOfNullFailureCauses(GraphFilterBuilder filter) {
+    public void streamStatistics(GraphFilterBuilder filter, List<String> fields, int batchSize,
+            StatisticsHandler handler) throws Exception {
+        DBObject matchFields = generateMatchFields(filter);
+        DBCursor<Statistics> dbCursor;
+        if (fields == null) {
+            dbCursor = getJacksonStatisticsCollection().find(matchFields);
+        } else {
+            DBObject keys = new BasicDBObject();
+            for (String field : fields) {
+                keys.put(field, 1);
+            }
+            dbCursor = getJacksonStatisticsCollection().find(matchFields, keys);
+        }
+        if (batchSize > 0) {
+            dbCursor = dbCursor.batchSize(batchSize);
+        }
+        try {
+            while (dbCursor.hasNext()) {
+                if (!handler.handle(dbCursor.next())) {
+                    return;
+                }
+            }
+        } finally {
+            dbCursor.close();
+        }
+    }
+
+    @Override
+    public long getNbrOfNullFailureCauses(final GraphFilterBuilder filter) {
+        return getCoalescer().get(asList("nbrOfNullFailureCauses", filter), new Callable<Long>() {
+            @Override
+            public Long call() {
+                return countNullFailureCauses(filter);
+            }
+        });
+    }
+
+    /**
+     * Counts the statistics without failure causes.
+     *
+     * @param filter the filter to apply.
+     * @return the number, or -1 if it could not be counted.
+     */
+    private long countNullFailureCauses(GraphFilterBuilder filter) {
         DBObject matchFields = generateMatchFields(filter);
         matchFields.put("failureCauses", null);
 
@@ -522,9 +1084,6 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
         Map<TimePeriod, Integer> knownFailures = new HashMap<TimePeriod, Integer>();
         Set<TimePeriod> periods = new HashSet<TimePeriod>();
 
-        DBObject matchFields = generateMatchFields(filter);
-        DBObject match = new BasicDBObject("$match", matchFields);
-
         // Use $project to change all null failurecauses to 'false' since
         // it's not possible to group by 'null':
         DBObject projectFields = new BasicDBObject();
@@ -542,19 +1101,27 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
         groupFields.put("number", new BasicDBObject("$sum", 1));
         DBObject group = new BasicDBObject("$group", groupFields);
 
-        AggregationOutput output;
+        DBObject rollupMatch = new BasicDBObject("$match", new BasicDBObject("failureCause", null));
+        DBObject rollupIdFields = generateTimeGrouping(intervalSize);
+        rollupIdFields.put("isNullFailureCause", "$unknown");
+        DBObject rollupGroupFields = new BasicDBObject();
+        rollupGroupFields.put("_id", rollupIdFields);
+        rollupGroupFields.put("number", new BasicDBObject("$sum", "$count"));
+        DBObject rollupGroup = new BasicDBObject("$group", rollupGroupFields);
+
         try {
-            output = getStatisticsCollection().aggregate(match, project, group);
-            for (DBObject result : output.results()) {
+            List<DBObject> results = aggregateStatistics(filter, asList(project, group),
+                    asList(rollupMatch, rollupGroup));
+            for (DBObject result : results) {
                 DBObject groupedAttrs = (DBObject)result.get("_id");
                 TimePeriod period = generateTimePeriodFromResult(result, intervalSize);
                 periods.add(period);
-                int number = (Integer)result.get("number");
+                int number = ((Number)result.get("number")).intValue();
                 boolean isNullFailureCause = (Boolean)groupedAttrs.get("isNullFailureCause");
                 if (isNullFailureCause) {
-                    unknownFailures.put(period, number);
+                    addNumber(unknownFailures, period, number);
                 } else {
-                    knownFailures.put(period, number);
+                    addNumber(knownFailures, period, number);
                 }
             }
         } catch (Exception e) {
@@ -582,11 +1149,33 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
         return nullFailureCauseQuotas;
     }
 
+    /**
+     * {@inheritDoc}
+     * Concurrent calls with equal filters, such as from the pie and bar charts of a page, share one aggregation.
+     */
     @Override
-    public List<ObjectCountPair<String>> getNbrOfFailureCausesPerId(GraphFilterBuilder filter, int maxNbr) {
-        List<ObjectCountPair<String>> nbrOfFailureCausesPerId = new ArrayList<ObjectCountPair<String>>();
-        DBObject matchFields = generateMatchFields(filter);
-        DBObject match = new BasicDBObject("$match", matchFields);
+    public List<ObjectCountPair<String>> getNbrOfFailureCausesPerId(final GraphFilterBuilder filter, int maxNbr) {
+        List<ObjectCountPair<String>> nbrOfFailureCausesPerId = getCoalescer().get(
+                asList("nbrOfFailureCausesPerId", filter), new Callable<List<ObjectCountPair<String>>>() {
+                    @Override
+                    public List<ObjectCountPair<String>> call() {
+                        return countFailureCausesPerId(filter);
+                    }
+                });
+        if (maxNbr > 0 && nbrOfFailureCausesPerId.size() > maxNbr) {
+            return new ArrayList<ObjectCountPair<String>>(nbrOfFailureCausesPerId.subList(0, maxNbr));
+        }
+        return new ArrayList<ObjectCountPair<String>>(nbrOfFailureCausesPerId);
+    }
+
+    /**
+     * Counts the failure causes of the statistics.
+     *
+     * @param filter the filter to apply.
+     * @return the number of each failure cause id, the most common first.
+     */
+    private List<ObjectCountPair<String>> countFailureCausesPerId(GraphFilterBuilder filter) {
+        Map<String, Integer> numbers = new LinkedHashMap<String, Integer>();
 
         DBObject unwind = new BasicDBObject("$unwind", "$failureCauses");
 
@@ -595,26 +1184,21 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
         groupFields.put("number", new BasicDBObject("$sum", 1));
         DBObject group = new BasicDBObject("$group", groupFields);
 
-        DBObject sort = new BasicDBObject("$sort", new BasicDBObject("number", -1));
+        DBObject rollupMatch = new BasicDBObject("$match",
+                new BasicDBObject("failureCause", new BasicDBObject("$ne", null)));
+        DBObject rollupGroupFields = new BasicDBObject();
+        rollupGroupFields.put("_id", "$failureCause");
+        rollupGroupFields.put("number", new BasicDBObject("$sum", "$count"));
+        DBObject rollupGroup = new BasicDBObject("$group", rollupGroupFields);
 
-        DBObject limit = null;
-        if (maxNbr > 0) {
-            limit = new BasicDBObject("$limit", maxNbr);
-        }
+        DBObject sort = new BasicDBObject("$sort", new BasicDBObject("number", -1));
 
-        AggregationOutput output;
         try {
-            if (limit == null) {
-                output = getStatisticsCollection().aggregate(match, unwind, group, sort);
-            } else {
-                output = getStatisticsCollection().aggregate(match, unwind, group, sort, limit);
-            }
-            for (DBObject result : output.results()) {
-                DBRef failureCauseRef = (DBRef)result.get("_id");
-                if (failureCauseRef != null) {
-                    Integer number = (Integer)result.get("number");
-                    String id = failureCauseRef.getId().toString();
-                    nbrOfFailureCausesPerId.add(new ObjectCountPair<String>(id, number));
+            for (DBObject result : aggregateStatistics(filter, asList(unwind, group, sort),
+                    asList(rollupMatch, rollupGroup, sort))) {
+                Object id = getCauseId(result.get("_id"));
+                if (id != null) {
+                    addNumber(numbers, id.toString(), ((Number)result.get("number")).intValue());
                 }
             }
         } catch (Exception e) {
@@ -622,9 +1206,31 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
             e.printStackTrace();
         }
 
+        List<ObjectCountPair<String>> nbrOfFailureCausesPerId = new ArrayList<ObjectCountPair<String>>();
+        for (Entry<String, Integer> entry : numbers.entrySet()) {
+            nbrOfFailureCausesPerId.add(new ObjectCountPair<String>(entry.getKey(), entry.getValue()));
+        }
+        Collections.sort(nbrOfFailureCausesPerId, ObjectCountPair.countComparator());
         return nbrOfFailureCausesPerId;
     }
 
+    /**
+     * Adds a number to the number of a key.
+     *
+     * @param numbers the numbers by key.
+     * @param key the key.
+     * @param number the number to add.
+     * @param <K> the type of the key.
+     */
+    private static <K> void addNumber(Map<K, Integer> numbers, K key, int number) {
+        Integer current = numbers.get(key);
+        if (current == null) {
+            numbers.put(key, number);
+        } else {
+            numbers.put(key, current + number);
+        }
+    }
+
     @Override
     public Date getLatestFailureForCause(String id) {
 
@@ -686,6 +1292,36 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
         }
     }
 
+    /**
+     * Sets the time at which each FailureCause last occurred, unless it is already later.
+     * The causes that share a time are updated together. The condition on the current value does what
+     * <code>$max</code> does, which is only available from MongoDB 2.6.
+     *
+     * @param lastSeen the time each FailureCause last occurred, by id.
+     */
+    @Override
+    public void updateLastSeen(Map<String, Date> lastSeen) {
+        try {
+            for (Map.Entry<Date, List<String>> entry : groupByDate(lastSeen).entrySet()) {
+                List<ObjectId> objectIds = new LinkedList<ObjectId>();
+                for (String id : entry.getValue()) {
+                    objectIds.add(new ObjectId(id));
+                }
+                BasicDBList earlier = new BasicDBList();
+                earlier.add(new BasicDBObject("lastOccurred", new BasicDBObject("$lt", entry.getKey())));
+                earlier.add(new BasicDBObject("lastOccurred", new BasicDBObject("$exists", false)));
+                DBObject match = new BasicDBObject("_id", new BasicDBObject("$in", objectIds));
+                match.put("$or", earlier);
+                DBObject set = new BasicDBObject("$set", new BasicDBObject("lastOccurred", entry.getKey()));
+                getJacksonCollection().updateMulti(match, set);
+            }
+        } catch (UnknownHostException e) {
+            logger.log(Level.WARNING, "Failed connecting to MongoDB when updating FailureCauses' last occurrence", e);
+        } catch (AuthenticationException e) {
+            logger.log(Level.WARNING, "Failed authentication when updating FailureCauses' last occurrence", e);
+        }
+    }
+
     /**
      * Generates a DBObject used for matching data as part of a MongoDb
      * aggregation query.
@@ -881,9 +1517,6 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
         List<FailureCauseTimeInterval> failureCauseIntervals = new ArrayList<FailureCauseTimeInterval>();
         Map<MultiKey, FailureCauseTimeInterval> categoryTable = new HashMap<MultiKey, FailureCauseTimeInterval>();
 
-        DBObject matchFields = generateMatchFields(filter);
-        DBObject match = new BasicDBObject("$match", matchFields);
-
         DBObject unwind = new BasicDBObject("$unwind", "$failureCauses");
 
         DBObject idFields = generateTimeGrouping(intervalSize);
@@ -893,17 +1526,31 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
         groupFields.put("number", new BasicDBObject("$sum", 1));
         DBObject group = new BasicDBObject("$group", groupFields);
 
-        AggregationOutput output;
-        try {
-            output = getStatisticsCollection().aggregate(match, unwind, group);
-            for (DBObject result : output.results()) {
-                int number = (Integer)result.get("number");
+        DBObject rollupMatch = new BasicDBObject("$match",
+                new BasicDBObject("failureCause", new BasicDBObject("$ne", null)));
+        DBObject rollupIdFields = generateTimeGrouping(intervalSize);
+        rollupIdFields.put("failureCause", "$failureCause");
+        DBObject rollupGroupFields = new BasicDBObject();
+        rollupGroupFields.put("_id", rollupIdFields);
+        rollupGroupFields.put("number", new BasicDBObject("$sum", "$count"));
+        DBObject rollupGroup = new BasicDBObject("$group", rollupGroupFields);
 
+        try {
+            Map<MultiKey, Integer> numbers = new LinkedHashMap<MultiKey, Integer>();
+            List<DBObject> results = aggregateStatistics(filter, asList(unwind, group),
+                    asList(rollupMatch, rollupGroup));
+            for (DBObject result : results) {
                 TimePeriod period = generateTimePeriodFromResult(result, intervalSize);
-
                 BasicDBObject groupedAttrs = (BasicDBObject)result.get("_id");
-                DBRef failureRef = (DBRef)groupedAttrs.get("failureCause");
-                String id = failureRef.getId().toString();
+                String id = getCauseId(groupedAttrs.get("failureCause")).toString();
+                addNumber(numbers, new MultiKey(period, id), ((Number)result.get("number")).intValue());
+            }
+            for (Entry<MultiKey, Integer> entry : numbers.entrySet()) {
+                int number = entry.getValue();
+
+                TimePeriod period = (TimePeriod)entry.getKey().getKey(0);
+
+                String id = (String)entry.getKey().getKey(1);
                 FailureCause failureCause = getCause(id);
 
                 if (byCategories) {
@@ -1098,6 +1745,17 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
         return collection;
     }
 
+    /**
+     * Gets the coalescer of the concurrent graph queries.
+     * @return the coalescer.
+     */
+    private synchronized QueryCoalescer getCoalescer() {
+        if (coalescer == null) {
+            coalescer = new QueryCoalescer();
+        }
+        return coalescer;
+    }
+
     /**
      * Gets the Statistics DBCollection.
      * @return The statistics db collection.
@@ -1111,6 +1769,40 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
         return statisticsCollection;
     }
 
+    /**
+     * Gets the DBCollection with the statistics rollups.
+     * @return The rollup db collection.
+     * @throws UnknownHostException if the host cannot be found.
+     * @throws AuthenticationException if we cannot authenticate towards the database.
+     */
+    private synchronized DBCollection getRollupCollection() throws UnknownHostException, AuthenticationException {
+        if (rollupCollection == null) {
+            DBCollection rollups = getDb().getCollection(STATISTICS_ROLLUP_COLLECTION_NAME);
+            DBObject index = new BasicDBObject("startingTime", 1);
+            index.put("failureCause", 1);
+            index.put("projectName", 1);
+            index.put("master", 1);
+            index.put("slaveHostName", 1);
+            index.put("result", 1);
+            rollups.ensureIndex(index);
+            rollupCollection = rollups;
+        }
+        return rollupCollection;
+    }
+
+    /**
+     * Gets the DBCollection with the state of the statistics rollups.
+     * @return The rollup state db collection.
+     * @throws UnknownHostException if the host cannot be found.
+     * @throws AuthenticationException if we cannot authenticate towards the database.
+     */
+    private synchronized DBCollection getRollupStateCollection() throws UnknownHostException, AuthenticationException {
+        if (rollupStateCollection == null) {
+            rollupStateCollection = getDb().getCollection(ROLLUP_STATE_COLLECTION_NAME);
+        }
+        return rollupStateCollection;
+    }
+
     /**
      * Gets the JacksonDBCollection for FailureCauses.
      * @return The jackson db collection.
@@ -1240,5 +1932,38 @@ public class MongoDBKnowledgeBase extends KnowledgeBase {
             }
             return FormValidation.ok(Messages.MongoDBKnowledgeBase_ConnectionOK());
         }
+
+        /**
+         * Starts rebuilding the statistics rollups of the saved knowledge base in the background.
+         * @return {@link FormValidation#ok() } if the rebuild was started,
+         *         {@link FormValidation#error(java.lang.String) } otherwise.
+         */
+        public FormValidation doRebuildRollups() {
+            Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+            KnowledgeBase knowledgeBase = PluginImpl.getInstance().getKnowledgeBase();
+            if (!(knowledgeBase instanceof MongoDBKnowledgeBase)) {
+                return FormValidation.error(Messages.MongoDBKnowledgeBase_RollupsNotSaved());
+            }
+            final MongoDBKnowledgeBase base = (MongoDBKnowledgeBase)knowledgeBase;
+            if (!REBUILDING_ROLLUPS.compareAndSet(false, true)) {
+                return FormValidation.warning(Messages.MongoDBKnowledgeBase_RollupsRebuilding());
+            }
+            Thread rebuild = new Thread("BFA statistics rollup rebuild") {
+                @Override
+                public void run() {
+                    try {
+                        base.rebuildRollups();
+                        logger.info("Rebuilt the statistics rollups");
+                    } catch (Exception e) {
+                        logger.log(Level.WARNING, "Failed to rebuild the statistics rollups", e);
+                    } finally {
+                        REBUILDING_ROLLUPS.set(false);
+                    }
+                }
+            };
+            rebuild.setDaemon(true);
+            rebuild.start();
+            return FormValidation.ok(Messages.MongoDBKnowledgeBase_RollupsStarted());
+        }
     }
 }
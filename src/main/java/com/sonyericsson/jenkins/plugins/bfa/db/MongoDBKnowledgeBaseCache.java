@@ -24,22 +24,33 @@
 
 package com.sonyericsson.jenkins.plugins.bfa.db;
 
+import com.mongodb.BasicDBObject;
 import com.mongodb.MongoException;
+import com.sonyericsson.jenkins.plugins.bfa.metrics.MetricsRegistry;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.PatternCache;
 import net.vz.mongodb.jackson.DBCursor;
 import net.vz.mongodb.jackson.JacksonDBCollection;
 
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static com.sonyericsson.jenkins.plugins.bfa.db.MongoDBKnowledgeBase.NOT_REMOVED_QUERY;
+import static com.sonyericsson.jenkins.plugins.bfa.db.MongoDBKnowledgeBase.UPDATED_FIELD;
 
 /**
  * Cache for the MongoDBKnowledgeBase.
+ * The first update reads the whole collection, later updates only fetch the causes whose
+ * {@link MongoDBKnowledgeBase#UPDATED_FIELD} is newer than the previous update and apply them to the cached causes.
+ * A full read is still made every {@link #FULL_SYNC_INTERVAL} updates to pick up changes made by
+ * writers that do not maintain the field.
  *
  * @author Tomas Westling &lt;tomas.westling@sonyericsson.com&gt;
  */
@@ -49,13 +60,37 @@ public class MongoDBKnowledgeBaseCache {
     private UpdateThread updaterThread;
     private Timer timer;
     private TimerTask timerTask;
-    private List<FailureCause> cachedFailureCauses;
-    private List<String> categories;
+    private volatile List<FailureCause> cachedFailureCauses;
     private JacksonDBCollection<FailureCause, String> jacksonCollection;
+    private final Map<String, FailureCause> causesById = new LinkedHashMap<String, FailureCause>();
+    private Date watermark;
+    private int syncsSinceFullSync;
+    private int lastFetchedCount;
+    private boolean indexEnsured;
+    private final MetricsRegistry.Gauge sizeGauge = new MetricsRegistry.Gauge() {
+        @Override
+        public Number getValue() {
+            List<FailureCause> causes = cachedFailureCauses;
+            if (causes == null) {
+                return null;
+            }
+            return causes.size();
+        }
+    };
 
     private static final long CACHE_UPDATE_INTERVAL = 60000;
+    private static final String SIZE_METRIC = "knowledgeBase.cache.size";
+    private static final String REFRESH_METRIC = "knowledgeBase.cache.refresh.ms";
+    /**
+     * The number of incremental updates between two full reads of the collection.
+     */
+    static final int FULL_SYNC_INTERVAL = 60;
+    /**
+     * How far before the previous update incremental updates look,
+     * to not miss changes from masters whose clocks are a bit behind.
+     */
+    static final long CLOCK_SKEW_MARGIN = 300000;
     private static final Logger logger = Logger.getLogger(MongoDBKnowledgeBase.class.getName());
-
     /**
      * Standard constructor.
      * @param jacksonCollection the JacksonDBCollection, used for accessing the database.
@@ -79,6 +114,7 @@ public class MongoDBKnowledgeBaseCache {
             }
         };
         timer.scheduleAtFixedRate(timerTask, 0, CACHE_UPDATE_INTERVAL);
+        MetricsRegistry.getInstance().register(SIZE_METRIC, sizeGauge);
     }
 
     /**
@@ -90,6 +126,7 @@ public class MongoDBKnowledgeBaseCache {
         timerTask = null;
         updaterThread.stopThread();
         updaterThread = null;
+        MetricsRegistry.getInstance().unregister(SIZE_METRIC, sizeGauge);
     }
 
     /**
@@ -110,11 +147,96 @@ public class MongoDBKnowledgeBaseCache {
     }
 
     /**
-     * Getter for the categories of all FailureCauses.
-     * @return the categories.
+     * Brings the cached causes up to date with the database.
+     * Reads the whole collection the first time and every {@link #FULL_SYNC_INTERVAL} times,
+     * otherwise only the causes added, changed or removed since the previous update.
+     * A failed update leaves the watermark where it was, so the next update fetches the same changes again.
+     * The duration of the update is recorded in the {@link MetricsRegistry}.
+     */
+    synchronized void sync() {
+        Date syncStart = new Date();
+        try {
+            doSync(syncStart);
+        } finally {
+            MetricsRegistry.getInstance().getDurationHistogram(REFRESH_METRIC)
+                    .record(System.currentTimeMillis() - syncStart.getTime());
+        }
+    }
+
+    /**
+     * Brings the cached causes up to date with the database, see {@link #sync()}.
+     *
+     * @param syncStart when the update started, the watermark of the next update.
+     */
+    private void doSync(Date syncStart) {
+        if (!indexEnsured) {
+            jacksonCollection.ensureIndex(new BasicDBObject(UPDATED_FIELD, 1));
+            indexEnsured = true;
+        }
+        if (watermark == null || syncsSinceFullSync >= FULL_SYNC_INTERVAL) {
+            fullSync();
+        } else {
+            deltaSync(new Date(watermark.getTime() - CLOCK_SKEW_MARGIN));
+            if (lastFetchedCount == 0) {
+                //Keep the published list, so that the knowledge base snapshot built from it is kept as well.
+                watermark = syncStart;
+                return;
+            }
+        }
+        cachedFailureCauses = new LinkedList<FailureCause>(causesById.values());
+        watermark = syncStart;
+    }
+
+    /**
+     * Replaces the cached causes with all causes in the database.
+     */
+    private void fullSync() {
+        Map<String, FailureCause> all = new LinkedHashMap<String, FailureCause>();
+        DBCursor<FailureCause> dbCauses = jacksonCollection.find(NOT_REMOVED_QUERY);
+        while (dbCauses.hasNext()) {
+            FailureCause cause = dbCauses.next();
+            all.put(cause.getId(), cause);
+        }
+        causesById.clear();
+        causesById.putAll(all);
+        lastFetchedCount = all.size();
+        syncsSinceFullSync = 0;
+    }
+
+    /**
+     * Applies the causes that have been updated after the given time to the cached causes.
+     *
+     * @param since the time of the oldest change to fetch.
+     */
+    private void deltaSync(Date since) {
+        BasicDBObject changedSince = new BasicDBObject(UPDATED_FIELD, new BasicDBObject("$gt", since));
+        BasicDBObject changedQuery = new BasicDBObject(changedSince);
+        changedQuery.putAll(NOT_REMOVED_QUERY.toMap());
+        int fetched = 0;
+        DBCursor<FailureCause> changed = jacksonCollection.find(changedQuery);
+        while (changed.hasNext()) {
+            FailureCause cause = changed.next();
+            causesById.put(cause.getId(), cause);
+            fetched++;
+        }
+        BasicDBObject removedQuery = new BasicDBObject(changedSince);
+        removedQuery.put("_removed", new BasicDBObject("$exists", true));
+        DBCursor<FailureCause> removed = jacksonCollection.find(removedQuery, new BasicDBObject("_id", 1));
+        while (removed.hasNext()) {
+            causesById.remove(removed.next().getId());
+            fetched++;
+        }
+        lastFetchedCount = fetched;
+        syncsSinceFullSync++;
+    }
+
+    /**
+     * The number of documents that were read from the database by the latest update.
+     *
+     * @return the number of documents.
      */
-    public List<String> getCategories() {
-        return categories;
+    int getLastFetchedCount() {
+        return lastFetchedCount;
     }
 
     /**
@@ -130,13 +252,14 @@ public class MongoDBKnowledgeBaseCache {
                         if (stop) {
                             break;
                         }
-                        List<FailureCause> list = new LinkedList<FailureCause>();
-                        DBCursor<FailureCause> dbCauses =  jacksonCollection.find(NOT_REMOVED_QUERY);
-                        while (dbCauses.hasNext()) {
-                            list.add(dbCauses.next());
+                        sync();
+                        if (logger.isLoggable(Level.FINE)) {
+                            PatternCache patternCache = PatternCache.getInstance();
+                            logger.log(Level.FINE, "Updated cache with {0} changed causes, {1} compiled patterns cached,"
+                                    + " pattern cache hit rate {2}",
+                                    new Object[]{lastFetchedCount, patternCache.getPatternCount(),
+                                            patternCache.getHitRate()});
                         }
-                        cachedFailureCauses = list;
-                        categories = jacksonCollection.distinct("categories");
                     } catch (MongoException e) {
                         logger.log(Level.SEVERE, "MongoException caught when updating cache: " + e);
                     } catch (InterruptedException e) {
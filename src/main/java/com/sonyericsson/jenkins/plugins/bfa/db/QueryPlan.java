@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.db;
+
+import com.mongodb.DBObject;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The query plan the database chose for one of the graph queries.
+ * Made from the output of <code>explain</code>, in both the format of MongoDB 2.x and of later versions.
+ */
+public class QueryPlan {
+
+    private final String name;
+    private final String query;
+    private final String indexName;
+    private final boolean collectionScan;
+    private final long examined;
+    private final long returned;
+
+    /**
+     * Standard constructor.
+     *
+     * @param name the name of the query.
+     * @param query the query that was explained.
+     * @param explain the output of explain.
+     */
+    public QueryPlan(String name, DBObject query, DBObject explain) {
+        this.name = name;
+        this.query = String.valueOf(query);
+        Object cursor = find(explain, "cursor");
+        Object index = find(explain, "indexName");
+        if (index == null && cursor != null && cursor.toString().startsWith("BtreeCursor ")) {
+            index = cursor.toString().substring("BtreeCursor ".length());
+        }
+        if (index == null) {
+            this.indexName = null;
+        } else {
+            this.indexName = index.toString();
+        }
+        Object winningPlan = find(explain, "winningPlan");
+        if (winningPlan == null) {
+            this.collectionScan = cursor != null && cursor.toString().startsWith("BasicCursor");
+        } else {
+            this.collectionScan = contains(winningPlan, "COLLSCAN");
+        }
+        this.examined = getLong(explain, "nscannedObjects", "totalDocsExamined");
+        this.returned = getLong(explain, "n", "nReturned");
+    }
+
+    /**
+     * The name of the query.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The query that was explained.
+     *
+     * @return the query.
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * The index used by the query.
+     *
+     * @return the name of the index, or null if none was used.
+     */
+    public String getIndexName() {
+        return indexName;
+    }
+
+    /**
+     * Tells if the query scans the whole collection instead of using an index.
+     *
+     * @return true if the query does not use an index.
+     */
+    public boolean isCollectionScan() {
+        return collectionScan;
+    }
+
+    /**
+     * The number of documents the query examined.
+     *
+     * @return the number of documents, or -1 if not known.
+     */
+    public long getExamined() {
+        return examined;
+    }
+
+    /**
+     * The number of documents the query returned.
+     *
+     * @return the number of documents, or -1 if not known.
+     */
+    public long getReturned() {
+        return returned;
+    }
+
+    /**
+     * Gets the first of some numbers found in the output of explain.
+     *
+     * @param explain the output of explain.
+     * @param keys the keys of the number in the formats of different versions.
+     * @return the number, or -1 if not found.
+     */
+    private static long getLong(DBObject explain, String... keys) {
+        for (String key : keys) {
+            Object value = find(explain, key);
+            if (value instanceof Number) {
+                return ((Number)value).longValue();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first value of a key, depth first.
+     *
+     * @param object the object to search.
+     * @param key the key.
+     * @return the value, or null if not found.
+     */
+    private static Object find(Object object, String key) {
+        if (object instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>)object;
+            if (map.containsKey(key)) {
+                return map.get(key);
+            }
+            for (Object value : map.values()) {
+                Object found = find(value, key);
+                if (found != null) {
+                    return found;
+                }
+            }
+        } else if (object instanceof List) {
+            for (Object value : (List<?>)object) {
+                Object found = find(value, key);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tells if a string value is found anywhere.
+     *
+     * @param object the object to search.
+     * @param string the string.
+     * @return true if found.
+     */
+    private static boolean contains(Object object, String string) {
+        if (object instanceof String) {
+            return object.equals(string);
+        } else if (object instanceof Map) {
+            for (Object value : ((Map<?, ?>)object).values()) {
+                if (contains(value, string)) {
+                    return true;
+                }
+            }
+        } else if (object instanceof List) {
+            for (Object value : (List<?>)object) {
+                if (contains(value, string)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
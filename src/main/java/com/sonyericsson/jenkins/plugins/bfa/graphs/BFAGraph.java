@@ -24,22 +24,39 @@
 
 package com.sonyericsson.jenkins.plugins.bfa.graphs;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
 
 import hudson.model.Job;
 import hudson.model.Run;
 import hudson.util.Graph;
 import hudson.util.RunList;
+import org.jfree.data.general.Dataset;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 
 /**
  * Graph for the BFA plugin.
+ * When it has a cache key, its dataset and rendered images are cached in the {@link GraphCache}.
+ *
+ * @param <D> the type of the dataset of the graph.
  * @author Fredrik Persson &lt;fredrik6.persson@sonymobile.com&gt;
  * @author Christoffer Lauri &lt;christoffer.lauri@sonymobile.com&gt;
  *
  */
-public abstract class BFAGraph extends Graph {
+public abstract class BFAGraph<D extends Dataset> extends Graph {
+    private static final Logger logger = Logger.getLogger(BFAGraph.class.getName());
 
     /**
      * The project that this graph is plotting values for. Is null for non-project graphs.
@@ -80,6 +97,11 @@ public abstract class BFAGraph extends Graph {
      */
     public static final int MAX_YEARS_FOR_TIME_GRAPH = 3;
 
+    private final long timestamp;
+    private final int defaultW;
+    private final int defaultH;
+    private GraphCacheKey cacheKey;
+
     /**
      * Default constructor.
      *
@@ -102,11 +124,111 @@ public abstract class BFAGraph extends Graph {
             Job project, GraphFilterBuilder filter,
             String graphTitle) {
         super(timestamp, defaultW, defaultH);
+        this.timestamp = timestamp;
+        this.defaultW = defaultW;
+        this.defaultH = defaultH;
         this.project = project;
         this.filter = filter;
         this.graphTitle = graphTitle;
     }
 
+    /**
+     * Sets the key to cache the dataset and images of this graph with.
+     *
+     * @param cacheKey the key, or null to not cache them.
+     */
+    public void setCacheKey(GraphCacheKey cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
+    /**
+     * Creates the dataset needed for this graph.
+     *
+     * @return dataset
+     */
+    protected abstract D createDataset();
+
+    /**
+     * Gets the dataset needed for this graph, from the {@link GraphCache} if this graph has a cache key.
+     *
+     * @return dataset
+     */
+    protected D getDataset() {
+        if (cacheKey == null) {
+            return createDataset();
+        }
+        try {
+            return GraphCache.getInstance().getDataset(cacheKey, new Callable<D>() {
+                @Override
+                public D call() throws Exception {
+                    return createDataset();
+                }
+            });
+        } catch (ExecutionException e) {
+            logger.log(Level.WARNING, "Could not cache the dataset of " + cacheKey, e);
+            return createDataset();
+        }
+    }
+
+    /**
+     * Renders the graph as a PNG image, which is cached in the {@link GraphCache} if this graph has a cache key.
+     *
+     * @param req the stapler request.
+     * @param rsp the stapler response.
+     * @throws IOException if the image cannot be written.
+     */
+    @Override
+    public void doPng(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if (cacheKey == null) {
+            super.doPng(req, rsp);
+            return;
+        }
+        if (req.checkIfModified(timestamp, rsp)) {
+            return;
+        }
+        final int width = getSize(req.getParameter("width"), defaultW);
+        final int height = getSize(req.getParameter("height"), defaultH);
+        byte[] image;
+        try {
+            image = GraphCache.getInstance().getImage(cacheKey, width, height, new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    BufferedImage bufferedImage = createGraph().createBufferedImage(width, height);
+                    ByteArrayOutputStream png = new ByteArrayOutputStream();
+                    ImageIO.write(bufferedImage, "PNG", png);
+                    return png.toByteArray();
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new IOException("Could not render " + cacheKey, e);
+        }
+        rsp.setContentType("image/png");
+        OutputStream os = rsp.getOutputStream();
+        os.write(image);
+        os.close();
+    }
+
+    /**
+     * Parses a size request parameter.
+     *
+     * @param parameter the parameter.
+     * @param defaultSize the size to use when the parameter is missing or not a positive number.
+     * @return the size.
+     */
+    private static int getSize(String parameter, int defaultSize) {
+        if (parameter != null) {
+            try {
+                int size = Integer.parseInt(parameter);
+                if (size > 0) {
+                    return size;
+                }
+            } catch (NumberFormatException e) {
+                logger.fine("Not a graph size: " + parameter);
+            }
+        }
+        return defaultSize;
+    }
+
     /**
      * Gets a list of build numbers that exist for the argument project.
      * @param project the project to list build numbers for
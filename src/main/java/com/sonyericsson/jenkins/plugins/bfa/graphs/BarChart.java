@@ -45,7 +45,7 @@ import com.sonyericsson.jenkins.plugins.bfa.utils.ObjectCountPair;
  * @author Fredrik Persson &lt;fredrik6.persson@sonymobile.com&gt;
  *
  */
-public class BarChart extends BFAGraph {
+public class BarChart extends BFAGraph<CategoryDataset> {
     private boolean byCategories;
     /**
      * Maximum bar size (quota of available space in graph).
@@ -72,7 +72,7 @@ public class BarChart extends BFAGraph {
 
     @Override
     protected JFreeChart createGraph() {
-        CategoryDataset dataset = createDataset();
+        CategoryDataset dataset = getDataset();
         JFreeChart chart = ChartFactory.createBarChart(graphTitle, "", "Number of failures", dataset,
                 PlotOrientation.HORIZONTAL, false, false, false);
 
@@ -92,7 +92,8 @@ public class BarChart extends BFAGraph {
      * Creates the dataset needed for this graph.
      * @return dataset
      */
-    private CategoryDataset createDataset() {
+    @Override
+    protected CategoryDataset createDataset() {
         DefaultCategoryDataset dataset = new DefaultCategoryDataset();
         KnowledgeBase knowledgeBase = PluginImpl.getInstance().getKnowledgeBase();
         List<ObjectCountPair<String>> failureItems;
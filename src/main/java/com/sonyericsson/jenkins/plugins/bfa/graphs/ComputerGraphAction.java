@@ -26,7 +26,6 @@ package com.sonyericsson.jenkins.plugins.bfa.graphs;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 import com.sonyericsson.jenkins.plugins.bfa.BfaGraphAction;
 import com.sonyericsson.jenkins.plugins.bfa.PluginImpl;
@@ -45,6 +44,8 @@ import hudson.util.Graph;
  *
  */
 public class ComputerGraphAction extends BfaGraphAction {
+    private static final String CACHE_OWNER = ComputerGraphAction.class.getSimpleName();
+
     /**
      * Title for graphs with failure causes
      */
@@ -219,13 +220,9 @@ public class ComputerGraphAction extends BfaGraphAction {
     }
 
     @Override
-    protected String getGraphCacheId(GraphType whichGraph, String reqTimePeriod,
+    protected GraphCacheKey getGraphCacheKey(GraphType whichGraph, String reqTimePeriod,
             boolean hideAborted, boolean forAllMasters) {
-        return getClass().getSimpleName() + ID_SEPARATOR
-                + whichGraph.getValue() + ID_SEPARATOR
-                + getNodeName() + ID_SEPARATOR
-                + reqTimePeriod + ID_SEPARATOR
-                + String.valueOf(hideAborted);
+        return new GraphCacheKey(CACHE_OWNER, getNodeName(), whichGraph, reqTimePeriod, hideAborted, false);
     }
 
     /**
@@ -234,9 +231,7 @@ public class ComputerGraphAction extends BfaGraphAction {
      */
     public static void invalidateNodeGraphCache(Computer computer) {
         if (computer != null) {
-            Pattern projectPattern = Pattern.compile("^.*" + ID_SEPARATOR
-                    + computer.getName() + ID_SEPARATOR + ".*$");
-            GraphCache.getInstance().invalidateMatching(projectPattern);
+            GraphCache.getInstance().invalidate(CACHE_OWNER, computer.getName());
         }
     }
 
@@ -23,40 +23,100 @@
  */
 package com.sonyericsson.jenkins.plugins.bfa.graphs;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import hudson.util.Graph;
+import com.google.common.cache.Weigher;
+import com.sonyericsson.jenkins.plugins.bfa.metrics.MetricsRegistry;
+import jenkins.model.Jenkins;
+import org.jfree.data.category.CategoryDataset;
+import org.jfree.data.general.Dataset;
+import org.jfree.data.general.PieDataset;
+import org.jfree.data.xy.XYDataset;
 
 /**
  *
- * A class for caching {@link Graph}-objects. Maps a string-key to each {@link Graph}-object.
+ * A class for caching graphs in two levels: the datasets, which are expensive to get from the knowledge base,
+ * and the rendered PNG images. Both are bounded by weight and keyed by {@link GraphCacheKey}. The datasets are
+ * also written to disk, so that they survive a restart of Jenkins.
+ * <p>
+ * All graphs about a scope, such as a project, are invalidated at once by bumping the generation of the scope.
+ * The cached entries of older generations are never asked for again, and are evicted like any other entry.
  *
  * @author Christoffer Lauri &lt;christoffer.lauri@sonymobile.com&gt;
  *
  */
 public final class GraphCache {
     private static final int EXPIRATION_TIME_MINUTES = 30;
+    private static final long EXPIRATION_TIME_MILLIS = TimeUnit.MINUTES.toMillis(EXPIRATION_TIME_MINUTES);
+    /**The maximum number of values in the cached datasets.*/
+    private static final int MAX_DATASET_VALUES = 1000000;
+    /**The maximum number of bytes in the cached images.*/
+    private static final int MAX_IMAGE_BYTES = 16 * 1024 * 1024;
+    private static final String DIRECTORY = "bfa-graph-cache";
+    private static final String SUFFIX = ".dataset";
+    private static final Logger logger = Logger.getLogger(GraphCache.class.getName());
     /**
      * The {@link GraphCache} instance.
      */
     private static GraphCache instance;
-    private Cache<String, Graph> cache;
+    private final Cache<VersionedKey, CachedDataset> datasets;
+    private final Cache<ImageKey, byte[]> images;
+    private final ConcurrentMap<Scope, AtomicLong> generations = new ConcurrentHashMap<Scope, AtomicLong>();
+    private final File directory;
+    private final AtomicLong datasetRequests = new AtomicLong();
+    private final AtomicLong datasetMisses = new AtomicLong();
+    private final AtomicLong imageRequests = new AtomicLong();
+    private final AtomicLong imageMisses = new AtomicLong();
 
     /**
-     * Private constructor that creates a new cache.
-     * Invalidation occurs at least {@link GraphCache#EXPIRATION_TIME_MINUTES} minutes after write.
+     * Constructor that creates new caches.
+     * Invalidation occurs at least {@link GraphCache#EXPIRATION_TIME_MINUTES} minutes after a dataset was made.
+     *
+     * @param directory the directory to write datasets to, or null to keep them in memory only.
      */
-    private GraphCache() {
-        cache = CacheBuilder.newBuilder().expireAfterWrite(EXPIRATION_TIME_MINUTES, TimeUnit.MINUTES).build();
+    GraphCache(File directory) {
+        this.directory = directory;
+        datasets = CacheBuilder.newBuilder()
+                .expireAfterWrite(EXPIRATION_TIME_MINUTES, TimeUnit.MINUTES)
+                .maximumWeight(MAX_DATASET_VALUES)
+                .weigher(new Weigher<VersionedKey, CachedDataset>() {
+                    @Override
+                    public int weigh(VersionedKey key, CachedDataset value) {
+                        return getValueCount(value.dataset);
+                    }
+                })
+                .build();
+        images = CacheBuilder.newBuilder()
+                .expireAfterWrite(EXPIRATION_TIME_MINUTES, TimeUnit.MINUTES)
+                .maximumWeight(MAX_IMAGE_BYTES)
+                .weigher(new Weigher<ImageKey, byte[]>() {
+                    @Override
+                    public int weigh(ImageKey key, byte[] value) {
+                        return value.length;
+                    }
+                })
+                .build();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            logger.warning("Could not create the graph cache directory " + directory);
+        }
     }
 
     /**
@@ -65,46 +125,74 @@ public final class GraphCache {
      */
     public static synchronized GraphCache getInstance() {
         if (instance == null) {
-            instance = new GraphCache();
+            File directory = null;
+            Jenkins jenkins = Jenkins.getInstance();
+            if (jenkins != null) {
+                directory = new File(jenkins.getRootDir(), DIRECTORY);
+            }
+            instance = new GraphCache(directory);
+            instance.registerMetrics();
         }
         return instance;
     }
 
     /**
-     * Invalidate the object with the specified key.
-     * @param key The key whose Graph to invalidate
+     * Invalidate the graph with the specified key.
+     * @param key The key whose dataset and images to invalidate
      */
-    public void invalidate(String key) {
-        cache.invalidate(key);
+    public void invalidate(GraphCacheKey key) {
+        VersionedKey versionedKey = new VersionedKey(key, getGeneration(key));
+        datasets.invalidate(versionedKey);
+        //The images of a graph are found by going through all images, since they are keyed by size as well.
+        for (ImageKey imageKey : images.asMap().keySet()) {
+            if (imageKey.key.equals(versionedKey)) {
+                images.invalidate(imageKey);
+            }
+        }
+        delete(getFile(key));
     }
 
     /**
-     * Invalidates all graphs matching argument pattern.
-     * @param pattern the pattern to match for graph ids
+     * Invalidates all graphs about a scope on a page, without going through the cached graphs.
+     * This is done for every completed build, so it only bumps the generation of the scope
+     * and deletes the few datasets of the scope written to disk.
+     * @param owner the name of the page
+     * @param scope the scope, such as a project name
+     * @see GraphCacheKey#isFor(String, String)
      */
-    public void invalidateMatching(Pattern pattern) {
-        for (String key : getMatchingCacheKeys(pattern)) {
-            invalidate(key);
+    public void invalidate(String owner, String scope) {
+        Scope key = new Scope(owner, scope);
+        AtomicLong generation = generations.get(key);
+        if (generation == null) {
+            AtomicLong newGeneration = new AtomicLong();
+            generation = generations.putIfAbsent(key, newGeneration);
+            if (generation == null) {
+                generation = newGeneration;
+            }
+        }
+        generation.incrementAndGet();
+        File scopeDirectory = getDirectory(key);
+        if (scopeDirectory != null) {
+            File[] files = scopeDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    delete(file);
+                }
+            }
         }
     }
 
     /**
-     * Gets all matching graph cache ids/keys.
-     * @param pattern the pattern to match for graph ids
-     * @return list of matching ids
+     * Gets the current generation of the scope of a graph.
+     * @param key the key of the graph
+     * @return the generation, 0 if the scope has not been invalidated since Jenkins started
      */
-    public List<String> getMatchingCacheKeys(Pattern pattern) {
-        List<String> keys = new ArrayList<String>();
-        if (cache != null) {
-            Set<String> keySet = cache.asMap().keySet();
-            for (String key : keySet) {
-                Matcher keyMatcher = pattern.matcher(key);
-                if (keyMatcher.matches()) {
-                    keys.add(key);
-                }
-            }
+    private long getGeneration(GraphCacheKey key) {
+        AtomicLong generation = generations.get(new Scope(key.getOwner(), key.getScope()));
+        if (generation == null) {
+            return 0;
         }
-        return keys;
+        return generation.get();
     }
 
     /**
@@ -116,16 +204,399 @@ public final class GraphCache {
     }
 
     /**
-     * Get the Graph corresponding to the specified key.
-     * If there is no cached graph for the specified key
-     * (or it has been invalidated) the specified
-     * Callable<Graph> will be called.
+     * Get the dataset of a graph.
+     * If there is no cached dataset for the specified key, it is read from disk when written there less than
+     * {@link #EXPIRATION_TIME_MINUTES} ago, or else the specified Callable will be called.
+     * @param key The key for the graph
+     * @param loader A callback to create the dataset that wasn't cached
+     * @param <D> The type of the dataset
+     * @return A cached dataset, or a new dataset if there was no cached one
+     * @throws ExecutionException If a dataset cannot be created
+     */
+    @SuppressWarnings("unchecked")
+    public <D extends Dataset> D getDataset(final GraphCacheKey key, final Callable<D> loader)
+            throws ExecutionException {
+        final long generation = getGeneration(key);
+        Callable<CachedDataset> load = new Callable<CachedDataset>() {
+            @Override
+            public CachedDataset call() throws Exception {
+                datasetMisses.incrementAndGet();
+                CachedDataset cached = read(key);
+                if (cached == null) {
+                    cached = new CachedDataset(loader.call(), System.currentTimeMillis());
+                    write(key, generation, cached);
+                }
+                return cached;
+            }
+        };
+        datasetRequests.incrementAndGet();
+        VersionedKey versionedKey = new VersionedKey(key, generation);
+        CachedDataset cached = datasets.get(versionedKey, load);
+        if (cached.isExpired()) {
+            //Read from disk close to its expiration.
+            invalidate(key);
+            cached = datasets.get(versionedKey, load);
+        }
+        return (D)cached.dataset;
+    }
+
+    /**
+     * Get a rendered image of a graph.
      * @param key The key for the graph
-     * @param callable A callback to construct the graph that wasn't cached
-     * @return A cached graph, or a new graph if there was no cached instance
-     * @throws ExecutionException If a graph e.g. cannot be generated
+     * @param width The width of the image
+     * @param height The height of the image
+     * @param renderer A callback to render the image that wasn't cached
+     * @return A cached PNG image, or a new image if there was no cached one
+     * @throws ExecutionException If the image cannot be rendered
+     */
+    public byte[] getImage(GraphCacheKey key, int width, int height, final Callable<byte[]> renderer)
+            throws ExecutionException {
+        imageRequests.incrementAndGet();
+        return images.get(new ImageKey(new VersionedKey(key, getGeneration(key)), width, height),
+                new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        imageMisses.incrementAndGet();
+                        return renderer.call();
+                    }
+                });
+    }
+
+    /**
+     * The share of the dataset requests that were answered from memory.
+     *
+     * @return the hit ratio between 0 and 1, or 0 if nothing has been requested yet.
+     */
+    public double getDatasetHitRatio() {
+        return getHitRatio(datasetRequests.get(), datasetMisses.get());
+    }
+
+    /**
+     * The share of the image requests that were answered from memory.
+     *
+     * @return the hit ratio between 0 and 1, or 0 if nothing has been requested yet.
+     */
+    public double getImageHitRatio() {
+        return getHitRatio(imageRequests.get(), imageMisses.get());
+    }
+
+    /**
+     * Calculates a hit ratio.
+     *
+     * @param requests the number of requests.
+     * @param misses the number of misses.
+     * @return the hit ratio between 0 and 1, or 0 if there are no requests.
+     */
+    private static double getHitRatio(long requests, long misses) {
+        if (requests == 0) {
+            return 0;
+        }
+        return (double)Math.max(requests - misses, 0) / requests;
+    }
+
+    /**
+     * Registers the hit ratios and sizes of the caches in the {@link MetricsRegistry}.
+     */
+    private void registerMetrics() {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.register("graphs.datasets.hitRatio", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return getDatasetHitRatio();
+            }
+        });
+        metrics.register("graphs.datasets.size", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return datasets.size();
+            }
+        });
+        metrics.register("graphs.images.hitRatio", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return getImageHitRatio();
+            }
+        });
+        metrics.register("graphs.images.size", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return images.size();
+            }
+        });
+    }
+
+    /**
+     * Counts the values in a dataset, as its weight in the cache.
+     * @param dataset the dataset
+     * @return the number of values, at least one
+     */
+    static int getValueCount(Dataset dataset) {
+        int count = 0;
+        if (dataset instanceof CategoryDataset) {
+            CategoryDataset categoryDataset = (CategoryDataset)dataset;
+            count = categoryDataset.getRowCount() * categoryDataset.getColumnCount();
+        } else if (dataset instanceof PieDataset) {
+            count = ((PieDataset)dataset).getItemCount();
+        } else if (dataset instanceof XYDataset) {
+            XYDataset xyDataset = (XYDataset)dataset;
+            for (int series = 0; series < xyDataset.getSeriesCount(); series++) {
+                count += xyDataset.getItemCount(series);
+            }
+        }
+        return Math.max(count, 1);
+    }
+
+    /**
+     * Gets the directory the datasets of a scope are written to.
+     * Scopes with the same hash code share a directory, and are then invalidated together.
+     * @param scope the scope
+     * @return the directory, or null if datasets are not written to disk
+     */
+    private File getDirectory(Scope scope) {
+        if (directory == null) {
+            return null;
+        }
+        return new File(directory, String.format("%08x", scope.hashCode()));
+    }
+
+    /**
+     * Gets the file a dataset is written to.
+     * @param key the key of the dataset
+     * @return the file, or null if datasets are not written to disk
+     */
+    private File getFile(GraphCacheKey key) {
+        File scopeDirectory = getDirectory(new Scope(key.getOwner(), key.getScope()));
+        if (scopeDirectory == null) {
+            return null;
+        }
+        return new File(scopeDirectory, String.format("%08x", key.hashCode()) + SUFFIX);
+    }
+
+    /**
+     * Deletes a file written to disk, if it exists.
+     * @param file the file, can be null
+     */
+    private static void delete(File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            logger.warning("Could not delete the cached graph " + file);
+        }
+    }
+
+    /**
+     * Reads a dataset written to disk less than {@link #EXPIRATION_TIME_MINUTES} ago.
+     * @param key the key of the dataset
+     * @return the dataset, or null if there is none
+     */
+    private CachedDataset read(GraphCacheKey key) {
+        File file = getFile(key);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            Object fileKey = in.readObject();
+            long created = in.readLong();
+            Dataset dataset = (Dataset)in.readObject();
+            CachedDataset cached = new CachedDataset(dataset, created);
+            //A different key with the same hash code could have been written to the file.
+            if (key.equals(fileKey) && !cached.isExpired()) {
+                return cached;
+            }
+        } catch (Exception e) {
+            logger.log(Level.FINE, "Could not read the cached graph " + file, e);
+        } finally {
+            close(in);
+        }
+        return null;
+    }
+
+    /**
+     * Writes a dataset to disk. A failure is only logged, since the dataset is still cached in memory.
+     * @param key the key of the dataset
+     * @param generation the generation of the scope when the dataset was made
+     * @param cached the dataset
+     */
+    private void write(GraphCacheKey key, long generation, CachedDataset cached) {
+        File file = getFile(key);
+        if (file == null) {
+            return;
+        }
+        File scopeDirectory = file.getParentFile();
+        if (!scopeDirectory.isDirectory() && !scopeDirectory.mkdirs()) {
+            logger.warning("Could not create the graph cache directory " + scopeDirectory);
+            return;
+        }
+        File tmp = new File(scopeDirectory, file.getName() + ".tmp");
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeObject(key);
+            out.writeLong(cached.created);
+            out.writeObject(cached.dataset);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file) && (!file.delete() || !tmp.renameTo(file))) {
+                throw new IOException("Could not rename " + tmp + " to " + file);
+            }
+            if (getGeneration(key) != generation) {
+                //The scope was invalidated while the dataset was made, after the files were deleted.
+                delete(file);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not write the cached graph " + file, e);
+        } finally {
+            close(out);
+            if (tmp.exists() && !tmp.delete()) {
+                logger.fine("Could not delete " + tmp);
+            }
+        }
+    }
+
+    /**
+     * Closes a stream, ignoring failures.
+     * @param stream the stream, can be null
+     */
+    private static void close(Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Could not close the stream", e);
+            }
+        }
+    }
+
+    /**
+     * A dataset and when it was made.
      */
-    public Graph get(String key, Callable<Graph> callable) throws ExecutionException {
-        return cache.get(key, callable);
+    private static final class CachedDataset {
+        private final Dataset dataset;
+        private final long created;
+
+        /**
+         * Standard constructor.
+         * @param dataset the dataset
+         * @param created when the dataset was made
+         */
+        private CachedDataset(Dataset dataset, long created) {
+            this.dataset = dataset;
+            this.created = created;
+        }
+
+        /**
+         * Tells if the dataset is older than {@link #EXPIRATION_TIME_MINUTES}.
+         * @return true if so
+         */
+        private boolean isExpired() {
+            return System.currentTimeMillis() - created >= EXPIRATION_TIME_MILLIS;
+        }
+    }
+
+    /**
+     * A scope on a page, whose graphs are invalidated together.
+     */
+    private static final class Scope {
+        private final String owner;
+        private final String scope;
+
+        /**
+         * Standard constructor.
+         * @param owner the name of the page
+         * @param scope the scope, such as a project name
+         */
+        private Scope(String owner, String scope) {
+            this.owner = owner;
+            this.scope = scope;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Scope)) {
+                return false;
+            }
+            Scope other = (Scope)obj;
+            return String.valueOf(owner).equals(String.valueOf(other.owner))
+                    && String.valueOf(scope).equals(String.valueOf(other.scope));
+        }
+
+        /**
+         * The hash code only depends on the strings, since it names the directories of persisted graphs.
+         * @return the hash code
+         */
+        @Override
+        public int hashCode() {
+            //CS IGNORE MagicNumber FOR NEXT 2 LINES. REASON: Hash multiplier.
+            return String.valueOf(owner).hashCode() * 31 + String.valueOf(scope).hashCode();
+        }
+    }
+
+    /**
+     * A graph in a generation of its scope.
+     */
+    private static final class VersionedKey {
+        private final GraphCacheKey key;
+        private final long generation;
+
+        /**
+         * Standard constructor.
+         * @param key the key of the graph
+         * @param generation the generation of the scope of the graph
+         */
+        private VersionedKey(GraphCacheKey key, long generation) {
+            this.key = key;
+            this.generation = generation;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof VersionedKey)) {
+                return false;
+            }
+            VersionedKey other = (VersionedKey)obj;
+            return key.equals(other.key) && generation == other.generation;
+        }
+
+        @Override
+        public int hashCode() {
+            //CS IGNORE MagicNumber FOR NEXT 2 LINES. REASON: Hash multiplier.
+            return key.hashCode() * 31 + (int)(generation ^ (generation >>> 32));
+        }
+    }
+
+    /**
+     * Identifies a rendered image of a graph.
+     */
+    private static final class ImageKey {
+        private final VersionedKey key;
+        private final int width;
+        private final int height;
+
+        /**
+         * Standard constructor.
+         * @param key the key of the graph
+         * @param width the width of the image
+         * @param height the height of the image
+         */
+        private ImageKey(VersionedKey key, int width, int height) {
+            this.key = key;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ImageKey)) {
+                return false;
+            }
+            ImageKey other = (ImageKey)obj;
+            return key.equals(other.key) && width == other.width && height == other.height;
+        }
+
+        @Override
+        public int hashCode() {
+            //CS IGNORE MagicNumber FOR NEXT 2 LINES. REASON: Hash multiplier.
+            return (key.hashCode() * 31 + width) * 31 + height;
+        }
     }
 }
@@ -0,0 +1,164 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.graphs;
+
+import java.io.Serializable;
+
+/**
+ * Identifies a graph in the {@link GraphCache}.
+ * The graph belongs to a page, such as the graphs of a project, and a scope on that page, such as the project name.
+ */
+public final class GraphCacheKey implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String owner;
+    private final String scope;
+    private final GraphType type;
+    private final String period;
+    private final boolean hideAborted;
+    private final boolean allMasters;
+
+    /**
+     * Standard constructor.
+     *
+     * @param owner the name of the page the graph is on.
+     * @param scope what the graph is about on that page, such as the name of a project or node.
+     * @param type the type of the graph.
+     * @param period the time period of the graph, or null if it does not depend on time.
+     * @param hideAborted if aborted builds are hidden.
+     * @param allMasters if the graph is for all masters.
+     */
+    public GraphCacheKey(String owner, String scope, GraphType type, String period, boolean hideAborted,
+            boolean allMasters) {
+        this.owner = owner;
+        this.scope = scope;
+        this.type = type;
+        this.period = period;
+        this.hideAborted = hideAborted;
+        this.allMasters = allMasters;
+    }
+
+    /**
+     * The name of the page the graph is on.
+     *
+     * @return the owner.
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * What the graph is about on its page.
+     *
+     * @return the scope.
+     */
+    public String getScope() {
+        return scope;
+    }
+
+    /**
+     * The type of the graph.
+     *
+     * @return the type.
+     */
+    public GraphType getType() {
+        return type;
+    }
+
+    /**
+     * Tells if this is a graph on a page about a scope.
+     *
+     * @param graphOwner the name of the page.
+     * @param graphScope the scope.
+     * @return true if so.
+     */
+    public boolean isFor(String graphOwner, String graphScope) {
+        return equals(owner, graphOwner) && equals(scope, graphScope);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof GraphCacheKey)) {
+            return false;
+        }
+        GraphCacheKey other = (GraphCacheKey)obj;
+        return isFor(other.owner, other.scope) && type == other.type && equals(period, other.period)
+                && hideAborted == other.hideAborted && allMasters == other.allMasters;
+    }
+
+    /**
+     * Null safe equals.
+     *
+     * @param first the first string.
+     * @param second the second string.
+     * @return true if both are null or equal.
+     */
+    private static boolean equals(String first, String second) {
+        if (first == null) {
+            return second == null;
+        }
+        return first.equals(second);
+    }
+
+    /**
+     * The hash code only depends on values that are the same in every JVM,
+     * since it names the files of persisted graphs.
+     *
+     * @return the hash code.
+     */
+    @Override
+    public int hashCode() {
+        //CS IGNORE MagicNumber FOR NEXT 10 LINES. REASON: Hash multiplier.
+        int hash = 17;
+        hash = hash * 31 + hashCode(owner);
+        hash = hash * 31 + hashCode(scope);
+        if (type != null) {
+            hash = hash * 31 + type.getValue();
+        }
+        hash = hash * 31 + hashCode(period);
+        hash = hash * 31 + Boolean.valueOf(hideAborted).hashCode();
+        return hash * 31 + Boolean.valueOf(allMasters).hashCode();
+    }
+
+    /**
+     * Null safe hash code.
+     *
+     * @param string the string.
+     * @return the hash code of the string, or 0 if it is null.
+     */
+    private static int hashCode(String string) {
+        if (string == null) {
+            return 0;
+        }
+        return string.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return owner + "[" + scope + "]:" + type + ":" + period + ":" + hideAborted + ":" + allMasters;
+    }
+}
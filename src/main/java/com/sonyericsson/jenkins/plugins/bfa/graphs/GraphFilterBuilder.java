@@ -23,6 +23,8 @@
  */
 package com.sonyericsson.jenkins.plugins.bfa.graphs;
 
+import com.google.common.base.Objects;
+
 import java.util.Date;
 import java.util.List;
 
@@ -162,4 +164,32 @@ public class GraphFilterBuilder {
         return excludeResult;
     }
 
+    /**
+     * Filters are equal when they allow the same items, so that identical queries can be shared.
+     * @param obj the other filter
+     * @return true if so
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof GraphFilterBuilder)) {
+            return false;
+        }
+        GraphFilterBuilder other = (GraphFilterBuilder)obj;
+        return Objects.equal(masterName, other.masterName)
+                && Objects.equal(slaveName, other.slaveName)
+                && Objects.equal(projectName, other.projectName)
+                && Objects.equal(buildNumbers, other.buildNumbers)
+                && Objects.equal(since, other.since)
+                && Objects.equal(result, other.result)
+                && Objects.equal(excludeResult, other.excludeResult);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(masterName, slaveName, projectName, buildNumbers, since, result, excludeResult);
+    }
+
 }
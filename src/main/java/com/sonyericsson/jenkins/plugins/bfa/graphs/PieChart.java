@@ -41,7 +41,7 @@ import com.sonyericsson.jenkins.plugins.bfa.utils.ObjectCountPair;
  * @author Fredrik Persson &lt;fredrik6.persson@sonymobile.com&gt;
  *
  */
-public class PieChart extends BFAGraph {
+public class PieChart extends BFAGraph<PieDataset> {
     private boolean byCategories;
 
     /**
@@ -64,7 +64,7 @@ public class PieChart extends BFAGraph {
 
     @Override
     protected JFreeChart createGraph() {
-        PieDataset dataset = createDataset();
+        PieDataset dataset = getDataset();
         return ChartFactory.createPieChart(graphTitle, dataset, true, true, false);
     }
 
@@ -72,7 +72,8 @@ public class PieChart extends BFAGraph {
      * Creates the dataset needed for this graph.
      * @return dataset
      */
-    private PieDataset createDataset() {
+    @Override
+    protected PieDataset createDataset() {
         DefaultPieDataset dataset = new DefaultPieDataset();
         KnowledgeBase knowledgeBase = PluginImpl.getInstance().getKnowledgeBase();
         List<ObjectCountPair<String>> nbrOfFailureCauses;
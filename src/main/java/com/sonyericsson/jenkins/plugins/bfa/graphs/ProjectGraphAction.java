@@ -29,7 +29,6 @@ import hudson.util.Graph;
 
 import java.util.Date;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 import com.sonyericsson.jenkins.plugins.bfa.BfaGraphAction;
 import com.sonyericsson.jenkins.plugins.bfa.utils.BfaUtils;
@@ -45,6 +44,7 @@ public class ProjectGraphAction extends BfaGraphAction {
     private static final int NBR_OF_BUILDS = 25;
 
     private static final String URL_NAME = "bfa-proj-graphs";
+    private static final String CACHE_OWNER = ProjectGraphAction.class.getSimpleName();
     private static final String PAGE_TITLE = "Statistics for project";
     private static final String GRAPH_TITLE_CAUSES = "Failure causes for this project";
     private static final String GRAPH_TITLE_CAUSES_SMALL = "Failure causes for this project last 30 days";
@@ -150,30 +150,22 @@ public class ProjectGraphAction extends BfaGraphAction {
     }
 
     @Override
-    protected String getGraphCacheId(GraphType whichGraph, String reqTimePeriod,
+    protected GraphCacheKey getGraphCacheKey(GraphType whichGraph, String reqTimePeriod,
             boolean hideAborted, boolean forAllMasters) {
-        String id;
         if (whichGraph == GraphType.BAR_CHART_BUILD_NBRS) {
-            id = getCacheIdForBuildNbrs(getProjectName());
-        } else {
-            id = getClass().getSimpleName() + ID_SEPARATOR
-                    + whichGraph.getValue() + ID_SEPARATOR
-                    + getProjectName() + ID_SEPARATOR
-                    + reqTimePeriod + ID_SEPARATOR
-                    + String.valueOf(hideAborted);
+            return getCacheKeyForBuildNbrs(getProjectName());
         }
-        return id;
+        return new GraphCacheKey(CACHE_OWNER, getProjectName(), whichGraph, reqTimePeriod, hideAborted, false);
     }
 
     /**
-     * Get the cache-id for a {@link BfaGraphAction#BAR_CHART_BUILD_NBRS} for the project name.
+     * Get the cache key for a {@link GraphType#BAR_CHART_BUILD_NBRS} for the project name.
+     * The graph shows the latest builds, whatever the time period.
      * @param projectName The name of the project
-     * @return The id
+     * @return The key
      */
-    private static String getCacheIdForBuildNbrs(String projectName) {
-        return ProjectGraphAction.class.getSimpleName() + ID_SEPARATOR
-                + projectName + ID_SEPARATOR
-                + GraphType.BAR_CHART_BUILD_NBRS.getValue();
+    private static GraphCacheKey getCacheKeyForBuildNbrs(String projectName) {
+        return new GraphCacheKey(CACHE_OWNER, projectName, GraphType.BAR_CHART_BUILD_NBRS, null, false, false);
     }
 
     /**
@@ -192,7 +184,7 @@ public class ProjectGraphAction extends BfaGraphAction {
      * @param project The project whose build number graph to invalidate
      */
     public static void invalidateBuildNbrGraphCache(Job project) {
-        GraphCache.getInstance().invalidate(ProjectGraphAction.getCacheIdForBuildNbrs(project.getFullName()));
+        GraphCache.getInstance().invalidate(ProjectGraphAction.getCacheKeyForBuildNbrs(project.getFullName()));
     }
 
     /**
@@ -200,8 +192,6 @@ public class ProjectGraphAction extends BfaGraphAction {
      * @param project The project whose graphs to invalidate
      */
     public static void invalidateProjectGraphCache(Job project) {
-        Pattern projectPattern = Pattern.compile("^.*" + ID_SEPARATOR
-                + project.getFullName() + ID_SEPARATOR + ".*$");
-        GraphCache.getInstance().invalidateMatching(projectPattern);
+        GraphCache.getInstance().invalidate(CACHE_OWNER, project.getFullName());
     }
 }
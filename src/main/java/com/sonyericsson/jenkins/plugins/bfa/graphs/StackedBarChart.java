@@ -42,7 +42,7 @@ import org.jfree.data.category.DefaultCategoryDataset;
  * @author Fredrik Persson &lt;fredrik6.persson@sonymobile.com&gt;
  *
  */
-public abstract class StackedBarChart extends BFAGraph {
+public abstract class StackedBarChart extends BFAGraph<DefaultCategoryDataset> {
 
     /**
      * String used for creating "empty" x-values without y-values (if there are no failure causes).
@@ -67,7 +67,7 @@ public abstract class StackedBarChart extends BFAGraph {
 
     @Override
     protected JFreeChart createGraph() {
-        DefaultCategoryDataset dataset = createDataset();
+        DefaultCategoryDataset dataset = getDataset();
 
         JFreeChart chart = ChartFactory.createStackedBarChart(getTitle(), getXAxisTitle(), getYAxisTitle(), dataset,
                 PlotOrientation.VERTICAL, true, true, false);
@@ -88,12 +88,6 @@ public abstract class StackedBarChart extends BFAGraph {
         return chart;
     }
 
-    /**
-     * Creates the dataset used for plotting the graph.
-     * @return created dataset
-     */
-    protected abstract DefaultCategoryDataset createDataset();
-
     /**
      * Getter for the graph title.
      * @return graph title
@@ -62,7 +62,7 @@ import com.sonyericsson.jenkins.plugins.bfa.utils.ObjectCountPair;
  * @author Fredrik Persson &lt;fredrik6.persson@sonymobile.com&gt;
  *
  */
-public class TimeSeriesChart extends BFAGraph {
+public class TimeSeriesChart extends BFAGraph<TimeTableXYDataset> {
 
     private static final String Y_AXIS_LABEL = "Number";
     private static final int LIMIT_BEFORE_GROUPING = 8;
@@ -97,7 +97,7 @@ public class TimeSeriesChart extends BFAGraph {
 
     @Override
     protected JFreeChart createGraph() {
-        TimeTableXYDataset dataset = createDataset();
+        TimeTableXYDataset dataset = getDataset();
         ValueAxis xAxis = new DateAxis();
         xAxis.setLowerMargin(0.0);
         xAxis.setUpperMargin(0.0);
@@ -175,7 +175,8 @@ public class TimeSeriesChart extends BFAGraph {
      * Creates the dataset needed for this graph.
      * @return dataset
      */
-    private TimeTableXYDataset createDataset() {
+    @Override
+    protected TimeTableXYDataset createDataset() {
         TimeTableXYDataset dataset = new TimeTableXYDataset();
         excludedDataForPeriod = new HashMap<TimePeriod, List<FailureCauseTimeInterval>>();
         Set<String> topItems = new HashSet<String>();
@@ -70,7 +70,7 @@ public class TimeSeriesUnkownFailuresChart extends TimeSeriesChart {
 
     @Override
     protected JFreeChart createGraph() {
-        TimeTableXYDataset dataset = createDataset();
+        TimeTableXYDataset dataset = getDataset();
 
         ValueAxis xAxis = new DateAxis();
         xAxis.setLowerMargin(0.0);
@@ -96,7 +96,8 @@ public class TimeSeriesUnkownFailuresChart extends TimeSeriesChart {
      * Creates the dataset needed for this graph.
      * @return dataset
      */
-    private TimeTableXYDataset createDataset() {
+    @Override
+    protected TimeTableXYDataset createDataset() {
         TimeTableXYDataset dataset = new TimeTableXYDataset();
         KnowledgeBase knowledgeBase = PluginImpl.getInstance().getKnowledgeBase();
 
@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.metrics;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts values, such as durations, in buckets with fixed upper bounds.
+ * Recording a value only updates atomic counters, so it can be done on hot paths by many threads.
+ */
+public final class Histogram {
+    private final long[] bounds;
+    private final AtomicLongArray buckets;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Standard constructor.
+     *
+     * @param bounds the inclusive upper bounds of the buckets, in increasing order.
+     *               Larger values are counted in a last bucket without a bound.
+     */
+    public Histogram(long... bounds) {
+        this.bounds = bounds.clone();
+        this.buckets = new AtomicLongArray(bounds.length + 1);
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value the value.
+     */
+    public void record(long value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value > bounds[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * The number of recorded values.
+     *
+     * @return the count.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * The sum of the recorded values.
+     *
+     * @return the sum.
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * The largest recorded value.
+     *
+     * @return the max, or 0 if nothing has been recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * The number of recorded values that are less than or equal to a bound, like a Prometheus histogram bucket.
+     *
+     * @param boundIndex the index of the bound, the number of bounds for all values.
+     * @return the cumulative count.
+     */
+    public long getCumulativeCount(int boundIndex) {
+        long cumulative = 0;
+        for (int i = 0; i <= boundIndex; i++) {
+            cumulative += buckets.get(i);
+        }
+        return cumulative;
+    }
+
+    /**
+     * The histogram as JSON, with the count, sum and max, and the cumulative count of each bucket.
+     *
+     * @return the JSON object.
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("count", getCount());
+        json.put("sum", getSum());
+        json.put("max", getMax());
+        JSONArray jsonBuckets = new JSONArray();
+        long cumulative = 0;
+        for (int i = 0; i <= bounds.length; i++) {
+            cumulative += buckets.get(i);
+            JSONObject bucket = new JSONObject();
+            if (i < bounds.length) {
+                bucket.put("le", bounds[i]);
+            } else {
+                bucket.put("le", "+Inf");
+            }
+            bucket.put("count", cumulative);
+            jsonBuckets.add(bucket);
+        }
+        json.put("buckets", jsonBuckets);
+        return json;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.metrics;
+
+import net.sf.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The metrics of the internals of the plugin: histograms and counters updated where things happen,
+ * and gauges that the components register to be asked for their current values.
+ * Published as JSON by {@link com.sonyericsson.jenkins.plugins.bfa.CauseManagement#doMetrics}.
+ */
+public final class MetricsRegistry {
+
+    /**
+     * The upper bounds of the buckets of the duration histograms, in milliseconds.
+     */
+    //CS IGNORE MagicNumber FOR NEXT 2 LINES. REASON: Bucket bounds.
+    public static final long[] DURATION_BOUNDS_MILLIS =
+            {10, 50, 100, 500, 1000, 5000, 10000, 30000, 60000, 300000};
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+    private static final Logger logger = Logger.getLogger(MetricsRegistry.class.getName());
+
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentSkipListMap<String, Histogram>();
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentSkipListMap<String, AtomicLong>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentSkipListMap<String, Gauge>();
+
+    /**
+     * Singleton constructor.
+     */
+    private MetricsRegistry() {
+    }
+
+    /**
+     * The singleton instance.
+     *
+     * @return the instance.
+     */
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets a duration histogram, creating it the first time.
+     *
+     * @param name the name of the histogram.
+     * @return the histogram, with buckets from {@link #DURATION_BOUNDS_MILLIS}.
+     */
+    public Histogram getDurationHistogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram newHistogram = new Histogram(DURATION_BOUNDS_MILLIS);
+            histogram = histograms.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Gets a counter, creating it the first time.
+     *
+     * @param name the name of the counter.
+     * @return the counter.
+     */
+    public AtomicLong getCounter(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong();
+            counter = counters.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge registered with the same name.
+     *
+     * @param name the name of the gauge.
+     * @param gauge the gauge.
+     */
+    public void register(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Unregisters a gauge, if it is the registered one.
+     *
+     * @param name the name of the gauge.
+     * @param gauge the gauge.
+     */
+    public void unregister(String name, Gauge gauge) {
+        gauges.remove(name, gauge);
+    }
+
+    /**
+     * All metrics as JSON, grouped by kind and sorted by name.
+     * A gauge that fails is left out.
+     *
+     * @return the JSON object.
+     */
+    public JSONObject toJSON() {
+        JSONObject jsonGauges = new JSONObject();
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            try {
+                Number value = entry.getValue().getValue();
+                if (value != null) {
+                    jsonGauges.put(entry.getKey(), value);
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.FINE, "Could not get the value of the gauge " + entry.getKey(), e);
+            }
+        }
+        JSONObject jsonCounters = new JSONObject();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            jsonCounters.put(entry.getKey(), entry.getValue().get());
+        }
+        JSONObject jsonHistograms = new JSONObject();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            jsonHistograms.put(entry.getKey(), entry.getValue().toJSON());
+        }
+        JSONObject json = new JSONObject();
+        json.put("gauges", jsonGauges);
+        json.put("counters", jsonCounters);
+        json.put("histograms", jsonHistograms);
+        return json;
+    }
+
+    /**
+     * A current value, asked for when the metrics are published.
+     */
+    public interface Gauge {
+
+        /**
+         * The current value.
+         *
+         * @return the value, or null if there is none.
+         */
+        Number getValue();
+    }
+}
@@ -24,12 +24,17 @@
 
 package com.sonyericsson.jenkins.plugins.bfa.model;
 
+import com.sonyericsson.jenkins.plugins.bfa.PluginImpl;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.MatchingEngine;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.PatternSet;
 import com.sonyericsson.jenkins.plugins.bfa.model.indication.BuildLogIndication;
 import com.sonyericsson.jenkins.plugins.bfa.model.indication.FoundIndication;
 import hudson.model.Run;
+import jenkins.model.Jenkins;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -63,31 +68,68 @@ public class BuildLogFailureReader extends FailureReader {
      */
     @Override
     public FoundIndication scan(Run build) throws IOException {
-        String currentFile = build.getLogFile().getName();
-        BufferedReader reader = null;
+        return getFoundIndication(FailureReader.scanBuildLog(compile(), build, isMemoryMappedScanning()));
+    }
+
+    /**
+     * Scans for the indication in a build log that is already open,
+     * like a reader of a {@link com.sonyericsson.jenkins.plugins.bfa.model.engine.SharedLogBuffer}.
+     * Note: If an exception occurs during the scanning, information about the exception is appended to
+     * the build log. The reader is not closed.
+     *
+     * @param build the build to scan for indications.
+     * @param reader the reader of the log of the build.
+     * @param buildLog the log of the build.
+     * @return a FoundIndication if something was found, null if not.
+     */
+    public FoundIndication scan(Run build, BufferedReader reader, PrintStream buildLog) {
         try {
-            reader = new BufferedReader(build.getLogReader());
-            List<FailureCause> causes = new ArrayList<FailureCause>(1);
-            FailureCause fc = new FailureCause("somename", "somedescription");
-            causes.add(fc);
-            fc.addIndication(indication);
-            List<FoundFailureCause> foundFailureCauses = FailureReader.scanSingleLinePatterns(causes,
-                                                                                              build,
-                                                                                              reader,
-                                                                                              currentFile);
-            if (foundFailureCauses.isEmpty()) {
-                return null;
-            } else {
-                return foundFailureCauses.get(0).getIndications().get(0);
-            }
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    logger.log(Level.WARNING, "Failed to close the reader. ", e);
-                }
-            }
+            return getFoundIndication(FailureReader.scanSingleLinePatterns(compile(), build, reader,
+                    build.getLogFile().getName()));
+        } catch (IOException ioe) {
+            logger.log(Level.SEVERE, "[BFA] I/O problems during indication analysis: ", ioe);
+            buildLog.println("[BFA] I/O problems during indication analysis.");
+            return null;
+        }
+    }
+
+    /**
+     * Compiles the indication on its own.
+     *
+     * @return the compiled indication.
+     */
+    private PatternSet compile() {
+        List<FailureCause> causes = new ArrayList<FailureCause>(1);
+        FailureCause fc = new FailureCause("somename", "somedescription");
+        causes.add(fc);
+        fc.addIndication(indication);
+        return MatchingEngine.REGEX.compile(causes);
+    }
+
+    /**
+     * The indication found by a scan for the indication on its own.
+     *
+     * @param foundFailureCauses the result of the scan.
+     * @return the found indication, or null if it was not found.
+     */
+    private static FoundIndication getFoundIndication(List<FoundFailureCause> foundFailureCauses) {
+        if (foundFailureCauses.isEmpty()) {
+            return null;
+        } else {
+            return foundFailureCauses.get(0).getIndications().get(0);
+        }
+    }
+
+    /**
+     * If the build log should be scanned through a memory mapping, as configured in the {@link PluginImpl}.
+     *
+     * @return true if so, false also when the plugin is not available.
+     */
+    private static boolean isMemoryMappedScanning() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null || jenkins.getPlugin(PluginImpl.class) == null) {
+            return false;
         }
+        return PluginImpl.getInstance().isMemoryMappedScanning();
     }
 }
@@ -26,6 +26,7 @@ package com.sonyericsson.jenkins.plugins.bfa.model;
 import com.sonyericsson.jenkins.plugins.bfa.CauseManagement;
 import com.sonyericsson.jenkins.plugins.bfa.PluginImpl;
 import com.sonyericsson.jenkins.plugins.bfa.db.KnowledgeBase;
+import com.sonyericsson.jenkins.plugins.bfa.db.KnowledgeBaseSnapshot;
 import com.sonyericsson.jenkins.plugins.bfa.model.indication.Indication;
 import hudson.Extension;
 import hudson.Util;
@@ -233,8 +234,9 @@ public class FailureCause implements Serializable, Action, Describable<FailureCa
         }
         //Use the cache it's hopefully good enough
         try {
-            for (FailureCause other : PluginImpl.getInstance().getKnowledgeBase().getCauses()) {
-                if ((id == null || !id.equals(other.getId())) && value.equals(other.getName())) {
+            KnowledgeBaseSnapshot snapshot = PluginImpl.getInstance().getKnowledgeBase().getSnapshot();
+            for (FailureCause other : snapshot.getCausesByName(value)) {
+                if (id == null || !id.equals(other.getId())) {
                     return FormValidation.error("There is another cause with that name.");
                 }
             }
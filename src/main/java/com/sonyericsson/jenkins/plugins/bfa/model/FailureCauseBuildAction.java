@@ -38,9 +38,13 @@ import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.logging.Level;
@@ -55,6 +59,7 @@ import java.util.logging.Logger;
 public class FailureCauseBuildAction implements BuildBadgeAction {
     private transient List<FailureCause> failureCauses;
     private List<FoundFailureCause> foundFailureCauses;
+    private Map<String, Long> scannedCauses;
     /**
      * The url of this action.
      */
@@ -105,6 +110,142 @@ public class FailureCauseBuildAction implements BuildBadgeAction {
         return foundFailureCauses;
     }
 
+    /**
+     * The revisions of the failure causes that the build was scanned against.
+     *
+     * @return the revision of each scanned cause by its id,
+     * or null if the build was scanned before the revisions were recorded.
+     * @see #getRevisions(Collection)
+     */
+    public Map<String, Long> getScannedCauses() {
+        return scannedCauses;
+    }
+
+    /**
+     * Records the revisions of the failure causes that the build was scanned against.
+     *
+     * @param scannedCauses the revision of each scanned cause by its id.
+     */
+    public void setScannedCauses(Map<String, Long> scannedCauses) {
+        this.scannedCauses = scannedCauses;
+    }
+
+    /**
+     * Finds the causes that are new or have been modified since the build was scanned.
+     *
+     * @param causes the current causes of the knowledge base.
+     * @return the causes to scan the build for again, or null if it is not known what the build was scanned against.
+     */
+    public List<FailureCause> getNewOrModifiedCauses(Collection<FailureCause> causes) {
+        if (scannedCauses == null) {
+            return null;
+        }
+        return getNewOrModifiedCauses(scannedCauses, causes);
+    }
+
+    /**
+     * Finds the causes that are new or have been modified since some revisions were taken.
+     *
+     * @param revisions the earlier revision of each cause by its id, see {@link #getRevisions(Collection)}.
+     * @param causes the current causes.
+     * @return the causes that are not among the revisions or have another revision now.
+     */
+    public static List<FailureCause> getNewOrModifiedCauses(Map<String, Long> revisions,
+                                                            Collection<FailureCause> causes) {
+        List<FailureCause> changed = new LinkedList<FailureCause>();
+        for (FailureCause cause : causes) {
+            Long revision = revisions.get(cause.getId());
+            if (revision == null || revision != getRevision(cause)) {
+                changed.add(cause);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Checks if any of the found causes has been removed from the knowledge base since the build was scanned.
+     *
+     * @param causes the current causes of the knowledge base.
+     * @return true if a found cause is no longer among them.
+     */
+    public boolean hasRemovedCauses(Collection<FailureCause> causes) {
+        Set<String> ids = getIds(causes);
+        for (FoundFailureCause foundCause : foundFailureCauses) {
+            if (foundCause.getId() != null && !ids.contains(foundCause.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces what was found for the causes that the build was scanned for again,
+     * and drops what was found for causes that have been removed from the knowledge base.
+     *
+     * @param causes the current causes of the knowledge base.
+     * @param rescanned the causes that were scanned for again.
+     * @param found the causes found in the new scan.
+     */
+    public void mergeFoundFailureCauses(Collection<FailureCause> causes, Collection<FailureCause> rescanned,
+                                        List<FoundFailureCause> found) {
+        Set<String> currentIds = getIds(causes);
+        Set<String> rescannedIds = getIds(rescanned);
+        List<FoundFailureCause> merged = new LinkedList<FoundFailureCause>();
+        for (FoundFailureCause foundCause : foundFailureCauses) {
+            String id = foundCause.getId();
+            if (id == null || (currentIds.contains(id) && !rescannedIds.contains(id))) {
+                merged.add(foundCause);
+            }
+        }
+        merged.addAll(found);
+        foundFailureCauses = merged;
+    }
+
+    /**
+     * The ids of some causes.
+     *
+     * @param causes the causes.
+     * @return the ids.
+     */
+    private static Set<String> getIds(Collection<FailureCause> causes) {
+        Set<String> ids = new HashSet<String>();
+        for (FailureCause cause : causes) {
+            ids.add(cause.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * The revision of each cause, i.e. the time of its latest modification.
+     *
+     * @param causes the causes.
+     * @return the revision of each cause by its id.
+     */
+    public static Map<String, Long> getRevisions(Collection<FailureCause> causes) {
+        Map<String, Long> revisions = new HashMap<String, Long>();
+        for (FailureCause cause : causes) {
+            if (cause.getId() != null) {
+                revisions.put(cause.getId(), getRevision(cause));
+            }
+        }
+        return revisions;
+    }
+
+    /**
+     * The revision of a cause, i.e. the time of its latest modification.
+     * The modifications are read as they are, so that no modification is recorded in the knowledge base.
+     *
+     * @param cause the cause.
+     * @return the time of the latest modification, or 0 if it is not known.
+     */
+    private static long getRevision(FailureCause cause) {
+        List<FailureCauseModification> modifications = cause.getModifications();
+        if (modifications == null || modifications.isEmpty() || modifications.get(0).getTime() == null) {
+            return 0;
+        }
+        return modifications.get(0).getTime().getTime();
+    }
+
     /**
      * Gets the image url for the summary page.
      *
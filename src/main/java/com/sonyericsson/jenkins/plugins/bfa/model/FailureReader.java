@@ -25,22 +25,37 @@
 package com.sonyericsson.jenkins.plugins.bfa.model;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.Charset;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.google.common.base.Joiner;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.BudgetedCharSequence;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.LineSource;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.MappedLogLines;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.MatchingEngine;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.PatternEntry;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.PatternSet;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.IndicationCostStatistics;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.PrefilterStatistics;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.ScanWatchdog;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.SlidingCharWindow;
 import com.sonyericsson.jenkins.plugins.bfa.model.indication.FoundIndication;
 import com.sonyericsson.jenkins.plugins.bfa.model.indication.Indication;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.MultilineBuildLogIndication;
 import hudson.Util;
 import hudson.console.ConsoleNote;
 import hudson.model.AbstractBuild;
@@ -60,7 +75,6 @@ public abstract class FailureReader {
     private static final long TIMEOUT_BLOCK = 2000;
     private static final long TIMEOUT_FILE = 10000;
     private static final long TIMEOUT_LINE = 1000;
-    private static final long SLEEPTIME = 200;
 
     /**
      * Overlapping bytes when moving the sliding window searching area.
@@ -70,6 +84,7 @@ public abstract class FailureReader {
      * {@link com.sonyericsson.jenkins.plugins.bfa.model.indication.MultilineBuildLogIndication}.
      *
      * Can never be larger than BUF_SIZE_BYTES.
+     * Can be overridden per indication with {@link MultilineBuildLogIndication#setOverlap(int)}.
      */
     private static final int OVERLAP_BYTES = 5000;
 
@@ -78,6 +93,7 @@ public abstract class FailureReader {
      * of the total "search area" when moving the sliding window through
      * the buildlog. Used when scanning for
      * {@link com.sonyericsson.jenkins.plugins.bfa.model.indication.MultilineBuildLogIndication}.
+     * Can be overridden per indication with {@link MultilineBuildLogIndication#setBufferSize(int)}.
      */
     private static final int BUF_SIZE_BYTES = 15000;
 
@@ -166,74 +182,239 @@ public abstract class FailureReader {
                                                               Run build,
                                                               BufferedReader reader,
                                                               String currentFile) throws IOException {
-        TimerThread timerThread = new TimerThread(Thread.currentThread(), TIMEOUT_LINE);
-        final long adjustedFileTimeout = TIMEOUT_FILE * getTotalNumberOfPatterns(causes);
+        return scanSingleLinePatterns(causes, build, reader, currentFile, MatchingEngine.REGEX);
+    }
 
-        Map<FailureCause, List<FoundIndication>> resultMap = new HashMap<FailureCause, List<FoundIndication>>();
-        Map<FailureCause, List<Indication>> firstOccurrences = new HashMap<FailureCause, List<Indication>>();
+    /**
+     * Checks all patterns for entire file using the given matching engine.
+     *
+     * @param causes list of failure causes that we a looking for.
+     * @param build current build.
+     * @param reader file reader.
+     * @param currentFile file name.
+     * @param engine the engine to compile the patterns with.
+     * @return found indications.
+     * @throws IOException Exception.
+     */
+    public static List<FoundFailureCause> scanSingleLinePatterns(List<FailureCause> causes,
+                                                               Run build,
+                                                               BufferedReader reader,
+                                                               String currentFile,
+                                                               MatchingEngine engine) throws IOException {
+        return scanSingleLinePatterns(engine.compile(causes), build, reader, currentFile);
+    }
 
-        timerThread.start();
-        try {
-            long startTime = System.currentTimeMillis();
-            int currentLine = 1;
-            String line;
-            while ((line = reader.readLine()) != null) {
-                for (FailureCause cause : causes) {
-                    for (Indication indication : cause.getIndications()) {
-                        try {
-                            List<Indication> wasBefore = firstOccurrences.get(cause);
-                            if (wasBefore == null || !wasBefore.contains(indication)) {
-                                if (processIndication(build, currentFile, resultMap, line, cause, indication)) {
-                                    wasBefore = new ArrayList<Indication>();
-                                    wasBefore.add(indication);
-                                    firstOccurrences.put(cause, wasBefore);
-                                }
-                            }
-                        } catch (RuntimeException e) {
-                            if (e.getCause() instanceof InterruptedException) {
-                                logger.warning("Timeout scanning for indication '" + indication.toString() + "'"
-                                        + " for file " + currentFile + ":" + currentLine);
-                            } else {
-                                // This is not a timeout exception
-                                throw e;
-                            }
-                        }
-                        currentLine++;
-                        timerThread.touch();
-                        if (System.currentTimeMillis() - startTime > adjustedFileTimeout) {
-                            logger.warning("File timeout scanning for indication '" + indication.toString() + "'"
-                                    + " for file " + currentFile + ":" + currentLine);
-                            return convertToFoundFailureCauses(resultMap);
-                        }
-                    }
+    /**
+     * Checks all patterns of a compiled pattern set for entire file.
+     *
+     * @param patterns the compiled indications of the failure causes that we a looking for.
+     * @param build current build.
+     * @param reader file reader.
+     * @param currentFile file name.
+     * @return found indications.
+     * @throws IOException Exception.
+     * @see #scanSingleLinePatterns(PatternSet, Run, LineSource, String)
+     */
+    public static List<FoundFailureCause> scanSingleLinePatterns(PatternSet patterns,
+                                                               Run build,
+                                                               final BufferedReader reader,
+                                                               String currentFile) throws IOException {
+        return scanSingleLinePatterns(patterns, build, new LineSource() {
+            @Override
+            public CharSequence readLine() throws IOException {
+                return reader.readLine();
+            }
+        }, currentFile);
+    }
+
+    /**
+     * Checks all patterns of a compiled pattern set for the log of a build.
+     * When memory mapping is requested and the log file supports it, the log is scanned as raw bytes
+     * through {@link MappedLogLines}, otherwise through {@link Run#getLogReader()}.
+     *
+     * @param patterns the compiled indications of the failure causes that we a looking for.
+     * @param build the build whose log should be scanned.
+     * @param memoryMapped true to scan the log through a memory mapping when possible.
+     * @return found indications.
+     * @throws IOException Exception.
+     */
+    public static List<FoundFailureCause> scanBuildLog(PatternSet patterns, Run build, boolean memoryMapped)
+            throws IOException {
+        File logFile = build.getLogFile();
+        Charset charset = build.getCharset();
+        if (memoryMapped && MappedLogLines.isSupported(logFile, charset)) {
+            MappedLogLines lines = new MappedLogLines(logFile, charset);
+            try {
+                return scanSingleLinePatterns(patterns, build, lines, logFile.getName());
+            } finally {
+                try {
+                    lines.close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Failed to close the mapped log. ", e);
                 }
             }
-            return convertToFoundFailureCauses(resultMap);
+        }
+        BufferedReader reader = new BufferedReader(build.getLogReader());
+        try {
+            return scanSingleLinePatterns(patterns, build, reader, logFile.getName());
         } finally {
-            timerThread.requestStop();
-            timerThread.interrupt();
             try {
-                timerThread.join();
-                //CS IGNORE EmptyBlock FOR NEXT 2 LINES. REASON: unimportant exception
-            } catch (InterruptedException eIgnore) {
+                reader.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to close the reader. ", e);
             }
-            // reset the interrupt
-            Thread.interrupted();
         }
     }
 
     /**
-     * Calculates total number of patterns in list of causes.
+     * Checks all patterns of a compiled pattern set for entire file.
+     * Each line is read once, the pattern set decides which of the patterns need to be evaluated on it.
+     * Patterns with a required literal are only evaluated on lines that contain the literal,
+     * the outcome is counted in {@link PrefilterStatistics}.
+     * The cost of each pattern is counted in {@link IndicationCostStatistics}.
+     * Lines are only converted to Strings when an indication is found on them.
+     * Each indication is only reported for its first occurrence.
      *
-     * @param causes list of failure causes that we a looking for.
-     * @return total number of patterns.
+     * @param patterns the compiled indications of the failure causes that we a looking for.
+     * @param build current build.
+     * @param lines the lines of the file.
+     * @param currentFile file name.
+     * @return found indications.
+     * @throws IOException Exception.
+     */
+    public static List<FoundFailureCause> scanSingleLinePatterns(PatternSet patterns,
+                                                               Run build,
+                                                               LineSource lines,
+                                                               String currentFile) throws IOException {
+        return scanSingleLinePatterns(patterns, build, lines, currentFile, new BitSet(patterns.size()),
+                new HashMap<FailureCause, List<FoundIndication>>());
+    }
+
+    /**
+     * Checks the patterns of a compiled pattern set that have not been found yet, for a part of a file.
+     * Used to scan a log piece by piece while it is being written.
+     *
+     * @param patterns the compiled indications of the failure causes that we a looking for.
+     * @param build current build.
+     * @param lines the lines of the part of the file.
+     * @param currentFile file name.
+     * @param found the indexes of the entries found in earlier parts, these are skipped.
+     *              The entries found in this part are added.
+     * @param resultMap the indications found in earlier parts, the indications found in this part are added.
+     * @return the found indications of all parts so far.
+     * @throws IOException Exception.
      */
-    private static int getTotalNumberOfPatterns(List<FailureCause> causes) {
-        int total = 0;
-        for (FailureCause cause : causes) {
-            total += cause.getIndications().size();
+    public static List<FoundFailureCause> scanSingleLinePatterns(PatternSet patterns,
+                                                               Run build,
+                                                               LineSource lines,
+                                                               String currentFile,
+                                                               BitSet found,
+                                                               Map<FailureCause, List<FoundIndication>> resultMap)
+            throws IOException {
+        final long adjustedFileTimeout = TIMEOUT_FILE * patterns.size();
+        final List<PatternEntry> entries = patterns.getEntries();
+
+        BitSet candidates = new BitSet(entries.size());
+        Matcher[] matchers = new Matcher[entries.size()];
+        int pendingLiterals = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).getRequiredLiteral() != null && !found.get(i)) {
+                pendingLiterals++;
+            }
+        }
+        long prefilterHits = 0;
+        long prefilterChecks = 0;
+        long[] nanos = new long[entries.size()];
+        long[] sampledEvaluations = new long[entries.size()];
+        long[] evaluations = new long[entries.size()];
+        long[] timeouts = new long[entries.size()];
+
+        ScanWatchdog.Registration watchdog = ScanWatchdog.getInstance().register(TIMEOUT_LINE);
+        //One wrapper and one matcher per pattern for the whole scan, only the wrapped line changes.
+        BudgetedCharSequence budgeted = new BudgetedCharSequence("", watchdog);
+        try {
+            long startTime = System.currentTimeMillis();
+            int currentLine = 0;
+            CharSequence line;
+            while ((line = lines.readLine()) != null && found.cardinality() < entries.size()) {
+                currentLine++;
+                watchdog.touch();
+                prefilterChecks += pendingLiterals;
+                candidates.clear();
+                patterns.findCandidates(line, candidates);
+                candidates.andNot(found);
+                budgeted.reset(line);
+                for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                    PatternEntry entry = entries.get(i);
+                    if (!entry.mayMatch(line)) {
+                        continue;
+                    }
+                    boolean hasLiteral = entry.getRequiredLiteral() != null;
+                    if (hasLiteral) {
+                        prefilterHits++;
+                    }
+                    if (matchers[i] == null) {
+                        matchers[i] = entry.getPattern().matcher(budgeted);
+                    } else {
+                        matchers[i].reset(budgeted);
+                    }
+                    boolean sampled = IndicationCostStatistics.isSampled(evaluations[i]);
+                    long evaluationStart = 0;
+                    if (sampled) {
+                        evaluationStart = IndicationCostStatistics.currentTimeNanos();
+                    }
+                    try {
+                        if (processIndication(build, currentFile, resultMap, line, matchers[i], entry.getCause(),
+                                entry.getIndication())) {
+                            found.set(i);
+                            if (hasLiteral) {
+                                pendingLiterals--;
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        if (e.getCause() instanceof InterruptedException) {
+                            timeouts[i]++;
+                            logger.warning("Timeout scanning for indication '" + entry.getIndication().toString()
+                                    + "'" + " for file " + currentFile + ":" + currentLine);
+                        } else {
+                            // This is not a timeout exception
+                            throw e;
+                        }
+                    } finally {
+                        if (sampled) {
+                            nanos[i] += IndicationCostStatistics.currentTimeNanos() - evaluationStart;
+                            sampledEvaluations[i]++;
+                        }
+                        evaluations[i]++;
+                    }
+                    watchdog.touch();
+                }
+                watchdog.touch();
+                if (System.currentTimeMillis() - startTime > adjustedFileTimeout) {
+                    logger.warning("File timeout scanning for indications for file " + currentFile + ":"
+                            + currentLine);
+                    return convertToFoundFailureCauses(resultMap);
+                }
+            }
+            return convertToFoundFailureCauses(resultMap);
+        } finally {
+            PrefilterStatistics.getInstance().record(prefilterHits, prefilterChecks - prefilterHits);
+            IndicationCostStatistics costs = IndicationCostStatistics.getInstance();
+            for (int i = 0; i < entries.size(); i++) {
+                //Each indication is only reported once, so a found entry has matched once in this part.
+                long match = 0;
+                if (found.get(i) && evaluations[i] > 0) {
+                    match = 1;
+                }
+                costs.record(entries.get(i).getIndication(), nanos[i], sampledEvaluations[i], evaluations[i], match,
+                        timeouts[i]);
+            }
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Prefilter for file " + currentFile + ": " + prefilterHits + " of " + prefilterChecks
+                        + " checks let the line through to the regular expression");
+            }
+            watchdog.close();
         }
-        return total;
     }
 
     /**
@@ -244,6 +425,7 @@ public abstract class FailureReader {
      * @param currentFile current file
      * @param causeIndicationsMap result map
      * @param line line with content
+     * @param matcher the matcher of the indication, reset to the line
      * @param cause current cause
      * @param indication indication that should be checked
      * @return true if new indication was found
@@ -251,17 +433,16 @@ public abstract class FailureReader {
     private static boolean processIndication(Run build,
                                              String currentFile,
                                              Map<FailureCause, List<FoundIndication>> causeIndicationsMap,
-                                             String line,
+                                             CharSequence line,
+                                             Matcher matcher,
                                              FailureCause cause,
                                              Indication indication) {
-        Pattern pattern = indication.getPattern();
-
-        if (pattern.matcher(new InterruptibleCharSequence(line)).matches()) {
+        if (matcher.matches()) {
             FoundIndication foundIndication = new FoundIndication(
                                                     build,
-                                                    pattern.toString(),
+                                                    indication.getPattern().toString(),
                                                     currentFile,
-                                                    ConsoleNote.removeNotes(line));
+                                                    ConsoleNote.removeNotes(line.toString()));
 
 
             putToMapWithList(causeIndicationsMap, cause, foundIndication);
@@ -317,38 +498,52 @@ public abstract class FailureReader {
      */
     protected FoundIndication scanMultiLineOneFile(Run build, BufferedReader reader, String currentFile)
             throws IOException {
-        TimerThread timerThread = new TimerThread(Thread.currentThread(), TIMEOUT_BLOCK);
         FoundIndication foundIndication = null;
         final Pattern pattern = indication.getPattern();
-        timerThread.start();
+        long nanos = 0;
+        long sampledEvaluations = 0;
+        long evaluations = 0;
+        long timeouts = 0;
+        ScanWatchdog.Registration watchdog = ScanWatchdog.getInstance().register(TIMEOUT_BLOCK);
         try {
             long startTime = System.currentTimeMillis();
-            char[] buf = new char[BUF_SIZE_BYTES];
-            StringBuilder searchBuffer = new StringBuilder();
-            int read;
-            boolean firstRead = true;
-            //CS IGNORE AvoidInlineConditionals FOR NEXT 1 LINES. REASON: Split up makes code less reasable.
-            while ((read = reader.read(buf, 0, BUF_SIZE_BYTES - (firstRead ? 0 : OVERLAP_BYTES))) != -1) {
+            //The window is matched in place and only the characters beyond the overlap are replaced on each read.
+            SlidingCharWindow window = createSearchWindow();
+            BudgetedCharSequence budgeted = new BudgetedCharSequence(window, watchdog);
+            Matcher matcher = pattern.matcher(budgeted);
+            while (window.fill(reader) > 0) {
+                boolean sampled = IndicationCostStatistics.isSampled(evaluations);
+                long evaluationStart = 0;
+                if (sampled) {
+                    evaluationStart = IndicationCostStatistics.currentTimeNanos();
+                }
                 try {
-                    firstRead = false;
-                    searchBuffer.append(buf, 0, read);
-                    Matcher matcher = pattern.matcher(new InterruptibleCharSequence(searchBuffer.toString()));
+                    //Reading may have blocked on a shared log, only time the matching.
+                    watchdog.touch();
+                    matcher.reset(budgeted);
                     if (matcher.find()) {
                         foundIndication = new FoundIndication(build, pattern.pattern(), currentFile,
                                 removeConsoleNotes(matcher.group()));
                         break;
                     }
-                    searchBuffer.delete(0, BUF_SIZE_BYTES - OVERLAP_BYTES);
                 } catch (RuntimeException e) {
                     if (e.getCause() instanceof InterruptedException) {
+                        timeouts++;
                         logger.warning("Timeout scanning for indication '" + indication.toString() + "' for file "
                                 + currentFile);
                     } else {
                         // This is not a timeout exception
                         throw e;
                     }
+                } finally {
+                    if (sampled) {
+                        nanos += IndicationCostStatistics.currentTimeNanos() - evaluationStart;
+                        sampledEvaluations++;
+                    }
+                    evaluations++;
                 }
-                timerThread.touch();
+                window.slide();
+                watchdog.touch();
                 if (System.currentTimeMillis() - startTime > TIMEOUT_FILE) {
                     logger.warning("File timeout scanning for indication '" + indication.toString() + "' for file "
                             + currentFile);
@@ -357,16 +552,40 @@ public abstract class FailureReader {
             }
             return foundIndication;
         } finally {
-            timerThread.requestStop();
-            timerThread.interrupt();
-            try {
-                timerThread.join();
-                //CS IGNORE EmptyBlock FOR NEXT 2 LINES. REASON: unimportant exception
-            } catch (InterruptedException eIgnore) {
+            long matches = 0;
+            if (foundIndication != null) {
+                matches = 1;
+            }
+            IndicationCostStatistics.getInstance().record(indication, nanos, sampledEvaluations, evaluations, matches,
+                    timeouts);
+            watchdog.close();
+        }
+    }
+
+    /**
+     * Creates the window sliding over the log when searching for a multi-line indication,
+     * sized by the indication if it says so.
+     *
+     * @return the window.
+     */
+    private SlidingCharWindow createSearchWindow() {
+        int bufferSize = BUF_SIZE_BYTES;
+        int overlap = OVERLAP_BYTES;
+        if (indication instanceof MultilineBuildLogIndication) {
+            MultilineBuildLogIndication multiline = (MultilineBuildLogIndication)indication;
+            if (multiline.getBufferSize() > 0) {
+                bufferSize = multiline.getBufferSize();
+            }
+            if (multiline.getOverlap() > 0) {
+                overlap = multiline.getOverlap();
             }
-            // reset the interrupt
-            Thread.interrupted();
         }
+        if (overlap >= bufferSize) {
+            logger.warning("The overlap of indication '" + indication + "' is not smaller than its buffer size, "
+                    + "using half of the buffer size");
+            overlap = bufferSize / 2;
+        }
+        return new SlidingCharWindow(bufferSize, overlap);
     }
 
     /**
@@ -391,7 +610,10 @@ public abstract class FailureReader {
     /**
      * CharSequence that notices thread interrupts -- as might be necessary
      * to recover from a loose regex on unexpected challenging input.
+     * @deprecated the scans use {@link BudgetedCharSequence}, which neither copies the input
+     * nor checks for interrupts on every character.
      */
+    @Deprecated
     public static class InterruptibleCharSequence implements CharSequence {
         CharSequence inner;
 
@@ -427,58 +649,4 @@ public abstract class FailureReader {
             return inner.toString();
         }
     }
-
-    /**
-     * TimerThread interrupting a monitored thread unless TimerThread is touched within the
-     * specified timeout value
-     */
-    static class TimerThread extends Thread {
-
-        private Thread monitorThread;
-        private boolean stop = false;
-        private long timeout;
-        private long lastTouched;
-
-        /**
-       * Standard constructor.
-       * @param monitorThread The thread to monitor and interrupt after the timeout.
-       * @param timeout The timeout in ms.
-         */
-        TimerThread(Thread monitorThread, long timeout) {
-            this.monitorThread = monitorThread;
-            this.timeout = timeout;
-        }
-
-        @Override
-        public void run() {
-            lastTouched = System.currentTimeMillis();
-            while (!stop) {
-                try {
-                    Thread.sleep(SLEEPTIME);
-                    if (System.currentTimeMillis() - lastTouched >= timeout) {
-                        monitorThread.interrupt();
-                        // timeout met, interrupt the launcherThread
-                    }
-                //CS IGNORE EmptyBlock FOR NEXT 5 LINES. REASON: timeout exception
-                } catch (InterruptedException eRestartSleep) {
-                    // My thread was interrupted so continue loop and
-                    // check if I'm stopped and otherwise just restart sleep
-                }
-            }
-        }
-
-        /**
-        * Touch, i.e. reset countdown timer.
-        */
-        public void touch() {
-            lastTouched = System.currentTimeMillis();
-        }
-
-        /**
-         * Set stop flag to stop executing
-         */
-        public void requestStop() {
-            stop = true;
-        }
-    }
 }
@@ -88,19 +88,14 @@ public class MultilineBuildLogFailureReader extends FailureReader {
      * @return a FoundIndication if something was found, null if not.
      */
     public FoundIndication scan(Run build, PrintStream buildLog) {
-        FoundIndication foundIndication = null;
-        String currentFile = build.getLogFile().getName();
         BufferedReader reader = null;
-        long start = System.currentTimeMillis();
         try {
             reader = new BufferedReader(build.getLogReader());
-            foundIndication = scanMultiLineOneFile(build, reader, currentFile);
-        } catch (IOException ioe) {
-            logger.log(Level.SEVERE, "[BFA] I/O problems during indication analysis: ", ioe);
-            buildLog.println("[BFA] I/O problems during indication analysis.");
-        } catch (Exception e) {
+            return scan(build, reader, buildLog);
+        } catch (IOException e) {
             logger.log(Level.SEVERE, "[BFA] Could not open reader for indication: ", e);
             buildLog.println("[BFA] Could not open reader for indication.");
+            return null;
         } finally {
             if (reader != null) {
                 try {
@@ -109,6 +104,32 @@ public class MultilineBuildLogFailureReader extends FailureReader {
                     logger.log(Level.WARNING, "Failed to close the reader. ", e);
                 }
             }
+        }
+    }
+
+    /**
+     * Scans for indications of a failure cause in a build log that is already open,
+     * like a reader of a {@link com.sonyericsson.jenkins.plugins.bfa.model.engine.SharedLogBuffer}.
+     * Note: If an exception occurs during the scanning, information about the exception is appended to
+     * the build log. The reader is not closed.
+     *
+     * @param build the build to scan for indications.
+     * @param reader the reader of the log of the build.
+     * @param buildLog the log of the build.
+     * @return a FoundIndication if something was found, null if not.
+     */
+    public FoundIndication scan(Run build, BufferedReader reader, PrintStream buildLog) {
+        FoundIndication foundIndication = null;
+        long start = System.currentTimeMillis();
+        try {
+            foundIndication = scanMultiLineOneFile(build, reader, build.getLogFile().getName());
+        } catch (IOException ioe) {
+            logger.log(Level.SEVERE, "[BFA] I/O problems during indication analysis: ", ioe);
+            buildLog.println("[BFA] I/O problems during indication analysis.");
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "[BFA] Could not open reader for indication: ", e);
+            buildLog.println("[BFA] Could not open reader for indication.");
+        } finally {
             if (logger.isLoggable(Level.FINER)) {
                 logger.log(Level.FINER, "[BFA] [{0}] - [{1}] {2}ms",
                         new Object[]{build.getFullDisplayName(),
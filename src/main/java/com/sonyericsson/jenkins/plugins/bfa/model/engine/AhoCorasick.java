@@ -0,0 +1,278 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * An Aho-Corasick automaton over a set of literal strings.
+ * Each literal is associated with an integer id, and a single pass over a text
+ * reports the ids of all literals occurring anywhere in it.
+ * The automaton is immutable once built and can be shared between threads.
+ */
+public final class AhoCorasick {
+
+    private static final int[] NO_IDS = new int[0];
+    private static final char[] NO_CHARS = new char[0];
+    private static final int ROOT = 0;
+
+    /** Sorted transition characters per state. */
+    private final char[][] keys;
+    /** Target states, parallel to {@link #keys}. */
+    private final int[][] targets;
+    /** Failure link per state. */
+    private final int[] fail;
+    /** Ids of the literals ending in each state, including those reachable through the failure links. */
+    private final int[][] outputs;
+
+    /**
+     * Private constructor, use {@link Builder}.
+     *
+     * @param keys the transition characters.
+     * @param targets the transition targets.
+     * @param fail the failure links.
+     * @param outputs the outputs.
+     */
+    private AhoCorasick(char[][] keys, int[][] targets, int[] fail, int[][] outputs) {
+        this.keys = keys;
+        this.targets = targets;
+        this.fail = fail;
+        this.outputs = outputs;
+    }
+
+    /**
+     * The number of states in the automaton.
+     *
+     * @return the number of states.
+     */
+    public int getStateCount() {
+        return fail.length;
+    }
+
+    /**
+     * Scans the text and sets the bit of every literal id that occurs in it.
+     * Bits that are already set are left untouched.
+     *
+     * @param text the text to scan.
+     * @param found where to set the ids of the found literals.
+     */
+    public void scan(CharSequence text, BitSet found) {
+        int state = ROOT;
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            state = next(state, text.charAt(i));
+            int[] ids = outputs[state];
+            for (int j = 0; j < ids.length; j++) {
+                found.set(ids[j]);
+            }
+        }
+    }
+
+    /**
+     * Follows the goto function, falling back on the failure links.
+     *
+     * @param state the current state.
+     * @param c the next character.
+     * @return the next state.
+     */
+    private int next(int state, char c) {
+        int current = state;
+        while (true) {
+            int index = Arrays.binarySearch(keys[current], c);
+            if (index >= 0) {
+                return targets[current][index];
+            }
+            if (current == ROOT) {
+                return ROOT;
+            }
+            current = fail[current];
+        }
+    }
+
+    /**
+     * Builder of {@link AhoCorasick} automatons.
+     */
+    public static class Builder {
+        private final List<Node> nodes = new ArrayList<Node>();
+
+        /**
+         * Standard constructor.
+         */
+        public Builder() {
+            nodes.add(new Node());
+        }
+
+        /**
+         * Adds a literal to the automaton.
+         *
+         * @param literal the literal, must not be empty.
+         * @param id the id to report when the literal is found.
+         * @return this builder.
+         */
+        public Builder add(String literal, int id) {
+            if (literal == null || literal.isEmpty()) {
+                throw new IllegalArgumentException("Cannot add an empty literal");
+            }
+            int state = ROOT;
+            for (int i = 0; i < literal.length(); i++) {
+                char c = literal.charAt(i);
+                Integer target = nodes.get(state).get(c);
+                if (target == null) {
+                    target = nodes.size();
+                    nodes.add(new Node());
+                    nodes.get(state).put(c, target);
+                }
+                state = target;
+            }
+            nodes.get(state).outputs.add(id);
+            return this;
+        }
+
+        /**
+         * Computes the failure links and creates the automaton.
+         *
+         * @return the automaton.
+         */
+        public AhoCorasick build() {
+            int size = nodes.size();
+            int[] fail = new int[size];
+            Queue<Integer> queue = new LinkedList<Integer>();
+            for (int target : nodes.get(ROOT).targets) {
+                fail[target] = ROOT;
+                queue.add(target);
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.remove();
+                Node node = nodes.get(state);
+                for (int i = 0; i < node.chars.size(); i++) {
+                    char c = node.chars.get(i);
+                    int target = node.targets.get(i);
+                    int f = fail[state];
+                    Integer next = nodes.get(f).get(c);
+                    while (next == null && f != ROOT) {
+                        f = fail[f];
+                        next = nodes.get(f).get(c);
+                    }
+                    if (next == null || next == target) {
+                        fail[target] = ROOT;
+                    } else {
+                        fail[target] = next;
+                    }
+                    //BFS order guarantees that the failure target is complete already.
+                    nodes.get(target).outputs.addAll(nodes.get(fail[target]).outputs);
+                    queue.add(target);
+                }
+            }
+
+            char[][] keys = new char[size][];
+            int[][] targets = new int[size][];
+            int[][] outputs = new int[size][];
+            for (int state = 0; state < size; state++) {
+                Node node = nodes.get(state);
+                Integer[] order = node.sortedIndices();
+                if (order.length == 0) {
+                    keys[state] = NO_CHARS;
+                    targets[state] = NO_IDS;
+                } else {
+                    keys[state] = new char[order.length];
+                    targets[state] = new int[order.length];
+                    for (int i = 0; i < order.length; i++) {
+                        keys[state][i] = node.chars.get(order[i]);
+                        targets[state][i] = node.targets.get(order[i]);
+                    }
+                }
+                if (node.outputs.isEmpty()) {
+                    outputs[state] = NO_IDS;
+                } else {
+                    outputs[state] = new int[node.outputs.size()];
+                    int i = 0;
+                    for (Integer id : node.outputs) {
+                        outputs[state][i++] = id;
+                    }
+                }
+            }
+            return new AhoCorasick(keys, targets, fail, outputs);
+        }
+    }
+
+    /**
+     * Mutable trie node used while building.
+     */
+    private static class Node {
+        private final List<Character> chars = new ArrayList<Character>();
+        private final List<Integer> targets = new ArrayList<Integer>();
+        private final List<Integer> outputs = new ArrayList<Integer>();
+
+        /**
+         * Finds the transition for a character.
+         *
+         * @param c the character.
+         * @return the target state or null if there is none.
+         */
+        Integer get(char c) {
+            int index = chars.indexOf(c);
+            if (index < 0) {
+                return null;
+            }
+            return targets.get(index);
+        }
+
+        /**
+         * Adds a transition.
+         *
+         * @param c the character.
+         * @param target the target state.
+         */
+        void put(char c, int target) {
+            chars.add(c);
+            targets.add(target);
+        }
+
+        /**
+         * The indices of the transitions, ordered by character.
+         *
+         * @return the ordered indices.
+         */
+        Integer[] sortedIndices() {
+            Integer[] order = new Integer[chars.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return chars.get(o1).compareTo(chars.get(o2));
+                }
+            });
+            return order;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+/**
+ * CharSequence that aborts a regular expression running past the deadline of its scan,
+ * as might be necessary to recover from a loose regex on unexpected challenging input.
+ * The wrapped sequence is not copied, and the deadline is only checked every {@link #CHECK_INTERVAL} accesses.
+ * Not thread safe, each scan uses its own instance.
+ */
+public class BudgetedCharSequence implements CharSequence {
+    /**
+     * The number of character accesses between two checks of the deadline.
+     */
+    static final int CHECK_INTERVAL = 4096;
+
+    private final ScanWatchdog.Registration deadline;
+    private CharSequence inner;
+    private int budget = CHECK_INTERVAL;
+
+    /**
+     * Standard constructor.
+     *
+     * @param inner the CharSequence to wrap.
+     * @param deadline the watchdog registration of the scan.
+     */
+    public BudgetedCharSequence(CharSequence inner, ScanWatchdog.Registration deadline) {
+        this.inner = inner;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Wraps another sequence, so that one instance can be reused for all lines of a scan.
+     *
+     * @param sequence the CharSequence to wrap.
+     */
+    public void reset(CharSequence sequence) {
+        this.inner = sequence;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (--budget <= 0) {
+            budget = CHECK_INTERVAL;
+            if (deadline.isExpired()) {
+                throw new RuntimeException(new InterruptedException());
+            }
+        }
+        return inner.charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return inner.length();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new BudgetedCharSequence(inner.subSequence(start, end), deadline);
+    }
+
+    @Override
+    public String toString() {
+        return inner.toString();
+    }
+}
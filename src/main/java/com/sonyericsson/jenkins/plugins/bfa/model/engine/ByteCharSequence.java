@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A {@link CharSequence} view of a range of ASCII bytes in a buffer, without copying or decoding them.
+ * The view can be moved to a new range with {@link #reset(ByteBuffer, int, int)},
+ * which lets a scan use one instance for all the lines of a log.
+ * Decoding to a String with the charset of the log only happens in {@link #toString()}.
+ */
+public final class ByteCharSequence implements CharSequence {
+    private static final int BYTE_MASK = 0xff;
+
+    private final Charset charset;
+    private ByteBuffer buffer;
+    private int start;
+    private int end;
+
+    /**
+     * Standard constructor.
+     *
+     * @param charset the charset to decode with in {@link #toString()}.
+     */
+    public ByteCharSequence(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Constructor for a view of a range.
+     *
+     * @param charset the charset to decode with in {@link #toString()}.
+     * @param buffer the buffer.
+     * @param start the start of the range.
+     * @param end the end of the range, exclusive.
+     */
+    private ByteCharSequence(Charset charset, ByteBuffer buffer, int start, int end) {
+        this.charset = charset;
+        reset(buffer, start, end);
+    }
+
+    /**
+     * Moves the view to a new range.
+     *
+     * @param buffer the buffer.
+     * @param start the start of the range.
+     * @param end the end of the range, exclusive.
+     */
+    public void reset(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char)(buffer.get(start + index) & BYTE_MASK);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return new ByteCharSequence(charset, buffer, start + from, start + to);
+    }
+
+    /**
+     * Checks if the view contains an ASCII string, without decoding the bytes.
+     *
+     * @param literal the string to look for.
+     * @return true if the literal occurs in the view.
+     */
+    public boolean contains(String literal) {
+        int length = literal.length();
+        if (length == 0) {
+            return true;
+        }
+        char first = literal.charAt(0);
+        int last = end - length;
+        for (int i = start; i <= last; i++) {
+            if ((buffer.get(i) & BYTE_MASK) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < length && (buffer.get(i + j) & BYTE_MASK) == literal.charAt(j)) {
+                j++;
+            }
+            if (j == length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        ByteBuffer range = buffer.duplicate();
+        range.limit(end);
+        range.position(start);
+        return charset.decode(range).toString();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the lines of a log that is still being written, from a given byte offset.
+ * Lines end with "\n", "\r\n" or a lone '\r', like for {@link java.io.BufferedReader}.
+ * A last line without a line break is only returned when the log is known to be complete,
+ * otherwise it is left for the next read so that no line is ever scanned in two halves.
+ */
+public class CompleteLineSource implements LineSource {
+    private static final int INITIAL_LINE_SIZE = 256;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream stream;
+    private final Charset charset;
+    private final boolean complete;
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private int readPosition;
+    private int readLimit;
+    private byte[] line = new byte[INITIAL_LINE_SIZE];
+    private long consumed;
+    private boolean exhausted;
+
+    /**
+     * Standard constructor.
+     *
+     * @param stream the log, positioned at the first byte to read.
+     * @param charset the charset of the log.
+     * @param complete true if the log is not written to anymore, so that a last unterminated line can be read.
+     */
+    public CompleteLineSource(InputStream stream, Charset charset, boolean complete) {
+        this.stream = stream;
+        this.charset = charset;
+        this.complete = complete;
+    }
+
+    @Override
+    public CharSequence readLine() throws IOException {
+        int length = 0;
+        while (true) {
+            if (readPosition == readLimit) {
+                if (exhausted || !fillReadBuffer()) {
+                    exhausted = true;
+                    if (complete && length > 0) {
+                        consumed += length;
+                        return decode(length);
+                    }
+                    return null;
+                }
+            }
+            byte b = readBuffer[readPosition++];
+            if (b == '\n' || b == '\r') {
+                int terminator = 1;
+                if (b == '\r') {
+                    //A line break written in two halves is only known to be "\r\n" or a lone '\r' when more is read.
+                    if (readPosition == readLimit && (exhausted || !fillReadBuffer())) {
+                        exhausted = true;
+                        if (!complete) {
+                            return null;
+                        }
+                    } else if (readBuffer[readPosition] == '\n') {
+                        readPosition++;
+                        terminator = 2;
+                    }
+                }
+                consumed += length + terminator;
+                return decode(length);
+            }
+            if (length == line.length) {
+                byte[] larger = new byte[line.length * 2];
+                System.arraycopy(line, 0, larger, 0, length);
+                line = larger;
+            }
+            line[length++] = b;
+        }
+    }
+
+    /**
+     * The number of bytes of the lines returned so far, the offset to continue from is the start offset plus this.
+     *
+     * @return the number of bytes.
+     */
+    public long getConsumed() {
+        return consumed;
+    }
+
+    /**
+     * Reads the next block of the stream.
+     *
+     * @return false if the stream is exhausted.
+     * @throws IOException if reading fails.
+     */
+    private boolean fillReadBuffer() throws IOException {
+        int read = stream.read(readBuffer, 0, readBuffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        readPosition = 0;
+        readLimit = read;
+        return true;
+    }
+
+    /**
+     * Decodes the current line.
+     *
+     * @param length the number of bytes in the line.
+     * @return the line.
+     */
+    private String decode(int length) {
+        return new String(line, 0, length, charset);
+    }
+}
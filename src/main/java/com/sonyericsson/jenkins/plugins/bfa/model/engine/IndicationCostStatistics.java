@@ -0,0 +1,276 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.Indication;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts what scanning for each indication costs: the CPU time spent matching it, how many times it was evaluated,
+ * in how many scans it matched and how many times it timed out.
+ * The time is taken from the CPU time of the scanning thread, so that time spent preempted or waiting
+ * for the log is not counted; if the JVM can not measure that, the wall-clock time is used instead.
+ * Indications with the same expression are counted together, since they cost the same to match.
+ * Reading the clock can cost more than matching a short line, so only one in {@link #SAMPLE_INTERVAL} evaluations
+ * is timed and the time of the others is estimated from the sampled ones. The numbers of evaluations, matches
+ * and timeouts are exact.
+ * The scans count on their own and add their counts once when they are done,
+ * so the counters are not contended for every line.
+ */
+public final class IndicationCostStatistics {
+    /**
+     * How many evaluations of an indication there are per timed evaluation, a power of two.
+     */
+    public static final int SAMPLE_INTERVAL = 32;
+
+    private static final IndicationCostStatistics INSTANCE = new IndicationCostStatistics();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported()
+            && THREADS.isThreadCpuTimeEnabled();
+
+    private final ConcurrentMap<String, IndicationCost> costs = new ConcurrentHashMap<String, IndicationCost>();
+
+    /**
+     * Singleton constructor.
+     */
+    private IndicationCostStatistics() {
+    }
+
+    /**
+     * The singleton instance.
+     *
+     * @return the instance.
+     */
+    public static IndicationCostStatistics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The time to measure the cost of matching an indication with, see {@link #isCpuTime()}.
+     *
+     * @return the CPU time of the current thread, or the wall-clock time, in nanoseconds.
+     */
+    public static long currentTimeNanos() {
+        if (CPU_TIME) {
+            return THREADS.getCurrentThreadCpuTime();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * If an evaluation should be timed, the first evaluation of a scan and then every {@link #SAMPLE_INTERVAL}th.
+     *
+     * @param evaluation the number of evaluations of the indication so far in the scan.
+     * @return true if the evaluation should be timed.
+     */
+    public static boolean isSampled(long evaluation) {
+        return (evaluation & (SAMPLE_INTERVAL - 1)) == 0;
+    }
+
+    /**
+     * If the time spent matching is the CPU time of the scanning threads, rather than the wall-clock time.
+     *
+     * @return true if it is the CPU time.
+     */
+    public static boolean isCpuTime() {
+        return CPU_TIME;
+    }
+
+    /**
+     * Adds the cost of a scan for an indication.
+     *
+     * The time of the evaluations that were not timed is estimated from the average of the timed ones.
+     *
+     * @param indication the indication.
+     * @param sampledNanos the time spent in the timed evaluations, in nanoseconds, see {@link #currentTimeNanos()}.
+     * @param sampledEvaluations the number of timed evaluations, see {@link #isSampled(long)}.
+     * @param evaluations the number of lines, or windows of a multi-line indication, that it was evaluated on.
+     * @param matches 1 if it matched in the scan, 0 otherwise; a scan stops at the first match.
+     * @param timeouts the number of times matching it timed out.
+     */
+    public void record(Indication indication, long sampledNanos, long sampledEvaluations, long evaluations,
+                       long matches, long timeouts) {
+        if (evaluations == 0 && timeouts == 0) {
+            return;
+        }
+        long nanos = sampledNanos;
+        if (sampledEvaluations > 0 && sampledEvaluations < evaluations) {
+            nanos = sampledNanos * evaluations / sampledEvaluations;
+        }
+        String expression = indication.getUserProvidedExpression();
+        IndicationCost cost = costs.get(expression);
+        if (cost == null) {
+            IndicationCost newCost = new IndicationCost(expression);
+            cost = costs.putIfAbsent(expression, newCost);
+            if (cost == null) {
+                cost = newCost;
+            }
+        }
+        cost.nanos.addAndGet(nanos);
+        cost.evaluations.addAndGet(evaluations);
+        cost.matches.addAndGet(matches);
+        cost.timeouts.addAndGet(timeouts);
+    }
+
+    /**
+     * The costs of the indications, the most expensive first.
+     *
+     * @return the costs.
+     */
+    public List<IndicationCost> getCosts() {
+        List<IndicationCost> list = new ArrayList<IndicationCost>(costs.values());
+        Collections.sort(list, new Comparator<IndicationCost>() {
+            @Override
+            public int compare(IndicationCost o1, IndicationCost o2) {
+                long nanos1 = o1.getNanos();
+                long nanos2 = o2.getNanos();
+                if (nanos1 == nanos2) {
+                    return 0;
+                } else if (nanos1 > nanos2) {
+                    return -1;
+                }
+                return 1;
+            }
+        });
+        return list;
+    }
+
+    /**
+     * The total time spent matching indications.
+     *
+     * @return the time in nanoseconds.
+     */
+    public long getTotalNanos() {
+        long total = 0;
+        for (IndicationCost cost : costs.values()) {
+            total += cost.getNanos();
+        }
+        return total;
+    }
+
+    /**
+     * Resets the counters, for example after the knowledge base has been cleaned up.
+     */
+    public void reset() {
+        costs.clear();
+    }
+
+    /**
+     * What scanning for an indication has cost.
+     */
+    public static final class IndicationCost {
+        private final String expression;
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLong evaluations = new AtomicLong();
+        private final AtomicLong matches = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+
+        /**
+         * Standard constructor.
+         *
+         * @param expression the expression of the indication.
+         */
+        private IndicationCost(String expression) {
+            this.expression = expression;
+        }
+
+        /**
+         * The expression of the indication.
+         *
+         * @return the expression.
+         */
+        public String getExpression() {
+            return expression;
+        }
+
+        /**
+         * The time spent matching the indication, estimated from the sampled evaluations.
+         *
+         * @return the time in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos.get();
+        }
+
+        /**
+         * The time spent matching the indication.
+         *
+         * @return the time in milliseconds.
+         */
+        public long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+        }
+
+        /**
+         * The average time of one evaluation.
+         *
+         * @return the time in microseconds, or 0 if it has not been evaluated.
+         */
+        public double getMicrosPerEvaluation() {
+            long currentEvaluations = evaluations.get();
+            if (currentEvaluations == 0) {
+                return 0;
+            }
+            //CS IGNORE MagicNumber FOR NEXT 1 LINES. REASON: Nanoseconds per microsecond.
+            return nanos.get() / 1000.0 / currentEvaluations;
+        }
+
+        /**
+         * The number of lines, or windows of a multi-line indication, that the indication was evaluated on.
+         *
+         * @return the number of evaluations.
+         */
+        public long getEvaluations() {
+            return evaluations.get();
+        }
+
+        /**
+         * The number of scans in which the indication matched.
+         *
+         * @return the number of scans with a match.
+         */
+        public long getMatches() {
+            return matches.get();
+        }
+
+        /**
+         * The number of times matching the indication timed out.
+         *
+         * @return the number of timeouts.
+         */
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a log file through a memory mapping, without decoding them.
+ * Line boundaries are found on the raw bytes, and lines with only ASCII bytes are returned as a reused
+ * {@link ByteCharSequence}, so scanning them allocates nothing. Lines with other bytes are decoded to Strings.
+ * Lines end at \n, \r or \r\n, just like {@link java.io.BufferedReader#readLine()}.
+ * The file is mapped in chunks, so logs larger than 2 GB are handled as well.
+ * Only a single line longer than 2 GB would be split.
+ */
+public class MappedLogLines implements LineSource, Closeable {
+
+    /**
+     * The size of each mapped chunk of the file.
+     */
+    static final int CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private static final String ASCII_PROBE;
+
+    static {
+        StringBuilder probe = new StringBuilder("\t\n\r");
+        for (char c = ' '; c <= '~'; c++) {
+            probe.append(c);
+        }
+        ASCII_PROBE = probe.toString();
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final Charset charset;
+    private final int chunkSize;
+    private final ByteCharSequence view;
+    private MappedByteBuffer chunk;
+    private long chunkOffset;
+    private int position;
+    private boolean pendingCarriageReturn;
+
+    /**
+     * Standard constructor.
+     *
+     * @param logFile the log file.
+     * @param charset the charset of the log, must be ASCII compatible.
+     * @throws IOException if the file could not be opened.
+     * @see #isSupported(File, Charset)
+     */
+    public MappedLogLines(File logFile, Charset charset) throws IOException {
+        this(logFile, charset, CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor with a chunk size, for tests.
+     *
+     * @param logFile the log file.
+     * @param charset the charset of the log, must be ASCII compatible.
+     * @param chunkSize the size of each mapped chunk.
+     * @throws IOException if the file could not be opened.
+     */
+    MappedLogLines(File logFile, Charset charset, int chunkSize) throws IOException {
+        this.file = new RandomAccessFile(logFile, "r");
+        this.channel = file.getChannel();
+        this.size = channel.size();
+        this.charset = charset;
+        this.chunkSize = chunkSize;
+        this.view = new ByteCharSequence(charset);
+    }
+
+    /**
+     * Checks if a log file can be scanned through a memory mapping.
+     * Compressed logs and charsets where ASCII characters are not single bytes are not supported.
+     *
+     * @param logFile the log file.
+     * @param charset the charset of the log.
+     * @return true if the file can be read with this class.
+     */
+    public static boolean isSupported(File logFile, Charset charset) {
+        if (logFile == null || charset == null || !logFile.isFile() || logFile.getName().endsWith(".gz")) {
+            return false;
+        }
+        return Arrays.equals(ASCII_PROBE.getBytes(charset), ASCII_PROBE.getBytes(Charset.forName("US-ASCII")));
+    }
+
+    @Override
+    public CharSequence readLine() throws IOException {
+        while (true) {
+            if (chunk == null || position >= chunk.limit()) {
+                long next = chunkOffset + position;
+                if (next >= size) {
+                    return null;
+                }
+                map(next, chunkSize);
+            }
+            if (pendingCarriageReturn) {
+                //The previous line ended with a \r at the end of the last chunk.
+                pendingCarriageReturn = false;
+                if (chunk.get(position) == '\n') {
+                    position++;
+                    continue;
+                }
+            }
+            int lineStart = position;
+            int limit = chunk.limit();
+            boolean ascii = true;
+            int i = lineStart;
+            while (i < limit) {
+                byte b = chunk.get(i);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                if (b < 0) {
+                    ascii = false;
+                }
+                i++;
+            }
+            if (i == limit && chunkOffset + limit < size) {
+                //The line continues in the next chunk, map again from its start.
+                if (lineStart > 0) {
+                    map(chunkOffset + lineStart, chunkSize);
+                    continue;
+                } else if (limit < Integer.MAX_VALUE) {
+                    //The line is longer than a chunk, map more of the file at once.
+                    map(chunkOffset, Math.min((long)limit * 2, Integer.MAX_VALUE));
+                    continue;
+                }
+            }
+            int lineEnd = i;
+            if (i < limit) {
+                byte terminator = chunk.get(i);
+                i++;
+                if (terminator == '\r') {
+                    if (i < limit) {
+                        if (chunk.get(i) == '\n') {
+                            i++;
+                        }
+                    } else {
+                        pendingCarriageReturn = true;
+                    }
+                }
+            }
+            position = i;
+            if (ascii) {
+                view.reset(chunk, lineStart, lineEnd);
+                return view;
+            }
+            ByteBuffer line = chunk.duplicate();
+            line.limit(lineEnd);
+            line.position(lineStart);
+            return charset.decode(line).toString();
+        }
+    }
+
+    /**
+     * Maps the next chunk of the file.
+     *
+     * @param offset the offset in the file to start the chunk at.
+     * @param maxLength the maximum length of the chunk.
+     * @throws IOException if the mapping fails.
+     */
+    private void map(long offset, long maxLength) throws IOException {
+        long length = Math.min(maxLength, size - offset);
+        chunk = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        chunkOffset = offset;
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunk = null;
+        file.close();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import com.sonyericsson.jenkins.plugins.bfa.Messages;
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+
+import java.util.List;
+
+/**
+ * The available engines for matching single-line indications against a build log.
+ */
+public enum MatchingEngine {
+
+    /**
+     * Evaluates every pattern with {@link java.util.regex} on every line.
+     */
+    REGEX {
+        @Override
+        public PatternSet compile(List<FailureCause> causes) {
+            return new RegexPatternSet(causes);
+        }
+
+        @Override
+        public String getDisplayName() {
+            return Messages.MatchingEngine_Regex_DisplayName();
+        }
+    },
+
+    /**
+     * Finds the candidate patterns of each line in a single pass with a combined literal automaton.
+     */
+    MULTI_PATTERN {
+        @Override
+        public PatternSet compile(List<FailureCause> causes) {
+            return new MultiPatternSet(causes);
+        }
+
+        @Override
+        public String getDisplayName() {
+            return Messages.MatchingEngine_MultiPattern_DisplayName();
+        }
+    };
+
+    /**
+     * Compiles the indications of the causes into a pattern set for this engine.
+     *
+     * @param causes the causes.
+     * @return the compiled pattern set.
+     */
+    public abstract PatternSet compile(List<FailureCause> causes);
+
+    /**
+     * The human readable name of the engine.
+     *
+     * @return the display name.
+     */
+    public abstract String getDisplayName();
+
+    /**
+     * Finds the engine with the given name.
+     *
+     * @param name the name of the engine.
+     * @return the engine, or {@link #REGEX} if the name is unknown.
+     */
+    public static MatchingEngine fromName(String name) {
+        if (name != null) {
+            for (MatchingEngine engine : values()) {
+                if (engine.name().equals(name)) {
+                    return engine;
+                }
+            }
+        }
+        return REGEX;
+    }
+}
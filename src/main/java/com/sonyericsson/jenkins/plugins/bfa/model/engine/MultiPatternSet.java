@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Pattern set that finds the candidate patterns for a line in a single pass.
+ * The required literal of every pattern (see {@link RequiredLiteralExtractor})
+ * is compiled into one {@link AhoCorasick} automaton, so a line only has to be examined once
+ * no matter how many patterns there are. Patterns without a required literal
+ * fall back to being evaluated with {@link java.util.regex} on every line.
+ * The automaton is taken from the {@link PatternCache}, so it survives knowledge base reloads.
+ */
+public class MultiPatternSet extends PatternSet {
+    private final AhoCorasick automaton;
+    private final BitSet fallback;
+    private final int literalCount;
+
+    /**
+     * Standard constructor.
+     *
+     * @param causes the causes whose indications should be part of the set.
+     */
+    public MultiPatternSet(List<FailureCause> causes) {
+        super(causes);
+        fallback = new BitSet(size());
+        List<String> literals = new ArrayList<String>(size());
+        int count = 0;
+        for (PatternEntry entry : getEntries()) {
+            String literal = entry.getRequiredLiteral();
+            if (literal == null) {
+                fallback.set(entry.getIndex());
+            } else {
+                count++;
+            }
+            literals.add(literal);
+        }
+        literalCount = count;
+        automaton = PatternCache.getInstance().getAutomaton(literals);
+    }
+
+    /**
+     * The number of patterns handled by the automaton.
+     *
+     * @return the number of patterns with a literal.
+     */
+    public int getLiteralCount() {
+        return literalCount;
+    }
+
+    /**
+     * The number of patterns that are evaluated on every line.
+     *
+     * @return the number of fallback patterns.
+     */
+    public int getFallbackCount() {
+        return fallback.cardinality();
+    }
+
+    @Override
+    public void findCandidates(CharSequence line, BitSet candidates) {
+        candidates.or(fallback);
+        automaton.scan(line, candidates);
+    }
+}
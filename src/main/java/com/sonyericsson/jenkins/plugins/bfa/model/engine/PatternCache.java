@@ -0,0 +1,279 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sonyericsson.jenkins.plugins.bfa.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Process wide cache of compiled patterns and literal automata.
+ * The knowledge base replaces its failure causes when it is reloaded, which would otherwise mean that every
+ * expression is compiled again on the next scan. Patterns are shared by expression and flags instead,
+ * so an unchanged indication gets the same compiled pattern, required literal and automaton after a reload.
+ * The least recently used entries are evicted when the cache is full.
+ */
+public final class PatternCache {
+    /**
+     * The maximum number of compiled patterns to keep.
+     */
+    static final int MAXIMUM_PATTERNS = 10000;
+    /**
+     * The maximum number of automata to keep, one is needed per distinct set of single-line indications.
+     */
+    static final int MAXIMUM_AUTOMATA = 8;
+
+    private static final PatternCache INSTANCE = new PatternCache();
+
+    private final Cache<String, CompiledPattern> patterns =
+            CacheBuilder.newBuilder().maximumSize(MAXIMUM_PATTERNS).build();
+    private final Cache<List<String>, AhoCorasick> automata =
+            CacheBuilder.newBuilder().maximumSize(MAXIMUM_AUTOMATA).build();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong automatonHits = new AtomicLong();
+    private final AtomicLong automatonMisses = new AtomicLong();
+
+    /**
+     * Singleton constructor.
+     */
+    private PatternCache() {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.register("patterns.cache.hitRate", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return getHitRate();
+            }
+        });
+        metrics.register("patterns.cache.size", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return getPatternCount();
+            }
+        });
+        metrics.register("patterns.cache.automata.hitRate", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return getAutomatonHitRate();
+            }
+        });
+        metrics.register("patterns.cache.automata.size", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return automata.size();
+            }
+        });
+    }
+
+    /**
+     * The singleton instance.
+     *
+     * @return the instance.
+     */
+    public static PatternCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the compiled form of an expression, compiling it if it is not in the cache.
+     *
+     * @param regex the expression.
+     * @param flags the flags to compile it with, see {@link Pattern#compile(String, int)}.
+     * @return the compiled pattern.
+     * @throws java.util.regex.PatternSyntaxException if the expression is invalid, invalid expressions are not cached.
+     */
+    public CompiledPattern get(String regex, int flags) {
+        String key = flags + ":" + regex;
+        CompiledPattern compiled = patterns.getIfPresent(key);
+        if (compiled != null) {
+            hits.incrementAndGet();
+            return compiled;
+        }
+        misses.incrementAndGet();
+        compiled = new CompiledPattern(Pattern.compile(regex, flags));
+        //Two threads missing at the same time both compile, the last one wins which is harmless.
+        patterns.put(key, compiled);
+        return compiled;
+    }
+
+    /**
+     * Gets the automaton for a list of literals, building it if it is not in the cache.
+     * Each literal is added with its position in the list as id, null literals are skipped.
+     *
+     * @param literals the literals.
+     * @return the automaton.
+     */
+    public AhoCorasick getAutomaton(List<String> literals) {
+        List<String> key = Collections.unmodifiableList(new ArrayList<String>(literals));
+        AhoCorasick automaton = automata.getIfPresent(key);
+        if (automaton != null) {
+            automatonHits.incrementAndGet();
+            return automaton;
+        }
+        automatonMisses.incrementAndGet();
+        AhoCorasick.Builder builder = new AhoCorasick.Builder();
+        for (int i = 0; i < key.size(); i++) {
+            String literal = key.get(i);
+            if (literal != null) {
+                builder.add(literal, i);
+            }
+        }
+        automaton = builder.build();
+        automata.put(key, automaton);
+        return automaton;
+    }
+
+    /**
+     * The number of pattern lookups that were served from the cache.
+     *
+     * @return the number of hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * The number of pattern lookups that had to compile.
+     *
+     * @return the number of misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * The share of the pattern lookups that were served from the cache.
+     *
+     * @return the hit rate between 0 and 1, or 0 if nothing has been looked up yet.
+     */
+    public double getHitRate() {
+        return hitRate(hits.get(), misses.get());
+    }
+
+    /**
+     * The number of automaton lookups that were served from the cache.
+     *
+     * @return the number of hits.
+     */
+    public long getAutomatonHits() {
+        return automatonHits.get();
+    }
+
+    /**
+     * The number of automaton lookups that had to build a new automaton.
+     *
+     * @return the number of misses.
+     */
+    public long getAutomatonMisses() {
+        return automatonMisses.get();
+    }
+
+    /**
+     * The share of the automaton lookups that were served from the cache.
+     *
+     * @return the hit rate between 0 and 1, or 0 if nothing has been looked up yet.
+     */
+    public double getAutomatonHitRate() {
+        return hitRate(automatonHits.get(), automatonMisses.get());
+    }
+
+    /**
+     * Calculates a hit rate.
+     *
+     * @param currentHits the number of hits.
+     * @param currentMisses the number of misses.
+     * @return the hit rate between 0 and 1, or 0 if there were no lookups.
+     */
+    private static double hitRate(long currentHits, long currentMisses) {
+        long total = currentHits + currentMisses;
+        if (total == 0) {
+            return 0;
+        }
+        return (double)currentHits / total;
+    }
+
+    /**
+     * The number of compiled patterns currently in the cache.
+     *
+     * @return the number of patterns.
+     */
+    public long getPatternCount() {
+        return patterns.size();
+    }
+
+    /**
+     * Empties the cache and resets the counters.
+     */
+    public void reset() {
+        patterns.invalidateAll();
+        automata.invalidateAll();
+        hits.set(0);
+        misses.set(0);
+        automatonHits.set(0);
+        automatonMisses.set(0);
+    }
+
+    /**
+     * A compiled pattern together with what has been derived from it.
+     */
+    public static final class CompiledPattern {
+        private final Pattern pattern;
+        private final String requiredLiteral;
+
+        /**
+         * Standard constructor.
+         *
+         * @param pattern the compiled pattern.
+         */
+        CompiledPattern(Pattern pattern) {
+            this.pattern = pattern;
+            this.requiredLiteral = RequiredLiteralExtractor.extract(pattern);
+        }
+
+        /**
+         * The compiled pattern.
+         *
+         * @return the pattern.
+         */
+        public Pattern getPattern() {
+            return pattern;
+        }
+
+        /**
+         * A literal that every line matching the pattern must contain.
+         *
+         * @return the literal, or null if none could be found.
+         * @see RequiredLiteralExtractor
+         */
+        public String getRequiredLiteral() {
+            return requiredLiteral;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.BuildLogIndication;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.Indication;
+
+import java.util.regex.Pattern;
+
+/**
+ * One indication of a failure cause as part of a {@link PatternSet}.
+ */
+public final class PatternEntry {
+    private final int index;
+    private final FailureCause cause;
+    private final Indication indication;
+    private final Pattern pattern;
+    private final String requiredLiteral;
+
+    /**
+     * Standard constructor.
+     *
+     * @param index the position of this entry in its pattern set.
+     * @param cause the cause the indication belongs to.
+     * @param indication the indication.
+     */
+    PatternEntry(int index, FailureCause cause, Indication indication) {
+        this.index = index;
+        this.cause = cause;
+        this.indication = indication;
+        this.pattern = indication.getPattern();
+        if (indication instanceof BuildLogIndication) {
+            this.requiredLiteral = ((BuildLogIndication)indication).getRequiredLiteral();
+        } else {
+            PatternCache.CompiledPattern compiled = PatternCache.getInstance().get(pattern.pattern(), pattern.flags());
+            this.requiredLiteral = compiled.getRequiredLiteral();
+        }
+    }
+
+    /**
+     * The position of this entry in its pattern set.
+     *
+     * @return the index.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * The cause the indication belongs to.
+     *
+     * @return the cause.
+     */
+    public FailureCause getCause() {
+        return cause;
+    }
+
+    /**
+     * The indication.
+     *
+     * @return the indication.
+     */
+    public Indication getIndication() {
+        return indication;
+    }
+
+    /**
+     * The compiled pattern of the indication.
+     *
+     * @return the pattern.
+     */
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * A literal that every line matching the pattern must contain.
+     *
+     * @return the required literal, or null if there is none.
+     */
+    public String getRequiredLiteral() {
+        return requiredLiteral;
+    }
+
+    /**
+     * Checks if the line may match the pattern, judging by the required literal.
+     *
+     * @param line the line.
+     * @return false if the line can not match the pattern.
+     */
+    public boolean mayMatch(CharSequence line) {
+        if (requiredLiteral == null) {
+            return true;
+        }
+        if (line instanceof ByteCharSequence) {
+            return ((ByteCharSequence)line).contains(requiredLiteral);
+        }
+        return line.toString().contains(requiredLiteral);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.Indication;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * All single-line indications of a list of failure causes, compiled by a {@link MatchingEngine}.
+ * A pattern set only narrows down which patterns need to be evaluated for a line,
+ * the actual match is always confirmed by the regular expression of the indication.
+ * Instances are immutable and can be shared between scans.
+ */
+public abstract class PatternSet {
+    private final List<FailureCause> causes;
+    private final List<PatternEntry> entries;
+
+    /**
+     * Standard constructor.
+     *
+     * @param causes the causes whose indications should be part of the set.
+     */
+    protected PatternSet(List<FailureCause> causes) {
+        this.causes = Collections.unmodifiableList(new ArrayList<FailureCause>(causes));
+        List<PatternEntry> list = new ArrayList<PatternEntry>();
+        for (FailureCause cause : causes) {
+            for (Indication indication : cause.getIndications()) {
+                list.add(new PatternEntry(list.size(), cause, indication));
+            }
+        }
+        this.entries = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * The causes this set was compiled from.
+     *
+     * @return the causes.
+     */
+    public List<FailureCause> getCauses() {
+        return causes;
+    }
+
+    /**
+     * All entries of the set, the index of an entry is its position in this list.
+     *
+     * @return the entries.
+     */
+    public List<PatternEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * The number of patterns in the set.
+     *
+     * @return the number of patterns.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Sets the bit of every entry whose pattern might match the line.
+     * Entries whose bit is left cleared are guaranteed not to match.
+     *
+     * @param line the line to examine.
+     * @param candidates the bit set to update, indexed by entry index.
+     */
+    public abstract void findCandidates(CharSequence line, BitSet candidates);
+}
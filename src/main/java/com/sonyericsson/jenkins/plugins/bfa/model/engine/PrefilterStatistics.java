@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import com.sonyericsson.jenkins.plugins.bfa.metrics.MetricsRegistry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how often the required literal prefilter lets a line through to the regular expression of an indication.
+ * A hit means that the line contained the literal and the pattern was evaluated,
+ * a miss means that the line was ruled out without evaluating the pattern.
+ */
+public final class PrefilterStatistics {
+    private static final PrefilterStatistics INSTANCE = new PrefilterStatistics();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Singleton constructor.
+     */
+    private PrefilterStatistics() {
+        MetricsRegistry.getInstance().register("prefilter.hitRatio", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return getHitRatio();
+            }
+        });
+    }
+
+    /**
+     * The singleton instance.
+     *
+     * @return the instance.
+     */
+    public static PrefilterStatistics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Adds the outcome of a scan.
+     *
+     * @param scanHits the number of lines that contained the literal of an indication.
+     * @param scanMisses the number of lines that were ruled out by the literal of an indication.
+     */
+    public void record(long scanHits, long scanMisses) {
+        hits.addAndGet(scanHits);
+        misses.addAndGet(scanMisses);
+    }
+
+    /**
+     * The total number of hits.
+     *
+     * @return the number of hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * The total number of misses.
+     *
+     * @return the number of misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * The share of the prefilter checks that let the line through to the regular expression.
+     *
+     * @return the hit ratio between 0 and 1, or 0 if nothing has been checked yet.
+     */
+    public double getHitRatio() {
+        long currentHits = hits.get();
+        long total = currentHits + misses.get();
+        if (total == 0) {
+            return 0;
+        }
+        return (double)currentHits / total;
+    }
+
+    /**
+     * Resets the counters.
+     */
+    public void reset() {
+        hits.set(0);
+        misses.set(0);
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Finds a literal string that every match of a regular expression must contain.
+ * A line that does not contain the literal can not match the pattern,
+ * so a cheap substring search can rule out most lines before the regular expression is evaluated.
+ * Constructs that are not understood make the extractor give up and report no literal.
+ */
+public final class RequiredLiteralExtractor {
+
+    private static final int UNSUPPORTED_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.COMMENTS
+            | Pattern.CANON_EQ | Pattern.UNICODE_CASE;
+    private static final String ZERO_OR_CLASS_ESCAPES = "dDsSwWbBAGzZhHvVR";
+
+    /**
+     * Utility constructor.
+     */
+    private RequiredLiteralExtractor() {
+    }
+
+    /**
+     * Extracts the longest literal that every match of the pattern must contain.
+     *
+     * @param pattern the pattern.
+     * @return the literal, or null if no required literal could be found.
+     */
+    public static String extract(Pattern pattern) {
+        String expression = pattern.pattern();
+        if ((pattern.flags() & UNSUPPORTED_FLAGS) != 0) {
+            return null;
+        }
+        if ((pattern.flags() & Pattern.LITERAL) != 0) {
+            if (expression.isEmpty()) {
+                return null;
+            }
+            return expression;
+        }
+        List<String> factors = new ArrayList<String>();
+        if (!collect(expression, 0, expression.length(), factors)) {
+            return null;
+        }
+        String longest = null;
+        for (String factor : factors) {
+            if (longest == null || factor.length() > longest.length()) {
+                longest = factor;
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Collects the required literal factors of a part of an expression.
+     *
+     * @param expression the expression.
+     * @param start the start of the part.
+     * @param end the end of the part, exclusive.
+     * @param factors where to add the found factors.
+     * @return false if the part contains something that is not understood.
+     */
+    private static boolean collect(String expression, int start, int end, List<String> factors) {
+        if (hasAlternation(expression, start, end)) {
+            //None of the alternatives is required on its own.
+            return true;
+        }
+        StringBuilder run = new StringBuilder();
+        boolean lastWasLiteral = false;
+        int i = start;
+        while (i < end) {
+            char c = expression.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= end) {
+                    return false;
+                }
+                char escaped = expression.charAt(i + 1);
+                if (escaped == 'Q') {
+                    int quoteEnd = expression.indexOf("\\E", i + 2);
+                    if (quoteEnd < 0 || quoteEnd > end) {
+                        quoteEnd = end;
+                    }
+                    run.append(expression, i + 2, quoteEnd);
+                    lastWasLiteral = quoteEnd > i + 2;
+                    i = quoteEnd + 2;
+                } else if (escaped == 'p' || escaped == 'P') {
+                    flush(run, factors);
+                    lastWasLiteral = false;
+                    if (i + 2 < end && expression.charAt(i + 2) == '{') {
+                        int close = expression.indexOf('}', i + 2);
+                        if (close < 0 || close >= end) {
+                            return false;
+                        }
+                        i = close + 1;
+                    } else {
+                        i += 3;
+                    }
+                } else if (ZERO_OR_CLASS_ESCAPES.indexOf(escaped) >= 0) {
+                    flush(run, factors);
+                    lastWasLiteral = false;
+                    i += 2;
+                } else if (Character.isLetterOrDigit(escaped)) {
+                    //Back references, octal, hex, unicode and control escapes.
+                    return false;
+                } else {
+                    run.append(escaped);
+                    lastWasLiteral = true;
+                    i += 2;
+                }
+            } else if (c == '[') {
+                flush(run, factors);
+                lastWasLiteral = false;
+                i = skipClass(expression, i, end);
+                if (i < 0) {
+                    return false;
+                }
+            } else if (c == '(') {
+                flush(run, factors);
+                lastWasLiteral = false;
+                int close = findGroupEnd(expression, i, end);
+                if (close < 0) {
+                    return false;
+                }
+                int inner = groupContentStart(expression, i, close);
+                if (inner == -1) {
+                    return false;
+                }
+                if (inner >= 0 && !isOptional(expression, close + 1, end)) {
+                    if (!collect(expression, inner, close, factors)) {
+                        return false;
+                    }
+                }
+                i = close + 1;
+            } else if (c == '*' || c == '?' || c == '+' || c == '{') {
+                int next = quantifierEnd(expression, i, end);
+                if (next < 0) {
+                    return false;
+                }
+                if (lastWasLiteral && isOptional(expression, i, end)) {
+                    run.setLength(run.length() - 1);
+                }
+                flush(run, factors);
+                lastWasLiteral = false;
+                i = next;
+            } else if (c == '.' || c == '^' || c == '$') {
+                flush(run, factors);
+                lastWasLiteral = false;
+                i++;
+            } else if (c == ')') {
+                return false;
+            } else {
+                run.append(c);
+                lastWasLiteral = true;
+                i++;
+            }
+        }
+        flush(run, factors);
+        return true;
+    }
+
+    /**
+     * Adds the current run of literal characters as a factor and starts a new run.
+     *
+     * @param run the run.
+     * @param factors the factors.
+     */
+    private static void flush(StringBuilder run, List<String> factors) {
+        if (run.length() > 0) {
+            factors.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    /**
+     * Checks if a part of an expression has an alternation on its top level.
+     *
+     * @param expression the expression.
+     * @param start the start of the part.
+     * @param end the end of the part, exclusive.
+     * @return true if so.
+     */
+    private static boolean hasAlternation(String expression, int start, int end) {
+        int depth = 0;
+        int i = start;
+        while (i < end) {
+            char c = expression.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < end && expression.charAt(i + 1) == 'Q') {
+                    int quoteEnd = expression.indexOf("\\E", i + 2);
+                    if (quoteEnd < 0) {
+                        return false;
+                    }
+                    i = quoteEnd + 2;
+                } else {
+                    i += 2;
+                }
+            } else if (c == '[') {
+                i = skipClass(expression, i, end);
+                if (i < 0) {
+                    return true;
+                }
+            } else {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (c == '|' && depth == 0) {
+                    return true;
+                }
+                i++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips a character class.
+     *
+     * @param expression the expression.
+     * @param start the position of the opening bracket.
+     * @param end the end of the part, exclusive.
+     * @return the position after the closing bracket, or -1 if there is none.
+     */
+    private static int skipClass(String expression, int start, int end) {
+        int depth = 0;
+        int i = start;
+        while (i < end) {
+            char c = expression.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+                i++;
+                //A closing bracket first in a class is a literal.
+                if (i < end && expression.charAt(i) == '^') {
+                    i++;
+                }
+                if (i < end && expression.charAt(i) == ']') {
+                    i++;
+                }
+                continue;
+            }
+            if (c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the closing parenthesis of a group.
+     *
+     * @param expression the expression.
+     * @param start the position of the opening parenthesis.
+     * @param end the end of the part, exclusive.
+     * @return the position of the closing parenthesis, or -1 if there is none.
+     */
+    private static int findGroupEnd(String expression, int start, int end) {
+        int depth = 0;
+        int i = start;
+        while (i < end) {
+            char c = expression.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < end && expression.charAt(i + 1) == 'Q') {
+                    int quoteEnd = expression.indexOf("\\E", i + 2);
+                    if (quoteEnd < 0) {
+                        return -1;
+                    }
+                    i = quoteEnd + 2;
+                } else {
+                    i += 2;
+                }
+            } else if (c == '[') {
+                i = skipClass(expression, i, end);
+                if (i < 0) {
+                    return -1;
+                }
+            } else {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                    if (depth == 0) {
+                        return i;
+                    }
+                }
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds where the content of a group starts.
+     *
+     * @param expression the expression.
+     * @param start the position of the opening parenthesis.
+     * @param close the position of the closing parenthesis.
+     * @return the start of the content, -2 for look-arounds that should be skipped,
+     *         or -1 for constructs that are not understood (like inline flags).
+     */
+    private static int groupContentStart(String expression, int start, int close) {
+        if (start + 1 >= close || expression.charAt(start + 1) != '?') {
+            return start + 1;
+        }
+        if (start + 2 >= close) {
+            return -1;
+        }
+        char type = expression.charAt(start + 2);
+        if (type == ':' || type == '>') {
+            return start + 3;
+        }
+        if (type == '=' || type == '!') {
+            return -2;
+        }
+        if (type == '<' && start + 3 < close) {
+            char next = expression.charAt(start + 3);
+            if (next == '=' || next == '!') {
+                return -2;
+            }
+            int nameEnd = expression.indexOf('>', start + 3);
+            if (nameEnd > 0 && nameEnd < close) {
+                return nameEnd + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if the atom before a position may occur zero times.
+     *
+     * @param expression the expression.
+     * @param position the position right after the atom.
+     * @param end the end of the part, exclusive.
+     * @return true if the atom is followed by a quantifier that allows zero occurrences.
+     */
+    private static boolean isOptional(String expression, int position, int end) {
+        if (position >= end) {
+            return false;
+        }
+        char c = expression.charAt(position);
+        if (c == '*' || c == '?') {
+            return true;
+        }
+        if (c == '{') {
+            int i = position + 1;
+            while (i < end && expression.charAt(i) == ' ') {
+                i++;
+            }
+            return i < end && expression.charAt(i) == '0'
+                    && (i + 1 >= end || !Character.isDigit(expression.charAt(i + 1)));
+        }
+        return false;
+    }
+
+    /**
+     * Finds the end of a quantifier, including any lazy or possessive modifier.
+     *
+     * @param expression the expression.
+     * @param start the position of the quantifier.
+     * @param end the end of the part, exclusive.
+     * @return the position after the quantifier, or -1 if it is malformed.
+     */
+    private static int quantifierEnd(String expression, int start, int end) {
+        int i = start;
+        if (expression.charAt(i) == '{') {
+            i = expression.indexOf('}', i);
+            if (i < 0 || i >= end) {
+                return -1;
+            }
+        }
+        i++;
+        if (i < end && (expression.charAt(i) == '?' || expression.charAt(i) == '+')) {
+            i++;
+        }
+        return i;
+    }
+}
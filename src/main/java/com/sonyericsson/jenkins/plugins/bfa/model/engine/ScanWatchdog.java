@@ -0,0 +1,211 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import com.sonyericsson.jenkins.plugins.bfa.metrics.MetricsRegistry;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watchdog expiring scans that have not made progress within their timeout.
+ * One shared thread checks the deadlines of all active scans instead of each scan starting its own timer thread.
+ * The thread is only scheduled while there are registrations.
+ * Expired scans are not interrupted, they notice the expiry through {@link BudgetedCharSequence}.
+ */
+public final class ScanWatchdog {
+    /**
+     * How often the deadlines are checked, in milliseconds.
+     */
+    static final long TICK = 200;
+
+    private static final ScanWatchdog INSTANCE = new ScanWatchdog();
+
+    private final Set<Registration> registrations =
+            Collections.newSetFromMap(new ConcurrentHashMap<Registration, Boolean>());
+    private final AtomicLong timeouts = new AtomicLong();
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> ticker;
+
+    /**
+     * Singleton constructor.
+     */
+    private ScanWatchdog() {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.register("scan.watchdog.active", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return getActiveRegistrations();
+            }
+        });
+        metrics.register("scan.watchdog.timeouts", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return getTimeouts();
+            }
+        });
+    }
+
+    /**
+     * The singleton instance.
+     *
+     * @return the instance.
+     */
+    public static ScanWatchdog getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts watching a scan.
+     * The returned registration must be touched at least once every timeout and closed when the scan is done.
+     *
+     * @param timeout the timeout in milliseconds.
+     * @return the registration.
+     */
+    public Registration register(long timeout) {
+        Registration registration = new Registration(timeout);
+        registrations.add(registration);
+        synchronized (this) {
+            if (ticker == null) {
+                if (executor == null) {
+                    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable target) {
+                            Thread thread = new Thread(target, "BFA Scan Watchdog");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+                ticker = executor.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        tick();
+                    }
+                }, TICK, TICK, TimeUnit.MILLISECONDS);
+            }
+        }
+        return registration;
+    }
+
+    /**
+     * Expires the scans whose deadline has passed, and stops ticking when nothing is watched.
+     */
+    void tick() {
+        long now = System.currentTimeMillis();
+        for (Registration registration : registrations) {
+            if (registration.expireIfOverdue(now)) {
+                timeouts.incrementAndGet();
+            }
+        }
+        synchronized (this) {
+            if (registrations.isEmpty() && ticker != null) {
+                ticker.cancel(false);
+                ticker = null;
+            }
+        }
+    }
+
+    /**
+     * The number of scans currently being watched.
+     *
+     * @return the number of active registrations.
+     */
+    public int getActiveRegistrations() {
+        return registrations.size();
+    }
+
+    /**
+     * The number of times a scan has timed out.
+     *
+     * @return the number of timeouts.
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * A watched scan.
+     */
+    public final class Registration {
+        private final long timeout;
+        private volatile long lastTouched;
+        private volatile boolean expired;
+
+        /**
+         * Standard constructor.
+         *
+         * @param timeout the timeout in milliseconds.
+         */
+        private Registration(long timeout) {
+            this.timeout = timeout;
+            this.lastTouched = System.currentTimeMillis();
+        }
+
+        /**
+         * Touch, i.e. reset the countdown and clear the expiry.
+         */
+        public void touch() {
+            lastTouched = System.currentTimeMillis();
+            expired = false;
+        }
+
+        /**
+         * If the scan has not been touched within the timeout.
+         *
+         * @return true if expired.
+         */
+        public boolean isExpired() {
+            return expired;
+        }
+
+        /**
+         * Expires the scan if it has not been touched within the timeout.
+         *
+         * @param now the current time.
+         * @return true if the scan expired now.
+         */
+        private boolean expireIfOverdue(long now) {
+            if (expired || now - lastTouched < timeout) {
+                return false;
+            }
+            expired = true;
+            return true;
+        }
+
+        /**
+         * Stops watching the scan.
+         */
+        public void close() {
+            registrations.remove(this);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a log once and lets several readers consume it concurrently.
+ * One producer, running in {@link #run()}, streams the log in chunks into a ring buffer,
+ * and every reader created with {@link #newReader()} gets its own view of the stream.
+ * The producer only overwrites a chunk when all started readers have consumed it.
+ * A reader that starts reading after the beginning of the log has been overwritten
+ * falls back to opening the log on its own, so a reader waiting for a thread can never stall the producer.
+ */
+public class SharedLogBuffer implements Runnable {
+
+    /**
+     * The number of chars in each chunk of the ring buffer.
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The default number of chunks in the ring buffer.
+     */
+    static final int DEFAULT_CHUNKS = 16;
+
+    /**
+     * Opens the log to read.
+     */
+    public interface Source {
+
+        /**
+         * Opens a new reader of the log.
+         *
+         * @return the reader.
+         * @throws IOException if the log could not be opened.
+         */
+        Reader open() throws IOException;
+    }
+
+    private final Source source;
+    private final char[][] chunks;
+    private final int[] lengths;
+    private final List<SharedReader> readers = new ArrayList<SharedReader>();
+    /** The number of chunks produced so far. */
+    private long produced = 0;
+    /** The number of chunks produced or being produced. */
+    private long reserved = 0;
+    private boolean started = false;
+    private boolean finished = false;
+    private IOException failure = null;
+
+    /**
+     * Standard constructor.
+     *
+     * @param source the log to read.
+     */
+    public SharedLogBuffer(Source source) {
+        this(source, DEFAULT_CHUNKS);
+    }
+
+    /**
+     * Constructor with a given size of the ring buffer.
+     *
+     * @param source the log to read.
+     * @param nrOfChunks the number of chunks in the ring buffer.
+     */
+    SharedLogBuffer(Source source, int nrOfChunks) {
+        this.source = source;
+        this.chunks = new char[nrOfChunks][];
+        this.lengths = new int[nrOfChunks];
+    }
+
+    /**
+     * Creates a new reader of the log. All readers must be created before the producer is started.
+     * The reader must be closed when it is no longer needed, so that the producer does not wait for it.
+     *
+     * @return the reader.
+     */
+    public synchronized Reader newReader() {
+        if (started) {
+            throw new IllegalStateException("The log is already being read");
+        }
+        SharedReader reader = new SharedReader();
+        readers.add(reader);
+        return reader;
+    }
+
+    /**
+     * The number of readers that have not been closed yet.
+     *
+     * @return the number of open readers.
+     */
+    public synchronized int getOpenReaders() {
+        return readers.size();
+    }
+
+    /**
+     * Reads the log into the ring buffer until the end of the log, or until all readers are closed.
+     * Meant to be run by the thread that waits for the readers, so that the producer can never be starved
+     * by the readers occupying all threads of a pool.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            started = true;
+        }
+        Reader reader = null;
+        try {
+            reader = source.open();
+            while (true) {
+                int slot;
+                synchronized (this) {
+                    slot = waitForFreeSlot();
+                    if (slot < 0) {
+                        return;
+                    }
+                }
+                char[] chunk = chunks[slot];
+                if (chunk == null) {
+                    chunk = new char[CHUNK_SIZE];
+                }
+                int length = fill(reader, chunk);
+                synchronized (this) {
+                    chunks[slot] = chunk;
+                    lengths[slot] = length;
+                    if (length > 0) {
+                        produced++;
+                    }
+                    reserved = produced;
+                    if (length < CHUNK_SIZE) {
+                        finished = true;
+                    }
+                    notifyAll();
+                    if (finished) {
+                        return;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            fail(new IOException("Interrupted while reading the log", e));
+            Thread.currentThread().interrupt();
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                    //CS IGNORE EmptyBlock FOR NEXT 2 LINES. REASON: unimportant exception
+                } catch (IOException eIgnore) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the production as failed, waking up all waiting readers.
+     *
+     * @param e the cause.
+     */
+    private synchronized void fail(IOException e) {
+        failure = e;
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * Waits until the slot of the next chunk is not needed by any started reader.
+     * Must be called while holding the lock.
+     *
+     * @return the slot, or -1 if all readers are closed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private int waitForFreeSlot() throws InterruptedException {
+        long overwritten = produced - chunks.length;
+        while (true) {
+            if (readers.isEmpty()) {
+                return -1;
+            }
+            boolean free = true;
+            for (SharedReader reader : readers) {
+                if (reader.active && reader.chunk <= overwritten) {
+                    free = false;
+                    break;
+                }
+            }
+            if (free) {
+                reserved = produced + 1;
+                return (int)(produced % chunks.length);
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Reads from the reader until the chunk is full or the end of the log is reached.
+     *
+     * @param reader the reader.
+     * @param chunk the chunk to fill.
+     * @return the number of chars read.
+     * @throws IOException if so.
+     */
+    private static int fill(Reader reader, char[] chunk) throws IOException {
+        int length = 0;
+        while (length < chunk.length) {
+            int read = reader.read(chunk, length, chunk.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    /**
+     * A reader of the shared log.
+     */
+    private class SharedReader extends Reader {
+        /** If the reader reads from the ring buffer. */
+        private boolean active = false;
+        private boolean closed = false;
+        /** The sequence number of the chunk the reader is at. */
+        private long chunk = 0;
+        private int offset = 0;
+        /** The reader to use when the start of the log was overwritten before this reader started. */
+        private Reader fallback = null;
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (fallback != null) {
+                return fallback.read(cbuf, off, len);
+            }
+            if (len == 0) {
+                return 0;
+            }
+            boolean interrupted = false;
+            try {
+                synchronized (SharedLogBuffer.this) {
+                    if (closed) {
+                        throw new IOException("Reader is closed");
+                    }
+                    if (!active && reserved > chunks.length) {
+                        readers.remove(this);
+                        SharedLogBuffer.this.notifyAll();
+                    } else {
+                        active = true;
+                        while (chunk >= produced && !finished) {
+                            try {
+                                SharedLogBuffer.this.wait();
+                            } catch (InterruptedException e) {
+                                //The producer always finishes and wakes us up, so reading is not aborted;
+                                //the interrupt is kept for the caller.
+                                interrupted = true;
+                            }
+                        }
+                        return readChunk(cbuf, off, len);
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            //Opened without holding the lock, so that a slow open does not block the producer and the other readers.
+            Reader opened = source.open();
+            synchronized (SharedLogBuffer.this) {
+                if (closed) {
+                    opened.close();
+                    throw new IOException("Reader is closed");
+                }
+                fallback = opened;
+            }
+            return fallback.read(cbuf, off, len);
+        }
+
+        /**
+         * Copies from the chunk the reader is at, when it has been produced or the production has finished.
+         * Must be called while holding the lock.
+         *
+         * @param cbuf the destination buffer.
+         * @param off the offset to start storing chars at.
+         * @param len the maximum number of chars to copy.
+         * @return the number of chars copied, or -1 at the end of the log.
+         * @throws IOException if the production failed.
+         */
+        private int readChunk(char[] cbuf, int off, int len) throws IOException {
+            if (chunk >= produced) {
+                if (failure != null) {
+                    throw new IOException("Failed to read the log", failure);
+                }
+                return -1;
+            }
+            int slot = (int)(chunk % chunks.length);
+            int count = Math.min(len, lengths[slot] - offset);
+            System.arraycopy(chunks[slot], offset, cbuf, off, count);
+            offset += count;
+            if (offset >= lengths[slot]) {
+                chunk++;
+                offset = 0;
+                SharedLogBuffer.this.notifyAll();
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            Reader opened;
+            synchronized (SharedLogBuffer.this) {
+                closed = true;
+                readers.remove(this);
+                SharedLogBuffer.this.notifyAll();
+                opened = fallback;
+            }
+            if (opened != null) {
+                opened.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Fixed size circular window of characters sliding over a reader,
+ * used to match multi-line patterns in place without copying the text.
+ * When the window slides, all but the last overlap characters are dropped,
+ * so that a match can span the border between two fills.
+ */
+public class SlidingCharWindow implements CharSequence {
+    private final char[] buffer;
+    private final int overlap;
+    private int start;
+    private int length;
+
+    /**
+     * Standard constructor.
+     *
+     * @param size the number of characters in the window.
+     * @param overlap the number of characters kept when sliding, must be smaller than size.
+     */
+    public SlidingCharWindow(int size, int overlap) {
+        if (overlap < 0 || overlap >= size) {
+            throw new IllegalArgumentException("The overlap must be smaller than the window size");
+        }
+        this.buffer = new char[size];
+        this.overlap = overlap;
+    }
+
+    /**
+     * Reads from the reader until the window is full or the reader is exhausted.
+     *
+     * @param reader the reader.
+     * @return the number of characters read, or -1 if the reader was exhausted before anything could be read.
+     * @throws IOException if reading fails.
+     */
+    public int fill(Reader reader) throws IOException {
+        int total = 0;
+        while (length < buffer.length) {
+            int end = start + length;
+            if (end >= buffer.length) {
+                end -= buffer.length;
+            }
+            int contiguous = Math.min(buffer.length - length, buffer.length - end);
+            int read = reader.read(buffer, end, contiguous);
+            if (read < 0) {
+                if (total == 0) {
+                    return -1;
+                }
+                break;
+            }
+            length += read;
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Drops all but the last overlap characters.
+     */
+    public void slide() {
+        if (length > overlap) {
+            start += length - overlap;
+            if (start >= buffer.length) {
+                start -= buffer.length;
+            }
+            length = overlap;
+        }
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        int position = start + index;
+        if (position >= buffer.length) {
+            position -= buffer.length;
+        }
+        return buffer[position];
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException(from + "-" + to);
+        }
+        StringBuilder copy = new StringBuilder(to - from);
+        int first = start + from;
+        if (first >= buffer.length) {
+            first -= buffer.length;
+        }
+        int firstPart = Math.min(to - from, buffer.length - first);
+        copy.append(buffer, first, firstPart);
+        copy.append(buffer, 0, to - from - firstPart);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+}
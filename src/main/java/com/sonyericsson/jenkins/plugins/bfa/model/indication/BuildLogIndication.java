@@ -27,6 +27,8 @@ package com.sonyericsson.jenkins.plugins.bfa.model.indication;
 import com.sonyericsson.jenkins.plugins.bfa.Messages;
 import com.sonyericsson.jenkins.plugins.bfa.model.BuildLogFailureReader;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureReader;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.PatternCache;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.RequiredLiteralExtractor;
 import hudson.Extension;
 import hudson.matrix.MatrixConfiguration;
 import hudson.matrix.MatrixProject;
@@ -36,6 +38,7 @@ import hudson.model.Job;
 import hudson.model.Run;
 import hudson.util.FormValidation;
 import jenkins.model.Jenkins;
+import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.annotate.JsonProperty;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
@@ -54,6 +57,7 @@ public class BuildLogIndication extends Indication {
 
     private static final long serialVersionUID = -2889792693081908532L;
     private transient Pattern compiled = null;
+    private transient String requiredLiteral = null;
 
     /**
      * Standard constructor.
@@ -80,11 +84,27 @@ public class BuildLogIndication extends Indication {
     @Override
     public Pattern getPattern() {
         if (compiled == null) {
-            compiled = Pattern.compile(getUserProvidedExpression());
+            PatternCache.CompiledPattern pattern = PatternCache.getInstance().get(getUserProvidedExpression(), 0);
+            requiredLiteral = pattern.getRequiredLiteral();
+            compiled = pattern.getPattern();
         }
         return compiled;
     }
 
+    /**
+     * A literal that every line matching the pattern must contain,
+     * extracted when the pattern is compiled.
+     * Lines that do not contain it can be ruled out without evaluating the pattern.
+     *
+     * @return the required literal, or null if none could be found.
+     * @see RequiredLiteralExtractor
+     */
+    @JsonIgnore
+    public String getRequiredLiteral() {
+        getPattern();
+        return requiredLiteral;
+    }
+
     @Override
     public IndicationDescriptor getDescriptor() {
         return Hudson.getInstance().getDescriptorByType(BuildLogIndicationDescriptor.class);
@@ -26,10 +26,12 @@ package com.sonyericsson.jenkins.plugins.bfa.model.indication;
 import com.sonyericsson.jenkins.plugins.bfa.Messages;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureReader;
 import com.sonyericsson.jenkins.plugins.bfa.model.MultilineBuildLogFailureReader;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.PatternCache;
 import hudson.Extension;
 import hudson.model.Hudson;
 import org.codehaus.jackson.annotate.JsonProperty;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import java.util.regex.Pattern;
 
@@ -42,6 +44,8 @@ public class MultilineBuildLogIndication extends BuildLogIndication {
 
     private static final long serialVersionUID = 8436383594898812087L;
     private transient Pattern compiled = null;
+    private int bufferSize;
+    private int overlap;
 
     /**
      * Standard constructor.
@@ -60,6 +64,50 @@ public class MultilineBuildLogIndication extends BuildLogIndication {
     public MultilineBuildLogIndication() {
     }
 
+    /**
+     * The size of the window sliding over the log when searching for this indication.
+     *
+     * @return the number of characters, or 0 for the default size.
+     */
+    @JsonProperty("bufferSize")
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Sets the size of the window sliding over the log when searching for this indication.
+     * Needs to be larger than the text matched by the pattern.
+     *
+     * @param bufferSize the number of characters, or 0 for the default size.
+     */
+    @DataBoundSetter
+    @JsonProperty("bufferSize")
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = Math.max(0, bufferSize);
+    }
+
+    /**
+     * The number of characters kept when the window slides, i.e. how long a match spanning two windows can be.
+     *
+     * @return the number of characters, or 0 for the default overlap.
+     */
+    @JsonProperty("overlap")
+    public int getOverlap() {
+        return overlap;
+    }
+
+    /**
+     * Sets the number of characters kept when the window slides.
+     * Needs to be smaller than the buffer size.
+     *
+     * @param overlap the number of characters, or 0 for the default overlap.
+     */
+    @DataBoundSetter
+    @JsonProperty("overlap")
+    public void setOverlap(int overlap) {
+        this.overlap = Math.max(0, overlap);
+    }
+
     @Override
     public FailureReader getReader() {
         return new MultilineBuildLogFailureReader(this);
@@ -68,8 +116,8 @@ public class MultilineBuildLogIndication extends BuildLogIndication {
     @Override
     public Pattern getPattern() {
         if (compiled == null) {
-            compiled = Pattern.compile("(?m)(?s)^[^\\r\\n]*?" + getUserProvidedExpression() + "[^\\r\\n]*?$",
-                Pattern.MULTILINE | Pattern.DOTALL);
+            compiled = PatternCache.getInstance().get("(?m)(?s)^[^\\r\\n]*?" + getUserProvidedExpression()
+                    + "[^\\r\\n]*?$", Pattern.MULTILINE | Pattern.DOTALL).getPattern();
         }
         return compiled;
     }
@@ -25,6 +25,7 @@ package com.sonyericsson.jenkins.plugins.bfa.sod;
 
 import com.sonyericsson.jenkins.plugins.bfa.Messages;
 import com.sonyericsson.jenkins.plugins.bfa.PluginImpl;
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseBuildAction;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseMatrixBuildAction;
 import hudson.Extension;
@@ -53,8 +54,12 @@ import org.kohsuke.stapler.StaplerResponse;
 import javax.annotation.Nonnull;
 import javax.servlet.ServletException;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static com.sonyericsson.jenkins.plugins.bfa.sod.ScanOnDemandBaseAction.ScanMode.BFA_SOD_BUILD_TYPE;
 import static org.apache.commons.lang.StringUtils.isBlank;
@@ -66,6 +71,8 @@ import static org.apache.commons.lang.StringUtils.isBlank;
  */
 public class ScanOnDemandBaseAction implements Action {
 
+    private static final Logger logger = Logger.getLogger(ScanOnDemandBaseAction.class.getName());
+
     /** The project. */
     private Job project;
 
@@ -352,23 +359,32 @@ public class ScanOnDemandBaseAction implements Action {
             action.checkPermission();
             Iterator<Run> runIterator = getRuns(action.getProject());
             while (runIterator.hasNext()) {
-                Run run = runIterator.next();
-                FailureCauseBuildAction fcba = run.getAction(FailureCauseBuildAction.class);
-                if (fcba != null) {
-                    run.getActions().remove(fcba); //TODO Replace instead
-                }
-                FailureCauseMatrixBuildAction fcmba = run.getAction(FailureCauseMatrixBuildAction.class);
-                if (run instanceof MatrixBuild
-                        && fcmba != null) {
-                    run.getActions().remove(fcmba); //TODO Replace instead
-                    action.removeRunActions((MatrixBuild)run);
-                }
-                ScanOnDemandTask task = new ScanOnDemandTask(run);
-                ScanOnDemandQueue.queue(task);
+                queueScan(action, runIterator.next());
             }
             response.sendRedirect2(Functions.joinPath("/", request.getContextPath(), getParent().getProject().getUrl()));
         }
 
+        /**
+         * Queues a scan of a build, removing what previous scans have found.
+         *
+         * @param action the action we have as an ancestor
+         * @param run the build to scan.
+         */
+        void queueScan(ScanOnDemandBaseAction action, Run run) {
+            FailureCauseBuildAction fcba = run.getAction(FailureCauseBuildAction.class);
+            if (fcba != null) {
+                run.getActions().remove(fcba); //TODO Replace instead
+            }
+            FailureCauseMatrixBuildAction fcmba = run.getAction(FailureCauseMatrixBuildAction.class);
+            if (run instanceof MatrixBuild
+                    && fcmba != null) {
+                run.getActions().remove(fcmba); //TODO Replace instead
+                action.removeRunActions((MatrixBuild)run);
+            }
+            ScanOnDemandTask task = new ScanOnDemandTask(run);
+            ScanOnDemandQueue.queue(task);
+        }
+
         /**
          * Provides the lookup list of all registered {@link ScanMode}s.
          *
@@ -451,4 +467,65 @@ public class ScanOnDemandBaseAction implements Action {
             };
         }
     }
+
+    /**
+     * ScanMode that re-scans the scanned builds only for the failure causes that are new or have been modified
+     * since they were scanned, keeping what was found for the other causes.
+     * Builds scanned before the scanned causes were recorded are fully re-scanned.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static class DeltaBuilds extends ScanMode {
+        @Nonnull
+        @Override
+        public String getUrlName() {
+            return "delta";
+        }
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return Messages.ScanOnDemandBaseAction_DeltaBuilds_DisplayName();
+        }
+
+        @Nonnull
+        @Override
+        Iterator<Run> getRuns(Job job) {
+            final Collection<FailureCause> causes = getCauses();
+            return new Iterators.FilterIterator<Run>(job.getBuilds().iterator()) {
+                @Override
+                protected boolean filter(Run run) {
+                    final Result result = run.getResult();
+                    if (result == null || !PluginImpl.needToAnalyze(result) || run instanceof MatrixBuild) {
+                        return false;
+                    }
+                    FailureCauseBuildAction fcba = run.getAction(FailureCauseBuildAction.class);
+                    if (fcba == null) {
+                        return false;
+                    }
+                    List<FailureCause> changed = fcba.getNewOrModifiedCauses(causes);
+                    return changed == null || !changed.isEmpty() || fcba.hasRemovedCauses(causes);
+                }
+            };
+        }
+
+        @Override
+        void queueScan(ScanOnDemandBaseAction action, Run run) {
+            ScanOnDemandQueue.queue(new ScanOnDemandTask(run, true));
+        }
+
+        /**
+         * The current causes of the knowledge base.
+         *
+         * @return the causes, or an empty list if they could not be read.
+         */
+        private static Collection<FailureCause> getCauses() {
+            try {
+                return PluginImpl.getInstance().getKnowledgeBase().getCauses();
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Could not get the causes from the knowledge base", e);
+                return Collections.emptyList();
+            }
+        }
+    }
 }
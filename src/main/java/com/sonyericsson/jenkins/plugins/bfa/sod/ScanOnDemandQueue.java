@@ -24,6 +24,7 @@
 package com.sonyericsson.jenkins.plugins.bfa.sod;
 
 import com.sonyericsson.jenkins.plugins.bfa.PluginImpl;
+import com.sonyericsson.jenkins.plugins.bfa.metrics.MetricsRegistry;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -56,6 +57,12 @@ public final class ScanOnDemandQueue {
         if (instance == null) {
             instance = new ScanOnDemandQueue();
             instance.startQueue();
+            MetricsRegistry.getInstance().register("sod.queue.size", new MetricsRegistry.Gauge() {
+                @Override
+                public Number getValue() {
+                    return getQueueSize();
+                }
+            });
         }
         return instance;
     }
@@ -27,6 +27,7 @@ import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseBuildAction;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseMatrixBuildAction;
 import com.sonyericsson.jenkins.plugins.bfa.BuildFailureScanner;
 import com.sonyericsson.jenkins.plugins.bfa.PluginImpl;
+import com.sonyericsson.jenkins.plugins.bfa.ScanScheduler;
 import hudson.matrix.MatrixBuild;
 import hudson.matrix.MatrixRun;
 import hudson.model.Run;
@@ -48,6 +49,7 @@ public class ScanOnDemandTask implements Runnable {
 
     private static final Logger logger = Logger.getLogger(ScanOnDemandTask.class.getName());
     private Run build;
+    private boolean delta;
 
     /**
      * SODExecutor constructor.
@@ -55,7 +57,19 @@ public class ScanOnDemandTask implements Runnable {
      * @param build the build to analyze.
      */
     public ScanOnDemandTask(final Run build) {
+        this(build, false);
+    }
+
+    /**
+     * SODExecutor constructor.
+     *
+     * @param build the build to analyze.
+     * @param delta true to only scan for the causes that are new or modified since the build was scanned.
+     * @see BuildFailureScanner#deltaScan(Run, PrintStream)
+     */
+    public ScanOnDemandTask(final Run build, boolean delta) {
         this.build = build;
+        this.delta = delta;
     }
 
     @Override
@@ -106,15 +120,21 @@ public class ScanOnDemandTask implements Runnable {
      */
     public void scanBuild(Run run) {
         FileOutputStream fos = null;
+        ScanScheduler.Priority priority = ScanScheduler.setCurrentPriority(ScanScheduler.Priority.SCAN_ON_DEMAND);
         try {
             fos = new FileOutputStream(run.getLogFile(), true);
             PrintStream buildLog = new PrintStream(fos, true, "UTF8");
-            PluginImpl.getInstance().getKnowledgeBase().removeBuildfailurecause(run);
-            BuildFailureScanner.scanIfNotScanned(run, buildLog);
+            if (delta) {
+                BuildFailureScanner.deltaScan(run, buildLog);
+            } else {
+                PluginImpl.getInstance().getKnowledgeBase().removeBuildfailurecause(run);
+                BuildFailureScanner.scanIfNotScanned(run, buildLog);
+            }
             run.save();
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Could not get the causes from the knowledge base", e);
         } finally {
+            ScanScheduler.setCurrentPriority(priority);
             if (fos != null) {
                 try {
                     fos.close();
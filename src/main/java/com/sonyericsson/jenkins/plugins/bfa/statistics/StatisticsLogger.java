@@ -26,6 +26,7 @@ package com.sonyericsson.jenkins.plugins.bfa.statistics;
 
 import com.sonyericsson.jenkins.plugins.bfa.PluginImpl;
 import com.sonyericsson.jenkins.plugins.bfa.db.KnowledgeBase;
+import com.sonyericsson.jenkins.plugins.bfa.metrics.MetricsRegistry;
 import com.sonyericsson.jenkins.plugins.bfa.model.FoundFailureCause;
 import com.sonyericsson.jenkins.plugins.bfa.utils.BfaUtils;
 
@@ -33,28 +34,73 @@ import hudson.model.AbstractBuild;
 import hudson.model.Cause;
 import hudson.model.Node;
 import hudson.model.Run;
+import jenkins.model.Jenkins;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Main singleton entrance for logging statistics.
+ * The statistics are queued and collected by a background thread in batches. A batch is complete when it is full
+ * or when {@link #FLUSH_INTERVAL} has passed since its first entry. Each batch is first written to a
+ * {@link StatisticsSpool} in the Jenkins home, and then delivered from there to the knowledge base with one bulk
+ * insert and one last seen update per cause. While the database cannot be reached the batches stay in the spool
+ * and are retried, so neither the heap nor the statistics are lost to an outage.
+ * When the queue is full, logging waits for at most {@link #OFFER_TIMEOUT} and then drops the statistics.
  *
  * @author Robert Sandell &lt;robert.sandell@sonyericsson.com&gt;
  */
 public final class StatisticsLogger {
 
+    /**
+     * The maximum number of builds written in one batch.
+     */
+    static final int BATCH_SIZE = 100;
+    /**
+     * The maximum number of milliseconds an entry waits for its batch to fill up.
+     */
+    static final long FLUSH_INTERVAL = 5000;
+    /**
+     * The maximum number of builds waiting to be written.
+     */
+    static final int QUEUE_CAPACITY = 10000;
+    /**
+     * The maximum number of milliseconds to wait for room in a full queue.
+     */
+    static final long OFFER_TIMEOUT = 1000;
+    /**
+     * The maximum number of milliseconds between two attempts to deliver the spool to an unreachable database.
+     */
+    static final long MAX_RETRY_INTERVAL = 300000;
+    /**
+     * The directory in the Jenkins home where statistics are spooled.
+     */
+    static final String SPOOL_DIRECTORY = "bfa-statistics-spool";
+
     private static final Logger logger = Logger.getLogger(StatisticsLogger.class.getName());
     private static StatisticsLogger instance;
-    private ExecutorService queueExecutor;
-
+    private final BlockingQueue<LoggingWork> queue = new ArrayBlockingQueue<LoggingWork>(QUEUE_CAPACITY);
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private volatile StatisticsSpool spool;
+    private long nextRetry;
+    private long retryInterval = FLUSH_INTERVAL;
 
     /**
      * Private Constructor.
@@ -62,10 +108,41 @@ public final class StatisticsLogger {
      * @see #getInstance()
      */
     private StatisticsLogger() {
-        queueExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        new Thread(new Runnable() {
             @Override
-            public Thread newThread(Runnable target) {
-                return new Thread(target, "BFA StatisticsLogger Queue");
+            public void run() {
+                writeBatches();
+            }
+        }, "BFA StatisticsLogger Queue").start();
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.register("statistics.queue.size", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return getQueueSize();
+            }
+        });
+        metrics.register("statistics.spool.batches", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return getSpooledBatchCount();
+            }
+        });
+        metrics.register("statistics.written", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return getWrittenCount();
+            }
+        });
+        metrics.register("statistics.delayed", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return getDelayedCount();
+            }
+        });
+        metrics.register("statistics.dropped", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return getDroppedCount();
             }
         });
     }
@@ -84,20 +161,296 @@ public final class StatisticsLogger {
 
     /**
      * Logs a found indication asynchronously to the statistics database.
+     * Waits for room in the queue if it is full, and drops the statistics if there is still no room.
      *
      * @param build the build.
      * @param causes the list of causes.
      */
     public void log(Run build, List<FoundFailureCause> causes) {
         if (PluginImpl.getInstance().getKnowledgeBase().isStatisticsEnabled()) {
-            queueExecutor.submit(new LoggingWork(build, causes));
+            LoggingWork work = new LoggingWork(build, causes);
+            if (queue.offer(work)) {
+                return;
+            }
+            delayed.incrementAndGet();
+            boolean queued = false;
+            try {
+                queued = queue.offer(work, OFFER_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!queued) {
+                dropped.incrementAndGet();
+                logger.log(Level.WARNING, "The statistics queue is full, dropping the statistics of {0}",
+                        build.getFullDisplayName());
+            }
         }
     }
 
     /**
-     * The actual work to be performed in {@link #log} at a future time.
+     * Takes batches from the queue, spools them and delivers the spool to the knowledge base,
+     * until the thread is interrupted.
      */
-    static class LoggingWork implements Runnable {
+    private void writeBatches() {
+        spool = createSpool();
+        List<LoggingWork> batch = new ArrayList<LoggingWork>(BATCH_SIZE);
+        try {
+            while (true) {
+                LoggingWork first = queue.poll(getWaitTime(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    long deadline = System.currentTimeMillis() + FLUSH_INTERVAL;
+                    while (batch.size() < BATCH_SIZE) {
+                        queue.drainTo(batch, BATCH_SIZE - batch.size());
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (batch.size() >= BATCH_SIZE || remaining <= 0) {
+                            break;
+                        }
+                        LoggingWork next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                }
+                try {
+                    if (!batch.isEmpty()) {
+                        write(createStatistics(batch));
+                    }
+                    deliverSpool();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Couldn't save statistics: ", e);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            logger.log(Level.WARNING, "StatisticsLogger thread interrupted", e);
+        }
+    }
+
+    /**
+     * Opens the spool in the Jenkins home directory.
+     *
+     * @return the spool, or null if it cannot be opened.
+     */
+    private static StatisticsSpool createSpool() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return null;
+        }
+        try {
+            return new StatisticsSpool(new File(jenkins.getRootDir(), SPOOL_DIRECTORY));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not open the statistics spool, statistics will be written directly", e);
+            return null;
+        }
+    }
+
+    /**
+     * How long to wait for the next build, which is until the next retry if there are spooled statistics.
+     *
+     * @return the time to wait in milliseconds.
+     */
+    private long getWaitTime() {
+        if (spool == null || spool.getSegmentCount() == 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, nextRetry - System.currentTimeMillis());
+    }
+
+    /**
+     * Creates the statistics of a batch of builds.
+     *
+     * @param batch the batch.
+     * @return the statistics.
+     */
+    private static List<Statistics> createStatistics(List<LoggingWork> batch) {
+        List<Statistics> stats = new ArrayList<Statistics>(batch.size());
+        for (LoggingWork work : batch) {
+            try {
+                stats.add(work.createStatistics());
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Couldn't create statistics for " + work.build, e);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Writes a batch of statistics to the spool, or straight to the knowledge base if there is no spool.
+     *
+     * @param stats the statistics.
+     */
+    void write(List<Statistics> stats) {
+        if (stats.isEmpty()) {
+            return;
+        }
+        if (spool != null) {
+            try {
+                if (spool.write(stats)) {
+                    return;
+                }
+                dropped.addAndGet(stats.size());
+                logger.log(Level.WARNING, "The statistics spool is full, dropping {0} statistics", stats.size());
+                return;
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not spool statistics, writing them directly", e);
+            }
+        }
+        if (!deliver(stats)) {
+            dropped.addAndGet(stats.size());
+        }
+    }
+
+    /**
+     * Delivers the spooled statistics to the knowledge base, oldest first.
+     * Stops at the first failure and waits longer and longer before the next attempt,
+     * so an unreachable database is not hammered.
+     */
+    private void deliverSpool() {
+        if (spool == null || System.currentTimeMillis() < nextRetry) {
+            return;
+        }
+        for (File segment : spool.getSegments()) {
+            List<Statistics> stats;
+            try {
+                stats = spool.read(segment);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not read the spooled statistics in " + segment + ", dropping them", e);
+                spool.delete(segment);
+                continue;
+            }
+            if (!deliver(stats)) {
+                retried.addAndGet(stats.size());
+                nextRetry = System.currentTimeMillis() + retryInterval;
+                retryInterval = Math.min(retryInterval * 2, MAX_RETRY_INTERVAL);
+                return;
+            }
+            spool.delete(segment);
+            retryInterval = FLUSH_INTERVAL;
+        }
+    }
+
+    /**
+     * Writes a batch to the knowledge base.
+     * The statistics are saved with one bulk insert, unless there is only one,
+     * and the last seen time of each cause is updated once to the latest time in the batch.
+     * Updating the last seen times is best effort; the batch counts as delivered once it is saved.
+     *
+     * @param stats the statistics.
+     * @return true if the statistics were saved.
+     */
+    private boolean deliver(List<Statistics> stats) {
+        if (stats.isEmpty()) {
+            return true;
+        }
+        Map<String, Date> lastSeen = new HashMap<String, Date>();
+        for (Statistics stat : stats) {
+            if (stat.getFailureCauseStatisticsList() == null || stat.getStartingTime() == null) {
+                continue;
+            }
+            for (FailureCauseStatistics cause : stat.getFailureCauseStatisticsList()) {
+                Date seen = lastSeen.get(cause.getId());
+                if (cause.getId() != null && (seen == null || seen.before(stat.getStartingTime()))) {
+                    lastSeen.put(cause.getId(), stat.getStartingTime());
+                }
+            }
+        }
+        KnowledgeBase kb = PluginImpl.getInstance().getKnowledgeBase();
+        try {
+            if (stats.size() == 1) {
+                kb.saveStatistics(stats.get(0));
+            } else {
+                kb.saveStatistics(stats);
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Couldn't save statistics: ", e);
+            return false;
+        }
+        //The statistics are saved; failing to update the last seen times must not make them be saved again.
+        if (!lastSeen.isEmpty()) {
+            try {
+                kb.updateLastSeen(lastSeen);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Couldn't update the last occurrence of the failure causes: ", e);
+            }
+        }
+        written.addAndGet(stats.size());
+        batches.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * The number of builds waiting to be written.
+     *
+     * @return the queue size.
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * The number of builds whose statistics have been written.
+     *
+     * @return the number of written builds.
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * The number of batches that have been written.
+     *
+     * @return the number of batches.
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * The number of builds that had to wait for room in the queue.
+     *
+     * @return the number of delayed builds.
+     */
+    public long getDelayedCount() {
+        return delayed.get();
+    }
+
+    /**
+     * The number of times statistics could not be written to the knowledge base and were kept for a retry.
+     *
+     * @return the number of retried statistics.
+     */
+    public long getRetriedCount() {
+        return retried.get();
+    }
+
+    /**
+     * The number of batches of statistics in the spool, waiting to be written to the knowledge base.
+     *
+     * @return the number of spooled batches.
+     */
+    public int getSpooledBatchCount() {
+        StatisticsSpool current = spool;
+        if (current == null) {
+            return 0;
+        }
+        return current.getSegmentCount();
+    }
+
+    /**
+     * The number of builds whose statistics were dropped because the queue or the spool stayed full.
+     *
+     * @return the number of dropped builds.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * The statistics of one build, waiting to be written.
+     */
+    static class LoggingWork {
 
         List<FoundFailureCause> causes;
         Run build;
@@ -113,8 +466,12 @@ public final class StatisticsLogger {
             this.causes = causes;
         }
 
-        @Override
-        public void run() {
+        /**
+         * Creates the statistics of the build.
+         *
+         * @return the statistics.
+         */
+        Statistics createStatistics() {
             String projectName = build.getParent().getFullName();
             int buildNumber = build.getNumber();
             String displayName = build.getDisplayName();
@@ -135,29 +492,17 @@ public final class StatisticsLogger {
 
             String result = build.getResult().toString();
             List<FailureCauseStatistics> failureCauseStatistics = new LinkedList<FailureCauseStatistics>();
-            List<String> causeIds = new LinkedList<String>();
             for (FoundFailureCause cause : causes) {
                 FailureCauseStatistics stats = new FailureCauseStatistics(cause.getId(), cause.getIndications());
                 failureCauseStatistics.add(stats);
-                causeIds.add(cause.getId());
             }
 
             master = BfaUtils.getMasterName();
             Cause.UpstreamCause uc = (Cause.UpstreamCause)build.getCause(Cause.UpstreamCause.class);
             Statistics.UpstreamCause suc = new Statistics.UpstreamCause(uc);
-            Statistics obj = new Statistics(projectName, buildNumber, displayName, startingTime, duration,
-                                            triggerCauses, nodeName, master, timeZoneOffset, result, suc,
-                                            failureCauseStatistics);
-
-            PluginImpl p = PluginImpl.getInstance();
-            KnowledgeBase kb = p.getKnowledgeBase();
-            try {
-                kb.saveStatistics(obj);
-            } catch (Exception e) {
-                logger.log(Level.WARNING, "Couldn't save statistics: ", e);
-            }
-
-            kb.updateLastSeen(causeIds, startingTime);
+            return new Statistics(projectName, buildNumber, displayName, startingTime, duration,
+                                  triggerCauses, nodeName, master, timeZoneOffset, result, suc,
+                                  failureCauseStatistics);
         }
     }
 }
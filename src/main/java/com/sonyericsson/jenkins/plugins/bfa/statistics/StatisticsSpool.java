@@ -0,0 +1,319 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.statistics;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.FoundIndication;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only spool of statistics waiting to be written to the knowledge base.
+ * Every batch is written to its own segment file with one JSON object per line, and the segment is deleted
+ * once it has been written to the knowledge base. Segments are written to a temporary file and renamed when
+ * complete, so a crash never leaves a half written segment behind. Segments left from before a restart are
+ * delivered when the spool is opened again.
+ */
+public class StatisticsSpool {
+    /**
+     * The maximum number of segments kept, statistics are dropped when the spool is this full.
+     */
+    static final int MAX_SEGMENTS = 10000;
+    private static final String SUFFIX = ".jsonl";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String ENCODING = "UTF-8";
+    private static final Logger logger = Logger.getLogger(StatisticsSpool.class.getName());
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final File directory;
+    private long lastSequence;
+
+    /**
+     * Standard constructor.
+     *
+     * @param directory the directory to keep the segments in, created if it does not exist.
+     * @throws IOException if the directory cannot be created.
+     */
+    public StatisticsSpool(File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the statistics spool directory " + directory);
+        }
+        File[] leftovers = directory.listFiles(new SuffixFilter(TEMP_SUFFIX));
+        if (leftovers != null) {
+            for (File leftover : leftovers) {
+                if (!leftover.delete()) {
+                    logger.log(Level.WARNING, "Could not delete the incomplete statistics segment {0}", leftover);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of statistics as a new segment.
+     *
+     * @param stats the statistics.
+     * @return true if the batch was written, false if the spool is full.
+     * @throws IOException if the segment could not be written.
+     */
+    public synchronized boolean write(List<Statistics> stats) throws IOException {
+        if (getSegmentCount() >= MAX_SEGMENTS) {
+            return false;
+        }
+        //The name sorts in the order the segments were written, also across restarts.
+        long sequence = Math.max(System.currentTimeMillis(), lastSequence + 1);
+        lastSequence = sequence;
+        String name = String.format("%019d", sequence);
+        File temp = new File(directory, name + TEMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            Writer writer = new OutputStreamWriter(out, ENCODING);
+            for (Statistics stat : stats) {
+                writer.write(MAPPER.writeValueAsString(toJSON(stat)));
+                writer.write('\n');
+            }
+            writer.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(new File(directory, name + SUFFIX))) {
+            delete(temp);
+            throw new IOException("Could not complete the statistics segment " + temp);
+        }
+        return true;
+    }
+
+    /**
+     * The segments waiting to be delivered, oldest first.
+     *
+     * @return the segments.
+     */
+    public List<File> getSegments() {
+        File[] files = directory.listFiles(new SuffixFilter(SUFFIX));
+        if (files == null) {
+            return new ArrayList<File>();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * The number of segments waiting to be delivered.
+     *
+     * @return the number of segments.
+     */
+    public int getSegmentCount() {
+        String[] names = directory.list(new SuffixFilter(SUFFIX));
+        if (names == null) {
+            return 0;
+        }
+        return names.length;
+    }
+
+    /**
+     * Reads the statistics of a segment. Lines that cannot be parsed are skipped.
+     *
+     * @param segment the segment.
+     * @return the statistics.
+     * @throws IOException if the segment could not be read.
+     */
+    public List<Statistics> read(File segment) throws IOException {
+        List<Statistics> stats = new ArrayList<Statistics>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(segment), ENCODING));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                try {
+                    stats.add(fromJSON(MAPPER.readTree(line)));
+                } catch (JsonProcessingException e) {
+                    logger.log(Level.WARNING, "Skipping unreadable statistics in " + segment, e);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return stats;
+    }
+
+    /**
+     * Removes a delivered segment.
+     *
+     * @param segment the segment.
+     */
+    public void delete(File segment) {
+        if (!segment.delete()) {
+            logger.log(Level.WARNING, "Could not delete the statistics segment {0}", segment);
+        }
+    }
+
+    /**
+     * Converts statistics to a JSON object.
+     *
+     * @param stat the statistics.
+     * @return the JSON object.
+     */
+    static ObjectNode toJSON(Statistics stat) {
+        ObjectNode json = MAPPER.createObjectNode();
+        json.put("projectName", stat.getProjectName());
+        json.put("buildNumber", stat.getBuildNumber());
+        json.put("displayName", stat.getDisplayName());
+        if (stat.getStartingTime() != null) {
+            json.put("startingTime", stat.getStartingTime().getTime());
+        }
+        json.put("duration", stat.getDuration());
+        if (stat.getTriggerCauses() != null) {
+            ArrayNode triggerCauses = json.putArray("triggerCauses");
+            for (String triggerCause : stat.getTriggerCauses()) {
+                triggerCauses.add(triggerCause);
+            }
+        }
+        json.put("slaveHostName", stat.getSlaveHostName());
+        json.put("master", stat.getMaster());
+        json.put("timeZoneOffset", stat.getTimeZoneOffset());
+        json.put("result", stat.getResult());
+        if (stat.getUpstreamCause() != null) {
+            ObjectNode upstream = json.putObject("upstreamCause");
+            upstream.put("project", stat.getUpstreamCause().getUpstreamProject());
+            upstream.put("build", stat.getUpstreamCause().getUpstreamBuild());
+        }
+        if (stat.getFailureCauseStatisticsList() != null) {
+            ArrayNode causes = json.putArray("failureCauses");
+            for (FailureCauseStatistics cause : stat.getFailureCauseStatisticsList()) {
+                ObjectNode causeJson = causes.addObject();
+                causeJson.put("id", cause.getId());
+                if (cause.getIndications() != null) {
+                    ArrayNode indications = causeJson.putArray("indications");
+                    for (FoundIndication indication : cause.getIndications()) {
+                        ObjectNode indicationJson = indications.addObject();
+                        indicationJson.put("pattern", indication.getPattern());
+                        indicationJson.put("matchingFile", indication.getMatchingFile());
+                        indicationJson.put("matchingString", indication.getMatchingString());
+                    }
+                }
+            }
+        }
+        return json;
+    }
+
+    /**
+     * Converts a JSON object written by {@link #toJSON(Statistics)} back to statistics.
+     *
+     * @param json the JSON object.
+     * @return the statistics.
+     */
+    static Statistics fromJSON(JsonNode json) {
+        List<String> triggerCauses = null;
+        if (json.has("triggerCauses")) {
+            triggerCauses = new LinkedList<String>();
+            for (JsonNode triggerCause : json.get("triggerCauses")) {
+                triggerCauses.add(triggerCause.getTextValue());
+            }
+        }
+        Statistics.UpstreamCause upstreamCause = null;
+        if (json.has("upstreamCause")) {
+            JsonNode upstream = json.get("upstreamCause");
+            upstreamCause = new Statistics.UpstreamCause(getText(upstream, "project"),
+                    upstream.path("build").getIntValue());
+        }
+        List<FailureCauseStatistics> causes = null;
+        if (json.has("failureCauses")) {
+            causes = new LinkedList<FailureCauseStatistics>();
+            for (JsonNode causeJson : json.get("failureCauses")) {
+                List<FoundIndication> indications = null;
+                if (causeJson.has("indications")) {
+                    indications = new LinkedList<FoundIndication>();
+                    for (JsonNode indicationJson : causeJson.get("indications")) {
+                        indications.add(new FoundIndication(getText(indicationJson, "pattern"),
+                                getText(indicationJson, "matchingFile"),
+                                getText(indicationJson, "matchingString")));
+                    }
+                }
+                causes.add(new FailureCauseStatistics(getText(causeJson, "id"), indications));
+            }
+        }
+        Date startingTime = null;
+        if (json.has("startingTime")) {
+            startingTime = new Date(json.get("startingTime").getLongValue());
+        }
+        return new Statistics(getText(json, "projectName"), json.path("buildNumber").getIntValue(),
+                getText(json, "displayName"), startingTime, json.path("duration").getLongValue(), triggerCauses,
+                getText(json, "slaveHostName"), getText(json, "master"), json.path("timeZoneOffset").getIntValue(),
+                getText(json, "result"), upstreamCause, causes);
+    }
+
+    /**
+     * Gets an optional string.
+     *
+     * @param json the object to get it from.
+     * @param key the key.
+     * @return the string, or null if there is none.
+     */
+    private static String getText(JsonNode json, String key) {
+        return json.path(key).getTextValue();
+    }
+
+    /**
+     * Accepts the files with a suffix.
+     */
+    private static class SuffixFilter implements FilenameFilter {
+        private final String suffix;
+
+        /**
+         * Standard constructor.
+         *
+         * @param suffix the suffix.
+         */
+        SuffixFilter(String suffix) {
+            this.suffix = suffix;
+        }
+
+        @Override
+        public boolean accept(File dir, String name) {
+            return name.endsWith(suffix);
+        }
+    }
+}
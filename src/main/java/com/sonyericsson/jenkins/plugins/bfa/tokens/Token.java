@@ -25,6 +25,7 @@ package com.sonyericsson.jenkins.plugins.bfa.tokens;
 
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseBuildAction;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseMatrixBuildAction;
+import com.sonyericsson.jenkins.plugins.bfa.PendingAnalysis;
 import com.sonyericsson.jenkins.plugins.bfa.sod.ScanOnDemandTask;
 import hudson.Extension;
 import hudson.model.AbstractBuild;
@@ -94,8 +95,10 @@ public class Token extends DataBoundTokenMacro {
     public String evaluate(final AbstractBuild<?, ?> build, final TaskListener listener, final String macroName)
         throws MacroEvaluationException, IOException, InterruptedException {
 
-        // Scan the build now.
-        new ScanOnDemandTask(build).run();
+        // Scan the build now, unless it is still being analyzed in the background.
+        if (PendingAnalysis.await(build)) {
+            new ScanOnDemandTask(build).run();
+        }
 
         final FailureCauseBuildAction action = build.getAction(FailureCauseBuildAction.class);
         if (action != null) {
@@ -91,6 +91,15 @@ l.layout(permission: PluginImpl.VIEW_PERMISSION, norefresh: true) {
                     href: "new",
                     alt: _("New")) { text(_("Create new")) }
 
+            a(style: "font-weight: bold; "
+                    + "font-size: larger; "
+                    + "padding-top: 5px; "
+                    + "padding-bottom: 5px; "
+                    + "padding-left: 20px; "
+                    + "float: right;",
+                    href: "patternCosts",
+                    alt: _("Pattern cost")) { text(_("Pattern cost")) }
+
             if (PluginImpl.getInstance().isGraphsEnabled()) {
                 a(style: "font-weight: bold; "
                         + "font-size: larger; "
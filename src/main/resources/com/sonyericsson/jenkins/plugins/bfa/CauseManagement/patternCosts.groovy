@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.CauseManagement
+
+import com.sonyericsson.jenkins.plugins.bfa.CauseManagement
+import com.sonyericsson.jenkins.plugins.bfa.PluginImpl
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.IndicationCostStatistics
+
+def f = namespace(lib.FormTagLib)
+def l = namespace(lib.LayoutTagLib)
+
+l.layout(permission: PluginImpl.UPDATE_PERMISSION) {
+  l.header(title: _("Failure Cause Management - Pattern Cost"))
+
+  def management = CauseManagement.getInstance();
+
+  l.side_panel() {
+    if (!management.isUnderTest()) {
+      include(management.getOwner(), "sidepanel.jelly")
+    }
+  }
+
+  l.main_panel() {
+    h1(_("Pattern Cost"))
+    p(_("description"))
+    if (!IndicationCostStatistics.isCpuTime()) {
+      p(_("wallClockTime"))
+    }
+    def costs = management.getPatternCosts()
+    def causesByExpression = management.getCausesByExpression()
+    table(class: "pane sortable bigtable") {
+      tr {
+        th(class: "pane-header", _("Pattern"))
+        th(class: "pane-header", _("Causes"))
+        th(class: "pane-header", _("CPU time (ms)"))
+        th(class: "pane-header", _("Evaluations"))
+        th(class: "pane-header", _("CPU time per evaluation (microseconds)"))
+        th(class: "pane-header", _("Scans with a match"))
+        th(class: "pane-header", _("Timeouts"))
+      }
+      costs.each { cost ->
+        tr {
+          td(class: "pane") {
+            code(cost.getExpression())
+          }
+          td(class: "pane") {
+            def causes = causesByExpression.get(cost.getExpression())
+            if (causes != null) {
+              causes.eachWithIndex { cause, i ->
+                if (i > 0) {
+                  text(", ")
+                }
+                a(href: cause.getId()) { text(cause.getName()) }
+              }
+            }
+          }
+          td(class: "pane", cost.getMillis())
+          td(class: "pane", cost.getEvaluations())
+          td(class: "pane", String.format("%.2f", cost.getMicrosPerEvaluation()))
+          td(class: "pane", cost.getMatches())
+          td(class: "pane") {
+            if (cost.getTimeouts() > 0) {
+              span(class: "error", cost.getTimeouts())
+            } else {
+              text(cost.getTimeouts())
+            }
+          }
+        }
+      }
+    }
+    f.form(method: "post", action: "resetPatternCosts") {
+      f.submit(value: _("Reset"))
+    }
+  }
+}
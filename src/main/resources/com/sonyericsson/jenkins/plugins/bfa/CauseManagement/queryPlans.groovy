@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.CauseManagement
+
+import com.sonyericsson.jenkins.plugins.bfa.CauseManagement
+import jenkins.model.Jenkins
+
+def l = namespace(lib.LayoutTagLib)
+
+l.layout(permission: Jenkins.ADMINISTER) {
+  l.header(title: _("Failure Cause Management - Query Plans"))
+
+  def management = CauseManagement.getInstance();
+
+  l.side_panel() {
+    if (!management.isUnderTest()) {
+      include(management.getOwner(), "sidepanel.jelly")
+    }
+  }
+
+  l.main_panel() {
+    h1(_("Query Plans"))
+    def plans = management.getQueryPlans()
+    if (plans == null) {
+      p(_("notSupported"))
+    } else {
+      p(_("description"))
+      table(class: "pane sortable bigtable") {
+        tr {
+          th(class: "pane-header", _("Query"))
+          th(class: "pane-header", _("Index"))
+          th(class: "pane-header", _("Examined"))
+          th(class: "pane-header", _("Returned"))
+          th(class: "pane-header", _("Filter"))
+        }
+        plans.each { plan ->
+          tr {
+            td(class: "pane") {
+              if (plan.isCollectionScan()) {
+                span(class: "error", plan.getName() + " - " + _("Collection scan"))
+              } else {
+                text(plan.getName())
+              }
+            }
+            td(class: "pane", plan.getIndexName())
+            td(class: "pane", plan.getExamined())
+            td(class: "pane", plan.getReturned())
+            td(class: "pane") {
+              code(plan.getQuery())
+            }
+          }
+        }
+      }
+    }
+  }
+}
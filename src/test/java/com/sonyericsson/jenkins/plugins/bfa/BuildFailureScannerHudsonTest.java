@@ -75,6 +75,7 @@ import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.argThat;
@@ -286,6 +287,97 @@ public class BuildFailureScannerHudsonTest {
                 messageProvider.getBuildCompletedMessage(build));
     }
 
+    /**
+     * Tests that a build is analyzed in the background when configured, and that the analysis
+     * is written to the end of the log, after Jenkins has closed it.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testAsyncAnalysis() throws Exception {
+        PluginImpl.getInstance().setAsyncAnalysis(true);
+        FreeStyleProject project = createProject();
+        FailureCause failureCause = configureCauseAndIndication();
+
+        Future<FreeStyleBuild> future = project.scheduleBuild2(0, new Cause.UserIdCause());
+        FreeStyleBuild build = future.get(10, TimeUnit.SECONDS);
+        jenkins.assertBuildStatus(Result.FAILURE, build);
+
+        assertTrue(PendingAnalysis.await(build, 10, TimeUnit.SECONDS));
+        FailureCauseBuildAction action = build.getAction(FailureCauseBuildAction.class);
+        assertNotNull(action);
+        assertTrue(findCauseInList(action.getFoundFailureCauses(), failureCause));
+
+        String log = build.getLog();
+        for (int i = 0; i < 100 && !log.contains("[BFA] Done."); i++) {
+            Thread.sleep(100);
+            log = build.getLog();
+        }
+        assertTrue(log.contains("[BFA] The build will be analyzed in the background"));
+        assertTrue(log.contains("[BFA] Done."));
+        assertTrue(log.indexOf("Finished: FAILURE") < log.indexOf("[BFA] Scanning build for known causes"));
+    }
+
+    /**
+     * Tests that a single-line cause added while the log of a build is followed is scanned for when the build
+     * completes, and recorded as scanned.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testCauseAddedWhileFollowingIsScanned() throws Exception {
+        PluginImpl.getInstance().setTailFollowScanning(true);
+        final FailureCause failureCause = configureCauseAndIndication();
+        final FailureCause[] lateCause = new FailureCause[1];
+        final boolean[] followed = new boolean[1];
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.getBuildersList().add(new PrintToLogBuilder(BUILD_LOG));
+        project.getBuildersList().add(new TestBuilder() {
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher,
+                    BuildListener listener) throws InterruptedException, IOException {
+                followed[0] = LogFollower.get(build) != null;
+                try {
+                    lateCause[0] = configureCauseAndIndication("Late", "Added during the build",
+                            new BuildLogIndication(".*detail.*"));
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+                return true;
+            }
+        });
+        project.getBuildersList().add(new MockBuilder(Result.FAILURE));
+
+        FreeStyleBuild build = project.scheduleBuild2(0, new Cause.UserIdCause()).get(10, TimeUnit.SECONDS);
+        jenkins.assertBuildStatus(Result.FAILURE, build);
+        assertTrue(followed[0]);
+
+        FailureCauseBuildAction action = build.getAction(FailureCauseBuildAction.class);
+        assertNotNull(action);
+        assertTrue(findCauseInList(action.getFoundFailureCauses(), failureCause));
+        assertTrue(findCauseInList(action.getFoundFailureCauses(), lateCause[0]));
+        assertEquals(2, action.getFoundFailureCauses().size());
+        assertTrue(action.getScannedCauses().containsKey(lateCause[0].getId()));
+    }
+
+    /**
+     * Tests that a successful build is not queued for analysis in the background.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testAsyncAnalysisSkipsSuccessfulBuild() throws Exception {
+        PluginImpl.getInstance().setAsyncAnalysis(true);
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.getBuildersList().add(new PrintToLogBuilder(BUILD_LOG));
+        configureCauseAndIndication();
+
+        FreeStyleBuild build = project.scheduleBuild2(0, new Cause.UserIdCause()).get(10, TimeUnit.SECONDS);
+        jenkins.assertBuildStatus(Result.SUCCESS, build);
+        assertFalse(PendingAnalysis.isPending(build));
+        assertFalse(build.getLog().contains("[BFA] The build will be analyzed in the background"));
+        assertNull(build.getAction(FailureCauseBuildAction.class));
+    }
+
     /**
      * Unhappy test that should not find any failure indications in the build.
      *
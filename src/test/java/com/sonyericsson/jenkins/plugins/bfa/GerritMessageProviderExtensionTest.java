@@ -11,12 +11,16 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Tests for the GerritMessageProviderExtensionTest.
@@ -29,6 +33,7 @@ public class GerritMessageProviderExtensionTest {
     private static final String JENKINS_URL =  "http://some.jenkins.com";
     private static final String BUILD_URL = "jobs/build/123";
     private static final String NO_CAUSES_MSG = "FEEL_FREE_TO_PUT_WHAT_EVER_YOU_WANT";
+    private PluginImpl plugin;
 
     /**
      * Initialize basic stuff: Jenkins, PluginImpl, etc.
@@ -42,7 +47,7 @@ public class GerritMessageProviderExtensionTest {
 
 
         PowerMockito.mockStatic(PluginImpl.class);
-        PluginImpl plugin = PowerMockito.mock(PluginImpl.class);
+        plugin = PowerMockito.mock(PluginImpl.class);
         PowerMockito.when(plugin.isGerritTriggerEnabled()).thenReturn(true);
         PowerMockito.when(PluginImpl.getInstance()).thenReturn(plugin);
         PowerMockito.when(plugin.getNoCausesMessage()).thenReturn(NO_CAUSES_MSG);
@@ -180,4 +185,62 @@ public class GerritMessageProviderExtensionTest {
         Assert.assertEquals(NO_CAUSES_MSG + " ( http://some.jenkins.com/jobs/build/123 )",
                 extension.getBuildCompletedMessage(run));
     }
+
+    //CS IGNORE MagicNumber FOR NEXT 40 LINES. REASON: TestData.
+
+    /**
+     * Test that the message waits for a build that is analyzed in the background.
+     * @throws Exception if so
+     */
+    @Test
+    public void testWaitsForPendingAnalysis() throws Exception {
+        final Run run = getRunWithTopCause("some cause");
+        final FailureCauseBuildAction action = run.getAction(FailureCauseBuildAction.class);
+        final AtomicReference<FailureCauseBuildAction> added = new AtomicReference<FailureCauseBuildAction>();
+        PowerMockito.when(run.getAction(FailureCauseBuildAction.class)).thenAnswer(
+                new Answer<FailureCauseBuildAction>() {
+                    @Override
+                    public FailureCauseBuildAction answer(InvocationOnMock invocation) {
+                        return added.get();
+                    }
+                });
+        PowerMockito.when(plugin.getAsyncAnalysisTimeout()).thenReturn(10);
+        final CountDownLatch done = PendingAnalysis.register(run);
+        Thread analysis = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                added.set(action);
+                PendingAnalysis.done(run, done);
+            }
+        });
+        analysis.start();
+
+        GerritMessageProviderExtension extension = new GerritMessageProviderExtension();
+
+        Assert.assertEquals("some cause ( http://some.jenkins.com/jobs/build/123 )",
+                extension.getBuildCompletedMessage(run));
+        analysis.join();
+    }
+
+    /**
+     * Test that the message does not wait longer than the timeout for a build analyzed in the background.
+     */
+    @Test
+    public void testPendingAnalysisTimesOut() {
+        Run run = getRunWithTopCause("some cause");
+        PowerMockito.when(run.getAction(FailureCauseBuildAction.class)).thenReturn(null);
+        PowerMockito.when(plugin.getAsyncAnalysisTimeout()).thenReturn(0);
+        CountDownLatch done = PendingAnalysis.register(run);
+        try {
+            GerritMessageProviderExtension extension = new GerritMessageProviderExtension();
+            Assert.assertNull(extension.getBuildCompletedMessage(run));
+        } finally {
+            PendingAnalysis.done(run, done);
+        }
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.FoundFailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.MatchingEngine;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.BuildLogIndication;
+import hudson.model.Run;
+import org.junit.Test;
+import org.powermock.api.mockito.PowerMockito;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LogFollower}.
+ */
+public class LogFollowerTest {
+
+    /**
+     * Tests that a log is scanned piece by piece, only complete lines while it is written, and the rest on finish.
+     * @throws Exception if so
+     */
+    @Test
+    public void testScansLogPieceByPiece() throws Exception {
+        File log = File.createTempFile("bfa", ".log");
+        try {
+            append(log, "Started\nBuild timed out after 5 min");
+            Run run = PowerMockito.mock(Run.class);
+            PowerMockito.when(run.getLogFile()).thenReturn(log);
+            PowerMockito.when(run.getCharset()).thenReturn(Charset.forName("UTF-8"));
+            FailureCause timeout = new FailureCause("timeout", "description");
+            timeout.addIndication(new BuildLogIndication(".*timed out.*"));
+            FailureCause finished = new FailureCause("finished", "description");
+            finished.addIndication(new BuildLogIndication(".*Finished: FAILURE.*"));
+            List<FailureCause> causes = new ArrayList<FailureCause>();
+            causes.add(timeout);
+            causes.add(finished);
+
+            assertTrue(LogFollower.follow(run, causes, MatchingEngine.MULTI_PATTERN));
+            LogFollower follower = LogFollower.get(run);
+            follower.poll();
+            assertTrue(follower.getFoundFailureCauses().isEmpty());
+            assertEquals("Started\n".length(), follower.getOffset());
+
+            append(log, "utes\nFinished: FAILURE");
+            follower.poll();
+            List<FoundFailureCause> found = follower.getFoundFailureCauses();
+            assertEquals(1, found.size());
+            assertEquals("Build timed out after 5 minutes", found.get(0).getIndications().get(0).getMatchingString());
+
+            found = follower.finish();
+            assertEquals(2, found.size());
+            assertEquals("finished", found.get(1).getName());
+            assertNull(LogFollower.get(run));
+            assertEquals(2, follower.finish().size());
+        } finally {
+            log.delete();
+        }
+    }
+
+    /**
+     * Appends text to a file.
+     *
+     * @param file the file.
+     * @param text the text.
+     * @throws IOException if so.
+     */
+    private static void append(File file, String text) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
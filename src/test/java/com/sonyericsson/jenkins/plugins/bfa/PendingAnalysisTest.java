@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa;
+
+import hudson.model.Run;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PendingAnalysis}.
+ */
+public class PendingAnalysisTest {
+
+    private static final long WAIT_MILLIS = 5000;
+
+    /**
+     * Tests that waiting for a pending build times out until it has been analyzed,
+     * and that builds that are not pending are not waited for.
+     * @throws Exception if so
+     */
+    @Test
+    public void testAwait() throws Exception {
+        Run build = PowerMockito.mock(Run.class);
+        assertFalse(PendingAnalysis.isPending(build));
+        assertTrue(PendingAnalysis.await(build, 1, TimeUnit.MILLISECONDS));
+
+        CountDownLatch done = PendingAnalysis.register(build);
+        assertTrue(PendingAnalysis.isPending(build));
+        assertFalse(PendingAnalysis.await(build, 1, TimeUnit.MILLISECONDS));
+
+        PendingAnalysis.done(build, done);
+        assertFalse(PendingAnalysis.isPending(build));
+        assertTrue(PendingAnalysis.await(build, 1, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Tests that the analysis is written once the log of the build has been closed, and the build saved.
+     * @throws Exception if so
+     */
+    @Test
+    public void testWriteWhenLogClosed() throws Exception {
+        File log = File.createTempFile("bfa", ".log");
+        try {
+            Run build = PowerMockito.mock(Run.class);
+            PowerMockito.when(build.getLogFile()).thenReturn(log);
+            PowerMockito.when(build.isLogUpdated()).thenReturn(true, true, false);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            output.write("[BFA] Done.".getBytes("UTF-8"));
+
+            PendingAnalysis.writeWhenLogClosed(build, output, System.currentTimeMillis() + WAIT_MILLIS, 0);
+            Mockito.verify(build, Mockito.timeout(WAIT_MILLIS)).save();
+            Mockito.verify(build, Mockito.times(3)).isLogUpdated();
+            assertEquals(output.size(), log.length());
+        } finally {
+            log.delete();
+        }
+    }
+
+    /**
+     * Tests that the analysis is not written to a log that is not closed in time, but the build is still saved.
+     * @throws Exception if so
+     */
+    @Test
+    public void testWriteWhenLogClosedTimesOut() throws Exception {
+        File log = File.createTempFile("bfa", ".log");
+        try {
+            Run build = PowerMockito.mock(Run.class);
+            PowerMockito.when(build.getLogFile()).thenReturn(log);
+            PowerMockito.when(build.isLogUpdated()).thenReturn(true);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            output.write("[BFA] Done.".getBytes("UTF-8"));
+
+            PendingAnalysis.writeWhenLogClosed(build, output, System.currentTimeMillis(), 0);
+            Mockito.verify(build, Mockito.timeout(WAIT_MILLIS)).save();
+            assertEquals(0, log.length());
+        } finally {
+            log.delete();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa;
+
+import com.sonyericsson.jenkins.plugins.bfa.ScanScheduler.Priority;
+import com.sonyericsson.jenkins.plugins.bfa.ScanScheduler.Task;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+//CS IGNORE MagicNumber FOR NEXT 100 LINES. REASON: TestData.
+
+/**
+ * Tests for {@link ScanScheduler}.
+ */
+public class ScanSchedulerTest {
+
+    /**
+     * Tests that the tasks are taken by priority, and that the jobs take turns within a priority.
+     */
+    @Test
+    public void testPriorityAndFairShare() {
+        ScanScheduler scheduler = new ScanScheduler(0, 10);
+        Task matrix1 = task(Priority.BUILD, "matrix");
+        Task matrix2 = task(Priority.BUILD, "matrix");
+        Task matrix3 = task(Priority.BUILD, "matrix");
+        Task other = task(Priority.BUILD, "other");
+        Task onDemand = task(Priority.SCAN_ON_DEMAND, "other");
+        Task gerrit = task(Priority.GERRIT, "review");
+        assertTrue(scheduler.offer(onDemand));
+        assertTrue(scheduler.offer(matrix1));
+        assertTrue(scheduler.offer(matrix2));
+        assertTrue(scheduler.offer(matrix3));
+        assertTrue(scheduler.offer(other));
+        assertTrue(scheduler.offer(gerrit));
+        assertEquals(6, scheduler.getQueued());
+
+        assertSame(gerrit, scheduler.poll());
+        assertSame(matrix1, scheduler.poll());
+        assertSame(other, scheduler.poll());
+        assertSame(matrix2, scheduler.poll());
+        assertSame(matrix3, scheduler.poll());
+        assertSame(onDemand, scheduler.poll());
+        assertNull(scheduler.poll());
+        assertEquals(0, scheduler.getQueued());
+    }
+
+    /**
+     * Tests that tasks are not queued when the queue is full.
+     */
+    @Test
+    public void testBoundedQueue() {
+        ScanScheduler scheduler = new ScanScheduler(0, 2);
+        assertTrue(scheduler.offer(task(Priority.BUILD, "job")));
+        assertTrue(scheduler.offer(task(Priority.GERRIT, "job")));
+        assertFalse(scheduler.offer(task(Priority.GERRIT, "job")));
+        scheduler.poll();
+        assertTrue(scheduler.offer(task(Priority.GERRIT, "job")));
+    }
+
+    /**
+     * Tests that the queued tasks are run, also by threads added later.
+     * @throws Exception if so
+     */
+    @Test
+    public void testRunsQueuedTasks() throws Exception {
+        ScanScheduler scheduler = new ScanScheduler(0, 10);
+        Task first = task(Priority.BUILD, "job");
+        Task second = task(Priority.BUILD, "job");
+        scheduler.offer(first);
+        scheduler.offer(second);
+        scheduler.setThreads(2);
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+        assertEquals(0, scheduler.getQueued());
+        scheduler.setThreads(0);
+    }
+
+    /**
+     * Creates a task doing nothing.
+     *
+     * @param priority the priority.
+     * @param job the job.
+     * @return the task.
+     */
+    private static Task task(Priority priority, String job) {
+        return new Task(priority, job, new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.db;
+
+import com.mongodb.BasicDBObject;
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import net.vz.mongodb.jackson.JacksonDBCollection;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+//CS IGNORE MagicNumber FOR NEXT 100 LINES. REASON: TestData.
+
+/**
+ * Tests the incremental updates of {@link MongoDBKnowledgeBaseCache} against Embedded MongoDB.
+ */
+@RunWith(PowerMockRunner.class)
+@PowerMockIgnore("javax.management.*") //Solves PowerMock issue 277
+public class EmbeddedMongoCacheTest extends EmbeddedMongoTest {
+
+    /**
+     * Tests that an update after the first one only fetches the added, changed and removed causes,
+     * and applies them to the cached causes.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testIncrementalUpdate() throws Exception {
+        MongoDBKnowledgeBase kb = (MongoDBKnowledgeBase)knowledgeBase;
+        JacksonDBCollection<FailureCause, String> collection = Whitebox.invokeMethod(kb, "getJacksonCollection");
+        FailureCause removed = kb.addCause(new FailureCause(null, "removed", "", "", null, "old", null, null), false);
+        FailureCause changed = kb.addCause(new FailureCause(null, "changed", "", "", null, "old", null, null), false);
+        FailureCause untouched = kb.addCause(new FailureCause(null, "untouched", "", "", null, "old", null, null),
+                false);
+
+        MongoDBKnowledgeBaseCache cache = new MongoDBKnowledgeBaseCache(collection);
+        cache.sync();
+        assertEquals(3, cache.getCauses().size());
+        assertEquals(3, cache.getLastFetchedCount());
+
+        //Move the existing causes out of the clock skew margin of the next update.
+        collection.getDbCollection().updateMulti(new BasicDBObject(), new BasicDBObject("$set",
+                new BasicDBObject(MongoDBKnowledgeBase.UPDATED_FIELD, new Date(0))));
+        kb.removeCause(removed.getId());
+        changed.setName("renamed");
+        changed.setCategories(Arrays.asList("new"));
+        kb.saveCause(changed, false);
+        FailureCause added = kb.addCause(new FailureCause(null, "added", "", "", null, "new", null, null), false);
+
+        cache.sync();
+        assertEquals(3, cache.getLastFetchedCount());
+        Map<String, String> names = new HashMap<String, String>();
+        for (FailureCause cause : cache.getCauses()) {
+            names.put(cause.getId(), cause.getName());
+        }
+        assertEquals(3, names.size());
+        assertEquals("renamed", names.get(changed.getId()));
+        assertEquals("untouched", names.get(untouched.getId()));
+        assertEquals("added", names.get(added.getId()));
+        assertEquals(Arrays.asList("new", "old"), new KnowledgeBaseSnapshot(cache.getCauses()).getCategories());
+    }
+}
@@ -30,6 +30,7 @@ import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseModification;
 import com.sonyericsson.jenkins.plugins.bfa.statistics.FailureCauseStatistics;
 import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.StatisticsHandler;
 import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics.UpstreamCause;
 import com.sonyericsson.jenkins.plugins.bfa.utils.ObjectCountPair;
 import org.jfree.data.time.Day;
@@ -48,6 +49,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -176,6 +178,76 @@ public class EmbeddedMongoStatisticsTest extends EmbeddedMongoTest {
         assertEquals(now, knowledgeBase.getCause(ID2).getLastOccurred());
     }
 
+    /**
+     * Tests that {@link MongoDBKnowledgeBase#updateLastSeen(Map)} only moves the last occurrence forward.
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testUpdateLastSeenOnlyMovesForward() throws Exception {
+        setUpTwoCauses();
+        knowledgeBase.updateLastSeen(Arrays.asList(ID1, ID2), now);
+        Map<String, Date> lastSeen = new HashMap<String, Date>();
+        lastSeen.put(ID1, lastHour);
+        Date later = new Date(now.getTime() + 1000);
+        lastSeen.put(ID2, later);
+        knowledgeBase.updateLastSeen(lastSeen);
+
+        assertEquals(now, knowledgeBase.getCause(ID1).getLastOccurred());
+        assertEquals(later, knowledgeBase.getCause(ID2).getLastOccurred());
+    }
+
+    /**
+     * Tests that {@link MongoDBKnowledgeBase#saveStatistics(List)} saves all the statistics.
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testSaveStatisticsInBulk() throws Exception {
+        List<Statistics> bulk = new ArrayList<Statistics>();
+        for (int i = 0; i < 3; i++) {
+            bulk.add(new Statistics(PROJECT_A, i, "", now, 1L, null, null, MASTER_A, 0, UNSTABLE, null,
+                    new ArrayList<FailureCauseStatistics>()));
+        }
+        knowledgeBase.saveStatistics(bulk);
+        assertEquals(3, knowledgeBase.getStatistics(null, -1).size());
+    }
+
+    /**
+     * Tests that {@link MongoDBKnowledgeBase#streamStatistics} reads only the requested fields,
+     * and stops when the handler returns false.
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testStreamStatistics() throws Exception {
+        setUpTwoCauses();
+        final List<Statistics> handled = new ArrayList<Statistics>();
+        StatisticsHandler handler = new StatisticsHandler() {
+            @Override
+            public boolean handle(Statistics statistics) {
+                handled.add(statistics);
+                return true;
+            }
+        };
+        knowledgeBase.streamStatistics(null, Arrays.asList("projectName", "failureCauses.failureCause"), 1, handler);
+
+        assertEquals(2, handled.size());
+        for (Statistics statistics : handled) {
+            assertNotNull(statistics.getProjectName());
+            assertEquals(null, statistics.getMaster());
+            assertFalse(statistics.getFailureCauseStatisticsList().isEmpty());
+        }
+
+        handled.clear();
+        knowledgeBase.streamStatistics(null, null, 0, new StatisticsHandler() {
+            @Override
+            public boolean handle(Statistics statistics) {
+                handled.add(statistics);
+                return false;
+            }
+        });
+        assertEquals(1, handled.size());
+        assertNotNull(handled.get(0).getMaster());
+    }
+
     /**
      * Tests {@link MongoDBKnowledgeBase#getCreationDateForCause(String)} by saving
      * a dummy {@link FailureCause} and verifying it was created recently.
@@ -459,6 +531,141 @@ public class EmbeddedMongoStatisticsTest extends EmbeddedMongoTest {
         assertEquals(today, result.keySet().iterator().next());
     }
 
+    /**
+     * Tests that the graphs give the same numbers from the rebuilt rollups,
+     * and that statistics saved after the rebuild are added to them.
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testGraphsFromRollups() throws Exception {
+        setUpTwoCauses();
+        MongoDBKnowledgeBase mongoKnowledgeBase = (MongoDBKnowledgeBase)knowledgeBase;
+        assertFalse(mongoKnowledgeBase.isRollupComplete());
+        mongoKnowledgeBase.rebuildRollups();
+        assertTrue(mongoKnowledgeBase.isRollupComplete());
+
+        List<ObjectCountPair<String>> result = knowledgeBase.getNbrOfFailureCausesPerId(null, 0);
+        assertEquals(2, result.size());
+        assertEquals(ID1, result.get(0).getObject());
+        assertEquals(2, result.get(0).getCount());
+        assertEquals(ID2, result.get(1).getObject());
+        assertEquals(1, result.get(1).getCount());
+
+        List<FailureCauseTimeInterval> intervals = knowledgeBase.getFailureCausesPerTime(Calendar.HOUR_OF_DAY,
+                null, false);
+        assertEquals(3, intervals.size());
+
+        List<FailureCauseStatistics> failureList = new ArrayList<FailureCauseStatistics>();
+        failureList.add(new FailureCauseStatistics(ID2, null));
+        knowledgeBase.saveStatistics(new Statistics(PROJECT_A, 4, "", now, 1L, null, null, MASTER_A, 0, UNSTABLE,
+                null, failureList));
+
+        result = knowledgeBase.getNbrOfFailureCausesPerId(null, 1);
+        assertEquals(1, result.size());
+        assertEquals(2, result.get(0).getCount());
+        intervals = knowledgeBase.getFailureCausesPerTime(Calendar.HOUR_OF_DAY, null, false);
+        assertEquals(4, intervals.size());
+    }
+
+    /**
+     * Tests that statistics saved while the rollups are rebuilt, like by another master, are counted once
+     * whether they are saved before or after their month has been re-aggregated.
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testSaveStatisticsDuringRebuild() throws Exception {
+        setUpTwoCauses();
+        MongoDBKnowledgeBase mongoKnowledgeBase = (MongoDBKnowledgeBase)knowledgeBase;
+        List<FailureCauseStatistics> failureList = new ArrayList<FailureCauseStatistics>();
+        failureList.add(new FailureCauseStatistics(ID2, null));
+
+        Date cutoff = mongoKnowledgeBase.startRollupRebuild();
+        assertTrue(cutoff.after(now));
+        assertFalse(mongoKnowledgeBase.isRollupComplete());
+        knowledgeBase.saveStatistics(new Statistics(PROJECT_A, 4, "", now, 1L, null, null, MASTER_A, 0, UNSTABLE,
+                null, failureList));
+        mongoKnowledgeBase.rebuildRollups(new Date(0), cutoff);
+        knowledgeBase.saveStatistics(new Statistics(PROJECT_B, 5, "", now, 1L, null, null, MASTER_B, 0, UNSTABLE,
+                null, failureList));
+        mongoKnowledgeBase.finishRollupRebuild(cutoff);
+        assertTrue(mongoKnowledgeBase.isRollupComplete());
+
+        assertEquals(5, knowledgeBase.getStatistics(null, -1).size());
+        List<ObjectCountPair<String>> result = knowledgeBase.getNbrOfFailureCausesPerId(null, 0);
+        assertEquals(2, result.size());
+        assertEquals(ID2, result.get(0).getObject());
+        assertEquals(3, result.get(0).getCount());
+        assertEquals(ID1, result.get(1).getObject());
+        assertEquals(2, result.get(1).getCount());
+    }
+
+    /**
+     * Tests that a rebuild does not re-aggregate builds started after its cutoff, which are only added up as they
+     * are saved, and that a rebuild that has been superseded does not mark the rollups as complete.
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testRebuildStopsAtCutoff() throws Exception {
+        MongoDBKnowledgeBase mongoKnowledgeBase = (MongoDBKnowledgeBase)knowledgeBase;
+        FailureCause cause = new FailureCause(ID1, null, null, null, null, CAT1, null, null);
+        knowledgeBase.addCause(cause);
+        List<FailureCauseStatistics> failureList = new ArrayList<FailureCauseStatistics>();
+        failureList.add(new FailureCauseStatistics(ID1, null));
+
+        Date cutoff = mongoKnowledgeBase.startRollupRebuild();
+        Date later = new Date(cutoff.getTime() + TimeUnit.MINUTES.toMillis(1));
+        knowledgeBase.saveStatistics(new Statistics(PROJECT_A, 1, "", later, 1L, null, null, MASTER_A, 0, UNSTABLE,
+                null, failureList));
+        mongoKnowledgeBase.rebuildRollups();
+        assertTrue(mongoKnowledgeBase.isRollupComplete());
+        List<ObjectCountPair<String>> result = knowledgeBase.getNbrOfFailureCausesPerId(null, 0);
+        assertEquals(1, result.size());
+        assertEquals(1, result.get(0).getCount());
+
+        Date superseded = mongoKnowledgeBase.startRollupRebuild();
+        mongoKnowledgeBase.finishRollupRebuild(new Date(superseded.getTime() - TimeUnit.HOURS.toMillis(1)));
+        assertFalse(mongoKnowledgeBase.isRollupComplete());
+    }
+
+    /**
+     * Test for filtering statistics from the rollups by build started,
+     * where the partial first hour is read from the statistics.
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testFilterOnBuildStartedFromRollups() throws Exception {
+        setUpTwoCauses();
+        ((MongoDBKnowledgeBase)knowledgeBase).rebuildRollups();
+
+        Calendar fewMinutesAgo = Calendar.getInstance();
+        fewMinutesAgo.add(Calendar.MINUTE, -5);
+        Calendar moreThanAnHourAgo = Calendar.getInstance();
+        moreThanAnHourAgo.add(Calendar.MINUTE, -65);
+
+        filter1.setSince(moreThanAnHourAgo.getTime());
+        filter2.setSince(fewMinutesAgo.getTime());
+
+        doFilterAssert();
+    }
+
+    /**
+     * Tests that the indexes created when starting are used by all graph queries.
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testGraphQueriesUseIndexes() throws Exception {
+        setUpTwoCauses();
+        knowledgeBase.start();
+        try {
+            for (QueryPlan plan : ((MongoDBKnowledgeBase)knowledgeBase).explainGraphQueries()) {
+                assertFalse(plan.getName(), plan.isCollectionScan());
+                assertNotNull(plan.getName(), plan.getIndexName());
+            }
+        } finally {
+            knowledgeBase.stop();
+        }
+    }
+
     /**
      * Test for filtering statistics by project.
      * @throws Exception if something goes wrong
@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.MatchingEngine;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.BuildLogIndication;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.Indication;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.MultilineBuildLogIndication;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link KnowledgeBaseSnapshot}.
+ */
+public class KnowledgeBaseSnapshotTest {
+
+    /**
+     * Tests that the causes are split and indexed.
+     */
+    @Test
+    public void testIndexes() {
+        FailureCause single = createCause("1", "single", "a b", new BuildLogIndication(".*single.*"));
+        FailureCause multi = createCause("2", "multi", "b c", new BuildLogIndication(".*first.*"),
+                new MultilineBuildLogIndication(".*second.*"));
+        KnowledgeBaseSnapshot snapshot = new KnowledgeBaseSnapshot(Arrays.asList(single, multi));
+
+        assertEquals(Collections.singletonList(single), snapshot.getSingleLineCauses());
+        assertEquals(Collections.singletonList(multi), snapshot.getMultiLineCauses());
+        assertSame(multi, snapshot.getCause("2"));
+        assertNull(snapshot.getCause("3"));
+        assertEquals(Collections.singletonList(single), snapshot.getCausesByName("single"));
+        assertTrue(snapshot.getCausesByName("other").isEmpty());
+        assertEquals(Arrays.asList(single, multi), snapshot.getCausesByCategory("b"));
+        assertEquals(Arrays.asList("a", "b", "c"), snapshot.getCategories());
+        assertEquals(1, snapshot.getSingleLinePatterns(MatchingEngine.MULTI_PATTERN).size());
+        assertSame(snapshot.getSingleLinePatterns(MatchingEngine.MULTI_PATTERN),
+                snapshot.getSingleLinePatterns(MatchingEngine.MULTI_PATTERN));
+    }
+
+    /**
+     * Tests that the knowledge base keeps its snapshot until its causes change.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testSnapshotIsRebuiltOnChange() throws Exception {
+        LocalFileKnowledgeBase knowledgeBase = new LocalFileKnowledgeBase(Collections.singletonList(
+                createCause("1", "first", "a", new BuildLogIndication(".*first.*"))));
+        KnowledgeBaseSnapshot snapshot = knowledgeBase.getSnapshot();
+        assertSame(snapshot, knowledgeBase.getSnapshot());
+
+        knowledgeBase.put(createCause("2", "second", "b", new BuildLogIndication(".*second.*")));
+        KnowledgeBaseSnapshot changed = knowledgeBase.getSnapshot();
+        assertNotSame(snapshot, changed);
+        assertTrue(changed.getVersion() > snapshot.getVersion());
+        assertEquals(2, changed.getCauses().size());
+        assertEquals(1, snapshot.getCauses().size());
+    }
+
+    /**
+     * Tests that a snapshot is not kept when the knowledge base is invalidated while it is being built.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testSnapshotInvalidatedWhileBuildingIsNotKept() throws Exception {
+        final boolean[] invalidate = {true};
+        LocalFileKnowledgeBase knowledgeBase = new LocalFileKnowledgeBase(Collections.singletonList(
+                createCause("1", "first", "a", new BuildLogIndication(".*first.*")))) {
+            @Override
+            public Collection<FailureCause> getCauses() {
+                Collection<FailureCause> causes = super.getCauses();
+                if (invalidate[0]) {
+                    invalidate[0] = false;
+                    //A change by another thread after the causes were fetched.
+                    invalidateSnapshot();
+                }
+                return causes;
+            }
+        };
+        KnowledgeBaseSnapshot stale = knowledgeBase.getSnapshot();
+        KnowledgeBaseSnapshot fresh = knowledgeBase.getSnapshot();
+        assertNotSame(stale, fresh);
+        assertSame(fresh, knowledgeBase.getSnapshot());
+    }
+
+    /**
+     * Creates a cause.
+     *
+     * @param id the id.
+     * @param name the name.
+     * @param categories the space separated categories.
+     * @param indications the indications.
+     * @return the cause.
+     */
+    private static FailureCause createCause(String id, String name, String categories, Indication... indications) {
+        List<Indication> list = Arrays.asList(indications);
+        return new FailureCause(id, name, "", "", null, categories, list, null);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.db;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+//CS IGNORE MagicNumber FOR NEXT 150 LINES. REASON: TestData.
+
+/**
+ * Tests for {@link QueryCoalescer}.
+ */
+public class QueryCoalescerTest {
+
+    /**
+     * Tests that concurrent callers with equal keys share one execution, and that the result is not kept.
+     * @throws Exception if so
+     */
+    @Test
+    public void testConcurrentCallersShareOneQuery() throws Exception {
+        final QueryCoalescer coalescer = new QueryCoalescer();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        final Callable<Object> query = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                executions.incrementAndGet();
+                started.countDown();
+                release.await();
+                return new Object();
+            }
+        };
+        final Object[] results = new Object[2];
+        Thread first = new Thread() {
+            @Override
+            public void run() {
+                results[0] = coalescer.get("key", query);
+            }
+        };
+        Thread second = new Thread() {
+            @Override
+            public void run() {
+                results[1] = coalescer.get("key", query);
+            }
+        };
+        first.start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        second.start();
+        //Wait for the second caller to wait for the query of the first one.
+        while (second.getState() != Thread.State.WAITING && second.isAlive()) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        first.join();
+        second.join();
+        assertSame(results[0], results[1]);
+        assertEquals(1, executions.get());
+        assertEquals(0, coalescer.getInFlight());
+
+        coalescer.get("key", query);
+        assertEquals(2, executions.get());
+    }
+
+    /**
+     * Tests that failures are thrown to the caller, and that a failed query is run again by the next caller.
+     */
+    @Test
+    public void testFailureIsPropagated() {
+        QueryCoalescer coalescer = new QueryCoalescer();
+        final AtomicInteger executions = new AtomicInteger();
+        Callable<Object> query = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                executions.incrementAndGet();
+                throw new IllegalStateException("failed");
+            }
+        };
+        for (int i = 0; i < 2; i++) {
+            try {
+                coalescer.get("key", query);
+                fail("The failure should be thrown");
+            } catch (IllegalStateException e) {
+                assertEquals("failed", e.getMessage());
+            }
+        }
+        assertEquals(2, executions.get());
+        assertEquals(0, coalescer.getInFlight());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.db;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+//CS IGNORE MagicNumber FOR NEXT 100 LINES. REASON: TestData.
+
+/**
+ * Tests for {@link QueryPlan}.
+ */
+public class QueryPlanTest {
+
+    /**
+     * Tests reading the explain output of MongoDB 2.x.
+     */
+    @Test
+    public void testLegacyExplain() {
+        DBObject explain = new BasicDBObject("cursor", "BtreeCursor projectName_1_master_1_startingTime_1");
+        explain.put("n", 3);
+        explain.put("nscannedObjects", 5);
+        QueryPlan plan = new QueryPlan("Project", new BasicDBObject("projectName", "project"), explain);
+        assertFalse(plan.isCollectionScan());
+        assertEquals("projectName_1_master_1_startingTime_1", plan.getIndexName());
+        assertEquals(5, plan.getExamined());
+        assertEquals(3, plan.getReturned());
+
+        plan = new QueryPlan("Project", new BasicDBObject(), new BasicDBObject("cursor", "BasicCursor"));
+        assertTrue(plan.isCollectionScan());
+        assertNull(plan.getIndexName());
+        assertEquals(-1, plan.getExamined());
+    }
+
+    /**
+     * Tests reading the explain output of later MongoDB versions, where a rejected plan scanning the collection
+     * does not count.
+     */
+    @Test
+    public void testQueryPlannerExplain() {
+        DBObject inputStage = new BasicDBObject("stage", "IXSCAN");
+        inputStage.put("indexName", "startingTime_1");
+        DBObject winningPlan = new BasicDBObject("stage", "FETCH");
+        winningPlan.put("inputStage", inputStage);
+        BasicDBList rejectedPlans = new BasicDBList();
+        rejectedPlans.add(new BasicDBObject("stage", "COLLSCAN"));
+        DBObject queryPlanner = new BasicDBObject("winningPlan", winningPlan);
+        queryPlanner.put("rejectedPlans", rejectedPlans);
+        DBObject executionStats = new BasicDBObject("nReturned", 2L);
+        executionStats.put("totalDocsExamined", 4L);
+        DBObject explain = new BasicDBObject("queryPlanner", queryPlanner);
+        explain.put("executionStats", executionStats);
+
+        QueryPlan plan = new QueryPlan("All builds", new BasicDBObject(), explain);
+        assertFalse(plan.isCollectionScan());
+        assertEquals("startingTime_1", plan.getIndexName());
+        assertEquals(4, plan.getExamined());
+        assertEquals(2, plan.getReturned());
+
+        winningPlan.put("inputStage", new BasicDBObject("stage", "COLLSCAN"));
+        assertTrue(new QueryPlan("All builds", new BasicDBObject(), explain).isCollectionScan());
+    }
+}
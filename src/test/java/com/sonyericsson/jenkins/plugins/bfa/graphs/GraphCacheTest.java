@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.graphs;
+
+import org.jfree.data.general.DefaultPieDataset;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+//CS IGNORE MagicNumber FOR NEXT 150 LINES. REASON: TestData.
+
+/**
+ * Tests for {@link GraphCache}.
+ */
+public class GraphCacheTest {
+
+    private static final String OWNER = "Owner";
+
+    /**
+     * Temporary directory for the persisted datasets.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that a dataset is only created once, and is read from disk by a new cache.
+     * @throws Exception if so
+     */
+    @Test
+    public void testDatasetIsCachedAndPersisted() throws Exception {
+        File directory = folder.newFolder("cache");
+        GraphCacheKey key = new GraphCacheKey(OWNER, "a", GraphType.PIE_CHART_CAUSES, "today", true, false);
+        CountingLoader loader = new CountingLoader(5);
+
+        assertEquals(5, new GraphCache(directory).getDataset(key, loader).getValue("cause").intValue());
+        GraphCache cache = new GraphCache(directory);
+        assertEquals(5, cache.getDataset(key, loader).getValue("cause").intValue());
+        assertEquals(5, cache.getDataset(key, loader).getValue("cause").intValue());
+        assertEquals(1, loader.calls.get());
+
+        GraphCacheKey otherPeriod = new GraphCacheKey(OWNER, "a", GraphType.PIE_CHART_CAUSES, "month", true, false);
+        cache.getDataset(otherPeriod, loader);
+        assertEquals(2, loader.calls.get());
+    }
+
+    /**
+     * Tests that invalidating a scope removes its datasets from memory and disk, but keeps the others.
+     * @throws Exception if so
+     */
+    @Test
+    public void testInvalidateScope() throws Exception {
+        File directory = folder.newFolder("cache");
+        GraphCache cache = new GraphCache(directory);
+        GraphCacheKey keyA = new GraphCacheKey(OWNER, "a", GraphType.PIE_CHART_CAUSES, "today", true, false);
+        GraphCacheKey keyB = new GraphCacheKey(OWNER, "b", GraphType.PIE_CHART_CAUSES, "today", true, false);
+        CountingLoader loaderA = new CountingLoader(1);
+        CountingLoader loaderB = new CountingLoader(2);
+        cache.getDataset(keyA, loaderA);
+        cache.getDataset(keyB, loaderB);
+
+        cache.invalidate(OWNER, "a");
+        cache.getDataset(keyA, loaderA);
+        cache.getDataset(keyB, loaderB);
+        assertEquals(2, loaderA.calls.get());
+        assertEquals(1, loaderB.calls.get());
+
+        cache.invalidate(OWNER, "a");
+        new GraphCache(directory).getDataset(keyA, loaderA);
+        assertEquals(3, loaderA.calls.get());
+    }
+
+    /**
+     * Tests that images are cached by size.
+     * @throws Exception if so
+     */
+    @Test
+    public void testImagesAreCachedBySize() throws Exception {
+        GraphCache cache = new GraphCache(null);
+        GraphCacheKey key = new GraphCacheKey(OWNER, "", GraphType.BAR_CHART_CAUSES, "today", false, true);
+        final AtomicInteger renders = new AtomicInteger();
+        Callable<byte[]> renderer = new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return new byte[] {(byte)renders.incrementAndGet()};
+            }
+        };
+        assertArrayEquals(new byte[] {1}, cache.getImage(key, 700, 500, renderer));
+        assertArrayEquals(new byte[] {1}, cache.getImage(key, 700, 500, renderer));
+        assertArrayEquals(new byte[] {2}, cache.getImage(key, 500, 200, renderer));
+
+        cache.invalidate(key);
+        assertArrayEquals(new byte[] {3}, cache.getImage(key, 700, 500, renderer));
+    }
+
+    /**
+     * Tests that invalidating a scope makes its images render again, but keeps the images of other scopes.
+     * @throws Exception if so
+     */
+    @Test
+    public void testInvalidateScopeImages() throws Exception {
+        GraphCache cache = new GraphCache(null);
+        GraphCacheKey keyA = new GraphCacheKey(OWNER, "a", GraphType.BAR_CHART_CAUSES, "today", false, false);
+        GraphCacheKey keyB = new GraphCacheKey(OWNER, "b", GraphType.BAR_CHART_CAUSES, "today", false, false);
+        GraphCacheKey otherOwner = new GraphCacheKey("Other", "a", GraphType.BAR_CHART_CAUSES, "today", false, false);
+        final AtomicInteger renders = new AtomicInteger();
+        Callable<byte[]> renderer = new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return new byte[] {(byte)renders.incrementAndGet()};
+            }
+        };
+        cache.getImage(keyA, 700, 500, renderer);
+        cache.getImage(keyB, 700, 500, renderer);
+        cache.getImage(otherOwner, 700, 500, renderer);
+
+        cache.invalidate(OWNER, "a");
+        cache.invalidate(OWNER, "a");
+        assertArrayEquals(new byte[] {4}, cache.getImage(keyA, 700, 500, renderer));
+        assertArrayEquals(new byte[] {4}, cache.getImage(keyA, 700, 500, renderer));
+        assertArrayEquals(new byte[] {2}, cache.getImage(keyB, 700, 500, renderer));
+        assertArrayEquals(new byte[] {3}, cache.getImage(otherOwner, 700, 500, renderer));
+    }
+
+    /**
+     * Creates a dataset with one value, counting the calls.
+     */
+    private static class CountingLoader implements Callable<DefaultPieDataset> {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final int value;
+
+        /**
+         * Standard constructor.
+         *
+         * @param value the value of the dataset.
+         */
+        CountingLoader(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public DefaultPieDataset call() throws Exception {
+            calls.incrementAndGet();
+            DefaultPieDataset dataset = new DefaultPieDataset();
+            dataset.setValue("cause", value);
+            return dataset;
+        }
+    }
+}
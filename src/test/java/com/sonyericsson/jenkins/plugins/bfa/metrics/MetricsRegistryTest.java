@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.metrics;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+//CS IGNORE MagicNumber FOR NEXT 100 LINES. REASON: TestData.
+
+/**
+ * Tests for {@link MetricsRegistry} and {@link Histogram}.
+ */
+public class MetricsRegistryTest {
+
+    /**
+     * Tests that the values of a histogram are counted in cumulative buckets.
+     */
+    @Test
+    public void testHistogram() {
+        Histogram histogram = new Histogram(10, 100);
+        histogram.record(5);
+        histogram.record(10);
+        histogram.record(50);
+        histogram.record(1000);
+
+        assertEquals(4, histogram.getCount());
+        assertEquals(1065, histogram.getSum());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(2, histogram.getCumulativeCount(0));
+        assertEquals(3, histogram.getCumulativeCount(1));
+        assertEquals(4, histogram.getCumulativeCount(2));
+
+        JSONArray buckets = histogram.toJSON().getJSONArray("buckets");
+        assertEquals(3, buckets.size());
+        assertEquals("+Inf", buckets.getJSONObject(2).getString("le"));
+        assertEquals(4, buckets.getJSONObject(2).getLong("count"));
+    }
+
+    /**
+     * Tests that gauges, counters and histograms are published, and that a failing gauge is left out.
+     */
+    @Test
+    public void testToJSON() {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        MetricsRegistry.Gauge gauge = new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return 42;
+            }
+        };
+        MetricsRegistry.Gauge failing = new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                throw new IllegalStateException("Not started");
+            }
+        };
+        metrics.register("test.gauge", gauge);
+        metrics.register("test.failing", failing);
+        try {
+            metrics.getCounter("test.counter").addAndGet(3);
+            metrics.getDurationHistogram("test.duration").record(20);
+            assertSame(metrics.getCounter("test.counter"), metrics.getCounter("test.counter"));
+
+            JSONObject json = metrics.toJSON();
+            assertEquals(42, json.getJSONObject("gauges").getInt("test.gauge"));
+            assertFalse(json.getJSONObject("gauges").has("test.failing"));
+            assertEquals(3, json.getJSONObject("counters").getLong("test.counter"));
+            assertEquals(1, json.getJSONObject("histograms").getJSONObject("test.duration").getLong("count"));
+        } finally {
+            metrics.unregister("test.gauge", gauge);
+            metrics.unregister("test.failing", failing);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.FoundIndication;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.Indication;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+//CS IGNORE MagicNumber FOR NEXT 100 LINES. REASON: TestData.
+
+/**
+ * Tests for the delta scan support of {@link FailureCauseBuildAction}.
+ */
+public class FailureCauseBuildActionTest {
+
+    /**
+     * Tests that only new and modified causes are reported as changed.
+     */
+    @Test
+    public void testGetNewOrModifiedCauses() {
+        FailureCause unchanged = createCause("a", 1000);
+        FailureCause modified = createCause("b", 2000);
+        FailureCauseBuildAction action = new FailureCauseBuildAction(new ArrayList<FoundFailureCause>());
+        assertNull(action.getNewOrModifiedCauses(Arrays.asList(unchanged)));
+
+        action.setScannedCauses(FailureCauseBuildAction.getRevisions(Arrays.asList(unchanged, modified)));
+        FailureCause modifiedAgain = createCause("b", 3000);
+        FailureCause added = createCause("c", 500);
+        List<FailureCause> changed = action.getNewOrModifiedCauses(Arrays.asList(unchanged, modifiedAgain, added));
+        assertEquals(Arrays.asList(modifiedAgain, added), changed);
+    }
+
+    /**
+     * Tests that the result of a delta scan replaces what was found for the re-scanned causes only.
+     */
+    @Test
+    public void testMergeFoundFailureCauses() {
+        FailureCause kept = createCause("a", 1000);
+        FailureCause rescanned = createCause("b", 2000);
+        FailureCause testCase = new FailureCause("failed test", "description");
+        List<FoundFailureCause> found = new ArrayList<FoundFailureCause>();
+        found.add(new FoundFailureCause(kept));
+        found.add(new FoundFailureCause(rescanned));
+        found.add(new FoundFailureCause(testCase));
+        FailureCauseBuildAction action = new FailureCauseBuildAction(found);
+
+        FailureCause added = createCause("c", 500);
+        action.mergeFoundFailureCauses(Arrays.asList(kept, rescanned, added), Arrays.asList(rescanned, added),
+                Collections.singletonList(new FoundFailureCause(added, new ArrayList<FoundIndication>())));
+        List<FoundFailureCause> merged = action.getFoundFailureCauses();
+        assertEquals(3, merged.size());
+        assertEquals("a", merged.get(0).getId());
+        assertNull(merged.get(1).getId());
+        assertEquals("c", merged.get(2).getId());
+    }
+
+    /**
+     * Tests that what was found for causes removed from the knowledge base is dropped by a delta scan.
+     */
+    @Test
+    public void testMergeDropsRemovedCauses() {
+        FailureCause kept = createCause("a", 1000);
+        FailureCause removed = createCause("b", 2000);
+        List<FoundFailureCause> found = new ArrayList<FoundFailureCause>();
+        found.add(new FoundFailureCause(kept));
+        found.add(new FoundFailureCause(removed));
+        FailureCauseBuildAction action = new FailureCauseBuildAction(found);
+        assertFalse(action.hasRemovedCauses(Arrays.asList(kept, removed)));
+        assertTrue(action.hasRemovedCauses(Arrays.asList(kept)));
+
+        action.mergeFoundFailureCauses(Arrays.asList(kept), Collections.<FailureCause>emptyList(),
+                Collections.<FoundFailureCause>emptyList());
+        List<FoundFailureCause> merged = action.getFoundFailureCauses();
+        assertEquals(1, merged.size());
+        assertEquals("a", merged.get(0).getId());
+        assertFalse(action.hasRemovedCauses(Arrays.asList(kept)));
+    }
+
+    /**
+     * Creates a cause with one modification.
+     *
+     * @param id the id.
+     * @param modified the time of the modification.
+     * @return the cause.
+     */
+    private static FailureCause createCause(String id, long modified) {
+        List<FailureCauseModification> modifications = new ArrayList<FailureCauseModification>();
+        modifications.add(new FailureCauseModification("user", new Date(modified)));
+        return new FailureCause(id, "cause " + id, "description", "", null, "", new ArrayList<Indication>(),
+                modifications);
+    }
+}
@@ -26,16 +26,20 @@ package com.sonyericsson.jenkins.plugins.bfa.model;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.io.SequenceInputStream;
 import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.ZipInputStream;
 
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.MatchingEngine;
 import com.sonyericsson.jenkins.plugins.bfa.model.indication.BuildLogIndication;
 import com.sonyericsson.jenkins.plugins.bfa.model.indication.FoundIndication;
 import com.sonyericsson.jenkins.plugins.bfa.model.indication.Indication;
@@ -132,6 +136,68 @@ public class FailureReaderTest {
         assertNotNull("Expected to find an indication", indication);
     }
 
+    /**
+     * Tests that the multi-pattern engine finds the same indications as the regex engine,
+     * and that each indication is only reported once.
+     * @throws Exception if so
+     */
+    @Test
+    public void testScanSingleLinePatternsWithMultiPatternEngine() throws Exception {
+        Run run = PowerMockito.mock(Run.class);
+        FailureCause cause = new FailureCause("test", "description");
+        cause.addIndication(new BuildLogIndication(".*timed out.*"));
+        cause.addIndication(new BuildLogIndication("^\\d+ tests failed$"));
+        cause.addIndication(new BuildLogIndication(".*never printed.*"));
+        List<FailureCause> causes = new ArrayList<FailureCause>();
+        causes.add(cause);
+        String log = "Build timed out\n3 tests failed\nBuild timed out again\n";
+
+        List<FoundFailureCause> found = FailureReader.scanSingleLinePatterns(causes, run,
+                new BufferedReader(new StringReader(log)), "test", MatchingEngine.MULTI_PATTERN);
+        assertEquals(1, found.size());
+        List<FoundIndication> indications = found.get(0).getIndications();
+        assertEquals(2, indications.size());
+        assertEquals("Build timed out", indications.get(0).getMatchingString());
+        assertEquals("3 tests failed", indications.get(1).getMatchingString());
+
+        List<FoundFailureCause> expected = FailureReader.scanSingleLinePatterns(causes, run,
+                new BufferedReader(new StringReader(log)), "test", MatchingEngine.REGEX);
+        assertEquals(expected.get(0).getIndications().size(), indications.size());
+    }
+
+    /**
+     * Tests that scanning the log through a memory mapping finds the same indications as the reader.
+     * @throws Exception if so
+     */
+    @Test
+    public void testScanBuildLogMemoryMapped() throws Exception {
+        File log = File.createTempFile("bfa", ".log");
+        try {
+            FileOutputStream out = new FileOutputStream(log);
+            try {
+                out.write("Started\nBuild timed out after 5 minutes\nFinished: FAILURE\n".getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            Run run = PowerMockito.mock(Run.class);
+            PowerMockito.when(run.getLogFile()).thenReturn(log);
+            PowerMockito.when(run.getCharset()).thenReturn(Charset.forName("UTF-8"));
+            FailureCause cause = new FailureCause("test", "description");
+            cause.addIndication(new BuildLogIndication(".*timed out.*"));
+            List<FailureCause> causes = new ArrayList<FailureCause>();
+            causes.add(cause);
+
+            List<FoundFailureCause> found = FailureReader.scanBuildLog(MatchingEngine.MULTI_PATTERN.compile(causes),
+                    run, true);
+            assertEquals(1, found.size());
+            FoundIndication indication = found.get(0).getIndications().get(0);
+            assertEquals("Build timed out after 5 minutes", indication.getMatchingString());
+            assertEquals(log.getName(), indication.getMatchingFile());
+        } finally {
+            log.delete();
+        }
+    }
+
     /**
      * Test of timeout on abusive line. Should timeout on two lines
      * each timeout between 1 and 2 seconds.
@@ -189,6 +255,28 @@ public class FailureReaderTest {
         assertNotNull("Expected to find an indication", indication);
     }
 
+    /**
+     * Tests that a match spanning two windows is found with the buffer size and overlap of the indication.
+     * @throws Exception if so
+     */
+    @Test
+    public void testScanMultiLineOneFileWithIndicationBufferSize() throws Exception {
+        MultilineBuildLogIndication multiline = new MultilineBuildLogIndication("START.*END");
+        multiline.setBufferSize(100);
+        multiline.setOverlap(40);
+        FailureReader reader = new TestReader(multiline);
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < 84; i++) {
+            log.append('a');
+        }
+        log.append("\nSTART\nmiddle line\nEND\n");
+        BufferedReader br = new BufferedReader(new StringReader(log.toString()));
+        FoundIndication indication = reader.scanMultiLineOneFile(null, br, "test");
+        br.close();
+        assertNotNull("Expected to find an indication", indication);
+        assertEquals("START\nmiddle line\nEND", indication.getMatchingString());
+    }
+
     /**
      * Test of timeout on abusive line.
      * @throws Exception if so
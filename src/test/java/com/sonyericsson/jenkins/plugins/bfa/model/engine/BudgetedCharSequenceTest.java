@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+//CS IGNORE MagicNumber FOR NEXT 70 LINES. REASON: TestData.
+
+/**
+ * Tests for {@link BudgetedCharSequence}.
+ */
+public class BudgetedCharSequenceTest {
+
+    /**
+     * Tests that matching works through the wrapper and that it follows the wrapped sequence.
+     */
+    @Test
+    public void testMatchesWrappedSequence() {
+        ScanWatchdog.Registration registration = ScanWatchdog.getInstance().register(10000);
+        try {
+            StringBuilder line = new StringBuilder("ERROR: something broke");
+            BudgetedCharSequence budgeted = new BudgetedCharSequence(line, registration);
+            assertTrue(Pattern.compile("ERROR: .*").matcher(budgeted).matches());
+            line.setLength(0);
+            line.append("all good");
+            assertEquals("all good", budgeted.toString());
+            budgeted.reset("Finished: FAILURE");
+            assertTrue(Pattern.compile(".*FAILURE").matcher(budgeted).matches());
+        } finally {
+            registration.close();
+        }
+    }
+
+    /**
+     * Tests that catastrophic backtracking is aborted when the scan expires.
+     */
+    @Test
+    public void testAbortsCatastrophicBacktracking() {
+        ScanWatchdog.Registration registration = ScanWatchdog.getInstance().register(100);
+        try {
+            StringBuilder input = new StringBuilder();
+            for (int i = 0; i < 64; i++) {
+                input.append('a');
+            }
+            Pattern.compile("(.*a){20}b").matcher(new BudgetedCharSequence(input, registration)).matches();
+            fail("The match should have been aborted");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+        } finally {
+            registration.close();
+        }
+    }
+}
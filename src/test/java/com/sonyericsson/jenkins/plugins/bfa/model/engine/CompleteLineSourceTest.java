@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link CompleteLineSource}.
+ */
+public class CompleteLineSourceTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Tests that an unterminated last line is left for later while the log is written.
+     * @throws Exception if so
+     */
+    @Test
+    public void testLeavesUnterminatedLine() throws Exception {
+        byte[] log = "first\r\nsecond\nthi".getBytes(UTF8);
+        CompleteLineSource lines = new CompleteLineSource(new ByteArrayInputStream(log), UTF8, false);
+        assertEquals("first", lines.readLine().toString());
+        assertEquals("second", lines.readLine().toString());
+        assertNull(lines.readLine());
+        assertEquals("first\r\nsecond\n".length(), lines.getConsumed());
+    }
+
+    /**
+     * Tests that an unterminated last line is read when the log is complete.
+     * @throws Exception if so
+     */
+    @Test
+    public void testReadsUnterminatedLineWhenComplete() throws Exception {
+        byte[] log = "first\nl\u00e5st".getBytes(UTF8);
+        CompleteLineSource lines = new CompleteLineSource(new ByteArrayInputStream(log), UTF8, true);
+        assertEquals("first", lines.readLine().toString());
+        assertEquals("l\u00e5st", lines.readLine().toString());
+        assertNull(lines.readLine());
+        assertEquals(log.length, lines.getConsumed());
+    }
+
+    /**
+     * Tests that a lone carriage return ends a line, as progress output does,
+     * and that one at the end is left for later while the log is written.
+     * @throws Exception if so
+     */
+    @Test
+    public void testLoneCarriageReturnEndsLine() throws Exception {
+        byte[] log = "50%\rERROR: x\r\nnext\r".getBytes(UTF8);
+        CompleteLineSource lines = new CompleteLineSource(new ByteArrayInputStream(log), UTF8, false);
+        assertEquals("50%", lines.readLine().toString());
+        assertEquals("ERROR: x", lines.readLine().toString());
+        assertNull(lines.readLine());
+        assertEquals("50%\rERROR: x\r\n".length(), lines.getConsumed());
+
+        lines = new CompleteLineSource(new ByteArrayInputStream(log), UTF8, true);
+        assertEquals("50%", lines.readLine().toString());
+        assertEquals("ERROR: x", lines.readLine().toString());
+        assertEquals("next", lines.readLine().toString());
+        assertNull(lines.readLine());
+        assertEquals(log.length, lines.getConsumed());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.engine.IndicationCostStatistics.IndicationCost;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.BuildLogIndication;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+//CS IGNORE MagicNumber FOR NEXT 100 LINES. REASON: TestData.
+
+/**
+ * Tests for {@link IndicationCostStatistics}.
+ */
+public class IndicationCostStatisticsTest {
+
+    /**
+     * Resets the singleton.
+     */
+    @After
+    public void tearDown() {
+        IndicationCostStatistics.getInstance().reset();
+    }
+
+    /**
+     * Tests that the scans of indications with the same expression are added up, the most expensive first.
+     */
+    @Test
+    public void testCostsAreAddedUpAndSorted() {
+        IndicationCostStatistics statistics = IndicationCostStatistics.getInstance();
+        statistics.record(new BuildLogIndication(".*cheap.*"), 1000, 10, 10, 0, 0);
+        statistics.record(new BuildLogIndication(".*expensive.*"), 3000000, 100, 100, 1, 0);
+        statistics.record(new BuildLogIndication(".*expensive.*"), 2000000, 100, 100, 0, 1);
+        statistics.record(new BuildLogIndication(".*not evaluated.*"), 0, 0, 0, 0, 0);
+
+        List<IndicationCost> costs = statistics.getCosts();
+        assertEquals(2, costs.size());
+        IndicationCost expensive = costs.get(0);
+        assertEquals(".*expensive.*", expensive.getExpression());
+        assertEquals(5, expensive.getMillis());
+        assertEquals(200, expensive.getEvaluations());
+        assertEquals(25.0, expensive.getMicrosPerEvaluation(), 0.001);
+        assertEquals(1, expensive.getMatches());
+        assertEquals(1, expensive.getTimeouts());
+        assertEquals(".*cheap.*", costs.get(1).getExpression());
+        assertEquals(5001000, statistics.getTotalNanos());
+
+        statistics.reset();
+        assertEquals(0, statistics.getCosts().size());
+    }
+
+    /**
+     * Tests that the time of the evaluations that were not timed is estimated from the sampled ones.
+     */
+    @Test
+    public void testSampledTimeIsScaled() {
+        assertTrue(IndicationCostStatistics.isSampled(0));
+        assertFalse(IndicationCostStatistics.isSampled(1));
+        assertTrue(IndicationCostStatistics.isSampled(IndicationCostStatistics.SAMPLE_INTERVAL));
+
+        IndicationCostStatistics statistics = IndicationCostStatistics.getInstance();
+        statistics.record(new BuildLogIndication(".*sampled.*"), 4000, 4, 100, 0, 0);
+        IndicationCost cost = statistics.getCosts().get(0);
+        assertEquals(100000, cost.getNanos());
+        assertEquals(100, cost.getEvaluations());
+        assertEquals(1.0, cost.getMicrosPerEvaluation(), 0.001);
+    }
+}
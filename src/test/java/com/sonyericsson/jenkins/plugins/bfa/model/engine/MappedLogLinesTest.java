@@ -0,0 +1,166 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+//CS IGNORE MagicNumber FOR NEXT 100 LINES. REASON: TestData.
+
+/**
+ * Tests for {@link MappedLogLines}.
+ */
+public class MappedLogLinesTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Temporary folder for the log files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that the lines are the same as the ones read by a BufferedReader,
+     * also when lines cross the chunk boundaries.
+     * @throws Exception if so
+     */
+    @Test
+    public void testSameLinesAsBufferedReader() throws Exception {
+        String content = "first line\nsecond line\r\nthird\rfourth \u00e5\u00e4\u00f6 line\n\nlast line without newline";
+        File log = write(content);
+        List<String> expected = readWithBufferedReader(log);
+        for (int chunkSize : new int[] {7, 16, MappedLogLines.CHUNK_SIZE}) {
+            assertEquals("Chunk size " + chunkSize, expected, readMapped(log, chunkSize));
+        }
+    }
+
+    /**
+     * Tests that ASCII lines are returned as byte views and other lines as decoded Strings.
+     * @throws Exception if so
+     */
+    @Test
+    public void testOnlyNonAsciiLinesAreDecoded() throws Exception {
+        File log = write("plain\nr\u00e4ksm\u00f6rg\u00e5s\n");
+        MappedLogLines lines = new MappedLogLines(log, UTF8);
+        try {
+            CharSequence line = lines.readLine();
+            assertTrue(line instanceof ByteCharSequence);
+            assertTrue(((ByteCharSequence)line).contains("lai"));
+            assertFalse(((ByteCharSequence)line).contains("plains"));
+            line = lines.readLine();
+            assertTrue(line instanceof String);
+            assertEquals("r\u00e4ksm\u00f6rg\u00e5s", line);
+        } finally {
+            lines.close();
+        }
+    }
+
+    /**
+     * Tests which files and charsets can be mapped.
+     * @throws Exception if so
+     */
+    @Test
+    public void testIsSupported() throws Exception {
+        File log = write("line\n");
+        assertTrue(MappedLogLines.isSupported(log, UTF8));
+        assertTrue(MappedLogLines.isSupported(log, Charset.forName("ISO-8859-1")));
+        assertFalse(MappedLogLines.isSupported(log, Charset.forName("UTF-16")));
+        assertFalse(MappedLogLines.isSupported(new File(folder.getRoot(), "log.gz"), UTF8));
+    }
+
+    /**
+     * Writes a log file.
+     *
+     * @param content the content.
+     * @return the file.
+     * @throws Exception if so
+     */
+    private File write(String content) throws Exception {
+        File log = folder.newFile();
+        FileOutputStream out = new FileOutputStream(log);
+        try {
+            out.write(content.getBytes(UTF8));
+        } finally {
+            out.close();
+        }
+        return log;
+    }
+
+    /**
+     * Reads all lines with a BufferedReader.
+     *
+     * @param log the file.
+     * @return the lines.
+     * @throws Exception if so
+     */
+    private List<String> readWithBufferedReader(File log) throws Exception {
+        List<String> result = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(log.toURI().toURL().openStream(), UTF8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                result.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    /**
+     * Reads all lines through a memory mapping.
+     *
+     * @param log the file.
+     * @param chunkSize the chunk size.
+     * @return the lines.
+     * @throws Exception if so
+     */
+    private List<String> readMapped(File log, int chunkSize) throws Exception {
+        List<String> result = new ArrayList<String>();
+        MappedLogLines lines = new MappedLogLines(log, UTF8, chunkSize);
+        try {
+            CharSequence line;
+            while ((line = lines.readLine()) != null) {
+                result.add(line.toString());
+            }
+        } finally {
+            lines.close();
+        }
+        return result;
+    }
+}
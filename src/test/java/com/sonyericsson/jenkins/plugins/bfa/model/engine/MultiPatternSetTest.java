@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.BuildLogIndication;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+//CS IGNORE MagicNumber FOR NEXT 200 LINES. REASON: TestData.
+
+/**
+ * Tests for {@link MultiPatternSet} and {@link AhoCorasick}.
+ */
+public class MultiPatternSetTest {
+
+    /**
+     * Tests that the automaton finds all literals, including overlapping ones and suffixes of each other.
+     */
+    @Test
+    public void testAutomatonFindsOverlappingLiterals() {
+        AhoCorasick automaton = new AhoCorasick.Builder()
+                .add("he", 0)
+                .add("she", 1)
+                .add("his", 2)
+                .add("hers", 3)
+                .add("xyz", 4)
+                .build();
+        BitSet found = new BitSet();
+        automaton.scan("ushers", found);
+        assertTrue(found.get(0));
+        assertTrue(found.get(1));
+        assertFalse(found.get(2));
+        assertTrue(found.get(3));
+        assertFalse(found.get(4));
+    }
+
+    /**
+     * Tests that only the patterns whose literal is on the line, and the fallback patterns, are candidates.
+     */
+    @Test
+    public void testFindCandidates() {
+        FailureCause cause = new FailureCause("cause", "description");
+        cause.addIndication(new BuildLogIndication(".*Build timed out.*"));
+        cause.addIndication(new BuildLogIndication(".*OutOfMemoryError.*"));
+        cause.addIndication(new BuildLogIndication("^(Killed|Terminated)$"));
+        List<FailureCause> causes = new ArrayList<FailureCause>();
+        causes.add(cause);
+
+        MultiPatternSet set = new MultiPatternSet(causes);
+        assertEquals(3, set.size());
+        assertEquals(2, set.getLiteralCount());
+        assertEquals(1, set.getFallbackCount());
+
+        BitSet candidates = new BitSet();
+        set.findCandidates("java.lang.OutOfMemoryError: heap space", candidates);
+        assertFalse(candidates.get(0));
+        assertTrue(candidates.get(1));
+        assertTrue(candidates.get(2));
+    }
+}
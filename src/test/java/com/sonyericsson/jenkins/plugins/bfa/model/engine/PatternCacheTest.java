@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PatternCache}.
+ */
+public class PatternCacheTest {
+
+    /**
+     * Empties the cache.
+     */
+    @Before
+    public void setUp() {
+        PatternCache.getInstance().reset();
+    }
+
+    /**
+     * Tests that the same expression gives the same compiled pattern and counts as a hit.
+     */
+    @Test
+    public void testSameExpressionIsShared() {
+        PatternCache cache = PatternCache.getInstance();
+        PatternCache.CompiledPattern first = cache.get(".*Build timed out.*", 0);
+        PatternCache.CompiledPattern second = cache.get(".*Build timed out.*", 0);
+        assertSame(first, second);
+        assertEquals("Build timed out", first.getRequiredLiteral());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 0);
+    }
+
+    /**
+     * Tests that the flags are part of the key.
+     */
+    @Test
+    public void testFlagsArePartOfTheKey() {
+        PatternCache cache = PatternCache.getInstance();
+        PatternCache.CompiledPattern plain = cache.get("error", 0);
+        PatternCache.CompiledPattern insensitive = cache.get("error", Pattern.CASE_INSENSITIVE);
+        assertNotSame(plain, insensitive);
+        assertTrue(insensitive.getPattern().matcher("ERROR").matches());
+        assertEquals(2, cache.getPatternCount());
+    }
+
+    /**
+     * Tests that an invalid expression is reported and not cached.
+     */
+    @Test(expected = java.util.regex.PatternSyntaxException.class)
+    public void testInvalidExpression() {
+        PatternCache.getInstance().get("[unclosed", 0);
+    }
+
+    /**
+     * Tests that the same literals give the same automaton with the list positions as ids.
+     */
+    @Test
+    public void testAutomatonIsShared() {
+        PatternCache cache = PatternCache.getInstance();
+        AhoCorasick automaton = cache.getAutomaton(Arrays.asList("foo", null, "bar"));
+        assertSame(automaton, cache.getAutomaton(Arrays.asList("foo", null, "bar")));
+        BitSet found = new BitSet();
+        automaton.scan("xbarx", found);
+        assertEquals(1, found.cardinality());
+        assertTrue(found.get(2));
+        assertEquals(1, cache.getAutomatonHits());
+        assertEquals(1, cache.getAutomatonMisses());
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+}
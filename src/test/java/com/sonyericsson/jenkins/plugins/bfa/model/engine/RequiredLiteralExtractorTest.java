@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link RequiredLiteralExtractor}.
+ */
+public class RequiredLiteralExtractorTest {
+
+    /**
+     * Tests the literals of the typical indication patterns.
+     */
+    @Test
+    public void testExtractFromSimplePatterns() {
+        assertEquals("Connection refused", extract(".*Connection refused.*"));
+        assertEquals("timed out", extract("^(.*timed out.*)$"));
+        assertEquals("java.lang.OutOfMemoryError", extract(".*java\\.lang\\.OutOfMemoryError.*"));
+        assertEquals("a+b", extract(".*\\Qa+b\\E.*"));
+        assertEquals("Exception: ", extract("[a-z]+Exception: .*"));
+    }
+
+    /**
+     * Tests that the longest required factor is chosen and that optional parts are left out.
+     */
+    @Test
+    public void testExtractLongestRequiredFactor() {
+        assertEquals(" tests failed", extract("^\\d+ tests failed$"));
+        assertEquals("colo", extract(".*colou?r.*"));
+        assertEquals("ERROR: ", extract("ERROR: (.*) failed"));
+        assertEquals(" failed to start", extract(".*(Service|Daemon) failed to start.*"));
+        assertEquals("Segmentation fault", extract(".*(?:Segmentation fault).*"));
+    }
+
+    /**
+     * Tests that no literal is reported when none is required or the pattern is not understood.
+     */
+    @Test
+    public void testExtractNothing() {
+        assertNull(extract(".*"));
+        assertNull(extract(".*(Killed|Terminated).*"));
+        assertNull(extract(".*(timed out)?.*"));
+        assertNull(extract(".*\\x41BC.*"));
+        assertNull(extract("(?i).*timed out.*"));
+        assertNull(RequiredLiteralExtractor.extract(Pattern.compile(".*timed out.*", Pattern.CASE_INSENSITIVE)));
+    }
+
+    /**
+     * Tests that a literal pattern is its own literal unless it is matched ignoring case.
+     */
+    @Test
+    public void testExtractLiteralPattern() {
+        assertEquals("a.b", RequiredLiteralExtractor.extract(Pattern.compile("a.b", Pattern.LITERAL)));
+        assertNull(RequiredLiteralExtractor.extract(
+                Pattern.compile("timed out", Pattern.LITERAL | Pattern.CASE_INSENSITIVE)));
+    }
+
+    /**
+     * Extracts the literal of an expression.
+     *
+     * @param expression the expression.
+     * @return the literal.
+     */
+    private static String extract(String expression) {
+        return RequiredLiteralExtractor.extract(Pattern.compile(expression));
+    }
+}
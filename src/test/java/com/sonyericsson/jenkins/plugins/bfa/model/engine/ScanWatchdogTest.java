@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import com.sonyericsson.jenkins.plugins.bfa.metrics.MetricsRegistry;
+import net.sf.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+//CS IGNORE MagicNumber FOR NEXT 100 LINES. REASON: TestData.
+
+/**
+ * Tests for {@link ScanWatchdog}.
+ */
+public class ScanWatchdogTest {
+
+    /**
+     * Tests that a scan that is not touched within its timeout expires and is counted.
+     * @throws Exception if so
+     */
+    @Test
+    public void testExpiresOnTimeout() throws Exception {
+        ScanWatchdog watchdog = ScanWatchdog.getInstance();
+        long timeoutsBefore = watchdog.getTimeouts();
+        ScanWatchdog.Registration registration = watchdog.register(50);
+        try {
+            assertTrue(watchdog.getActiveRegistrations() >= 1);
+            long deadline = System.currentTimeMillis() + 10 * ScanWatchdog.TICK;
+            while (!registration.isExpired() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(registration.isExpired());
+            assertTrue(watchdog.getTimeouts() > timeoutsBefore);
+            registration.touch();
+            assertFalse(registration.isExpired());
+        } finally {
+            registration.close();
+        }
+    }
+
+    /**
+     * Tests that a scan that keeps touching its registration does not expire.
+     * @throws Exception if so
+     */
+    @Test
+    public void testNoInterruptWhenTouched() throws Exception {
+        ScanWatchdog watchdog = ScanWatchdog.getInstance();
+        ScanWatchdog.Registration registration = watchdog.register(4 * ScanWatchdog.TICK);
+        try {
+            long end = System.currentTimeMillis() + 3 * ScanWatchdog.TICK;
+            while (System.currentTimeMillis() < end) {
+                registration.touch();
+                Thread.sleep(10);
+            }
+            assertFalse(registration.isExpired());
+        } finally {
+            registration.close();
+        }
+    }
+
+    /**
+     * Tests that closed registrations are no longer watched.
+     */
+    @Test
+    public void testCloseRemovesRegistration() {
+        ScanWatchdog watchdog = ScanWatchdog.getInstance();
+        int before = watchdog.getActiveRegistrations();
+        ScanWatchdog.Registration registration = watchdog.register(1000);
+        assertEquals(before + 1, watchdog.getActiveRegistrations());
+        registration.close();
+        assertEquals(before, watchdog.getActiveRegistrations());
+    }
+
+    /**
+     * Tests that the number of watched scans is published as a metric.
+     */
+    @Test
+    public void testActiveRegistrationsArePublished() {
+        ScanWatchdog watchdog = ScanWatchdog.getInstance();
+        ScanWatchdog.Registration registration = watchdog.register(1000);
+        try {
+            JSONObject gauges = MetricsRegistry.getInstance().toJSON().getJSONObject("gauges");
+            assertEquals(watchdog.getActiveRegistrations(), gauges.getInt("scan.watchdog.active"));
+            assertEquals(watchdog.getTimeouts(), gauges.getLong("scan.watchdog.timeouts"));
+        } finally {
+            registration.close();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//CS IGNORE MagicNumber FOR NEXT 200 LINES. REASON: TestData.
+
+/**
+ * Tests for {@link SharedLogBuffer}.
+ */
+public class SharedLogBufferTest {
+
+    /**
+     * Tests that all readers get the whole log while it is only opened once.
+     * @throws Exception if so
+     */
+    @Test
+    public void testAllReadersGetTheWholeLog() throws Exception {
+        String log = createLog(SharedLogBuffer.CHUNK_SIZE * 10 + 17);
+        CountingSource source = new CountingSource(log);
+        SharedLogBuffer buffer = new SharedLogBuffer(source, 16);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(readAll(buffer.newReader())));
+            }
+            buffer.run();
+            for (Future<String> result : results) {
+                assertEquals(log, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, source.opened.get());
+    }
+
+    /**
+     * Tests that readers waiting for a thread do not stall the producer when the ring buffer wraps,
+     * but read the log on their own.
+     * @throws Exception if so
+     */
+    @Test
+    public void testLateReadersFallBack() throws Exception {
+        String log = createLog(SharedLogBuffer.CHUNK_SIZE * 10);
+        CountingSource source = new CountingSource(log);
+        SharedLogBuffer buffer = new SharedLogBuffer(source, 2);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(readAll(buffer.newReader())));
+            }
+            buffer.run();
+            for (Future<String> result : results) {
+                assertEquals(log, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        //Only the first reader can have started in time to read from the buffer.
+        assertTrue(source.opened.get() >= 3);
+    }
+
+    /**
+     * Tests that the producer stops when all readers are closed.
+     * @throws Exception if so
+     */
+    @Test
+    public void testProducerStopsWhenAllReadersAreClosed() throws Exception {
+        SharedLogBuffer buffer = new SharedLogBuffer(new CountingSource(createLog(SharedLogBuffer.CHUNK_SIZE * 10)), 2);
+        buffer.newReader().close();
+        buffer.newReader().close();
+        //Would block forever on the full ring buffer if it waited for closed readers.
+        buffer.run();
+        assertEquals(0, buffer.getOpenReaders());
+    }
+
+    /**
+     * Tests that a reader interrupted while waiting for the producer still reads the whole log,
+     * and keeps the interrupt for its caller.
+     * @throws Exception if so
+     */
+    @Test
+    public void testInterruptIsKept() throws Exception {
+        String log = createLog(SharedLogBuffer.CHUNK_SIZE * 3);
+        SharedLogBuffer buffer = new SharedLogBuffer(new CountingSource(log), 16);
+        final Callable<String> readAll = readAll(buffer.newReader());
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        FutureTask<String> result = new FutureTask<String>(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                String text = readAll.call();
+                interrupted.set(Thread.currentThread().isInterrupted());
+                return text;
+            }
+        });
+        Thread reader = new Thread(result);
+        reader.start();
+        while (reader.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+        reader.interrupt();
+        buffer.run();
+        assertEquals(log, result.get());
+        assertTrue(interrupted.get());
+    }
+
+    /**
+     * Creates a log.
+     *
+     * @param length the length of the log.
+     * @return the log.
+     */
+    private static String createLog(int length) {
+        StringBuilder log = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            log.append((char)('a' + i % 26));
+        }
+        return log.toString();
+    }
+
+    /**
+     * Reads everything from a reader.
+     *
+     * @param reader the reader.
+     * @return a task returning the read text.
+     */
+    private static Callable<String> readAll(final Reader reader) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                StringBuilder text = new StringBuilder();
+                char[] buf = new char[8192];
+                int read;
+                try {
+                    while ((read = reader.read(buf, 0, buf.length)) > 0) {
+                        text.append(buf, 0, read);
+                    }
+                } finally {
+                    reader.close();
+                }
+                return text.toString();
+            }
+        };
+    }
+
+    /**
+     * Source counting how many times the log is opened.
+     */
+    private static class CountingSource implements SharedLogBuffer.Source {
+        private final String log;
+        private final AtomicInteger opened = new AtomicInteger();
+
+        /**
+         * Standard constructor.
+         *
+         * @param log the log.
+         */
+        CountingSource(String log) {
+            this.log = log;
+        }
+
+        @Override
+        public Reader open() throws IOException {
+            opened.incrementAndGet();
+            return new StringReader(log);
+        }
+    }
+}
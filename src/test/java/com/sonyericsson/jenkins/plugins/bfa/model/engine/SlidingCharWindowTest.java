@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.model.engine;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+
+//CS IGNORE MagicNumber FOR NEXT 60 LINES. REASON: TestData.
+
+/**
+ * Tests for {@link SlidingCharWindow}.
+ */
+public class SlidingCharWindowTest {
+
+    /**
+     * Tests that the window keeps the overlap when sliding and wraps around its buffer.
+     * @throws Exception if so
+     */
+    @Test
+    public void testSlideKeepsOverlap() throws Exception {
+        SlidingCharWindow window = new SlidingCharWindow(10, 4);
+        StringReader reader = new StringReader("0123456789abcdefghijklmnop");
+        assertEquals(10, window.fill(reader));
+        assertEquals("0123456789", window.toString());
+        window.slide();
+        assertEquals("6789", window.toString());
+        assertEquals(6, window.fill(reader));
+        assertEquals("6789abcdef", window.toString());
+        assertEquals("9abc", window.subSequence(3, 7).toString());
+        window.slide();
+        assertEquals(6, window.fill(reader));
+        assertEquals("cdefghijkl", window.toString());
+        assertEquals('c', window.charAt(0));
+        assertEquals('l', window.charAt(9));
+        window.slide();
+        assertEquals(4, window.fill(reader));
+        assertEquals("ijklmnop", window.toString());
+        window.slide();
+        assertEquals(-1, window.fill(reader));
+    }
+
+    /**
+     * Tests that an overlap that is not smaller than the window is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testOverlapMustBeSmallerThanSize() {
+        new SlidingCharWindow(10, 10);
+    }
+}
@@ -86,6 +86,26 @@ public class BuildLogIndicationTest {
         assertNotNull(found);
     }
 
+    /**
+     * Tests that the BuildLogFailureReader can find the string in a build log that is already open.
+     * @throws Exception if so.
+     */
+    @Test
+    public void testBuildLogFailureReaderOpenLog() throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject();
+        project.getBuildersList().add(new PrintToLogBuilder(TEST_STRING));
+        FreeStyleBuild build = j.buildAndAssertSuccess(project);
+        BuildLogFailureReader reader = new BuildLogFailureReader(new BuildLogIndication(".*test.*"));
+        BufferedReader log = new BufferedReader(build.getLogReader());
+        try {
+            FoundIndication found = reader.scan(build, log, System.out);
+            assertNotNull(found);
+            assertEquals(TEST_STRING, found.getMatchingString());
+        } finally {
+            log.close();
+        }
+    }
+
     /**
      * Tests that the FailureReader parses two difference indications of same cause and description in result.
      * @throws Exception if so.
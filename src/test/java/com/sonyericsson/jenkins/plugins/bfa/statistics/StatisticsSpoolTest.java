@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Axis Communications AB. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.jenkins.plugins.bfa.statistics;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.FoundIndication;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+//CS IGNORE MagicNumber FOR NEXT 100 LINES. REASON: TestData.
+
+/**
+ * Tests for {@link StatisticsSpool}.
+ */
+public class StatisticsSpoolTest {
+
+    /**
+     * The spool directory.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that spooled statistics are read back as they were written, oldest segment first.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        StatisticsSpool spool = new StatisticsSpool(folder.newFolder("spool"));
+        FoundIndication indication = new FoundIndication("pattern", "log", "matching line");
+        Statistics full = new Statistics("project", 7, "#7", new Date(1234567), 42L, Arrays.asList("UserIdCause"),
+                "node", "master", 3600000, "FAILURE", new Statistics.UpstreamCause("upstream", 3),
+                Collections.singletonList(new FailureCauseStatistics("cause", Collections.singletonList(indication))));
+        Statistics empty = new Statistics("other", 8, null, null, 0L, null, null, null, 0, null, null, null);
+        assertTrue(spool.write(Arrays.asList(full, empty)));
+        assertTrue(spool.write(Collections.singletonList(empty)));
+
+        List<File> segments = spool.getSegments();
+        assertEquals(2, segments.size());
+        List<Statistics> read = spool.read(segments.get(0));
+        assertEquals(2, read.size());
+        Statistics stat = read.get(0);
+        assertEquals("project", stat.getProjectName());
+        assertEquals(7, stat.getBuildNumber());
+        assertEquals("#7", stat.getDisplayName());
+        assertEquals(new Date(1234567), stat.getStartingTime());
+        assertEquals(42L, stat.getDuration());
+        assertEquals(Arrays.asList("UserIdCause"), stat.getTriggerCauses());
+        assertEquals("node", stat.getSlaveHostName());
+        assertEquals("master", stat.getMaster());
+        assertEquals(3600000, stat.getTimeZoneOffset());
+        assertEquals("FAILURE", stat.getResult());
+        assertEquals("upstream", stat.getUpstreamCause().getUpstreamProject());
+        assertEquals(3, stat.getUpstreamCause().getUpstreamBuild());
+        FailureCauseStatistics cause = stat.getFailureCauseStatisticsList().get(0);
+        assertEquals("cause", cause.getId());
+        assertEquals("pattern", cause.getIndications().get(0).getPattern());
+        assertEquals("log", cause.getIndications().get(0).getMatchingFile());
+        assertEquals("matching line", cause.getIndications().get(0).getMatchingString());
+        assertNull(read.get(1).getDisplayName());
+        assertNull(read.get(1).getStartingTime());
+        assertNull(read.get(1).getFailureCauseStatisticsList());
+
+        spool.delete(segments.get(0));
+        assertEquals(1, spool.getSegmentCount());
+    }
+
+    /**
+     * Tests that segments left from before a restart are kept, and incomplete ones are removed.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testReopen() throws Exception {
+        File directory = folder.newFolder("spool");
+        StatisticsSpool spool = new StatisticsSpool(directory);
+        spool.write(Collections.singletonList(new Statistics("project", 1, null, null, 0L, null, null, null, 0,
+                null, null, null)));
+        File incomplete = new File(directory, "0000000000000000001.tmp");
+        assertTrue(incomplete.createNewFile());
+
+        StatisticsSpool reopened = new StatisticsSpool(directory);
+        assertEquals(1, reopened.getSegmentCount());
+        assertFalse(incomplete.exists());
+        assertEquals("project", reopened.read(reopened.getSegments().get(0)).get(0).getProjectName());
+    }
+}
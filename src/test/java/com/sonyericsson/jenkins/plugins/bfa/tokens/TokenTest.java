@@ -32,6 +32,7 @@ import java.util.logging.Logger;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
 import com.sonyericsson.jenkins.plugins.bfa.BuildFailureScannerHudsonTest;
+import com.sonyericsson.jenkins.plugins.bfa.PendingAnalysis;
 import com.sonyericsson.jenkins.plugins.bfa.PluginImpl;
 import com.sonyericsson.jenkins.plugins.bfa.model.indication.BuildLogIndication;
 import com.sonyericsson.jenkins.plugins.bfa.test.utils.PrintToLogBuilder;
@@ -128,6 +129,25 @@ public class TokenTest extends HudsonTestCase {
         assertEquals("", 1, Iterables.size(Splitter.on('\n').omitEmptyStrings().split(htmlMinimal)));
     }
 
+    /**
+     * Test that the token waits for a build that is analyzed in the background.
+     * @throws Exception if necessary
+     */
+    @Test
+    public void testTokenWaitsForAsyncAnalysis() throws Exception {
+        // CS IGNORE MagicNumberCheck FOR NEXT 12 LINES. REASON: Test data.
+        PluginImpl.getInstance().setAsyncAnalysis(true);
+        final FreeStyleProject project = createFreeStyleProject();
+        project.getBuildersList().add(new PrintToLogBuilder(ERROR));
+        project.getBuildersList().add(new MockBuilder(Result.FAILURE));
+        BuildFailureScannerHudsonTest.configureCauseAndIndication("error", "There was an error.", "comment", "category",
+            new BuildLogIndication(".*ERROR.*"));
+        final FreeStyleBuild build = project.scheduleBuild2(0).get(10, TimeUnit.SECONDS);
+        final String defaults = TokenMacro.expandAll(build, listener, "${BUILD_FAILURE_ANALYZER}");
+        assertFalse(PendingAnalysis.isPending(build));
+        assertTrue("Default has cause", defaults.contains("There was an error."));
+    }
+
     /**
      * Test that wrap() works appropriately.
      * @throws Exception if necessary